@@ -0,0 +1,85 @@
+package org.team100.controllib.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.team100.controllib.storage.BitemporalBuffer;
+import org.team100.controllib.storage.BitemporalStore;
+import org.team100.controllib.storage.RingBitemporalBuffer;
+
+/**
+ * Measurement buffer put and lookup at a few sizes, for both store
+ * implementations. The buffer starts full, so each put also evicts.
+ */
+@State(Scope.Thread)
+public class BitemporalStoreBenchmark {
+    private static final double kPeriodSec = 0.002;
+    // power of two so the query index is a mask
+    private static final int kQueries = 1024;
+
+    @Param({ "100", "1000", "10000" })
+    public int size;
+
+    @Param({ "skiplist", "ring" })
+    public String store;
+
+    private BitemporalStore<Double> m_buffer;
+    private double[] m_ages;
+    private final Double m_value = 1.0;
+    private long m_recordTimeUs;
+    private double m_validTimeSec;
+    private int m_query;
+
+    @Setup
+    public void setup() {
+        m_buffer = store.equals("ring")
+                ? new RingBitemporalBuffer<>(size)
+                : new BitemporalBuffer<>(size);
+        m_recordTimeUs = 0;
+        m_validTimeSec = 0;
+        for (int i = 0; i < size; ++i) {
+            put();
+        }
+        // queries spread over the most recent half of the buffer
+        Random r = new Random(0);
+        m_ages = new double[kQueries];
+        for (int i = 0; i < kQueries; ++i) {
+            m_ages[i] = r.nextDouble() * size * kPeriodSec / 2;
+        }
+    }
+
+    /** In-order put, the usual case. */
+    @Benchmark
+    public void put() {
+        m_recordTimeUs += 2000;
+        m_validTimeSec += kPeriodSec;
+        m_buffer.put(m_recordTimeUs, m_validTimeSec, m_value);
+    }
+
+    /** Put that arrives 20 ms late, so it lands behind the newest entries. */
+    @Benchmark
+    public void putLate() {
+        m_recordTimeUs += 2000;
+        m_validTimeSec += kPeriodSec;
+        m_buffer.put(m_recordTimeUs, m_validTimeSec - 0.0201, m_value);
+    }
+
+    @Benchmark
+    public Object floor() {
+        return m_buffer.floor(nextQuery());
+    }
+
+    @Benchmark
+    public Double floorValue() {
+        return m_buffer.floorValue(nextQuery());
+    }
+
+    private double nextQuery() {
+        m_query = (m_query + 1) & (kQueries - 1);
+        return m_validTimeSec - m_ages[m_query];
+    }
+}
@@ -0,0 +1,78 @@
+package org.team100.controllib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.team100.controllib.estimator.ExtrapolatingEstimator;
+import org.team100.controllib.fusion.VarianceWeightedLinearPooling;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.system.examples.DoubleIntegratorRotary1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+/**
+ * One RK4 step and one fusion, the inner loop of replay, both the allocating
+ * and the in-place versions.
+ */
+@State(Scope.Thread)
+public class EstimatorBenchmark {
+    private static final double kDt = 0.02;
+
+    private ExtrapolatingEstimator<N2, N1, N2> m_predictor;
+    private VarianceWeightedLinearPooling<N2> m_pooling;
+    private RandomVector<N2> m_x;
+    private RandomVector<N2> m_measurement;
+    private RandomVector<N2> m_result;
+    private Matrix<N1, N1> m_u;
+
+    @Setup
+    public void setup() {
+        WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0.015, 0.17);
+        MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+        DoubleIntegratorRotary1D system = new DoubleIntegratorRotary1D(w, v);
+        m_predictor = new ExtrapolatingEstimator<>(system);
+        m_pooling = new VarianceWeightedLinearPooling<>();
+        m_x = new AngularRandomVector<>(VecBuilder.fill(1, 1), variance(0.1, 0.2));
+        m_measurement = new AngularRandomVector<>(VecBuilder.fill(1.01, 0.99), variance(0.01, 0.1));
+        m_result = m_x.copy();
+        m_u = VecBuilder.fill(0.5);
+    }
+
+    @Benchmark
+    public RandomVector<N2> predictWithNoise() {
+        return m_predictor.predictWithNoise(m_x, m_u, kDt);
+    }
+
+    @Benchmark
+    public RandomVector<N2> predictWithNoiseInto() {
+        m_predictor.predictWithNoiseInto(m_x, m_u, kDt, m_result);
+        return m_result;
+    }
+
+    @Benchmark
+    public RandomVector<N2> fuse() {
+        return m_pooling.fuse(m_x, m_measurement);
+    }
+
+    @Benchmark
+    public RandomVector<N2> fuseInto() {
+        m_pooling.fuseInto(m_x, m_measurement, m_result);
+        return m_result;
+    }
+
+    private static Variance<N2> variance(double p0, double p1) {
+        Matrix<N2, N2> p = new Matrix<>(Nat.N2(), Nat.N2());
+        p.set(0, 0, p0);
+        p.set(1, 1, p1);
+        return new Variance<>(p);
+    }
+}
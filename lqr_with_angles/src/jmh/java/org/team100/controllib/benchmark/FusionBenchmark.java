@@ -0,0 +1,66 @@
+package org.team100.controllib.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.team100.controllib.fusion.VarianceWeightedLinearPooling;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.numbers.N2;
+
+/**
+ * One tick of sensor fusion, e.g. four cameras and two encoders: pairwise
+ * fuse() vs one pass of fuseAllInto(), with and without input checks.
+ */
+@State(Scope.Thread)
+public class FusionBenchmark {
+    @Param({ "2", "6" })
+    public int sensors;
+
+    @Param({ "true", "false" })
+    public boolean validate;
+
+    private final VarianceWeightedLinearPooling<N2> m_pooling = new VarianceWeightedLinearPooling<>();
+    private final List<RandomVector<N2>> m_inputs = new ArrayList<>();
+    private RandomVector<N2> m_result;
+
+    @Setup
+    public void setup() {
+        m_pooling.setValidate(validate);
+        m_inputs.clear();
+        for (int i = 0; i < sensors; ++i) {
+            Matrix<N2, N2> p = new Matrix<>(Nat.N2(), Nat.N2());
+            p.set(0, 0, 0.01 * (i + 1));
+            p.set(0, 1, 0.001);
+            p.set(1, 0, 0.001);
+            p.set(1, 1, 0.1 * (i + 1));
+            m_inputs.add(new AngularRandomVector<>(VecBuilder.fill(0.01 * i, 1), new Variance<>(p)));
+        }
+        m_result = m_inputs.get(0).copy();
+    }
+
+    @Benchmark
+    public RandomVector<N2> pairwise() {
+        RandomVector<N2> result = m_inputs.get(0);
+        for (int i = 1; i < m_inputs.size(); ++i) {
+            result = m_pooling.fuse(result, m_inputs.get(i));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public RandomVector<N2> fuseAllInto() {
+        m_pooling.fuseAllInto(m_inputs, m_result);
+        return m_result;
+    }
+}
@@ -0,0 +1,34 @@
+package org.team100.controllib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.team100.controllib.controller.GainCalculator;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.system.NonlinearPlant;
+import org.team100.controllib.system.examples.Pendulum1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.Vector;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+/**
+ * Full LQR gain calculation: jacobians, discretization, and DARE. This needs
+ * the WPIMath JNI, see build.gradle.
+ */
+@State(Scope.Thread)
+public class GainCalculatorBenchmark {
+    private final Vector<N2> m_stateTolerance = VecBuilder.fill(0.01, 0.2);
+    private final Vector<N1> m_controlTolerance = VecBuilder.fill(12.0);
+    private final NonlinearPlant<N2, N1, N2> m_plant = new Pendulum1D(
+            WhiteNoiseVector.noise2(0.015, 0.17),
+            MeasurementUncertainty.for2(0.01, 0.1));
+
+    @Benchmark
+    public Matrix<N1, N2> gain() {
+        return new GainCalculator<>(m_plant, m_stateTolerance, m_controlTolerance, 0.02).getK();
+    }
+}
@@ -0,0 +1,116 @@
+package org.team100.controllib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.team100.controllib.estimator.NewBitemporalEstimatorController;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.reference.examples.ConstantVelocityReference1D;
+import org.team100.controllib.storage.BitemporalBuffer;
+import org.team100.controllib.storage.BitemporalStore;
+import org.team100.controllib.storage.RingBitemporalBuffer;
+import org.team100.controllib.system.examples.DoubleIntegratorRotary1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+/**
+ * One 20 ms control loop: ten on-time measurements at 2 ms, maybe a late one,
+ * then replay and record. Each op is one loop, so time per op is the
+ * replay cost per robot period.
+ */
+@State(Scope.Thread)
+public class ReplayBenchmark {
+    private static final long kLoopUs = 20000;
+    private static final long kSensorUs = 2000;
+
+    /** Measurement buffer capacity. */
+    @Param({ "100", "1000" })
+    public int size;
+
+    @Param({ "skiplist", "ring" })
+    public String store;
+
+    /**
+     * none: everything on time
+     * recent: one measurement per loop from 30 ms ago
+     * old: one measurement per loop from 150 ms ago
+     */
+    @Param({ "none", "recent", "old" })
+    public String late;
+
+    @Param({ "false", "true" })
+    public boolean incremental;
+
+    private final WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0.015, 0.17);
+    private final MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+    private final DoubleIntegratorRotary1D m_system = new DoubleIntegratorRotary1D(w, v);
+    private final Matrix<N1, N1> m_u = VecBuilder.fill(0);
+    private NewBitemporalEstimatorController<N2, N1, N2> m_controller;
+    private long m_lateUs;
+    private long m_nowUs;
+
+    @Setup
+    public void setup() {
+        Matrix<N2, N2> initP = new Matrix<>(Nat.N2(), Nat.N2());
+        initP.set(0, 0, 1e9);
+        initP.set(1, 1, 1e9);
+        RandomVector<N2> initialState = new AngularRandomVector<>(VecBuilder.fill(0, 1), new Variance<>(initP));
+        BitemporalStore<RandomVector<N2>> measurements = store.equals("ring")
+                ? new RingBitemporalBuffer<>(size)
+                : new BitemporalBuffer<>(size);
+        m_controller = new NewBitemporalEstimatorController<>(
+                m_system,
+                initialState,
+                new Matrix<>(Nat.N1(), Nat.N1()),
+                new ConstantVelocityReference1D(),
+                Matrix.mat(Nat.N1(), Nat.N2()).fill(10, 1),
+                measurements);
+        m_controller.setIncrementalReplay(incremental);
+        switch (late) {
+            case "none":
+                m_lateUs = 0;
+                break;
+            case "recent":
+                m_lateUs = 30000;
+                break;
+            case "old":
+                m_lateUs = 150000;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown pattern: " + late);
+        }
+        m_nowUs = 0;
+        // fill the history so the late measurements have something to land on
+        for (int i = 0; i < 50; ++i) {
+            loop();
+        }
+    }
+
+    @Benchmark
+    public int loop() {
+        for (int i = 1; i <= kLoopUs / kSensorUs; ++i) {
+            long us = m_nowUs + i * kSensorUs;
+            double t = us * 1e-6;
+            m_controller.acceptMeasurement(us, t, m_system.position(t));
+        }
+        m_nowUs += kLoopUs;
+        if (m_lateUs > 0 && m_nowUs > m_lateUs) {
+            // off the sensor grid so it's a new valid time
+            double t = (m_nowUs - m_lateUs + 500) * 1e-6;
+            m_controller.acceptMeasurement(m_nowUs, t, m_system.position(t));
+        }
+        int count = m_controller.replay(m_nowUs + 500);
+        m_controller.record((m_nowUs + 500) * 1e-6, m_u);
+        return count;
+    }
+}
@@ -9,22 +9,35 @@ import edu.wpi.first.math.Num;
 import edu.wpi.first.math.numbers.N1;
 
 /**
- * Full state controller using constant gain.
+ * Full state controller using constant gain, or gain scheduled on one state
+ * variable.
  */
 public class FeedbackControl<States extends Num, Inputs extends Num, Outputs extends Num> {
     private static final boolean debug = false;
     private final NonlinearPlant<States, Inputs, Outputs> m_plant;
     private final Matrix<Inputs, States> m_K;
+    private final GainSchedule<States, Inputs> m_schedule;
 
     public FeedbackControl(
             NonlinearPlant<States, Inputs, Outputs> plant,
             Matrix<Inputs, States> K) {
         m_plant = plant;
         m_K = K;
+        m_schedule = null;
+    }
+
+    /** K is looked up in the schedule at each state. */
+    public FeedbackControl(
+            NonlinearPlant<States, Inputs, Outputs> plant,
+            GainSchedule<States, Inputs> schedule) {
+        m_plant = plant;
+        m_K = new Matrix<>(plant.inputs(), plant.states());
+        m_schedule = schedule;
     }
 
     /**
-     * Returns control output, K(r-x), using constant K.
+     * Returns control output, K(r-x), using constant K, or K from the schedule at
+     * x.
      * 
      * Output is not aware of actuator limits; clamp the output yourself.
      * 
@@ -37,6 +50,8 @@ public class FeedbackControl<States extends Num, Inputs extends Num, Outputs ext
         if (debug) System.out.println("x: " + x.x.get(0,0));
         if (debug) System.out.println("r: " + r.get(0,0));
         RandomVector<States> rv = x.make(r, Variance.zero(m_plant.states()));
+        if (m_schedule != null)
+            m_schedule.getKInto(x.x.get(m_schedule.getRow(), 0), m_K.getData());
         if (debug) System.out.println("K: " + m_K);
         Matrix<States, N1> residual = rv.minus(x).x;
         if (debug) System.out.println("residual: " + residual);
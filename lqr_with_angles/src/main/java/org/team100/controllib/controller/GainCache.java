@@ -0,0 +1,204 @@
+package org.team100.controllib.controller;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.system.NonlinearPlant;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.Vector;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * Remembers LQR gains so GainCalculator only runs once for each combination of
+ * linearized plant, Q and R diagonals, and time step.
+ *
+ * With a file, gains survive restarts: the file is read in the constructor,
+ * and each newly calculated gain is appended to it, so after the first boot
+ * robot init doesn't solve any DAREs at all. Put the file somewhere writable,
+ * e.g. /home/lvuser. If the file can't be read or written, the cache still
+ * works, it just doesn't persist.
+ *
+ * Gains are keyed on the plant's linearization, i.e. its A and B matrices at
+ * the operating point, since that's what K depends on, so differently
+ * parameterized instances of the same class get their own gains, and changing
+ * the dynamics makes the old entries in the file miss. The plant key, by
+ * default the class name, is just a label to make the file readable. Note the
+ * noise and measurement parameters don't affect K.
+ *
+ * File format is one gain per line, the key followed by the elements of K:
+ *
+ * key k00 k01 ...
+ *
+ * Lines that can't be parsed are skipped.
+ */
+public class GainCache {
+    private static final boolean debug = false;
+    private final Map<String, double[]> m_gains = new HashMap<>();
+    private final Path m_file;
+    private int m_hits;
+    private int m_misses;
+
+    /** In memory only. */
+    public GainCache() {
+        m_file = null;
+    }
+
+    /** Loads gains from the file, if it exists, and saves new ones there. */
+    public GainCache(Path file) {
+        m_file = file;
+        load();
+    }
+
+    /** K for the plant linearized around zero. */
+    public <States extends Num, Inputs extends Num, Outputs extends Num> Matrix<Inputs, States> get(
+            NonlinearPlant<States, Inputs, Outputs> plant,
+            Vector<States> qelms,
+            Vector<Inputs> relms,
+            double dtSeconds) {
+        return get(plant.getClass().getName(), plant, qelms, relms, dtSeconds);
+    }
+
+    /** K for the plant linearized around zero. */
+    public <States extends Num, Inputs extends Num, Outputs extends Num> Matrix<Inputs, States> get(
+            String plantKey,
+            NonlinearPlant<States, Inputs, Outputs> plant,
+            Vector<States> qelms,
+            Vector<Inputs> relms,
+            double dtSeconds) {
+        return get(plantKey, plant, qelms, relms, dtSeconds, new Matrix<>(plant.states(), Nat.N1()));
+    }
+
+    /**
+     * K for the plant linearized around the state x, with the control that holds
+     * it there (see NonlinearPlant.finvWrtU).
+     */
+    public synchronized <States extends Num, Inputs extends Num, Outputs extends Num> Matrix<Inputs, States> get(
+            String plantKey,
+            NonlinearPlant<States, Inputs, Outputs> plant,
+            Vector<States> qelms,
+            Vector<Inputs> relms,
+            double dtSeconds,
+            Matrix<States, N1> x) {
+        if (plantKey.contains(" "))
+            throw new IllegalArgumentException("plant key can't contain spaces: " + plantKey);
+        RandomVector<States> xv = new RandomVector<>(x, Variance.zero(plant.states()));
+        RandomVector<States> xdot = new RandomVector<>(new Matrix<>(plant.states(), Nat.N1()),
+                Variance.zero(plant.states()));
+        Matrix<Inputs, N1> u = plant.finvWrtU(xv, xdot);
+        String key = key(plantKey, plant.jacobianX(xv, u), plant.jacobianU(xv, u), qelms, relms, dtSeconds);
+        double[] K = m_gains.get(key);
+        if (K != null) {
+            m_hits++;
+            return Matrix.mat(plant.inputs(), plant.states()).fill(K);
+        }
+        m_misses++;
+        if (debug)
+            System.out.println("GainCache miss " + key);
+        Matrix<Inputs, States> result = new GainCalculator<>(plant, qelms, relms, dtSeconds, xv, u).getK();
+        K = result.getData().clone();
+        m_gains.put(key, K);
+        save(key, K);
+        return result;
+    }
+
+    public synchronized int size() {
+        return m_gains.size();
+    }
+
+    /** Number of gets answered from the cache. */
+    public synchronized int getHits() {
+        return m_hits;
+    }
+
+    /** Number of gets that ran GainCalculator. */
+    public synchronized int getMisses() {
+        return m_misses;
+    }
+
+    /** Doubles are written exactly, so a key from the file matches a new one. */
+    private static String key(
+            String plantKey,
+            Matrix<?, ?> A,
+            Matrix<?, ?> B,
+            Vector<?> qelms,
+            Vector<?> relms,
+            double dtSeconds) {
+        StringBuilder b = new StringBuilder(plantKey);
+        b.append("|A");
+        append(b, A.getData());
+        b.append("|B");
+        append(b, B.getData());
+        b.append("|q");
+        append(b, qelms.getData());
+        b.append("|r");
+        append(b, relms.getData());
+        b.append("|dt,").append(dtSeconds);
+        return b.toString();
+    }
+
+    private static void append(StringBuilder b, double[] data) {
+        for (double d : data) {
+            b.append(',').append(d);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(m_file))
+            return;
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(m_file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // a bad file just means recalculating
+            if (debug)
+                System.out.println("GainCache: can't read " + m_file + ": " + e.getMessage());
+            return;
+        }
+        for (String line : lines) {
+            String[] fields = line.trim().split(" ");
+            if (fields.length < 2)
+                continue;
+            double[] K = new double[fields.length - 1];
+            try {
+                for (int i = 0; i < K.length; ++i) {
+                    K[i] = Double.parseDouble(fields[i + 1]);
+                }
+            } catch (NumberFormatException e) {
+                // a bad line just means recalculating that one
+                if (debug)
+                    System.out.println("GainCache: skipping bad line: " + line);
+                continue;
+            }
+            m_gains.put(fields[0], K);
+        }
+    }
+
+    private void save(String key, double[] K) {
+        if (m_file == null)
+            return;
+        try (BufferedWriter w = Files.newBufferedWriter(m_file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            StringBuilder b = new StringBuilder(key);
+            for (double k : K) {
+                b.append(' ').append(k);
+            }
+            w.write(b.toString());
+            w.newLine();
+        } catch (IOException e) {
+            if (debug)
+                System.out.println("GainCache: can't write " + m_file + ": " + e.getMessage());
+        }
+    }
+}
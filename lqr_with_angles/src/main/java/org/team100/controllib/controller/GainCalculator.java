@@ -1,6 +1,5 @@
 package org.team100.controllib.controller;
 
-import org.team100.controllib.math.Jacobian;
 import org.team100.controllib.math.RandomVector;
 import org.team100.controllib.math.Variance;
 import org.team100.controllib.system.NonlinearPlant;
@@ -16,6 +15,9 @@ import edu.wpi.first.math.system.Discretization;
 
 /**
  * Fixed gain linearized around zero, cribbed from LQR.
+ * 
+ * This is slow (the DARE solve especially), so use GainCache to avoid doing it
+ * more than once, and GainSchedule if K really needs to vary with x.
  */
 public class GainCalculator<States extends Num, Inputs extends Num, Outputs extends Num> {
     private final Matrix<Inputs, States> m_K;
@@ -34,15 +36,26 @@ public class GainCalculator<States extends Num, Inputs extends Num, Outputs exte
             Vector<States> qelms,
             Vector<Inputs> relms,
             double dtSeconds) {
-        Matrix<Inputs, N1> kUZero = new Matrix<>(plant.inputs(), Nat.N1());
+        this(plant, qelms, relms, dtSeconds,
+                new RandomVector<>(new Matrix<>(plant.states(), Nat.N1()), Variance.zero(plant.states())),
+                new Matrix<>(plant.inputs(), Nat.N1()));
+    }
+
+    /**
+     * Calculate LQR gain linearized around the operating point x, u, e.g. for
+     * GainSchedule.
+     */
+    public GainCalculator(
+            NonlinearPlant<States, Inputs, Outputs> plant,
+            Vector<States> qelms,
+            Vector<Inputs> relms,
+            double dtSeconds,
+            RandomVector<States> x,
+            Matrix<Inputs, N1> u) {
         Matrix<States, States> m_Q = StateSpaceUtil.makeCostMatrix(qelms);
         Matrix<Inputs, Inputs> m_R = StateSpaceUtil.makeCostMatrix(relms);
-        RandomVector<States> x = new RandomVector<>(new Matrix<>(plant.states(), Nat.N1()),
-                Variance.zero(plant.states()));
-        Matrix<States, States> A = Jacobian.numericalJacobianX(plant.states(), plant.states(), plant::f,
-                x, kUZero);
-        Matrix<States, Inputs> B = Jacobian.numericalJacobianU(plant.states(), plant.inputs(), plant::f,
-                x, kUZero);
+        Matrix<States, States> A = plant.jacobianX(x, u);
+        Matrix<States, Inputs> B = plant.jacobianU(x, u);
 
         var discABPair = Discretization.discretizeAB(A, B, dtSeconds);
         var discA = discABPair.getFirst();
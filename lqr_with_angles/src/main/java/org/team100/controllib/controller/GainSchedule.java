@@ -0,0 +1,100 @@
+package org.team100.controllib.controller;
+
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.system.NonlinearPlant;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.Vector;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * LQR gain that varies with one state variable, e.g. the pendulum angle.
+ *
+ * K is calculated up front (through a GainCache, so it persists) at evenly
+ * spaced points along the chosen state row, with the other states at zero, and
+ * linearly interpolated between them at runtime. Outside the range, the end
+ * values are used.
+ */
+public class GainSchedule<States extends Num, Inputs extends Num> {
+    private final Nat<States> m_states;
+    private final Nat<Inputs> m_inputs;
+    private final int m_row;
+    private final double m_min;
+    private final double m_step;
+    // one row-major K per point
+    private final double[][] m_K;
+
+    /**
+     * @param row    the state row to schedule on
+     * @param min    first point
+     * @param max    last point
+     * @param points at least two
+     */
+    public <Outputs extends Num> GainSchedule(
+            GainCache cache,
+            String plantKey,
+            NonlinearPlant<States, Inputs, Outputs> plant,
+            Vector<States> qelms,
+            Vector<Inputs> relms,
+            double dtSeconds,
+            int row,
+            double min,
+            double max,
+            int points) {
+        if (points < 2)
+            throw new IllegalArgumentException("need at least two points: " + points);
+        if (!(max > min))
+            throw new IllegalArgumentException("max must be greater than min: " + min + " " + max);
+        m_states = plant.states();
+        m_inputs = plant.inputs();
+        m_row = row;
+        m_min = min;
+        m_step = (max - min) / (points - 1);
+        m_K = new double[points][];
+        for (int i = 0; i < points; ++i) {
+            Matrix<States, N1> x = new Matrix<>(m_states, Nat.N1());
+            x.set(row, 0, min + i * m_step);
+            m_K[i] = cache.get(plantKey, plant, qelms, relms, dtSeconds, x).getData().clone();
+        }
+    }
+
+    /** The state row used for lookup. */
+    public int getRow() {
+        return m_row;
+    }
+
+    /** K at the scheduled row of x. */
+    public Matrix<Inputs, States> getK(RandomVector<States> x) {
+        return getK(x.x.get(m_row, 0));
+    }
+
+    /** K at this value of the scheduled row. */
+    public Matrix<Inputs, States> getK(double value) {
+        Matrix<Inputs, States> K = new Matrix<>(m_inputs, m_states);
+        getKInto(value, K.getData());
+        return K;
+    }
+
+    /** K at this value of the scheduled row, into row-major out. */
+    public void getKInto(double value, double[] out) {
+        double position = (value - m_min) / m_step;
+        int last = m_K.length - 1;
+        if (position <= 0) {
+            System.arraycopy(m_K[0], 0, out, 0, out.length);
+            return;
+        }
+        if (position >= last) {
+            System.arraycopy(m_K[last], 0, out, 0, out.length);
+            return;
+        }
+        int i = (int) position;
+        double s = position - i;
+        double[] a = m_K[i];
+        double[] b = m_K[i + 1];
+        for (int j = 0; j < out.length; ++j) {
+            out[j] = a[j] + s * (b[j] - a[j]);
+        }
+    }
+}
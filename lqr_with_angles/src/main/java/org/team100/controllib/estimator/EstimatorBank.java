@@ -0,0 +1,186 @@
+package org.team100.controllib.estimator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.team100.controllib.math.RandomVector;
+
+import edu.wpi.first.math.Num;
+
+/**
+ * Runs the estimators for all the mechanisms together: one replay() and one
+ * predictNow() call per loop for the whole robot.
+ *
+ * Replay shares a single budget across all the mechanisms, so the total
+ * cost per loop stays bounded as mechanisms are added. The starting mechanism
+ * rotates each call so they all get a turn at the front of the budget. The
+ * budget is checked before each mechanism as well as inside each replay, so
+ * only the mechanism at the front is sure to make progress, and the whole bank
+ * overruns the budget by at most one measurement, see ReplayBudget.
+ *
+ * The current states are written into flat arrays, structure-of-arrays style,
+ * so the rest of the loop can read them without any allocation:
+ *
+ * bank.replay(nowUs, budget);
+ * bank.predictNow(nowSec);
+ * double armAngle = bank.x()[bank.offset(arm)];
+ *
+ * Each mechanism still has its own dynamics, so the integration itself is per
+ * mechanism, using the in-place predictor.
+ *
+ * Add all the mechanisms at startup; add() allocates, the rest doesn't (apart
+ * from the replay history itself). This is meant for the control thread only.
+ */
+public class EstimatorBank {
+    private final List<Member<?, ?, ?>> m_members = new ArrayList<>();
+    // concatenated state means, see offset()
+    private double[] m_x = new double[0];
+    // concatenated row-major covariances, see covarianceOffset()
+    private double[] m_P = new double[0];
+    private int m_next;
+    // some mechanisms didn't get a turn last replay
+    private boolean m_skipped;
+    private int m_lastReplaySteps;
+    private long m_lastReplayNanos;
+    private long m_worstReplayNanos;
+
+    /**
+     * Add a mechanism.
+     *
+     * @return the index of the mechanism, for the accessors below.
+     */
+    public <States extends Num, Inputs extends Num, Outputs extends Num> int add(
+            NewBitemporalEstimatorController<States, Inputs, Outputs> controller) {
+        Member<States, Inputs, Outputs> member = new Member<>(controller, m_x.length, m_P.length);
+        int n = member.m_now.x.getNumRows();
+        m_x = new double[m_x.length + n];
+        m_P = new double[m_P.length + n * n];
+        m_members.add(member);
+        return m_members.size() - 1;
+    }
+
+    public int size() {
+        return m_members.size();
+    }
+
+    /**
+     * Replay all the mechanisms, sharing the budget.
+     *
+     * @return the total number of measurements replayed
+     */
+    public int replay(long currentSystemTimeMicrosec, ReplayBudget budget) {
+        long startNanos = System.nanoTime();
+        int count = 0;
+        int steps = 0;
+        int n = m_members.size();
+        m_skipped = false;
+        for (int i = 0; i < n; ++i) {
+            // the rest wait for their turn at the front
+            if (i > 0 && budget.exhausted(steps, System.nanoTime() - startNanos)) {
+                m_skipped = true;
+                break;
+            }
+            NewBitemporalEstimatorController<?, ?, ?> controller = m_members.get((m_next + i) % n).m_controller;
+            count += controller.replay(currentSystemTimeMicrosec, budget, startNanos, steps);
+            steps += controller.getLastReplaySteps();
+        }
+        if (n > 0)
+            m_next = (m_next + 1) % n;
+        m_lastReplaySteps = steps;
+        m_lastReplayNanos = System.nanoTime() - startNanos;
+        m_worstReplayNanos = Math.max(m_worstReplayNanos, m_lastReplayNanos);
+        return count;
+    }
+
+    /** Replay everything pending, without limit. */
+    public int replay(long currentSystemTimeMicrosec) {
+        return replay(currentSystemTimeMicrosec, ReplayBudget.UNLIMITED);
+    }
+
+    /** Predict all the states for the current instant, see x() and P(). */
+    public void predictNow(double currentTimeSec) {
+        for (int i = 0; i < m_members.size(); ++i) {
+            m_members.get(i).predictNow(currentTimeSec, m_x, m_P);
+        }
+    }
+
+    /**
+     * True if any mechanism has replay work left over, or didn't get a turn last
+     * time.
+     */
+    public boolean isReplayPending() {
+        if (m_skipped)
+            return true;
+        for (int i = 0; i < m_members.size(); ++i) {
+            if (m_members.get(i).m_controller.isReplayPending())
+                return true;
+        }
+        return false;
+    }
+
+    /** Means from the last predictNow(), all mechanisms concatenated. */
+    public double[] x() {
+        return m_x;
+    }
+
+    /** Covariances from the last predictNow(), row-major, concatenated. */
+    public double[] P() {
+        return m_P;
+    }
+
+    /** Where the mean of the mechanism starts in x(). */
+    public int offset(int mechanism) {
+        return m_members.get(mechanism).m_xOffset;
+    }
+
+    /** Where the covariance of the mechanism starts in P(). */
+    public int covarianceOffset(int mechanism) {
+        return m_members.get(mechanism).m_POffset;
+    }
+
+    /**
+     * The state from the last predictNow(), as a RandomVector. This is reused,
+     * so copy it if you want to keep it.
+     */
+    @SuppressWarnings("unchecked")
+    public <States extends Num> RandomVector<States> getState(int mechanism) {
+        return (RandomVector<States>) m_members.get(mechanism).m_now;
+    }
+
+    /** Predictor steps used by the last replay, all mechanisms. */
+    public int getLastReplaySteps() {
+        return m_lastReplaySteps;
+    }
+
+    /** Duration of the last replay, all mechanisms. */
+    public long getLastReplayNanos() {
+        return m_lastReplayNanos;
+    }
+
+    /** Longest replay so far, to compare with the loop period. */
+    public long getWorstReplayNanos() {
+        return m_worstReplayNanos;
+    }
+
+    private static class Member<States extends Num, Inputs extends Num, Outputs extends Num> {
+        private final NewBitemporalEstimatorController<States, Inputs, Outputs> m_controller;
+        private final RandomVector<States> m_now;
+        private final int m_xOffset;
+        private final int m_POffset;
+
+        Member(NewBitemporalEstimatorController<States, Inputs, Outputs> controller, int xOffset, int POffset) {
+            m_controller = controller;
+            m_now = controller.initialState.copy();
+            m_xOffset = xOffset;
+            m_POffset = POffset;
+        }
+
+        void predictNow(double currentTimeSec, double[] x, double[] P) {
+            m_controller.predictNowInto(currentTimeSec, m_now);
+            double[] xdata = m_now.x.getData();
+            double[] Pdata = m_now.Kxx.getData();
+            System.arraycopy(xdata, 0, x, m_xOffset, xdata.length);
+            System.arraycopy(Pdata, 0, P, m_POffset, Pdata.length);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.team100.controllib.estimator;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.zip.CRC32;
+
+import org.ejml.simple.SimpleMatrix;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * Warm restarts for NewBitemporalEstimatorController: periodically write the
+ * estimate, measurement, and control histories, and the record-time cursor, to
+ * a memory-mapped file, and restore them into a fresh controller at startup,
+ * instead of starting over from the initial state.
+ *
+ * This only makes sense if the clocks keep going across the restart, which is
+ * true for FPGA time when just the robot code restarts.
+ *
+ * The file has two slots, written alternately, each with a sequence number and
+ * a checksum, so a restart in the middle of a write still finds the previous
+ * snapshot. The mapped pages survive the process, so there's no fsync; a power
+ * cycle may lose the file, which is fine, the estimate would be stale anyway.
+ *
+ * Each slot is a 24-byte header:
+ *
+ * [magic int, version int, sequence long, payload length int, crc32 int]
+ *
+ * and a payload of big-endian primitives:
+ *
+ * states, outputs, inputs (bytes)
+ * record time (long), pending from, pending through (doubles)
+ * estimate count (int), each [valid time, angular (byte), x, P]
+ * measurement count (int), each [record time, valid time, angular (byte), x, P]
+ * control count (int), each [valid time, u]
+ *
+ * Values must be RandomVector or AngularRandomVector, which is all we have.
+ *
+ * Writing walks all three histories, so do it from a slow loop, e.g. once a
+ * second, on the control thread. Estimates and controls only change on that
+ * thread. Measurements can also arrive from other threads through
+ * acceptMeasurement(), so writing holds the controller's measurement lock,
+ * which blocks those callers until it's done; the ingest queues don't block.
+ */
+public class EstimatorSnapshot {
+    private static final int kMagic = 0x45535431; // "EST1"
+    private static final int kVersion = 1;
+    private static final int kHeaderBytes = 24;
+    /** Enough for a thousand of each for a two-state system, with room to spare. */
+    public static final int kDefaultSlotBytes = 512 * 1024;
+
+    private final ByteBuffer[] m_slots = new ByteBuffer[2];
+    private final CRC32 m_crc = new CRC32();
+    private long m_sequence;
+
+    /** Uses kDefaultSlotBytes. */
+    public EstimatorSnapshot(Path path) throws IOException {
+        this(path, kDefaultSlotBytes);
+    }
+
+    /**
+     * Opens or creates the file. The mapping outlives the channel, so nothing
+     * needs to be closed.
+     */
+    public EstimatorSnapshot(Path path, int slotBytes) throws IOException {
+        if (slotBytes <= kHeaderBytes)
+            throw new IllegalArgumentException("slot too small: " + slotBytes);
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * slotBytes);
+            for (int i = 0; i < 2; ++i) {
+                map.position(i * slotBytes);
+                map.limit((i + 1) * slotBytes);
+                m_slots[i] = map.slice();
+                map.clear();
+            }
+        }
+        int newest = newestValidSlot();
+        m_sequence = newest < 0 ? 0 : m_slots[newest].getLong(8);
+    }
+
+    /**
+     * Write a snapshot over the older slot.
+     *
+     * @throws IllegalStateException if the histories don't fit in a slot
+     */
+    public void write(NewBitemporalEstimatorController<?, ?, ?> controller) {
+        long sequence = m_sequence + 1;
+        ByteBuffer slot = m_slots[(int) (sequence & 1)];
+        // invalidate first, so a torn write is never mistaken for a good one
+        slot.putInt(0, 0);
+        slot.clear();
+        slot.position(kHeaderBytes);
+        ByteBuffer payload = slot.slice();
+        try {
+            writeTo(controller, payload);
+        } catch (BufferOverflowException e) {
+            throw new IllegalStateException("snapshot doesn't fit in " + slot.capacity() + " bytes");
+        }
+        int length = payload.position();
+        slot.putInt(4, kVersion);
+        slot.putLong(8, sequence);
+        slot.putInt(16, length);
+        slot.putInt(20, crc(slot, length));
+        slot.putInt(0, kMagic);
+        m_sequence = sequence;
+    }
+
+    /**
+     * Restore the newest good snapshot into a controller that hasn't been used
+     * yet.
+     *
+     * @return false if there's no good snapshot, e.g. the first run, in which
+     *         case the controller is unchanged.
+     * @throws IllegalStateException if the controller already has history
+     */
+    public boolean restore(NewBitemporalEstimatorController<?, ?, ?> controller) {
+        int newest = newestValidSlot();
+        if (newest < 0)
+            return false;
+        ByteBuffer slot = m_slots[newest];
+        slot.clear();
+        slot.position(kHeaderBytes);
+        slot.limit(kHeaderBytes + slot.getInt(16));
+        ByteBuffer payload = slot.slice();
+        slot.clear();
+        readFrom(payload, controller);
+        return true;
+    }
+
+    /** Index of the valid slot with the highest sequence, or -1. */
+    private int newestValidSlot() {
+        int newest = -1;
+        for (int i = 0; i < 2; ++i) {
+            ByteBuffer slot = m_slots[i];
+            if (slot.getInt(0) != kMagic || slot.getInt(4) != kVersion)
+                continue;
+            int length = slot.getInt(16);
+            if (length < 0 || length > slot.capacity() - kHeaderBytes)
+                continue;
+            if (crc(slot, length) != slot.getInt(20))
+                continue;
+            if (newest < 0 || slot.getLong(8) > m_slots[newest].getLong(8))
+                newest = i;
+        }
+        return newest;
+    }
+
+    private int crc(ByteBuffer slot, int length) {
+        ByteBuffer payload = slot.duplicate();
+        payload.clear();
+        payload.position(kHeaderBytes);
+        payload.limit(kHeaderBytes + length);
+        m_crc.reset();
+        m_crc.update(payload);
+        return (int) m_crc.getValue();
+    }
+
+    /** The payload, without the header. */
+    static <States extends Num, Inputs extends Num, Outputs extends Num> void writeTo(
+            NewBitemporalEstimatorController<States, Inputs, Outputs> c,
+            ByteBuffer buf) {
+        synchronized (c.m_measurementLock) {
+            write(c, buf);
+        }
+    }
+
+    private static <States extends Num, Inputs extends Num, Outputs extends Num> void write(
+            NewBitemporalEstimatorController<States, Inputs, Outputs> c,
+            ByteBuffer buf) {
+        int n = c.initialState.x.getNumRows();
+        int k = c.initialControl.getNumRows();
+        // the measurement size comes from the first measurement, if any
+        int m = 0;
+        for (Entry<Double, RandomVector<Outputs>> e : c.m_measurements.recordTailMap(Long.MIN_VALUE).values()) {
+            m = e.getValue().x.getNumRows();
+            break;
+        }
+        buf.put((byte) n);
+        buf.put((byte) m);
+        buf.put((byte) k);
+        buf.putLong(c.getRecordTime());
+        buf.putDouble(c.getPendingFromSec());
+        buf.putDouble(c.getPendingThroughSec());
+
+        NavigableMap<Double, RandomVector<States>> estimates = c.m_estimates.validTailMap(-Double.MAX_VALUE);
+        // the skip list maps have no cheap size(), so count while writing and fill
+        // in the count afterwards.
+        int countPosition = buf.position();
+        int count = 0;
+        buf.putInt(0);
+        for (Entry<Double, RandomVector<States>> e : estimates.entrySet()) {
+            buf.putDouble(e.getKey());
+            putRandomVector(buf, e.getValue());
+            count++;
+        }
+        buf.putInt(countPosition, count);
+
+        NavigableMap<Long, Entry<Double, RandomVector<Outputs>>> measurements = c.m_measurements.recordTailMap(Long.MIN_VALUE);
+        countPosition = buf.position();
+        count = 0;
+        buf.putInt(0);
+        for (Entry<Long, Entry<Double, RandomVector<Outputs>>> e : measurements.entrySet()) {
+            buf.putLong(e.getKey());
+            buf.putDouble(e.getValue().getKey());
+            putRandomVector(buf, e.getValue().getValue());
+            count++;
+        }
+        buf.putInt(countPosition, count);
+
+        NavigableMap<Double, Matrix<Inputs, N1>> controls = c.m_control_history.validTailMap(-Double.MAX_VALUE);
+        countPosition = buf.position();
+        count = 0;
+        buf.putInt(0);
+        for (Entry<Double, Matrix<Inputs, N1>> e : controls.entrySet()) {
+            buf.putDouble(e.getKey());
+            for (double d : e.getValue().getData()) {
+                buf.putDouble(d);
+            }
+            count++;
+        }
+        buf.putInt(countPosition, count);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the snapshot doesn't match the
+     *                                  controller, or is truncated
+     * @throws IllegalStateException    if the controller already has history
+     */
+    static <States extends Num, Inputs extends Num, Outputs extends Num> void readFrom(
+            ByteBuffer buf,
+            NewBitemporalEstimatorController<States, Inputs, Outputs> c) {
+        if (c.m_estimates.size() > 0 || c.m_measurements.size() > 0 || c.m_control_history.size() > 0)
+            throw new IllegalStateException("restore into a fresh controller");
+        try {
+            int n = buf.get();
+            int m = buf.get();
+            int k = buf.get();
+            if (n != c.initialState.x.getNumRows() || k != c.initialControl.getNumRows())
+                throw new IllegalArgumentException("snapshot dimensions don't match: " + n + " " + k);
+            long recordTime = buf.getLong();
+            double pendingFrom = buf.getDouble();
+            double pendingThrough = buf.getDouble();
+
+            int estimateCount = buf.getInt();
+            for (int i = 0; i < estimateCount; ++i) {
+                double validTime = buf.getDouble();
+                c.m_estimates.put(validTime, getRandomVector(buf, n));
+            }
+
+            int measurementCount = buf.getInt();
+            for (int i = 0; i < measurementCount; ++i) {
+                long measurementRecordTime = buf.getLong();
+                double validTime = buf.getDouble();
+                c.m_measurements.put(measurementRecordTime, validTime, getRandomVector(buf, m));
+            }
+
+            int controlCount = buf.getInt();
+            for (int i = 0; i < controlCount; ++i) {
+                double validTime = buf.getDouble();
+                Matrix<Inputs, N1> u = c.initialControl.copy();
+                double[] data = u.getData();
+                for (int j = 0; j < k; ++j) {
+                    data[j] = buf.getDouble();
+                }
+                c.m_control_history.put(validTime, u);
+            }
+            c.restoreCursor(recordTime, pendingFrom, pendingThrough);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("snapshot is truncated");
+        }
+    }
+
+    private static void putRandomVector(ByteBuffer buf, RandomVector<?> v) {
+        if (v.getClass() != RandomVector.class && v.getClass() != AngularRandomVector.class)
+            throw new IllegalArgumentException("can't snapshot " + v.getClass());
+        buf.put((byte) (v instanceof AngularRandomVector ? 1 : 0));
+        for (double d : v.x.getData()) {
+            buf.putDouble(d);
+        }
+        for (double d : v.Kxx.getData()) {
+            buf.putDouble(d);
+        }
+    }
+
+    private static <D extends Num> RandomVector<D> getRandomVector(ByteBuffer buf, int n) {
+        boolean angular = buf.get() != 0;
+        Matrix<D, N1> x = new Matrix<>(new SimpleMatrix(n, 1));
+        double[] xData = x.getData();
+        for (int i = 0; i < n; ++i) {
+            xData[i] = buf.getDouble();
+        }
+        Matrix<D, D> P = new Matrix<>(new SimpleMatrix(n, n));
+        double[] pData = P.getData();
+        for (int i = 0; i < n * n; ++i) {
+            pData[i] = buf.getDouble();
+        }
+        Variance<D> variance = new Variance<>(P);
+        return angular ? new AngularRandomVector<>(x, variance) : new RandomVector<>(x, variance);
+    }
+}
@@ -1,5 +1,7 @@
 package org.team100.controllib.estimator;
 
+import org.team100.controllib.integration.Integrator;
+import org.team100.controllib.integration.RungeKutta4;
 import org.team100.controllib.math.RandomVector;
 import org.team100.controllib.math.Variance;
 import org.team100.controllib.system.NonlinearPlant;
@@ -10,16 +12,31 @@ import edu.wpi.first.math.numbers.N1;
 
 /**
  * Extrapolates previous state to estimate future state using system dynamics.
+ * 
+ * The integrator keeps scratch storage, so an instance is not thread-safe, even
+ * through the allocating methods; use one per thread.
  */
 public class ExtrapolatingEstimator<States extends Num, Inputs extends Num, Outputs extends Num> {
     private final NonlinearPlant<States, Inputs, Outputs> m_plant;
+    private final Integrator<States, Inputs> m_integrator;
+    private int m_lastEvaluations;
 
+    /** Uses one RK4 step per prediction. */
     public ExtrapolatingEstimator(NonlinearPlant<States, Inputs, Outputs> plant) {
+        this(plant, new RungeKutta4<>(plant));
+    }
+
+    /** Uses the supplied integrator, see the integration package. */
+    public ExtrapolatingEstimator(NonlinearPlant<States, Inputs, Outputs> plant, Integrator<States, Inputs> integrator) {
         m_plant = plant;
+        m_integrator = integrator;
     }
 
     /**
-     * Predict state under output u for dtSec in the future using Runge-Kutta 4 and add noise.
+     * Predict state under output u for dtSec in the future using the integrator and add noise.
+     * 
+     * Allocates the result, but uses the integrator's scratch, so it's not
+     * thread-safe.
      * 
      * @param x     initial state
      * @param u     total control output
@@ -29,11 +46,38 @@ public class ExtrapolatingEstimator<States extends Num, Inputs extends Num, Outp
             RandomVector<States> x,
             Matrix<Inputs, N1> u,
             double dtS) {
-        return addNoise(predict(x, u, dtS), dtS);
+        RandomVector<States> result = x.copy();
+        predictWithNoiseInto(x, u, dtS, result);
+        return result;
+    }
+
+    /**
+     * Same as predictWithNoise but writes into result (same type as x) without
+     * allocating, using NonlinearPlant.fInto(). Aliasing result with x is fine.
+     * This uses scratch storage, so it's not thread-safe.
+     */
+    public void predictWithNoiseInto(
+            RandomVector<States> x,
+            Matrix<Inputs, N1> u,
+            double dtS,
+            RandomVector<States> result) {
+        m_lastEvaluations = m_integrator.integrate(x, u, dtS, result);
+        // noise
+        result.Kxx.assignPlusScaled(result.Kxx, m_plant.w().P, dtS);
+    }
+
+    /** Evaluations of f used by the last prediction. */
+    public int getLastEvaluations() {
+        return m_lastEvaluations;
+    }
+
+    /** Estimated error of the last prediction, NaN if the integrator doesn't say. */
+    public double getLastError() {
+        return m_integrator.getLastError();
     }
 
     /**
-     * RK4 integration
+     * RK4 integration, allocating version, for reference, see RungeKutta4.
      */
     RandomVector<States> predict(
             RandomVector<States> x,
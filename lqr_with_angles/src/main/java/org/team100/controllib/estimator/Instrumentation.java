@@ -0,0 +1,175 @@
+package org.team100.controllib.estimator;
+
+import java.util.Arrays;
+
+/**
+ * Opt-in timing for NewBitemporalEstimatorController, see
+ * setInstrumentation(). Each stage of the cycle gets a histogram of durations,
+ * and each replay records how much it did and how full the buffers are, so an
+ * overrun can be blamed on the right thing, e.g. replay depth vs pooling.
+ *
+ * Histogram buckets are logarithmic, four per octave, so a percentile is
+ * within 25%. Nothing here allocates after construction.
+ *
+ * Not threadsafe; it's meant to be written by the control loop and read (or
+ * published, see InstrumentationPublisher) by the same thread.
+ */
+public class Instrumentation {
+    public enum Stage {
+        /** All of replay, including pooling. */
+        REPLAY,
+        /** Just the fusion part of replay, summed over the measurements. */
+        POOLING,
+        PREDICT_NOW,
+        FEEDFORWARD,
+        PREDICT_FUTURE,
+        FEEDBACK
+    }
+
+    private static final int kSubBuckets = 4;
+    // covers up to 2^41 ns, about half an hour
+    public static final int kBuckets = 160;
+    private static final Stage[] kStages = Stage.values();
+
+    private final long[][] m_histograms = new long[kStages.length][kBuckets];
+    private final long[] m_count = new long[kStages.length];
+    private final long[] m_sumNanos = new long[kStages.length];
+    private final long[] m_maxNanos = new long[kStages.length];
+    private final long[] m_lastNanos = new long[kStages.length];
+
+    private int m_lastReplayCount;
+    private int m_maxReplayCount;
+    private long m_totalReplayCount;
+    private int m_measurementDepth;
+    private int m_estimateDepth;
+    private int m_controlDepth;
+
+    public void record(Stage stage, long nanos) {
+        int i = stage.ordinal();
+        m_histograms[i][bucket(nanos)]++;
+        m_count[i]++;
+        m_sumNanos[i] += nanos;
+        m_maxNanos[i] = Math.max(m_maxNanos[i], nanos);
+        m_lastNanos[i] = nanos;
+    }
+
+    /**
+     * @param replayed     measurements replayed
+     * @param measurements size of the measurement buffer
+     * @param estimates    size of the estimate history
+     * @param controls     size of the control history
+     */
+    public void recordReplay(int replayed, int measurements, int estimates, int controls) {
+        m_lastReplayCount = replayed;
+        m_maxReplayCount = Math.max(m_maxReplayCount, replayed);
+        m_totalReplayCount += replayed;
+        m_measurementDepth = measurements;
+        m_estimateDepth = estimates;
+        m_controlDepth = controls;
+    }
+
+    public void reset() {
+        for (int i = 0; i < kStages.length; ++i) {
+            Arrays.fill(m_histograms[i], 0);
+            m_count[i] = 0;
+            m_sumNanos[i] = 0;
+            m_maxNanos[i] = 0;
+            m_lastNanos[i] = 0;
+        }
+        m_lastReplayCount = 0;
+        m_maxReplayCount = 0;
+        m_totalReplayCount = 0;
+        m_measurementDepth = 0;
+        m_estimateDepth = 0;
+        m_controlDepth = 0;
+    }
+
+    public long getCount(Stage stage) {
+        return m_count[stage.ordinal()];
+    }
+
+    public double getMeanNanos(Stage stage) {
+        int i = stage.ordinal();
+        if (m_count[i] == 0)
+            return 0;
+        return (double) m_sumNanos[i] / m_count[i];
+    }
+
+    public long getMaxNanos(Stage stage) {
+        return m_maxNanos[stage.ordinal()];
+    }
+
+    public long getLastNanos(Stage stage) {
+        return m_lastNanos[stage.ordinal()];
+    }
+
+    /**
+     * Upper bound of the bucket containing this percentile, or zero if nothing
+     * was recorded.
+     *
+     * @param p in [0, 100]
+     */
+    public long getPercentileNanos(Stage stage, double p) {
+        if (p < 0 || p > 100)
+            throw new IllegalArgumentException("percentile must be in [0, 100]: " + p);
+        int i = stage.ordinal();
+        if (m_count[i] == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * m_count[i]));
+        long seen = 0;
+        long[] histogram = m_histograms[i];
+        for (int b = 0; b < kBuckets; ++b) {
+            seen += histogram[b];
+            if (seen >= rank)
+                return Math.min(upperBound(b), m_maxNanos[i]);
+        }
+        return m_maxNanos[i];
+    }
+
+    /** Copies the raw bucket counts into out, which must have kBuckets elements. */
+    public void histogramInto(Stage stage, long[] out) {
+        System.arraycopy(m_histograms[stage.ordinal()], 0, out, 0, kBuckets);
+    }
+
+    public int getLastReplayCount() {
+        return m_lastReplayCount;
+    }
+
+    public int getMaxReplayCount() {
+        return m_maxReplayCount;
+    }
+
+    public long getTotalReplayCount() {
+        return m_totalReplayCount;
+    }
+
+    public int getMeasurementDepth() {
+        return m_measurementDepth;
+    }
+
+    public int getEstimateDepth() {
+        return m_estimateDepth;
+    }
+
+    public int getControlDepth() {
+        return m_controlDepth;
+    }
+
+    /** 0-3 are exact, then four buckets per power of two. */
+    static int bucket(long nanos) {
+        if (nanos < kSubBuckets)
+            return (int) Math.max(0, nanos);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 2)) & (kSubBuckets - 1);
+        return Math.min(kBuckets - 1, kSubBuckets * (exponent - 1) + sub);
+    }
+
+    /** Smallest value in the next bucket. */
+    static long upperBound(int bucket) {
+        if (bucket < kSubBuckets)
+            return bucket + 1;
+        int exponent = bucket / kSubBuckets + 1;
+        int sub = bucket % kSubBuckets;
+        return (long) (kSubBuckets + sub + 1) << (exponent - 2);
+    }
+}
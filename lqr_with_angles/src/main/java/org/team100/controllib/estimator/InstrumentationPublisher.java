@@ -0,0 +1,94 @@
+package org.team100.controllib.estimator;
+
+import org.team100.controllib.estimator.Instrumentation.Stage;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+
+/**
+ * Sends Instrumentation to NetworkTables and the DataLog, under
+ * controllib/name. Call publish() periodically, e.g. at the end of each loop,
+ * or less often if the log gets too big.
+ *
+ * Each stage is an array:
+ *
+ * [count, mean ns, p50 ns, p99 ns, max ns, last ns]
+ *
+ * and replay is:
+ *
+ * [last count, max count, total count, measurements, estimates, controls]
+ *
+ * The arrays are reused, so publishing doesn't allocate here.
+ */
+public class InstrumentationPublisher {
+    private static final Stage[] kStages = Stage.values();
+
+    private final Instrumentation m_instrumentation;
+    private final DoubleArrayPublisher[] m_stagePublishers;
+    private final DoubleArrayLogEntry[] m_stageEntries;
+    private final DoubleArrayPublisher m_replayPublisher;
+    private final DoubleArrayLogEntry m_replayEntry;
+    private final double[] m_stage = new double[6];
+    private final double[] m_replay = new double[6];
+
+    /** Uses the default NetworkTables instance and the DataLogManager log. */
+    public InstrumentationPublisher(Instrumentation instrumentation, String name) {
+        this(instrumentation, name, NetworkTableInstance.getDefault(), DataLogManager.getLog());
+    }
+
+    /**
+     * @param nt  null to skip NetworkTables
+     * @param log null to skip the DataLog
+     */
+    public InstrumentationPublisher(
+            Instrumentation instrumentation,
+            String name,
+            NetworkTableInstance nt,
+            DataLog log) {
+        m_instrumentation = instrumentation;
+        m_stagePublishers = new DoubleArrayPublisher[kStages.length];
+        m_stageEntries = new DoubleArrayLogEntry[kStages.length];
+        NetworkTable table = nt == null ? null : nt.getTable("controllib").getSubTable(name);
+        String prefix = "/controllib/" + name + "/";
+        for (Stage stage : kStages) {
+            String key = stage.name().toLowerCase();
+            if (table != null)
+                m_stagePublishers[stage.ordinal()] = table.getDoubleArrayTopic(key).publish();
+            if (log != null)
+                m_stageEntries[stage.ordinal()] = new DoubleArrayLogEntry(log, prefix + key);
+        }
+        m_replayPublisher = table == null ? null : table.getDoubleArrayTopic("replay_counts").publish();
+        m_replayEntry = log == null ? null : new DoubleArrayLogEntry(log, prefix + "replay_counts");
+    }
+
+    public void publish() {
+        for (Stage stage : kStages) {
+            m_stage[0] = m_instrumentation.getCount(stage);
+            m_stage[1] = m_instrumentation.getMeanNanos(stage);
+            m_stage[2] = m_instrumentation.getPercentileNanos(stage, 50);
+            m_stage[3] = m_instrumentation.getPercentileNanos(stage, 99);
+            m_stage[4] = m_instrumentation.getMaxNanos(stage);
+            m_stage[5] = m_instrumentation.getLastNanos(stage);
+            DoubleArrayPublisher publisher = m_stagePublishers[stage.ordinal()];
+            if (publisher != null)
+                publisher.set(m_stage);
+            DoubleArrayLogEntry entry = m_stageEntries[stage.ordinal()];
+            if (entry != null)
+                entry.append(m_stage);
+        }
+        m_replay[0] = m_instrumentation.getLastReplayCount();
+        m_replay[1] = m_instrumentation.getMaxReplayCount();
+        m_replay[2] = m_instrumentation.getTotalReplayCount();
+        m_replay[3] = m_instrumentation.getMeasurementDepth();
+        m_replay[4] = m_instrumentation.getEstimateDepth();
+        m_replay[5] = m_instrumentation.getControlDepth();
+        if (m_replayPublisher != null)
+            m_replayPublisher.set(m_replay);
+        if (m_replayEntry != null)
+            m_replayEntry.append(m_replay);
+    }
+}
@@ -10,8 +10,11 @@ import org.team100.controllib.fusion.VarianceWeightedLinearPooling;
 import org.team100.controllib.math.RandomVector;
 import org.team100.controllib.reference.Reference;
 import org.team100.controllib.storage.BitemporalBuffer;
+import org.team100.controllib.storage.BitemporalStore;
 import org.team100.controllib.storage.EditableHistory;
 import org.team100.controllib.storage.History;
+import org.team100.controllib.storage.MeasurementIngest;
+import org.team100.controllib.storage.MeasurementQueue;
 import org.team100.controllib.system.NonlinearPlant;
 
 import java.util.NavigableMap;
@@ -28,10 +31,17 @@ import edu.wpi.first.math.numbers.N1;
  * measurements can be accepted at any time in any threads:
  * 
  * acceptMeasurement(systemTime, validTime, measurement)
+ * 
+ * or, to avoid blocking on the buffer, give each producer thread its own
+ * queue at startup, which replay drains:
+ * 
+ * MeasurementQueue<RandomVector<Outputs>> q = newMeasurementProducer(64);
+ * q.offer(systemTime, validTime, measurement)
  *
  * for control, use this sequence:
  * 
  * // apply any new measurements, rewriting state history
+ * // (pass a ReplayBudget to bound the time this takes)
  * replay(systemTimeMicrosec);
  * 
  * // integrate to the present instant
@@ -52,15 +62,23 @@ import edu.wpi.first.math.numbers.N1;
  * // record if you actually use it
  * record(actualTimeSec, u);
  *
+ * To survive a robot code restart, write an EstimatorSnapshot now and then,
+ * and restore it at startup.
  */
 public class NewBitemporalEstimatorController<States extends Num, Inputs extends Num, Outputs extends Num> {
     private static final boolean debug = false;
+    /** Relative difference below which a replayed estimate counts as unchanged. */
+    private static final double kConvergenceTolerance = 1e-6;
 
     public final RandomVector<States> initialState;
     public final Matrix<Inputs, N1> initialControl;
     public final Reference<States> m_reference;
     // measurements are bitemporal so we can notice late-arriving ones
-    public final BitemporalBuffer<RandomVector<Outputs>> m_measurements;
+    public final BitemporalStore<RandomVector<Outputs>> m_measurements;
+    // lock-free queues in front of the measurement buffer
+    public final MeasurementIngest<RandomVector<Outputs>> m_ingest;
+    // acceptMeasurement() holds this, so EstimatorSnapshot can read a fixed set
+    final Object m_measurementLock = new Object();
     // we rewrite recent state history as needed.
     public final EditableHistory<RandomVector<States>> m_estimates;
     // control history is immutable.
@@ -74,6 +92,17 @@ public class NewBitemporalEstimatorController<States extends Num, Inputs extends
 
     // the last recordTime we've seen from the buffer
     private long recordTime;
+    // replay left over from the last call, if it ran out of budget
+    private double m_pendingFromSec = Double.MAX_VALUE;
+    private double m_pendingThroughSec = -Double.MAX_VALUE;
+    private boolean m_incremental;
+    private int m_lastReplaySteps;
+    private long m_lastReplayNanos;
+    private long m_worstReplayNanos;
+    // replay integrates in place here, only the fused result is allocated
+    private RandomVector<States> m_replayState;
+    // null unless someone's watching
+    private Instrumentation m_instrumentation;
 
     /**
      * @param system plant dynamics
@@ -88,123 +117,346 @@ public class NewBitemporalEstimatorController<States extends Num, Inputs extends
             Matrix<Inputs, N1> initialControl,
             Reference<States> reference,
             Matrix<Inputs, States> K) {
+        this(system, initialState, initialControl, reference, K, new BitemporalBuffer<>(1000));
+    }
+
+    /**
+     * @param measurements storage for measurements, e.g. RingBitemporalBuffer to
+     *                     avoid allocation on the sensor path.
+     */
+    public NewBitemporalEstimatorController(
+            NonlinearPlant<States, Inputs, Outputs> system,
+            RandomVector<States> initialState,
+            Matrix<Inputs, N1> initialControl,
+            Reference<States> reference,
+            Matrix<Inputs, States> K,
+            BitemporalStore<RandomVector<Outputs>> measurements) {
+        this(system, initialState, initialControl, reference, K, measurements,
+                new VarianceWeightedLinearPooling<>());
+    }
+
+    /**
+     * @param pooling fuses measurements with predictions, e.g.
+     *                SquareRootVarianceWeightedLinearPooling to use huge
+     *                "don't know" variances.
+     */
+    public NewBitemporalEstimatorController(
+            NonlinearPlant<States, Inputs, Outputs> system,
+            RandomVector<States> initialState,
+            Matrix<Inputs, N1> initialControl,
+            Reference<States> reference,
+            Matrix<Inputs, States> K,
+            BitemporalStore<RandomVector<Outputs>> measurements,
+            LinearPooling<States> pooling) {
         this.initialState = initialState;
         this.initialControl = initialControl;
         m_reference = reference;
-        m_measurements = new BitemporalBuffer<>(1000);
+        m_measurements = measurements;
+        m_ingest = new MeasurementIngest<>();
         m_estimates = new EditableHistory<>(1000);
         m_control_history = new History<>(1000);
         predictor = new ExtrapolatingEstimator<>(system);
         pointEstimator = new PointEstimator<>(system);
         trendEstimator = new TrendEstimator<>(system);
-        pooling = new VarianceWeightedLinearPooling<>();
+        this.pooling = pooling;
         feedforward = new InversionFeedforward<>(system);
         feedback = new FeedbackControl<>(system, K);
     }
 
     /**
      * Accept a measurement about some time in the past. These are collected later
-     * by replay.  Threadsafe.
+     * by replay.  Threadsafe, but takes a lock that a snapshot holds while it's
+     * written, so producers that can't wait should use newMeasurementProducer().
      */
     public void acceptMeasurement(long recordTimeUs, double validTimeSec, RandomVector<Outputs> measurement) {
-        m_measurements.put(recordTimeUs, validTimeSec, measurement);
+        synchronized (m_measurementLock) {
+            m_measurements.put(recordTimeUs, validTimeSec, measurement);
+        }
+    }
+
+    /**
+     * Make a lock-free queue for one producer thread; call this at startup. The
+     * queue is drained at the start of each replay, so it should hold at least one
+     * loop's worth of measurements.
+     */
+    public MeasurementQueue<RandomVector<Outputs>> newMeasurementProducer(int capacity) {
+        return m_ingest.newProducer(capacity);
     }
 
-    /** Update the state history with any measurements that are pending. */
+    /**
+     * Replay everything pending, without limit.
+     * 
+     * @return the number of measurements replayed
+     */
     public int replay(long currentSystemTimeMicrosec) {
-        double earliestMeasurementSec = m_measurements.earliestValidTimeForRecordsAfter(recordTime);
+        return replay(currentSystemTimeMicrosec, ReplayBudget.UNLIMITED);
+    }
+
+    /**
+     * Update the state history with any measurements that are pending, stopping
+     * when the budget runs out. Work left over is remembered and done first on the
+     * next call.
+     * 
+     * In full mode, estimates are trimmed back to the earliest unseen measurement
+     * and every later measurement is replayed.
+     * 
+     * In incremental mode, estimates are corrected in place, and replay stops as
+     * soon as a corrected estimate matches the one it replaces (and all the unseen
+     * measurements have been covered): the rest of the history was derived from
+     * the same estimate, so it doesn't need to change. If the budget runs out, the
+     * estimates past the stopping point are kept but not used by predictNow until
+     * replay catches up.
+     * 
+     * @return the number of measurements replayed
+     */
+    public int replay(long currentSystemTimeMicrosec, ReplayBudget budget) {
+        return replay(currentSystemTimeMicrosec, budget, System.nanoTime(), 0);
+    }
+
+    /**
+     * Replay sharing a budget with others, see EstimatorBank.
+     * 
+     * @param budgetStartNanos when the shared budget started
+     * @param budgetSteps      steps already used from the shared budget
+     */
+    int replay(long currentSystemTimeMicrosec, ReplayBudget budget, long budgetStartNanos, int budgetSteps) {
+        long startNanos = System.nanoTime();
+        // anything queued since last time is new to us, so make sure we see it.
+        m_ingest.drainTo(m_measurements, recordTime);
+        double earliestMeasurementSec = Math.min(m_pendingFromSec,
+                m_measurements.earliestValidTimeForRecordsAfter(recordTime));
+        double latestMeasurementSec = Math.max(m_pendingThroughSec,
+                m_measurements.latestValidTimeForRecordsAfter(recordTime));
         recordTime = currentSystemTimeMicrosec;
+        m_pendingFromSec = Double.MAX_VALUE;
+        m_pendingThroughSec = -Double.MAX_VALUE;
 
         // we need to replay all the measurements since then
         NavigableMap<Double, Entry<Long, RandomVector<Outputs>>> todo = m_measurements
                 .validTailMap(earliestMeasurementSec);
 
-        // we don't need the old estimates, we're going to redo them all
-        m_estimates.trim(earliestMeasurementSec);
+        // the most-recent state earlier than the first measurement
+        Entry<Double, RandomVector<States>> prior = m_estimates.validLowerEntry(earliestMeasurementSec);
+        if (prior == null) {
+            prior = Map.entry(0.0, initialState);
+        }
+
+        if (!m_incremental) {
+            // we don't need the old estimates, we're going to redo them all
+            m_estimates.trim(earliestMeasurementSec);
+        }
 
         // loop through the measurements to replay, in valid-time order.
         int replayCount = 0;
+        int steps = 0;
         if (debug)
             System.out.println("replay " + todo.size());
         for (Entry<Double, Entry<Long, RandomVector<Outputs>>> measurementEntry : todo.entrySet()) {
-            replayCount += 1;
             // find the time of the measurement
             double measurementTime = measurementEntry.getKey();
-            // find the most-recent state earlier than the measurement
-            Entry<Double, RandomVector<States>> entry = m_estimates.floor(measurementTime);
-            if (entry == null) {
-                entry = Map.entry(0.0, initialState);
+            if (replayCount > 0 && budget.exhausted(budgetSteps + steps, System.nanoTime() - budgetStartNanos)) {
+                // out of time, pick this up next time.
+                m_pendingFromSec = measurementTime;
+                m_pendingThroughSec = latestMeasurementSec;
+                if (!m_incremental) {
+                    // the estimates from here on are stale; predictNow will use the last good one.
+                    m_estimates.trim(measurementTime);
+                }
+                break;
             }
-            double stateTimeS = entry.getKey();
-            RandomVector<States> priorState = entry.getValue();
-            if (debug)
-                System.out.println("found position " + priorState.x.get(0, 0));
-
-            // this is the control in use at the time of the prior state
-            Entry<Double, Matrix<Inputs, N1>> historicalUEntry = m_control_history.floor(stateTimeS);
-            if (historicalUEntry == null)
-                historicalUEntry = Map.entry(0.0, initialControl);
-            Matrix<Inputs, N1> historical_u = historicalUEntry.getValue();
-            if (debug)
-                System.out.println("found u " + historical_u);
-
-            // there could be multiple controls between the state and the measurement.
-            // so make a new state for each control
-            NavigableMap<Double, Matrix<Inputs, N1>> uEntries = m_control_history.validSubMap(stateTimeS,
-                    measurementTime);
-            for (Entry<Double, Matrix<Inputs, N1>> uEntry : uEntries.entrySet()) {
-                // integrate the prior state and the prior u up to the new u
-                double endS = uEntry.getKey();
-                double integrationSpanS = endS - stateTimeS;
-                if (debug)
-                    System.out
-                            .println("tween integrating from " + stateTimeS + " to " + endS + " u " + historical_u);
-                if (debug)
-                    System.out.println("tween prior state " + priorState.x.get(0, 0));
-                priorState = predictor.predictWithNoise(
-                        priorState,
-                        historical_u,
-                        integrationSpanS);
-                if (debug)
-                    System.out.println("tween estimate position " + priorState.x.get(0, 0));
-
-                historical_u = uEntry.getValue();
-                stateTimeS = endS;
+            replayCount += 1;
+            steps += stepsBetween(prior.getKey(), measurementTime);
+            RandomVector<States> fused = replayOne(prior, measurementTime, measurementEntry.getValue().getValue());
+            if (m_incremental) {
+                RandomVector<States> previous = m_estimates.get(measurementTime);
+                m_estimates.replace(measurementTime, fused);
+                if (measurementTime >= latestMeasurementSec && converged(previous, fused)) {
+                    if (debug)
+                        System.out.println("replay converged at " + measurementTime);
+                    break;
+                }
+            } else {
+                m_estimates.put(measurementTime, fused);
             }
-            // now the prior state and state time are up to the most-recent change in u
-            // and the historical u is also the latest u
-            // so integrate the last little bit
+            prior = Map.entry(measurementTime, fused);
+        }
+        m_lastReplaySteps = steps;
+        m_lastReplayNanos = System.nanoTime() - startNanos;
+        m_worstReplayNanos = Math.max(m_worstReplayNanos, m_lastReplayNanos);
+        if (m_instrumentation != null) {
+            m_instrumentation.record(Instrumentation.Stage.REPLAY, m_lastReplayNanos);
+            m_instrumentation.recordReplay(replayCount, m_measurements.size(), m_estimates.size(),
+                    m_control_history.size());
+        }
+        return replayCount;
+    }
+
+    /**
+     * Integrate the prior state through the control history to the measurement
+     * time, and fuse it with the measurement.
+     */
+    private RandomVector<States> replayOne(
+            Entry<Double, RandomVector<States>> prior,
+            double measurementTime,
+            RandomVector<Outputs> measurement) {
+        double stateTimeS = prior.getKey();
+        RandomVector<States> priorState = prior.getValue();
+        if (m_replayState == null)
+            m_replayState = priorState.copy();
+        if (debug)
+            System.out.println("found position " + priorState.x.get(0, 0));
+
+        // this is the control in use at the time of the prior state
+        Entry<Double, Matrix<Inputs, N1>> historicalUEntry = m_control_history.floor(stateTimeS);
+        if (historicalUEntry == null)
+            historicalUEntry = Map.entry(0.0, initialControl);
+        Matrix<Inputs, N1> historical_u = historicalUEntry.getValue();
+        if (debug)
+            System.out.println("found u " + historical_u);
+
+        // there could be multiple controls between the state and the measurement.
+        // so make a new state for each control
+        NavigableMap<Double, Matrix<Inputs, N1>> uEntries = m_control_history.validSubMap(stateTimeS,
+                measurementTime);
+        for (Entry<Double, Matrix<Inputs, N1>> uEntry : uEntries.entrySet()) {
+            // integrate the prior state and the prior u up to the new u
+            double endS = uEntry.getKey();
+            double integrationSpanS = endS - stateTimeS;
             if (debug)
-                System.out.println(
-                        "replay integrating from " + stateTimeS + " to " + measurementTime + " u " + historical_u);
+                System.out
+                        .println("tween integrating from " + stateTimeS + " to " + endS + " u " + historical_u);
             if (debug)
-                System.out.println("replay prior state " + priorState.x.get(0, 0));
-            double stateToMeasurementS = measurementTime - stateTimeS;
-            RandomVector<States> predictedState = predictor.predictWithNoise(
+                System.out.println("tween prior state " + priorState.x.get(0, 0));
+            predictor.predictWithNoiseInto(
                     priorState,
                     historical_u,
-                    stateToMeasurementS);
+                    integrationSpanS,
+                    m_replayState);
+            priorState = m_replayState;
             if (debug)
-                System.out.println("replay estimate " + predictedState.x.get(0, 0));
+                System.out.println("tween estimate position " + priorState.x.get(0, 0));
 
-            // this is the measurement state
-            RandomVector<States> measurementState = pointEstimator
-                    .stateForMeasurementWithZeroU(measurementEntry.getValue().getValue());
-            if (debug)
-                System.out.println("replay measurement " + measurementState.x.get(0, 0));
-            // pool the measurement and the extrapolation
-            RandomVector<States> fused = pooling.fuse(predictedState, measurementState);
-            // record the new estimate
-            if (debug)
-                System.out.println("replay fused " + fused.x.get(0, 0));
-            m_estimates.put(measurementTime, fused);
+            historical_u = uEntry.getValue();
+            stateTimeS = endS;
         }
-        return replayCount;
+        // now the prior state and state time are up to the most-recent change in u
+        // and the historical u is also the latest u
+        // so integrate the last little bit
+        if (debug)
+            System.out.println(
+                    "replay integrating from " + stateTimeS + " to " + measurementTime + " u " + historical_u);
+        if (debug)
+            System.out.println("replay prior state " + priorState.x.get(0, 0));
+        double stateToMeasurementS = measurementTime - stateTimeS;
+        predictor.predictWithNoiseInto(
+                priorState,
+                historical_u,
+                stateToMeasurementS,
+                m_replayState);
+        RandomVector<States> predictedState = m_replayState;
+        if (debug)
+            System.out.println("replay estimate " + predictedState.x.get(0, 0));
+
+        // this is the measurement state
+        RandomVector<States> measurementState = pointEstimator
+                .stateForMeasurementWithZeroU(measurement);
+        if (debug)
+            System.out.println("replay measurement " + measurementState.x.get(0, 0));
+        // pool the measurement and the extrapolation
+        // this one is kept in the history, so it needs its own storage
+        RandomVector<States> fused = predictedState.copy();
+        long poolingStartNanos = m_instrumentation == null ? 0 : System.nanoTime();
+        pooling.fuseInto(predictedState, measurementState, fused);
+        if (m_instrumentation != null)
+            m_instrumentation.record(Instrumentation.Stage.POOLING, System.nanoTime() - poolingStartNanos);
+        if (debug)
+            System.out.println("replay fused " + fused.x.get(0, 0));
+        return fused;
+    }
+
+    /** Predictor calls replayOne will make: one per control change, plus one. */
+    private int stepsBetween(double stateTimeS, double measurementTime) {
+        return m_control_history.validSubMap(stateTimeS, measurementTime).size() + 1;
+    }
+
+    /** True if the corrected estimate is close enough to the old one. */
+    private boolean converged(RandomVector<States> previous, RandomVector<States> fused) {
+        if (previous == null)
+            return false;
+        double[] px = previous.x.getData();
+        double[] fx = fused.x.getData();
+        for (int i = 0; i < px.length; ++i) {
+            if (Math.abs(px[i] - fx[i]) > kConvergenceTolerance * (1 + Math.abs(px[i])))
+                return false;
+        }
+        double[] pP = previous.Kxx.getData();
+        double[] fP = fused.Kxx.getData();
+        for (int i = 0; i < pP.length; ++i) {
+            if (Math.abs(pP[i] - fP[i]) > kConvergenceTolerance * (1 + Math.abs(pP[i])))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Incremental mode corrects estimates in place and stops replaying when they
+     * stop changing. Default is full replay.
+     */
+    public void setIncrementalReplay(boolean incremental) {
+        m_incremental = incremental;
+    }
+
+    /** True if the last replay ran out of budget and left work for the next one. */
+    public boolean isReplayPending() {
+        return m_pendingFromSec < Double.MAX_VALUE;
+    }
+
+    /** Predictor steps used by the last replay. */
+    public int getLastReplaySteps() {
+        return m_lastReplaySteps;
+    }
+
+    /** Duration of the last replay. */
+    public long getLastReplayNanos() {
+        return m_lastReplayNanos;
+    }
+
+    /** Longest replay so far, to compare with the loop period. */
+    public long getWorstReplayNanos() {
+        return m_worstReplayNanos;
+    }
+
+    /**
+     * Record the duration of each stage of the cycle, see Instrumentation. Pass
+     * null to stop. Off by default.
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        m_instrumentation = instrumentation;
+    }
+
+    public Instrumentation getInstrumentation() {
+        return m_instrumentation;
     }
 
     /** Predict the state for the current instant. */
     public RandomVector<States> predictNow(double currentTimeSec) {
+        RandomVector<States> result = initialState.copy();
+        predictNowInto(currentTimeSec, result);
+        return result;
+    }
+
+    /**
+     * Predict the state for the current instant, writing into result, which should
+     * be the same type as the initial state.
+     */
+    public void predictNowInto(double currentTimeSec, RandomVector<States> result) {
+        long startNanos = m_instrumentation == null ? 0 : System.nanoTime();
         Entry<Double, RandomVector<States>> entry = m_estimates.floor(currentTimeSec);
+        if (entry != null && entry.getKey() >= m_pendingFromSec) {
+            // incremental replay ran out of budget, so the estimates from there on
+            // are stale; start from the last one it corrected.
+            entry = m_estimates.validLowerEntry(m_pendingFromSec);
+        }
         if (entry == null)
             entry = Map.entry(0.0, initialState);
 
@@ -219,27 +471,59 @@ public class NewBitemporalEstimatorController<States extends Num, Inputs extends
         Matrix<Inputs, N1> priorU = priorUEntry.getValue();
         // integrate to the current time with the previous u
         double timeToNow = currentTimeSec - stateTimeS;
-        return predictor.predictWithNoise(priorState, priorU, timeToNow);
+        predictor.predictWithNoiseInto(priorState, priorU, timeToNow, result);
+        if (m_instrumentation != null)
+            m_instrumentation.record(Instrumentation.Stage.PREDICT_NOW, System.nanoTime() - startNanos);
     }
 
     public Matrix<Inputs, N1> calculateFeedforward(double ffTimeSec) {
+        long startNanos = m_instrumentation == null ? 0 : System.nanoTime();
         Matrix<States, N1> ffReference = m_reference.getR(ffTimeSec);
         Matrix<States, N1> ffRDot = m_reference.getRDot(ffTimeSec);
         Matrix<Inputs, N1> uff = feedforward.calculateWithRAndRDot(ffReference, ffRDot);
+        if (m_instrumentation != null)
+            m_instrumentation.record(Instrumentation.Stage.FEEDFORWARD, System.nanoTime() - startNanos);
         return uff;
     }
 
     /** Predict the future state with only feedforward. */
     public RandomVector<States> predictFutureUsingFF(RandomVector<States> initialState, Matrix<Inputs, N1> uff,
             double timeSpanSec) {
-        return predictor.predictWithNoise(initialState, uff, timeSpanSec);
+        long startNanos = m_instrumentation == null ? 0 : System.nanoTime();
+        RandomVector<States> result = predictor.predictWithNoise(initialState, uff, timeSpanSec);
+        if (m_instrumentation != null)
+            m_instrumentation.record(Instrumentation.Stage.PREDICT_FUTURE, System.nanoTime() - startNanos);
+        return result;
     }
 
     public Matrix<Inputs, N1> calculateFeedback(double actuationTimeSec, RandomVector<States> predicted) {
+        long startNanos = m_instrumentation == null ? 0 : System.nanoTime();
         // make another reference for the end of the period
         Matrix<States, N1> nextReference = m_reference.getR(actuationTimeSec);
         // now fill the gap between the prediction and the reference
-        return feedback.calculate(predicted, nextReference);
+        Matrix<Inputs, N1> ufb = feedback.calculate(predicted, nextReference);
+        if (m_instrumentation != null)
+            m_instrumentation.record(Instrumentation.Stage.FEEDBACK, System.nanoTime() - startNanos);
+        return ufb;
+    }
+
+    long getRecordTime() {
+        return recordTime;
+    }
+
+    double getPendingFromSec() {
+        return m_pendingFromSec;
+    }
+
+    double getPendingThroughSec() {
+        return m_pendingThroughSec;
+    }
+
+    /** For EstimatorSnapshot. */
+    void restoreCursor(long recordTimeUs, double pendingFromSec, double pendingThroughSec) {
+        recordTime = recordTimeUs;
+        m_pendingFromSec = pendingFromSec;
+        m_pendingThroughSec = pendingThroughSec;
     }
 
     /** Record the actual u applied to the actuators. */
@@ -0,0 +1,50 @@
+package org.team100.controllib.estimator;
+
+/**
+ * Per-call limit on replay work, so one late measurement can't blow the loop
+ * period. A "step" is one call to the predictor, i.e. one RK4 integration.
+ *
+ * Replay always processes at least one measurement per call so it makes
+ * progress even with a tiny budget; whatever is left over is picked up by the
+ * next call.
+ */
+public class ReplayBudget {
+    public static final ReplayBudget UNLIMITED = new ReplayBudget(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int m_maxSteps;
+    private final long m_maxNanos;
+
+    /**
+     * @param maxSteps maximum predictor steps per call
+     * @param maxNanos maximum elapsed time per call
+     */
+    public ReplayBudget(int maxSteps, long maxNanos) {
+        if (maxSteps < 1)
+            throw new IllegalArgumentException("maxSteps must be positive: " + maxSteps);
+        if (maxNanos < 1)
+            throw new IllegalArgumentException("maxNanos must be positive: " + maxNanos);
+        m_maxSteps = maxSteps;
+        m_maxNanos = maxNanos;
+    }
+
+    public static ReplayBudget steps(int maxSteps) {
+        return new ReplayBudget(maxSteps, Long.MAX_VALUE);
+    }
+
+    public static ReplayBudget nanos(long maxNanos) {
+        return new ReplayBudget(Integer.MAX_VALUE, maxNanos);
+    }
+
+    public int maxSteps() {
+        return m_maxSteps;
+    }
+
+    public long maxNanos() {
+        return m_maxNanos;
+    }
+
+    /** @return true if either limit has been reached. */
+    public boolean exhausted(int steps, long elapsedNanos) {
+        return steps >= m_maxSteps || elapsedNanos >= m_maxNanos;
+    }
+}
@@ -1,5 +1,8 @@
 package org.team100.controllib.fusion;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.team100.controllib.math.RandomVector;
 
 import edu.wpi.first.math.Num;
@@ -11,4 +14,12 @@ public class DemocraticLogLinearPooling<States extends Num> extends LogLinearPoo
     public RandomVector<States> fuse(RandomVector<States> a, RandomVector<States> b) {
         return fuse(a, 0.5, b, 0.5);
     }
+
+    /** Equal weights for all the inputs, in one pass. */
+    @Override
+    public RandomVector<States> fuseAll(List<RandomVector<States>> inputs) {
+        double[] weights = new double[inputs.size()];
+        Arrays.fill(weights, 1.0 / inputs.size());
+        return fuseAll(inputs, weights);
+    }
 }
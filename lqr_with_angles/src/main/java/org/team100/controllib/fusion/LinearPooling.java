@@ -1,5 +1,8 @@
 package org.team100.controllib.fusion;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.ejml.dense.row.MatrixFeatures_DDRM;
 import org.team100.controllib.math.RandomVector;
 import org.team100.controllib.math.Variance;
@@ -45,11 +48,30 @@ import edu.wpi.first.math.numbers.N1;
  * If you're doing non-Euclidean geometry, you'd better handle that in your
  * variable class.
  * 
+ * For N inputs, the dispersion term is sum(p_i (x_i-c)^2), which is the same
+ * as above for scalar weights, and doesn't depend on the order of the inputs.
+ * 
+ * Each fusion checks its inputs (weights sum to one, covariances symmetric and
+ * positive semidefinite), which costs more than the fusion itself. Once
+ * you trust your inputs, e.g. in competition, turn the checks off with
+ * setValidate(false).
+ * 
  * [1] https://arxiv.org/pdf/2202.11633.pdf
  * [2]
  * https://stats.stackexchange.com/questions/16608/what-is-the-variance-of-the-weighted-mixture-of-two-gaussians
  */
 public abstract class LinearPooling<States extends Num> implements Pooling<States> {
+    private boolean m_validate = true;
+
+    /** Check inputs on every fusion. Default is true. */
+    public void setValidate(boolean validate) {
+        m_validate = validate;
+    }
+
+    public boolean isValidate() {
+        return m_validate;
+    }
+
     /**
      * Weights should add to one.
      * 
@@ -68,25 +90,10 @@ public abstract class LinearPooling<States extends Num> implements Pooling<State
             Matrix<States, States> pa,
             RandomVector<States> b,
             Matrix<States, States> pb) {
-        // TODO: in "comp mode" make these checks substitute some acceptable behavior
-        // like some simpler average
-
-        Matrix<States, States> sumOfWeight = pa.plus(pb);
-        if (!MatrixFeatures_DDRM.isIdentity(sumOfWeight.getStorage().getDDRM(), 0.001)) {
-            throw new IllegalArgumentException("weights do not sum to one.\npa:\n "
-                    + pa.toString() + "\npb:\n " + pb.toString());
-        }
-        if (!MatrixFeatures_DDRM.isSymmetric(a.Kxx.getValue().getStorage().getDDRM())) {
-            throw new IllegalArgumentException("aP is not symmetric.\n" + a.Kxx.toString());
-        }
-        if (!MatrixFeatures_DDRM.isPositiveSemidefinite(a.Kxx.getValue().getStorage().getDDRM())) {
-            throw new IllegalArgumentException("aP is not positive semidefinite.\n" + a.Kxx.toString());
-        }
-        if (!MatrixFeatures_DDRM.isSymmetric(b.Kxx.getValue().getStorage().getDDRM())) {
-            throw new IllegalArgumentException("bP is not symmetric.\n" + b.Kxx.toString());
-        }
-        if (!MatrixFeatures_DDRM.isPositiveSemidefinite(b.Kxx.getValue().getStorage().getDDRM())) {
-            throw new IllegalArgumentException("bP is not positive semidefinite.\n" + b.Kxx.toString());
+        if (m_validate) {
+            checkWeights(pa.plus(pb));
+            checkVariance("aP", a);
+            checkVariance("bP", b);
         }
 
 //        Matrix<States, N1> cx = pa.times(a.x).plus(pb.times(b.x));
@@ -110,6 +117,69 @@ public abstract class LinearPooling<States extends Num> implements Pooling<State
 
     }
 
+    /**
+     * N-way version, one weight per input, weights should add to one.
+     * 
+     * c = x0 + sum(p_i (x_i - x0))
+     * C = sum(p_i P_i p_iT) + sum(p_i (x_i - c)^2)
+     */
+    RandomVector<States> fuseAll(
+            List<RandomVector<States>> inputs,
+            List<Matrix<States, States>> weights) {
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("nothing to fuse");
+        if (inputs.size() != weights.size())
+            throw new IllegalArgumentException("need one weight per input: " + inputs.size() + " " + weights.size());
+        RandomVector<States> a = inputs.get(0);
+        if (m_validate) {
+            Matrix<States, States> sumOfWeight = weights.get(0).copy();
+            for (int i = 1; i < weights.size(); ++i) {
+                sumOfWeight = sumOfWeight.plus(weights.get(i));
+            }
+            checkWeights(sumOfWeight);
+            for (RandomVector<States> input : inputs) {
+                checkVariance("P", input);
+            }
+        }
+        // offsets from the first input, so this handles wrapping
+        Matrix<States, N1> offset = a.x.copy();
+        offset.fill(0);
+        for (int i = 0; i < inputs.size(); ++i) {
+            offset = offset.plus(weights.get(i).times(inputs.get(i).xminus(a.x)));
+        }
+        Matrix<States, N1> cx = a.xplus(offset);
+        Matrix<States, States> cK = a.Kxx.getValue().copy();
+        cK.fill(0);
+        for (int i = 0; i < inputs.size(); ++i) {
+            RandomVector<States> xi = inputs.get(i);
+            Matrix<States, States> pi = weights.get(i);
+            cK = cK.plus(pi.times(xi.Kxx.getValue()).times(pi.transpose()));
+            Matrix<States, N1> d = xi.xminus(cx);
+            Matrix<States, States> d2 = pi.copy();
+            d2.fill(0);
+            for (int j = 0; j < d2.getNumCols(); ++j) {
+                d2.set(j, j, d.get(j, 0) * d.get(j, 0));
+            }
+            cK = cK.plus(pi.times(d2));
+        }
+        return a.make(cx, new Variance<>(cK));
+    }
+
+    void checkWeights(Matrix<States, States> sumOfWeight) {
+        if (!MatrixFeatures_DDRM.isIdentity(sumOfWeight.getStorage().getDDRM(), 0.001)) {
+            throw new IllegalArgumentException("weights do not sum to one.\n" + sumOfWeight.toString());
+        }
+    }
+
+    void checkVariance(String name, RandomVector<States> v) {
+        if (!MatrixFeatures_DDRM.isSymmetric(v.Kxx.getValue().getStorage().getDDRM())) {
+            throw new IllegalArgumentException(name + " is not symmetric.\n" + v.Kxx.toString());
+        }
+        if (!MatrixFeatures_DDRM.isPositiveSemidefinite(v.Kxx.getValue().getStorage().getDDRM())) {
+            throw new IllegalArgumentException(name + " is not positive semidefinite.\n" + v.Kxx.toString());
+        }
+    }
+
     /**
      * Covariance of the mixture due to dispersion in the means.
      * 
@@ -149,4 +219,18 @@ public abstract class LinearPooling<States extends Num> implements Pooling<State
         }
         return fuse(a, pamat, b, pbmat);
     }
+
+    /** N-way with scalar weights. */
+    RandomVector<States> fuseAll(List<RandomVector<States>> inputs, double[] weights) {
+        List<Matrix<States, States>> weightMatrices = new ArrayList<>(weights.length);
+        for (double w : weights) {
+            Matrix<States, States> wmat = inputs.get(0).Kxx.copy().getValue();
+            wmat.fill(0);
+            for (int i = 0; i < wmat.getNumCols(); ++i) {
+                wmat.set(i, i, w);
+            }
+            weightMatrices.add(wmat);
+        }
+        return fuseAll(inputs, weightMatrices);
+    }
 }
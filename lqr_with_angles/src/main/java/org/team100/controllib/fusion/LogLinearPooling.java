@@ -1,5 +1,7 @@
 package org.team100.controllib.fusion;
 
+import java.util.List;
+
 import org.team100.controllib.math.RandomVector;
 import org.team100.controllib.math.Variance;
 
@@ -28,6 +30,11 @@ import edu.wpi.first.math.numbers.N1;
  * 
  * Bayesian inference and inverse variance weighting are the same idea, without
  * the 'w' factor.
+ * 
+ * For N inputs:
+ * 
+ * C = 1/sum(w_i/P_i)
+ * c = C*sum(w_i x_i/P_i)
  */
 public abstract class LogLinearPooling<States extends Num> implements Pooling<States> {
 
@@ -54,4 +61,29 @@ public abstract class LogLinearPooling<States extends Num> implements Pooling<St
 
         return a.make(cx, new Variance<>(cP));
     }
+
+    /**
+     * N-way version, weights should add to one.
+     * 
+     * Like fuse(), this doesn't know about wrapping.
+     */
+    RandomVector<States> fuseAll(List<RandomVector<States>> inputs, double[] weights) {
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("nothing to fuse");
+        if (inputs.size() != weights.length)
+            throw new IllegalArgumentException("need one weight per input: " + inputs.size() + " " + weights.length);
+        RandomVector<States> a = inputs.get(0);
+        Matrix<States, States> information = a.Kxx.getValue().copy();
+        information.fill(0);
+        Matrix<States, N1> weighted = a.x.copy();
+        weighted.fill(0);
+        for (int i = 0; i < inputs.size(); ++i) {
+            RandomVector<States> input = inputs.get(i);
+            Matrix<States, States> wPI = input.Kxx.getValue().inv().times(weights[i]);
+            information = information.plus(wPI);
+            weighted = weighted.plus(wPI.times(input.x));
+        }
+        Matrix<States, States> cP = information.inv();
+        return a.make(cP.times(weighted), new Variance<>(cP));
+    }
 }
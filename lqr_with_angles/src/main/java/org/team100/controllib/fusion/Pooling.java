@@ -1,13 +1,44 @@
 package org.team100.controllib.fusion;
 
+import java.util.List;
+
 import org.team100.controllib.math.RandomVector;
 
 import edu.wpi.first.math.Num;
 
 /**
- * Given two estimates for the same thing, return an aggregate. There are lots
- * of ways to do it.
+ * Given two (or more) estimates for the same thing, return an aggregate. There
+ * are lots of ways to do it.
  */
 public interface Pooling<States extends Num> {
     RandomVector<States> fuse(RandomVector<States> a, RandomVector<States> b);
+
+    /**
+     * Fuse into an existing result, which should be the same type as a. The
+     * default just copies; implementations on the hot path avoid allocating.
+     */
+    default void fuseInto(RandomVector<States> a, RandomVector<States> b, RandomVector<States> result) {
+        result.assign(fuse(a, b));
+    }
+
+    /**
+     * Fuse any number of estimates, e.g. several cameras and encoders in the
+     * same tick. The default folds pairwise, which weights later inputs more
+     * heavily for some poolings; implementations should pool all the inputs in
+     * one pass.
+     */
+    default RandomVector<States> fuseAll(List<RandomVector<States>> inputs) {
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("nothing to fuse");
+        RandomVector<States> result = inputs.get(0).copy();
+        for (int i = 1; i < inputs.size(); ++i) {
+            result = fuse(result, inputs.get(i));
+        }
+        return result;
+    }
+
+    /** Fuse all the inputs into an existing result, same type as the inputs. */
+    default void fuseAllInto(List<RandomVector<States>> inputs, RandomVector<States> result) {
+        result.assign(fuseAll(inputs));
+    }
 }
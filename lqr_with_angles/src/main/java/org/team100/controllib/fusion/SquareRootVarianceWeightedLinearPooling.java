@@ -0,0 +1,202 @@
+package org.team100.controllib.fusion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.team100.controllib.math.MatrixKernels;
+import org.team100.controllib.math.RandomVector;
+
+import edu.wpi.first.math.Num;
+
+/**
+ * Same weights as VarianceWeightedLinearPooling, but the arithmetic is done on
+ * Cholesky factors, P = L LT, instead of on the covariances themselves:
+ *
+ * * The inverses come from the factors, so there's no determinant threshold:
+ * a 1e-9 or 1e9 variance (see Variance.dontknow()) is as good as a 1. The old
+ * threshold rejects diag(1e-9, 1e-9), and the sum of two dontknow() inverses.
+ *
+ * * The result covariance is assembled as a factor, by triangularizing the
+ * side-by-side factors [p_i L_i, ..., sqrt(D)], so it's symmetric and positive
+ * semidefinite by construction, no matter how far apart the scales are.
+ *
+ * * Factoring the inputs is the positive-definite check, so there's no separate
+ * per-call symmetry check. Only the lower triangle of each input is read.
+ *
+ * The dispersion term D is the diagonal of sum(p_i diag(x_i - c)^2), which is
+ * the same as VarianceWeightedLinearPooling for diagonal weights; for
+ * correlated inputs that one isn't symmetric, so it can't be factored.
+ *
+ * Nothing allocates after the first call except fuse() and fuseAll(). This
+ * uses scratch storage, so it's not thread-safe.
+ */
+public class SquareRootVarianceWeightedLinearPooling<States extends Num> extends LinearPooling<States> {
+    // for fuseInto
+    private final List<RandomVector<States>> m_pair = new ArrayList<>(Arrays.asList(null, null));
+
+    // scratch, sized on first use
+    private int m_n;
+    private double[][] m_L = new double[0][];
+    private double[][] m_PI = new double[0][];
+    private double[][] m_p = new double[0][];
+    // side-by-side factors, n x (count + 1) n
+    private double[] m_M = new double[0];
+    private double[] m_triWork = new double[0];
+    private double[] m_sum;
+    private double[] m_sumL;
+    private double[] m_sumI;
+    private double[] m_cL;
+    private double[] m_t1;
+    private double[] m_work;
+    private double[] m_dx;
+    private double[] m_v;
+    private double[] m_cx;
+    private double[] m_d;
+
+    @Override
+    public RandomVector<States> fuse(RandomVector<States> a, RandomVector<States> b) {
+        RandomVector<States> result = a.copy();
+        fuseInto(a, b, result);
+        return result;
+    }
+
+    /** Aliasing result with a or b is fine. */
+    @Override
+    public void fuseInto(RandomVector<States> a, RandomVector<States> b, RandomVector<States> result) {
+        m_pair.set(0, a);
+        m_pair.set(1, b);
+        fuseAllInto(m_pair, result);
+        m_pair.set(0, null);
+        m_pair.set(1, null);
+    }
+
+    @Override
+    public RandomVector<States> fuseAll(List<RandomVector<States>> inputs) {
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("nothing to fuse");
+        RandomVector<States> result = inputs.get(0).copy();
+        fuseAllInto(inputs, result);
+        return result;
+    }
+
+    /**
+     * The weights are p_i = (1/P_i)/sum(1/P_j), as in
+     * VarianceWeightedLinearPooling. Aliasing result with an input is fine.
+     */
+    @Override
+    public void fuseAllInto(List<RandomVector<States>> inputs, RandomVector<States> result) {
+        int count = inputs.size();
+        if (count == 0)
+            throw new IllegalArgumentException("nothing to fuse");
+        RandomVector<States> a = inputs.get(0);
+        for (int i = 1; i < count; ++i) {
+            if (a.getClass() != inputs.get(i).getClass()) {
+                throw new IllegalArgumentException(
+                        "inputs must be same type\n" + a.getClass() + " " + inputs.get(i).getClass());
+            }
+        }
+        int n = a.x.getNumRows();
+        scratch(n, count);
+
+        // weights, via the factors
+        Arrays.fill(m_sum, 0);
+        for (int i = 0; i < count; ++i) {
+            if (!MatrixKernels.cholesky(inputs.get(i).Kxx.getData(), m_L[i], n)) {
+                throw new IllegalArgumentException("P is not positive definite.\n" + inputs.get(i).Kxx.toString());
+            }
+            MatrixKernels.choleskyInverse(m_L[i], m_PI[i], n, m_work);
+            MatrixKernels.plus(m_sum, m_PI[i], m_sum);
+        }
+        if (!MatrixKernels.cholesky(m_sum, m_sumL, n)) {
+            throw new IllegalArgumentException("PIsum is not positive definite.");
+        }
+        MatrixKernels.choleskyInverse(m_sumL, m_sumI, n, m_work);
+        for (int i = 0; i < count; ++i) {
+            MatrixKernels.mult(m_PI[i], m_sumI, m_p[i], n);
+        }
+
+        if (isValidate()) {
+            Arrays.fill(m_t1, 0);
+            for (int i = 0; i < count; ++i) {
+                MatrixKernels.plus(m_t1, m_p[i], m_t1);
+            }
+            if (!MatrixKernels.isIdentity(m_t1, n, 0.001)) {
+                throw new IllegalArgumentException("weights do not sum to one.");
+            }
+        }
+
+        // mean, offsets from the first input, so it handles wrapping
+        Arrays.fill(m_cx, 0);
+        for (int i = 1; i < count; ++i) {
+            inputs.get(i).xminusInto(a.x.getData(), m_dx);
+            MatrixKernels.multVector(m_p[i], m_dx, m_v, n);
+            MatrixKernels.plus(m_cx, m_v, m_cx);
+        }
+        System.arraycopy(m_cx, 0, m_v, 0, n);
+        a.xplusInto(m_v, m_cx);
+
+        // dispersion: diagonal of sum(p_i diag(x_i-c)^2)
+        Arrays.fill(m_d, 0);
+        for (int i = 0; i < count; ++i) {
+            inputs.get(i).xminusInto(m_cx, m_dx);
+            for (int j = 0; j < n; ++j) {
+                m_d[j] += m_p[i][j * n + j] * (m_dx[j] * m_dx[j]);
+            }
+        }
+
+        // covariance factor: triangularize [p_0 L_0, ..., p_N L_N, sqrt(D)]
+        int m = (count + 1) * n;
+        for (int i = 0; i < count; ++i) {
+            MatrixKernels.mult(m_p[i], m_L[i], m_t1, n);
+            for (int r = 0; r < n; ++r) {
+                System.arraycopy(m_t1, r * n, m_M, r * m + i * n, n);
+            }
+        }
+        for (int r = 0; r < n; ++r) {
+            for (int c = 0; c < n; ++c) {
+                // the weights can be very slightly outside [0,1]
+                m_M[r * m + count * n + c] = r == c ? Math.sqrt(Math.max(0, m_d[r])) : 0;
+            }
+        }
+        MatrixKernels.triangularize(m_M, m_cL, n, m, m_triWork);
+
+        System.arraycopy(m_cx, 0, result.x.getData(), 0, n);
+        MatrixKernels.multLowerTransposeSelf(m_cL, result.Kxx.getData(), n);
+    }
+
+    private void scratch(int n, int count) {
+        if (m_n != n) {
+            m_n = n;
+            m_L = new double[0][];
+            m_PI = new double[0][];
+            m_p = new double[0][];
+            m_M = new double[0];
+            m_triWork = new double[0];
+            m_sum = new double[n * n];
+            m_sumL = new double[n * n];
+            m_sumI = new double[n * n];
+            m_cL = new double[n * n];
+            m_t1 = new double[n * n];
+            m_work = new double[n * n];
+            m_dx = new double[n];
+            m_v = new double[n];
+            m_cx = new double[n];
+            m_d = new double[n];
+        }
+        if (m_L.length < count) {
+            int oldCount = m_L.length;
+            m_L = Arrays.copyOf(m_L, count);
+            m_PI = Arrays.copyOf(m_PI, count);
+            m_p = Arrays.copyOf(m_p, count);
+            for (int i = oldCount; i < count; ++i) {
+                m_L[i] = new double[n * n];
+                m_PI[i] = new double[n * n];
+                m_p[i] = new double[n * n];
+            }
+            int m = (count + 1) * n;
+            m_M = new double[n * m];
+            m_triWork = new double[n * m + m];
+        }
+    }
+}
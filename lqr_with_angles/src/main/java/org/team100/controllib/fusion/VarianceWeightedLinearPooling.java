@@ -1,5 +1,9 @@
 package org.team100.controllib.fusion;
 
+import java.util.Arrays;
+import java.util.List;
+
+import org.team100.controllib.math.MatrixKernels;
 import org.team100.controllib.math.RandomVector;
 
 import edu.wpi.first.math.Matrix;
@@ -37,6 +41,20 @@ import edu.wpi.first.math.Pair;
 public class VarianceWeightedLinearPooling<States extends Num> extends LinearPooling<States> {
     private static final double kThreshold = 1e-15;
 
+    // scratch for fuseInto and fuseAllInto, sized on first use
+    private int m_n;
+    private double[][] m_PI = new double[0][];
+    private double[][] m_p = new double[0][];
+    private double[] m_sum;
+    private double[] m_sumI;
+    private double[] m_t1;
+    private double[] m_t2;
+    private double[] m_cK;
+    private double[] m_work;
+    private double[] m_dx;
+    private double[] m_v;
+    private double[] m_cx;
+
     public RandomVector<States> fuse(RandomVector<States> a, RandomVector<States> b) {
         // TODO: turn off these checks somehow for matches, use some sort of backoff
         // strategy
@@ -51,6 +69,208 @@ public class VarianceWeightedLinearPooling<States extends Num> extends LinearPoo
         return fuse(a, pa, b, pb);
     }
 
+    /**
+     * Same as fuse() but writes into result (same type as a) without allocating.
+     * Aliasing result with a or b is fine. This uses scratch storage, so it's not
+     * thread-safe.
+     */
+    @Override
+    public void fuseInto(RandomVector<States> a, RandomVector<States> b, RandomVector<States> result) {
+        if (a.getClass() != b.getClass()) {
+            throw new IllegalArgumentException("a and b must be same type\n" + a.getClass() + " " + b.getClass());
+        }
+        int n = a.x.getNumRows();
+        scratch(n, 2);
+        double[] aP = a.Kxx.getData();
+        double[] bP = b.Kxx.getData();
+
+        // weights
+        if (MatrixKernels.det(aP, n, m_work) < kThreshold) {
+            throw new IllegalArgumentException("aP is singular.\n" + a.Kxx.toString());
+        }
+        if (MatrixKernels.det(bP, n, m_work) < kThreshold) {
+            throw new IllegalArgumentException("bP is singular.\n" + b.Kxx.toString());
+        }
+        MatrixKernels.inv(aP, m_PI[0], n, m_work);
+        MatrixKernels.inv(bP, m_PI[1], n, m_work);
+        MatrixKernels.plus(m_PI[0], m_PI[1], m_sum);
+        if (MatrixKernels.det(m_sum, n, m_work) < kThreshold) {
+            throw new IllegalArgumentException("PIsum is singular.");
+        }
+        MatrixKernels.inv(m_sum, m_sumI, n, m_work);
+        MatrixKernels.mult(m_PI[0], m_sumI, m_p[0], n);
+        MatrixKernels.mult(m_PI[1], m_sumI, m_p[1], n);
+
+        if (isValidate()) {
+            // same checks as LinearPooling.fuse()
+            MatrixKernels.plus(m_p[0], m_p[1], m_t1);
+            checkWeights(m_t1, n);
+            checkVariance("aP", a, n);
+            checkVariance("bP", b, n);
+        }
+
+        // mean, same as a.combine(pb, b), so it handles wrapping
+        b.xminusInto(a.x.getData(), m_dx);
+        MatrixKernels.multVector(m_p[1], m_dx, m_v, n);
+        a.xplusInto(m_v, m_cx);
+
+        // covariance: pa A paT + pb B pbT
+        MatrixKernels.mult(m_p[0], aP, m_t1, n);
+        MatrixKernels.multTransB(m_t1, m_p[0], m_cK, n);
+        MatrixKernels.mult(m_p[1], bP, m_t1, n);
+        MatrixKernels.multTransB(m_t1, m_p[1], m_t2, n);
+        MatrixKernels.plus(m_cK, m_t2, m_cK);
+
+        // plus dispersion: (pa pb) diag(a-b)^2
+        a.xminusInto(b.x.getData(), m_dx);
+        MatrixKernels.mult(m_p[0], m_p[1], m_t1, n);
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                m_cK[i * n + j] += m_t1[i * n + j] * (m_dx[j] * m_dx[j]);
+            }
+        }
+
+        System.arraycopy(m_cx, 0, result.x.getData(), 0, n);
+        System.arraycopy(m_cK, 0, result.Kxx.getData(), 0, n * n);
+    }
+
+    @Override
+    public RandomVector<States> fuseAll(List<RandomVector<States>> inputs) {
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("nothing to fuse");
+        RandomVector<States> result = inputs.get(0).copy();
+        fuseAllInto(inputs, result);
+        return result;
+    }
+
+    /**
+     * All the inputs in one pass, writing into result (same type as the inputs)
+     * without allocating. The weights are
+     * 
+     * p_i = (1/P_i)/sum(1/P_j)
+     * 
+     * and the rest is the same as LinearPooling.fuseAll(). Aliasing result with
+     * an input is fine. This uses scratch storage, so it's not thread-safe.
+     */
+    @Override
+    public void fuseAllInto(List<RandomVector<States>> inputs, RandomVector<States> result) {
+        int count = inputs.size();
+        if (count == 0)
+            throw new IllegalArgumentException("nothing to fuse");
+        RandomVector<States> a = inputs.get(0);
+        for (int i = 1; i < count; ++i) {
+            if (a.getClass() != inputs.get(i).getClass()) {
+                throw new IllegalArgumentException(
+                        "inputs must be same type\n" + a.getClass() + " " + inputs.get(i).getClass());
+            }
+        }
+        int n = a.x.getNumRows();
+        scratch(n, count);
+
+        // weights
+        Arrays.fill(m_sum, 0);
+        for (int i = 0; i < count; ++i) {
+            double[] P = inputs.get(i).Kxx.getData();
+            if (MatrixKernels.det(P, n, m_work) < kThreshold) {
+                throw new IllegalArgumentException("P is singular.\n" + inputs.get(i).Kxx.toString());
+            }
+            MatrixKernels.inv(P, m_PI[i], n, m_work);
+            MatrixKernels.plus(m_sum, m_PI[i], m_sum);
+        }
+        if (MatrixKernels.det(m_sum, n, m_work) < kThreshold) {
+            throw new IllegalArgumentException("PIsum is singular.");
+        }
+        MatrixKernels.inv(m_sum, m_sumI, n, m_work);
+        for (int i = 0; i < count; ++i) {
+            MatrixKernels.mult(m_PI[i], m_sumI, m_p[i], n);
+        }
+
+        if (isValidate()) {
+            Arrays.fill(m_t1, 0);
+            for (int i = 0; i < count; ++i) {
+                MatrixKernels.plus(m_t1, m_p[i], m_t1);
+            }
+            checkWeights(m_t1, n);
+            for (int i = 0; i < count; ++i) {
+                checkVariance("P", inputs.get(i), n);
+            }
+        }
+
+        // mean, offsets from the first input, so it handles wrapping
+        Arrays.fill(m_cx, 0);
+        for (int i = 1; i < count; ++i) {
+            inputs.get(i).xminusInto(a.x.getData(), m_dx);
+            MatrixKernels.multVector(m_p[i], m_dx, m_v, n);
+            MatrixKernels.plus(m_cx, m_v, m_cx);
+        }
+        System.arraycopy(m_cx, 0, m_v, 0, n);
+        a.xplusInto(m_v, m_cx);
+
+        // covariance: sum of p_i P_i p_iT
+        Arrays.fill(m_cK, 0);
+        for (int i = 0; i < count; ++i) {
+            MatrixKernels.mult(m_p[i], inputs.get(i).Kxx.getData(), m_t1, n);
+            MatrixKernels.multTransB(m_t1, m_p[i], m_t2, n);
+            MatrixKernels.plus(m_cK, m_t2, m_cK);
+        }
+
+        // plus dispersion: sum of p_i diag(x_i-c)^2
+        for (int i = 0; i < count; ++i) {
+            inputs.get(i).xminusInto(m_cx, m_dx);
+            double[] p = m_p[i];
+            for (int r = 0; r < n; ++r) {
+                for (int c = 0; c < n; ++c) {
+                    m_cK[r * n + c] += p[r * n + c] * (m_dx[c] * m_dx[c]);
+                }
+            }
+        }
+
+        System.arraycopy(m_cx, 0, result.x.getData(), 0, n);
+        System.arraycopy(m_cK, 0, result.Kxx.getData(), 0, n * n);
+    }
+
+    private void checkWeights(double[] sumOfWeight, int n) {
+        if (!MatrixKernels.isIdentity(sumOfWeight, n, 0.001)) {
+            throw new IllegalArgumentException("weights do not sum to one.");
+        }
+    }
+
+    private void checkVariance(String name, RandomVector<States> v, int n) {
+        double[] P = v.Kxx.getData();
+        if (!MatrixKernels.isSymmetric(P, n, 0)) {
+            throw new IllegalArgumentException(name + " is not symmetric.\n" + v.Kxx.toString());
+        }
+        if (!MatrixKernels.isPositiveDefinite(P, n, m_work)) {
+            throw new IllegalArgumentException(name + " is not positive definite.\n" + v.Kxx.toString());
+        }
+    }
+
+    private void scratch(int n, int count) {
+        if (m_n != n) {
+            m_n = n;
+            m_PI = new double[0][];
+            m_p = new double[0][];
+            m_sum = new double[n * n];
+            m_sumI = new double[n * n];
+            m_t1 = new double[n * n];
+            m_t2 = new double[n * n];
+            m_cK = new double[n * n];
+            m_work = new double[n * n];
+            m_dx = new double[n];
+            m_v = new double[n];
+            m_cx = new double[n];
+        }
+        if (m_PI.length < count) {
+            int oldCount = m_PI.length;
+            m_PI = Arrays.copyOf(m_PI, count);
+            m_p = Arrays.copyOf(m_p, count);
+            for (int i = oldCount; i < count; ++i) {
+                m_PI[i] = new double[n * n];
+                m_p[i] = new double[n * n];
+            }
+        }
+    }
+
     /** TODO make a weight type */
     Pair<Matrix<States, States>, Matrix<States, States>> weights(RandomVector<States> a, RandomVector<States> b) {
         Matrix<States, States> aP = a.Kxx.getValue();
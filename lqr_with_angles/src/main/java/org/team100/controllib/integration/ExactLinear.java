@@ -0,0 +1,112 @@
+package org.team100.controllib.integration;
+
+import org.team100.controllib.math.MatrixKernels;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.system.NonlinearPlant;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * Exact discretization for linear plants, xdot = Ax + Bu, using the matrix
+ * exponential of the augmented matrix [A B; 0 0], same as
+ * Discretization.discretizeAB, but in place.
+ *
+ * x' = Ad x + Bd u
+ * K' = Ad K Ad^T
+ *
+ * This doesn't call f at all, so the evaluation count is zero and the error is
+ * roundoff, for a plant that really is linear. The discretization is cached,
+ * so a fixed time step costs only the multiplications.
+ */
+public class ExactLinear<States extends Num, Inputs extends Num> implements Integrator<States, Inputs> {
+    private final int m_n;
+    private final int m_m;
+    // augmented continuous matrix, size n+m
+    private final double[] m_aug;
+    private final double[] m_scaled;
+    private final double[] m_exp;
+    private final double[] m_work;
+    private final double[] m_Ad;
+    private final double[] m_t1;
+    private final double[] m_K;
+    private final double[] m_dx;
+    private double m_dtS = Double.NaN;
+
+    public ExactLinear(Matrix<States, States> A, Matrix<States, Inputs> B) {
+        m_n = A.getNumRows();
+        m_m = B.getNumCols();
+        int size = m_n + m_m;
+        m_aug = new double[size * size];
+        for (int i = 0; i < m_n; ++i) {
+            for (int j = 0; j < m_n; ++j) {
+                m_aug[i * size + j] = A.get(i, j);
+            }
+            for (int j = 0; j < m_m; ++j) {
+                m_aug[i * size + m_n + j] = B.get(i, j);
+            }
+        }
+        m_scaled = new double[size * size];
+        m_exp = new double[size * size];
+        m_work = new double[2 * size * size];
+        m_Ad = new double[m_n * m_n];
+        m_t1 = new double[m_n * m_n];
+        m_K = new double[m_n * m_n];
+        m_dx = new double[m_n];
+    }
+
+    /** Linearize the plant around zero, like GainCalculator does. */
+    public static <States extends Num, Inputs extends Num> ExactLinear<States, Inputs> linearize(
+            NonlinearPlant<States, Inputs, ?> plant) {
+        Matrix<Inputs, N1> u = new Matrix<>(plant.inputs(), Nat.N1());
+        RandomVector<States> x = new RandomVector<>(new Matrix<>(plant.states(), Nat.N1()),
+                Variance.zero(plant.states()));
+        return new ExactLinear<>(plant.jacobianX(x, u), plant.jacobianU(x, u));
+    }
+
+    @Override
+    public int integrate(RandomVector<States> x, Matrix<Inputs, N1> u, double dtS, RandomVector<States> result) {
+        discretize(dtS);
+        int size = m_n + m_m;
+        double[] xdata = x.x.getData();
+        double[] udata = u.getData();
+        // x' - x = (Ad - I) x + Bd u, so the wrapping is handled by xplusInto
+        for (int i = 0; i < m_n; ++i) {
+            double sum = 0;
+            for (int j = 0; j < m_n; ++j) {
+                sum += m_exp[i * size + j] * xdata[j];
+            }
+            for (int j = 0; j < m_m; ++j) {
+                sum += m_exp[i * size + m_n + j] * udata[j];
+            }
+            m_dx[i] = sum - xdata[i];
+        }
+        MatrixKernels.mult(m_Ad, x.Kxx.getData(), m_t1, m_n);
+        MatrixKernels.multTransB(m_t1, m_Ad, m_K, m_n);
+        x.xplusInto(m_dx, result.x.getData());
+        System.arraycopy(m_K, 0, result.Kxx.getData(), 0, m_n * m_n);
+        return 0;
+    }
+
+    @Override
+    public double getLastError() {
+        return 0;
+    }
+
+    private void discretize(double dtS) {
+        if (dtS == m_dtS)
+            return;
+        m_dtS = dtS;
+        int size = m_n + m_m;
+        for (int i = 0; i < size * size; ++i) {
+            m_scaled[i] = m_aug[i] * dtS;
+        }
+        MatrixKernels.expm(m_scaled, m_exp, size, m_work);
+        for (int i = 0; i < m_n; ++i) {
+            System.arraycopy(m_exp, i * size, m_Ad, i * m_n, m_n);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.team100.controllib.integration;
+
+import org.team100.controllib.math.RandomVector;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * Integrates the plant dynamics (without noise) over a time span, with the
+ * control held constant.
+ * 
+ * Covariance follows RandomVector.times(): a term weighted by d contributes d
+ * squared times its covariance.
+ * 
+ * Implementations use scratch storage, so they're not thread-safe. The
+ * scratch for intermediate states follows the type of x, so callers can mix
+ * RandomVector and AngularRandomVector.
+ */
+public interface Integrator<States extends Num, Inputs extends Num> {
+    /**
+     * Integrate x under u for dtS, writing into result, which should be the same
+     * type as x. Aliasing result with x is fine.
+     * 
+     * @return the number of evaluations of f used
+     */
+    int integrate(RandomVector<States> x, Matrix<Inputs, N1> u, double dtS, RandomVector<States> result);
+
+    /**
+     * Estimated error of the last integration (max abs error in the mean), or NaN
+     * if this method doesn't estimate it.
+     */
+    double getLastError();
+}
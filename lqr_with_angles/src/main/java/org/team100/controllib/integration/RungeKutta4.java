@@ -0,0 +1,64 @@
+package org.team100.controllib.integration;
+
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.system.NonlinearPlant;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * One fixed RK4 step across the whole span, four evaluations. No error
+ * control, so the error grows with the fifth power of the span.
+ */
+public class RungeKutta4<States extends Num, Inputs extends Num> implements Integrator<States, Inputs> {
+    private final NonlinearPlant<States, Inputs, ?> m_plant;
+    // scratch, made on first use
+    private RandomVector<States> m_k1;
+    private RandomVector<States> m_k2;
+    private RandomVector<States> m_k3;
+    private RandomVector<States> m_k4;
+    private RandomVector<States> m_tmp;
+    private RandomVector<States> m_sum;
+
+    public RungeKutta4(NonlinearPlant<States, Inputs, ?> plant) {
+        m_plant = plant;
+    }
+
+    @Override
+    public int integrate(RandomVector<States> x, Matrix<Inputs, N1> u, double dtS, RandomVector<States> result) {
+        if (m_sum == null) {
+            // xdot is euclidean
+            m_k1 = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+            m_k2 = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+            m_k3 = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+            m_k4 = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+            m_sum = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+        }
+        if (m_tmp == null || m_tmp.getClass() != x.getClass()) {
+            // intermediate states need the same wrapping as x
+            m_tmp = x.copy();
+        }
+        final double h = dtS;
+
+        // same operations in the same order as ExtrapolatingEstimator.predict()
+        m_plant.fInto(x, u, m_k1);
+        m_tmp.assignPlusScaled(x, m_k1, h * 0.5);
+        m_plant.fInto(m_tmp, u, m_k2);
+        m_tmp.assignPlusScaled(x, m_k2, h * 0.5);
+        m_plant.fInto(m_tmp, u, m_k3);
+        m_tmp.assignPlusScaled(x, m_k3, h);
+        m_plant.fInto(m_tmp, u, m_k4);
+
+        m_sum.assignPlusScaled(m_k1, m_k2, 2.0);
+        m_sum.assignPlusScaled(m_sum, m_k3, 2.0);
+        m_sum.assignPlusScaled(m_sum, m_k4, 1.0);
+        result.assignPlusScaled(x, m_sum, h / 6.0);
+        return 4;
+    }
+
+    @Override
+    public double getLastError() {
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,161 @@
+package org.team100.controllib.integration;
+
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.system.NonlinearPlant;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * Dormand-Prince embedded RK4(5) with adaptive step size.
+ *
+ * The span is divided into as many steps as it takes to keep the estimated
+ * error of each step under maxError, using at most maxEvaluations evaluations
+ * of f. If the evaluations are about to run out, the rest of the span is done
+ * in one step, whatever the error, so the call always finishes.
+ *
+ * The first step costs seven evaluations, later ones six, since the last
+ * stage is the first stage of the next step ("first same as last").
+ *
+ * https://en.wikipedia.org/wiki/Dormand%E2%80%93Prince_method
+ */
+public class RungeKutta45<States extends Num, Inputs extends Num> implements Integrator<States, Inputs> {
+    private static final double[][] A = {
+            {},
+            { 1.0 / 5 },
+            { 3.0 / 40, 9.0 / 40 },
+            { 44.0 / 45, -56.0 / 15, 32.0 / 9 },
+            { 19372.0 / 6561, -25360.0 / 2187, 64448.0 / 6561, -212.0 / 729 },
+            { 9017.0 / 3168, -355.0 / 33, 46732.0 / 5247, 49.0 / 176, -5103.0 / 18656 },
+            { 35.0 / 384, 0, 500.0 / 1113, 125.0 / 192, -2187.0 / 6784, 11.0 / 84 } };
+    /** Fifth-order weights minus fourth-order weights. */
+    private static final double[] E = {
+            71.0 / 57600, 0, -71.0 / 16695, 71.0 / 1920, -17253.0 / 339200, 22.0 / 525, -1.0 / 40 };
+    private static final int kStages = 7;
+    private static final double kSafety = 0.9;
+    private static final double kMinFactor = 0.2;
+    private static final double kMaxFactor = 5.0;
+
+    private final NonlinearPlant<States, Inputs, ?> m_plant;
+    private final double m_maxError;
+    private final int m_maxEvaluations;
+    // step size that worked last time, a good first guess next time
+    private double m_h = Double.MAX_VALUE;
+    private double m_lastError;
+    // scratch, made on first use
+    private RandomVector<States>[] m_k;
+    private RandomVector<States> m_state;
+    private RandomVector<States> m_stage;
+
+    /**
+     * @param maxError       maximum estimated error per step, in the mean
+     * @param maxEvaluations at least 7
+     */
+    public RungeKutta45(NonlinearPlant<States, Inputs, ?> plant, double maxError, int maxEvaluations) {
+        if (maxError <= 0)
+            throw new IllegalArgumentException("maxError must be positive: " + maxError);
+        if (maxEvaluations < kStages)
+            throw new IllegalArgumentException("maxEvaluations must be at least 7: " + maxEvaluations);
+        m_plant = plant;
+        m_maxError = maxError;
+        m_maxEvaluations = maxEvaluations;
+    }
+
+    @Override
+    public int integrate(RandomVector<States> x, Matrix<Inputs, N1> u, double dtS, RandomVector<States> result) {
+        scratch(x);
+        m_state.assign(x);
+        m_lastError = 0;
+        double span = Math.abs(dtS);
+        double direction = Math.signum(dtS);
+        if (span == 0) {
+            result.assign(m_state);
+            return 0;
+        }
+        m_plant.fInto(m_state, u, m_k[0]);
+        int evaluations = 1;
+        double t = 0;
+        double h = Math.min(m_h, span);
+        while (t < span) {
+            // six evaluations per step; make sure there's always enough for a forced one.
+            boolean forced = m_maxEvaluations - evaluations < 2 * (kStages - 1);
+            boolean end = forced || h >= span - t;
+            if (end) {
+                h = span - t;
+            }
+            double hs = direction * h;
+            for (int i = 1; i < kStages; ++i) {
+                m_stage.assignPlusScaled(m_state, m_k[0], hs * A[i][0]);
+                for (int j = 1; j < i; ++j) {
+                    if (A[i][j] != 0)
+                        m_stage.assignPlusScaled(m_stage, m_k[j], hs * A[i][j]);
+                }
+                // the last stage is the new state itself
+                m_plant.fInto(m_stage, u, m_k[i]);
+            }
+            evaluations += kStages - 1;
+            double error = error(h);
+            if (error <= m_maxError || forced) {
+                // accept: the last stage state is the new state, and its derivative is
+                // the first stage of the next step.
+                m_state.assign(m_stage);
+                RandomVector<States> k0 = m_k[0];
+                m_k[0] = m_k[kStages - 1];
+                m_k[kStages - 1] = k0;
+                t = end ? span : t + h;
+                m_lastError = Math.max(m_lastError, error);
+                h *= factor(error);
+                if (!end)
+                    m_h = h;
+            } else {
+                h *= factor(error);
+            }
+        }
+        result.assign(m_state);
+        return evaluations;
+    }
+
+    @Override
+    public double getLastError() {
+        return m_lastError;
+    }
+
+    /** Max abs difference between the fourth- and fifth-order means. */
+    private double error(double h) {
+        double max = 0;
+        int n = m_state.x.getNumRows();
+        for (int row = 0; row < n; ++row) {
+            double e = 0;
+            for (int i = 0; i < kStages; ++i) {
+                e += E[i] * m_k[i].x.get(row, 0);
+            }
+            max = Math.max(max, Math.abs(h * e));
+        }
+        return max;
+    }
+
+    private double factor(double error) {
+        if (error == 0)
+            return kMaxFactor;
+        double f = kSafety * Math.pow(m_maxError / error, 0.2);
+        return Math.max(kMinFactor, Math.min(kMaxFactor, f));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void scratch(RandomVector<States> x) {
+        if (m_k == null) {
+            m_k = new RandomVector[kStages];
+            for (int i = 0; i < kStages; ++i) {
+                // xdot is euclidean
+                m_k[i] = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+            }
+        }
+        if (m_state != null && m_state.getClass() == x.getClass())
+            return;
+        // intermediate states need the same wrapping as x, which can change
+        // from call to call, e.g. plain and angular.
+        m_state = x.copy();
+        m_stage = x.copy();
+    }
+}
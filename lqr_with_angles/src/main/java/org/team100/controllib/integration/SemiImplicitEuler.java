@@ -0,0 +1,210 @@
+package org.team100.controllib.integration;
+
+import org.team100.controllib.math.MatrixKernels;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.system.NonlinearPlant;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * Linearly-implicit ("semi-implicit") Euler with adaptive step size, for stiff
+ * plants, e.g. friction plants with large coefficients, where explicit methods
+ * need tiny steps to stay stable.
+ *
+ * Each step solves x' = x + h (I - hJ)^-1 f(x), where J is the Jacobian of f
+ * at x, found by finite differences (n evaluations). Covariance uses the same
+ * matrix weight: K' = K + h^2 M Kf M^T where M = (I - hJ)^-1.
+ *
+ * Error is estimated by step doubling: one step of h vs two of h/2. The two
+ * half steps are kept. If the evaluations are about to run out, the rest of
+ * the span is done in one step, whatever the error.
+ *
+ * https://en.wikipedia.org/wiki/Explicit_and_implicit_methods
+ */
+public class SemiImplicitEuler<States extends Num, Inputs extends Num> implements Integrator<States, Inputs> {
+    private static final double kEpsilon = 1e-5;
+    private static final double kSafety = 0.9;
+    private static final double kMinFactor = 0.2;
+    private static final double kMaxFactor = 5.0;
+
+    private final NonlinearPlant<States, Inputs, ?> m_plant;
+    private final double m_maxError;
+    private final int m_maxEvaluations;
+    private final int m_n;
+    // step size that worked last time, a good first guess next time
+    private double m_h = Double.MAX_VALUE;
+    private double m_lastError;
+    // scratch
+    private final double[] m_J0;
+    private final double[] m_J1;
+    private final double[] m_M;
+    private final double[] m_IhJ;
+    private final double[] m_t1;
+    private final double[] m_t2;
+    private final double[] m_work;
+    private final double[] m_dx;
+    private final double[] m_v;
+    private RandomVector<States> m_f0;
+    private RandomVector<States> m_f1;
+    private RandomVector<States> m_fp;
+    private RandomVector<States> m_state;
+    private RandomVector<States> m_perturbed;
+    private RandomVector<States> m_full;
+    private RandomVector<States> m_mid;
+    private RandomVector<States> m_half;
+
+    /**
+     * @param maxError       maximum estimated error per step, in the mean
+     * @param maxEvaluations at least 2(n+1) for n states
+     */
+    public SemiImplicitEuler(NonlinearPlant<States, Inputs, ?> plant, double maxError, int maxEvaluations) {
+        m_n = plant.states().getNum();
+        if (maxError <= 0)
+            throw new IllegalArgumentException("maxError must be positive: " + maxError);
+        if (maxEvaluations < attemptCost())
+            throw new IllegalArgumentException("maxEvaluations must be at least " + attemptCost() + ": " + maxEvaluations);
+        m_plant = plant;
+        m_maxError = maxError;
+        m_maxEvaluations = maxEvaluations;
+        m_J0 = new double[m_n * m_n];
+        m_J1 = new double[m_n * m_n];
+        m_M = new double[m_n * m_n];
+        m_IhJ = new double[m_n * m_n];
+        m_t1 = new double[m_n * m_n];
+        m_t2 = new double[m_n * m_n];
+        m_work = new double[m_n * m_n];
+        m_dx = new double[m_n];
+        m_v = new double[m_n];
+    }
+
+    @Override
+    public int integrate(RandomVector<States> x, Matrix<Inputs, N1> u, double dtS, RandomVector<States> result) {
+        scratch(x);
+        m_state.assign(x);
+        m_lastError = 0;
+        double span = Math.abs(dtS);
+        double direction = Math.signum(dtS);
+        int evaluations = 0;
+        boolean current = false;
+        double t = 0;
+        double h = Math.min(m_h, span);
+        while (t < span) {
+            boolean forced = m_maxEvaluations - evaluations < 2 * attemptCost();
+            boolean end = forced || h >= span - t;
+            if (end) {
+                h = span - t;
+            }
+            double hs = direction * h;
+            if (!current) {
+                // derivative and jacobian at the start, reused if the step is rejected
+                evaluations += derivatives(m_state, u, m_f0, m_J0);
+                current = true;
+            }
+            step(m_state, m_f0, m_J0, hs, m_full);
+            step(m_state, m_f0, m_J0, hs / 2, m_mid);
+            evaluations += derivatives(m_mid, u, m_f1, m_J1);
+            step(m_mid, m_f1, m_J1, hs / 2, m_half);
+            double error = error();
+            if (error <= m_maxError || forced) {
+                m_state.assign(m_half);
+                current = false;
+                t = end ? span : t + h;
+                m_lastError = Math.max(m_lastError, error);
+                h *= factor(error);
+                if (!end)
+                    m_h = h;
+            } else {
+                h *= factor(error);
+            }
+        }
+        result.assign(m_state);
+        return evaluations;
+    }
+
+    @Override
+    public double getLastError() {
+        return m_lastError;
+    }
+
+    /** Evaluations for one attempt: derivatives at the start and the midpoint. */
+    private int attemptCost() {
+        return 2 * (m_n + 1);
+    }
+
+    /**
+     * f and its jacobian (forward differences) at xs.
+     *
+     * @return evaluations used
+     */
+    private int derivatives(RandomVector<States> xs, Matrix<Inputs, N1> u, RandomVector<States> f, double[] J) {
+        m_plant.fInto(xs, u, f);
+        double[] f0 = f.x.getData();
+        for (int col = 0; col < m_n; ++col) {
+            m_perturbed.assign(xs);
+            m_perturbed.x.getData()[col] += kEpsilon;
+            m_plant.fInto(m_perturbed, u, m_fp);
+            double[] fp = m_fp.x.getData();
+            for (int row = 0; row < m_n; ++row) {
+                J[row * m_n + col] = (fp[row] - f0[row]) / kEpsilon;
+            }
+        }
+        return m_n + 1;
+    }
+
+    /** out = xs + h M f, K = K + h^2 M Kf M^T, M = (I - hJ)^-1. */
+    private void step(RandomVector<States> xs, RandomVector<States> f, double[] J, double h, RandomVector<States> out) {
+        for (int i = 0; i < m_n * m_n; ++i) {
+            m_IhJ[i] = -h * J[i];
+        }
+        for (int i = 0; i < m_n; ++i) {
+            m_IhJ[i * m_n + i] += 1;
+        }
+        MatrixKernels.inv(m_IhJ, m_M, m_n, m_work);
+        MatrixKernels.multVector(m_M, f.x.getData(), m_dx, m_n);
+        for (int i = 0; i < m_n; ++i) {
+            m_v[i] = h * m_dx[i];
+        }
+        xs.xplusInto(m_v, out.x.getData());
+        MatrixKernels.mult(m_M, f.Kxx.getData(), m_t1, m_n);
+        MatrixKernels.multTransB(m_t1, m_M, m_t2, m_n);
+        MatrixKernels.plusScaled(xs.Kxx.getData(), m_t2, h * h, out.Kxx.getData());
+    }
+
+    /** Max abs difference between one full step and two half steps. */
+    private double error() {
+        m_half.xminusInto(m_full.x.getData(), m_v);
+        double max = 0;
+        for (int i = 0; i < m_n; ++i) {
+            max = Math.max(max, Math.abs(m_v[i]));
+        }
+        return max;
+    }
+
+    /** First-order method, so the local error goes with h^2. */
+    private double factor(double error) {
+        if (error == 0)
+            return kMaxFactor;
+        double f = kSafety * Math.sqrt(m_maxError / error);
+        return Math.max(kMinFactor, Math.min(kMaxFactor, f));
+    }
+
+    private void scratch(RandomVector<States> x) {
+        if (m_f0 == null) {
+            // xdot is euclidean
+            m_f0 = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+            m_f1 = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+            m_fp = new RandomVector<>(x.x.copy(), x.Kxx.copy());
+        }
+        if (m_state != null && m_state.getClass() == x.getClass())
+            return;
+        // states need the same wrapping as x, which can change from call to
+        // call, e.g. plain and angular.
+        m_state = x.copy();
+        m_perturbed = x.copy();
+        m_full = x.copy();
+        m_mid = x.copy();
+        m_half = x.copy();
+    }
+}
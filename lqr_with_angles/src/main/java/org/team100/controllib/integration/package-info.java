@@ -0,0 +1,24 @@
+package org.team100.controllib.integration;
+
+/**
+ * Integrators for the plant dynamics, used by ExtrapolatingEstimator.
+ * 
+ * Replay integrates over spans from microseconds to hundreds of milliseconds,
+ * so one method doesn't fit all plants:
+ * 
+ * RungeKutta4: one fixed step, the default, cheap and fine for short spans.
+ * 
+ * RungeKutta45: Dormand-Prince with error control, for long spans on smooth
+ * plants.
+ * 
+ * SemiImplicitEuler: linearly-implicit Euler with error control, for stiff
+ * plants like the friction examples with large coefficients.
+ * 
+ * ExactLinear: the matrix exponential, for plants that really are linear.
+ * 
+ * Each one takes a max error and a max number of evaluations of f: the error
+ * is met unless the evaluation limit is hit first.
+ * 
+ * https://en.wikipedia.org/wiki/Dormand%E2%80%93Prince_method
+ * https://en.wikipedia.org/wiki/Explicit_and_implicit_methods
+ */
@@ -13,8 +13,13 @@ import edu.wpi.first.math.numbers.N1;
 public class Jacobian {
     private static final double kEpsilon = 1e-5;
 
-    // note this is used for both f and h
-    // TODO make a separate version for h
+    /**
+     * Central differences with respect to x, 2n evaluations of f. Perturbs a
+     * single copy of x in place.
+     *
+     * Plants should use NonlinearPlant.jacobianX, which uses the analytic
+     * version if there is one.
+     */
     public static <Rows extends Num, States extends Num, Inputs extends Num, Outputs extends Num> Matrix<Rows, States> numericalJacobianX(
             Nat<Rows> rows,
             Nat<States> states,
@@ -22,17 +27,37 @@ public class Jacobian {
             RandomVector<States> x,
             Matrix<Inputs, N1> u) {
         Matrix<Rows, States> result = new Matrix<>(rows, states);
+        RandomVector<States> dx = x.copy();
+        double[] dxdata = dx.x.getData();
+        // f may return its argument (e.g. identity h) so keep the plus side here
+        double[] plus = new double[rows.getNum()];
         for (int i = 0; i < states.getNum(); i++) {
-            RandomVector<States> dxPlus = x.copy();
-            RandomVector<States> dxMinus = x.copy();
-            dxPlus.x.set(i, 0, dxPlus.x.get(i, 0) + kEpsilon);
-            dxMinus.x.set(i, 0, dxMinus.x.get(i, 0) - kEpsilon);
-            var dF = f.apply(dxPlus, u).x.minus(f.apply(dxMinus, u).x).div(2 * kEpsilon);
-            result.setColumn(i, Matrix.changeBoundsUnchecked(dF));
+            double xi = dxdata[i];
+            dxdata[i] = xi + kEpsilon;
+            System.arraycopy(f.apply(dx, u).x.getData(), 0, plus, 0, plus.length);
+            dxdata[i] = xi - kEpsilon;
+            double[] minus = f.apply(dx, u).x.getData();
+            for (int row = 0; row < plus.length; ++row) {
+                result.set(row, i, (plus[row] - minus[row]) / (2 * kEpsilon));
+            }
+            dxdata[i] = xi;
         }
         return result;
     }
 
+    /**
+     * Measurement jacobian, dh/dx, by central differences. Costs 2n evaluations
+     * of h, not f.
+     */
+    public static <States extends Num, Inputs extends Num, Outputs extends Num> Matrix<Outputs, States> numericalJacobianH(
+            Nat<Outputs> outputs,
+            Nat<States> states,
+            BiFunction<RandomVector<States>, Matrix<Inputs, N1>, RandomVector<Outputs>> h,
+            RandomVector<States> x,
+            Matrix<Inputs, N1> u) {
+        return numericalJacobianX(outputs, states, h, x, u);
+    }
+
     public static <Rows extends Num, States extends Num, Inputs extends Num> Matrix<Rows, Inputs> numericalJacobianU(
             Nat<Rows> rows,
             Nat<Inputs> inputs,
@@ -0,0 +1,433 @@
+package org.team100.controllib.math;
+
+/**
+ * Allocation-free kernels for the small square matrices we use (N1, N2, N3),
+ * operating directly on row-major storage, i.e. Matrix.getData().
+ *
+ * The WPILib Matrix operations each allocate a new EJML matrix, which is fine
+ * for setup but makes dozens of objects per RK4 step. These write into
+ * caller-supplied arrays instead. Inversion and determinant are closed-form up
+ * to 3x3, and use Gauss-Jordan in a caller-supplied work array above that.
+ *
+ * Unless noted, outputs must not alias inputs.
+ */
+public class MatrixKernels {
+
+    /** out = a + b, n elements. Aliasing is fine. */
+    public static void plus(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = a[i] + b[i];
+        }
+    }
+
+    /** out = a + d * b. Aliasing is fine. */
+    public static void plusScaled(double[] a, double[] b, double d, double[] out) {
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = a[i] + d * b[i];
+        }
+    }
+
+    /** out = a * b for n x n matrices. */
+    public static void mult(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                double sum = 0;
+                for (int k = 0; k < n; ++k) {
+                    sum += a[i * n + k] * b[k * n + j];
+                }
+                out[i * n + j] = sum;
+            }
+        }
+    }
+
+    /** out = a * transpose(b) for n x n matrices. */
+    public static void multTransB(double[] a, double[] b, double[] out, int n) {
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                double sum = 0;
+                for (int k = 0; k < n; ++k) {
+                    sum += a[i * n + k] * b[j * n + k];
+                }
+                out[i * n + j] = sum;
+            }
+        }
+    }
+
+    /** out = a * v for n x n matrix a and n-vector v. */
+    public static void multVector(double[] a, double[] v, double[] out, int n) {
+        for (int i = 0; i < n; ++i) {
+            double sum = 0;
+            for (int k = 0; k < n; ++k) {
+                sum += a[i * n + k] * v[k];
+            }
+            out[i] = sum;
+        }
+    }
+
+    /**
+     * Determinant of an n x n matrix.
+     *
+     * @param work scratch of at least n*n, only used for n > 3.
+     */
+    public static double det(double[] a, int n, double[] work) {
+        switch (n) {
+            case 1:
+                return a[0];
+            case 2:
+                return a[0] * a[3] - a[1] * a[2];
+            case 3:
+                return a[0] * (a[4] * a[8] - a[5] * a[7])
+                        - a[1] * (a[3] * a[8] - a[5] * a[6])
+                        + a[2] * (a[3] * a[7] - a[4] * a[6]);
+            default:
+                System.arraycopy(a, 0, work, 0, n * n);
+                double det = 1;
+                for (int c = 0; c < n; ++c) {
+                    int p = pivot(work, n, c);
+                    if (work[p * n + c] == 0)
+                        return 0;
+                    if (p != c) {
+                        swapRows(work, n, p, c);
+                        det = -det;
+                    }
+                    double pv = work[c * n + c];
+                    det *= pv;
+                    for (int r = c + 1; r < n; ++r) {
+                        double f = work[r * n + c] / pv;
+                        for (int k = c; k < n; ++k) {
+                            work[r * n + k] -= f * work[c * n + k];
+                        }
+                    }
+                }
+                return det;
+        }
+    }
+
+    /**
+     * out = inverse(a) for an n x n matrix.
+     *
+     * @param work scratch of at least n*n, only used for n > 3.
+     * @throws IllegalArgumentException if a is singular
+     */
+    public static void inv(double[] a, double[] out, int n, double[] work) {
+        switch (n) {
+            case 1: {
+                if (a[0] == 0)
+                    throw new IllegalArgumentException("singular");
+                out[0] = 1.0 / a[0];
+                return;
+            }
+            case 2: {
+                double det = det(a, 2, work);
+                if (det == 0)
+                    throw new IllegalArgumentException("singular");
+                double s = 1.0 / det;
+                double a0 = a[0];
+                out[0] = a[3] * s;
+                out[1] = -a[1] * s;
+                out[2] = -a[2] * s;
+                out[3] = a0 * s;
+                return;
+            }
+            case 3: {
+                double det = det(a, 3, work);
+                if (det == 0)
+                    throw new IllegalArgumentException("singular");
+                double s = 1.0 / det;
+                out[0] = (a[4] * a[8] - a[5] * a[7]) * s;
+                out[1] = (a[2] * a[7] - a[1] * a[8]) * s;
+                out[2] = (a[1] * a[5] - a[2] * a[4]) * s;
+                out[3] = (a[5] * a[6] - a[3] * a[8]) * s;
+                out[4] = (a[0] * a[8] - a[2] * a[6]) * s;
+                out[5] = (a[2] * a[3] - a[0] * a[5]) * s;
+                out[6] = (a[3] * a[7] - a[4] * a[6]) * s;
+                out[7] = (a[1] * a[6] - a[0] * a[7]) * s;
+                out[8] = (a[0] * a[4] - a[1] * a[3]) * s;
+                return;
+            }
+            default: {
+                // Gauss-Jordan with partial pivoting
+                System.arraycopy(a, 0, work, 0, n * n);
+                for (int i = 0; i < n * n; ++i) {
+                    out[i] = 0;
+                }
+                for (int i = 0; i < n; ++i) {
+                    out[i * n + i] = 1;
+                }
+                for (int c = 0; c < n; ++c) {
+                    int p = pivot(work, n, c);
+                    if (work[p * n + c] == 0)
+                        throw new IllegalArgumentException("singular");
+                    swapRows(work, n, p, c);
+                    swapRows(out, n, p, c);
+                    double pv = work[c * n + c];
+                    for (int k = 0; k < n; ++k) {
+                        work[c * n + k] /= pv;
+                        out[c * n + k] /= pv;
+                    }
+                    for (int r = 0; r < n; ++r) {
+                        if (r == c)
+                            continue;
+                        double f = work[r * n + c];
+                        for (int k = 0; k < n; ++k) {
+                            work[r * n + k] -= f * work[c * n + k];
+                            out[r * n + k] -= f * out[c * n + k];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * out = exp(a) for an n x n matrix, by scaling and squaring with a Taylor
+     * series, accurate to roundoff.
+     *
+     * @param work scratch of at least 2*n*n
+     */
+    public static void expm(double[] a, double[] out, int n, double[] work) {
+        int nn = n * n;
+        // scale so the norm is at most 1/2
+        double norm = 0;
+        for (int i = 0; i < n; ++i) {
+            double row = 0;
+            for (int j = 0; j < n; ++j) {
+                row += Math.abs(a[i * n + j]);
+            }
+            norm = Math.max(norm, row);
+        }
+        int squarings = 0;
+        double scale = 1;
+        while (norm * scale > 0.5) {
+            scale *= 0.5;
+            ++squarings;
+        }
+        // term and product share the work array
+        int term = 0;
+        int product = nn;
+        for (int i = 0; i < nn; ++i) {
+            out[i] = 0;
+            work[term + i] = 0;
+        }
+        for (int i = 0; i < n; ++i) {
+            out[i * n + i] = 1;
+            work[term + i * n + i] = 1;
+        }
+        for (int k = 1; k < 30; ++k) {
+            // term = term * a * scale / k
+            double max = 0;
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < n; ++j) {
+                    double sum = 0;
+                    for (int m = 0; m < n; ++m) {
+                        sum += work[term + i * n + m] * a[m * n + j];
+                    }
+                    work[product + i * n + j] = sum * scale / k;
+                }
+            }
+            for (int i = 0; i < nn; ++i) {
+                double t = work[product + i];
+                work[term + i] = t;
+                out[i] += t;
+                max = Math.max(max, Math.abs(t));
+            }
+            if (max < 1e-18)
+                break;
+        }
+        for (int s = 0; s < squarings; ++s) {
+            mult(out, out, work, n);
+            System.arraycopy(work, 0, out, 0, nn);
+        }
+    }
+
+    /** True if a is the identity within the tolerance. */
+    public static boolean isIdentity(double[] a, int n, double tol) {
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                double expected = i == j ? 1 : 0;
+                if (Math.abs(a[i * n + j] - expected) > tol)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /** True if a is symmetric, relative to the larger of each pair. */
+    public static boolean isSymmetric(double[] a, int n, double tol) {
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < i; ++j) {
+                double x = a[i * n + j];
+                double y = a[j * n + i];
+                double max = Math.max(Math.abs(x), Math.abs(y));
+                if (max > 0 && Math.abs(x - y) / max > tol)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * True if the symmetric matrix a is positive definite, using Cholesky.
+     *
+     * @param work scratch of at least n*n
+     */
+    public static boolean isPositiveDefinite(double[] a, int n, double[] work) {
+        return cholesky(a, work, n);
+    }
+
+    /**
+     * Lower-triangular out such that out * transpose(out) = a, for symmetric
+     * positive definite a. Only the lower triangle of a is read. Unlike the
+     * determinant, this doesn't care about scale, so 1e-9 and 1e9 variances are
+     * both fine.
+     *
+     * @return false if a is not positive definite, leaving out partly written.
+     */
+    public static boolean cholesky(double[] a, double[] out, int n) {
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                double sum = a[i * n + j];
+                for (int k = 0; k < j; ++k) {
+                    sum -= out[i * n + k] * out[j * n + k];
+                }
+                if (i == j) {
+                    // also catches NaN
+                    if (!(sum > 0))
+                        return false;
+                    out[i * n + i] = Math.sqrt(sum);
+                } else {
+                    out[i * n + j] = sum / out[j * n + j];
+                }
+            }
+            for (int j = i + 1; j < n; ++j) {
+                out[i * n + j] = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * out = inverse(l * transpose(l)), given the factor l from cholesky(). The
+     * result is exactly symmetric.
+     *
+     * @param work scratch of at least n*n
+     */
+    public static void choleskyInverse(double[] l, double[] out, int n, double[] work) {
+        // work = inverse(l), by forward substitution, one column at a time
+        for (int j = 0; j < n; ++j) {
+            for (int i = 0; i < j; ++i) {
+                work[i * n + j] = 0;
+            }
+            work[j * n + j] = 1.0 / l[j * n + j];
+            for (int i = j + 1; i < n; ++i) {
+                double sum = 0;
+                for (int k = j; k < i; ++k) {
+                    sum += l[i * n + k] * work[k * n + j];
+                }
+                work[i * n + j] = -sum / l[i * n + i];
+            }
+        }
+        // out = transpose(work) * work
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                double sum = 0;
+                for (int k = i; k < n; ++k) {
+                    sum += work[k * n + i] * work[k * n + j];
+                }
+                out[i * n + j] = sum;
+                out[j * n + i] = sum;
+            }
+        }
+    }
+
+    /** out = l * transpose(l) for lower-triangular l. The result is exactly symmetric. */
+    public static void multLowerTransposeSelf(double[] l, double[] out, int n) {
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                double sum = 0;
+                for (int k = 0; k <= j; ++k) {
+                    sum += l[i * n + k] * l[j * n + k];
+                }
+                out[i * n + j] = sum;
+                out[j * n + i] = sum;
+            }
+        }
+    }
+
+    /**
+     * Lower-triangular out (n x n) with a non-negative diagonal such that
+     * out * transpose(out) = a * transpose(a), for a wide n x m matrix a, m >= n.
+     * This is how to add covariances in square-root form: put the factors side by
+     * side and triangularize, i.e. the transpose of a QR, using Householder
+     * reflections from the right.
+     *
+     * @param work scratch of at least n*m + m
+     */
+    public static void triangularize(double[] a, double[] out, int n, int m, double[] work) {
+        if (m < n)
+            throw new IllegalArgumentException("need at least as many columns as rows: " + n + " " + m);
+        System.arraycopy(a, 0, work, 0, n * m);
+        int v = n * m;
+        for (int i = 0; i < n; ++i) {
+            double norm = 0;
+            for (int c = i; c < m; ++c) {
+                norm += work[i * m + c] * work[i * m + c];
+            }
+            if (norm == 0)
+                continue;
+            norm = Math.sqrt(norm);
+            // reflect row i onto alpha * e_i, choosing the sign that avoids cancellation
+            double alpha = work[i * m + i] > 0 ? -norm : norm;
+            double vv = 0;
+            for (int c = i; c < m; ++c) {
+                work[v + c] = work[i * m + c];
+            }
+            work[v + i] -= alpha;
+            for (int c = i; c < m; ++c) {
+                vv += work[v + c] * work[v + c];
+            }
+            for (int r = i; r < n; ++r) {
+                double s = 0;
+                for (int c = i; c < m; ++c) {
+                    s += work[r * m + c] * work[v + c];
+                }
+                double f = 2 * s / vv;
+                for (int c = i; c < m; ++c) {
+                    work[r * m + c] -= f * work[v + c];
+                }
+            }
+        }
+        for (int r = 0; r < n; ++r) {
+            for (int c = 0; c < n; ++c) {
+                out[r * n + c] = c <= r ? work[r * m + c] : 0;
+            }
+        }
+        // flipping the sign of a column doesn't change out * transpose(out)
+        for (int c = 0; c < n; ++c) {
+            if (out[c * n + c] < 0) {
+                for (int r = c; r < n; ++r) {
+                    out[r * n + c] = -out[r * n + c];
+                }
+            }
+        }
+    }
+
+    private static int pivot(double[] a, int n, int c) {
+        int p = c;
+        for (int r = c + 1; r < n; ++r) {
+            if (Math.abs(a[r * n + c]) > Math.abs(a[p * n + c]))
+                p = r;
+        }
+        return p;
+    }
+
+    private static void swapRows(double[] a, int n, int r1, int r2) {
+        if (r1 == r2)
+            return;
+        for (int k = 0; k < n; ++k) {
+            double t = a[r1 * n + k];
+            a[r1 * n + k] = a[r2 * n + k];
+            a[r2 * n + k] = t;
+        }
+    }
+}
@@ -105,6 +105,49 @@ public class RandomVector<States extends Num> {
         return make(x.times(d), Kxx.times(d * d));
     }
 
+    /**
+     * In-place copy of the other value into this one.
+     * 
+     * The in-place methods write into the existing x and Kxx storage, so they
+     * don't allocate; don't use them on a vector someone else is holding.
+     */
+    public void assign(RandomVector<States> other) {
+        System.arraycopy(other.x.getData(), 0, x.getData(), 0, x.getData().length);
+        Kxx.assign(other.Kxx);
+    }
+
+    /**
+     * In-place this = a + d * b, same as a.plus(b.times(d)): the covariance uses
+     * d squared. Aliasing is fine. The result is wrapped according to the type of
+     * this, so use a vector of the same type as a.
+     */
+    public void assignPlusScaled(RandomVector<States> a, RandomVector<States> b, double d) {
+        MatrixKernels.plusScaled(a.x.getData(), b.x.getData(), d, x.getData());
+        Kxx.assignPlusScaled(a.Kxx, b.Kxx, d * d);
+        wrap(x.getData());
+    }
+
+    /** In-place out = x - other, same as xminus. */
+    public void xminusInto(double[] other, double[] out) {
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = x.getData()[i] - other[i];
+        }
+        wrap(out);
+    }
+
+    /** In-place out = x + other, same as xplus. */
+    public void xplusInto(double[] other, double[] out) {
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = x.getData()[i] + other[i];
+        }
+        wrap(out);
+    }
+
+    /** Fix up non-Euclidean rows after in-place arithmetic. Euclidean does nothing. */
+    protected void wrap(double[] xdata) {
+        //
+    }
+
     @Override
     public String toString() {
         return "RandomVector [x=" + x + ", P=" + Kxx + "]";
@@ -74,6 +74,16 @@ public class Variance<Dim extends Num> {
         return new Variance<>(value.times(other.value));
     }
 
+    /** In-place copy of the other value into this one. */
+    public void assign(Variance<Dim> other) {
+        System.arraycopy(other.value.getData(), 0, value.getData(), 0, value.getData().length);
+    }
+
+    /** In-place this = a + d * b. Aliasing is fine. */
+    public void assignPlusScaled(Variance<Dim> a, Variance<Dim> b, double d) {
+        MatrixKernels.plusScaled(a.value.getData(), b.value.getData(), d, value.getData());
+    }
+
     // for testing
     public double[] getData() {
         return value.getData();
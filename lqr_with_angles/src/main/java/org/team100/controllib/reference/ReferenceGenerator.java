@@ -17,6 +17,9 @@ package org.team100.controllib.reference;
  * Manual partial-state control, e.g. supplying velocity, uses the estimator to
  * supplement the input.
  * 
+ * For goals that change every tick, see OnlineJerkLimitedReference1D, which
+ * doesn't regenerate anything, it just chooses the next setpoint.
+ * 
  * This is inspired by 254's SetpointGenerator and SwerveSetpointGenerator.
  */
 public class ReferenceGenerator {
@@ -0,0 +1,144 @@
+package org.team100.controllib.reference;
+
+import java.util.List;
+
+import org.team100.lib.profile.MotionProfile;
+import org.team100.lib.profile.MotionProfileGenerator;
+import org.team100.lib.profile.MotionSegment;
+import org.team100.lib.profile.MotionState;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * Rest-to-rest move of several axes at once, e.g. the joints of an arm, that
+ * all start and finish together.
+ *
+ * The axes move in a straight line in joint space, x_i = start_i + s * delta_i,
+ * following a single jerk-limited profile for s, from 0 to 1. The limits for s
+ * are the tightest of the axis limits divided by the axis distances, so no
+ * axis exceeds its limits. Usually the axis with the longest unconstrained
+ * duration sets the time and the others are slowed down to match; if the
+ * tightest velocity, accel, and jerk limits come from different axes, the move
+ * can take a little longer than any one axis would alone. That's one profile
+ * generation for any number of axes, and no rescaling afterwards.
+ *
+ * The state is position and velocity for each axis in turn:
+ *
+ * [x0, v0, x1, v1, ...]
+ *
+ * so States must be twice the number of axes.
+ */
+public class SynchronizedReference<States extends Num> implements Reference<States> {
+    private final Nat<States> m_states;
+    private final int m_axes;
+    private final double[] m_start;
+    private final double[] m_delta;
+    private final MotionProfile m_profile;
+    private final MotionProfile.Cursor m_cursor;
+
+    /**
+     * @param start    position of each axis
+     * @param goal     position of each axis
+     * @param maxVel   limit for each axis
+     * @param maxAccel limit for each axis
+     * @param maxJerk  limit for each axis
+     */
+    public SynchronizedReference(
+            Nat<States> states,
+            double[] start,
+            double[] goal,
+            double[] maxVel,
+            double[] maxAccel,
+            double[] maxJerk) {
+        m_axes = start.length;
+        if (states.getNum() != 2 * m_axes)
+            throw new IllegalArgumentException("need two states per axis: " + states.getNum() + " " + m_axes);
+        if (goal.length != m_axes || maxVel.length != m_axes || maxAccel.length != m_axes
+                || maxJerk.length != m_axes)
+            throw new IllegalArgumentException("need one value per axis: " + m_axes);
+        m_states = states;
+        m_start = start.clone();
+        m_delta = new double[m_axes];
+        double vel = Double.POSITIVE_INFINITY;
+        double accel = Double.POSITIVE_INFINITY;
+        double jerk = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < m_axes; ++i) {
+            if (!(maxVel[i] > 0 && maxAccel[i] > 0 && maxJerk[i] > 0))
+                throw new IllegalArgumentException("limits must be positive, axis " + i);
+            m_delta[i] = goal[i] - start[i];
+            double d = Math.abs(m_delta[i]);
+            if (d == 0)
+                continue;
+            vel = Math.min(vel, maxVel[i] / d);
+            accel = Math.min(accel, maxAccel[i] / d);
+            jerk = Math.min(jerk, maxJerk[i] / d);
+        }
+        if (Double.isInfinite(vel)) {
+            // nothing moves, so it's already done
+            m_profile = new MotionProfile(List.of(new MotionSegment(new MotionState(1, 0, 0), 0)));
+        } else {
+            m_profile = MotionProfileGenerator.generateSimpleMotionProfile(
+                    new MotionState(0, 0, 0), new MotionState(1, 0, 0), vel, accel, jerk);
+        }
+        m_cursor = m_profile.cursor();
+    }
+
+    public int getAxes() {
+        return m_axes;
+    }
+
+    /** All the axes arrive at this time. */
+    public double duration() {
+        return m_profile.duration();
+    }
+
+    /**
+     * All the axes at once, into arrays with one element per axis. Any of them
+     * can be null.
+     */
+    public void sample(double tSec, double[] x, double[] v, double[] a) {
+        m_cursor.sample(tSec);
+        double s = m_cursor.getX();
+        double sdot = m_cursor.getV();
+        double sddot = m_cursor.getA();
+        for (int i = 0; i < m_axes; ++i) {
+            if (x != null)
+                x[i] = m_start[i] + s * m_delta[i];
+            if (v != null)
+                v[i] = sdot * m_delta[i];
+            if (a != null)
+                a[i] = sddot * m_delta[i];
+        }
+    }
+
+    @Override
+    public Matrix<States, N1> getR(double tSec) {
+        Matrix<States, N1> r = new Matrix<>(m_states, Nat.N1());
+        m_cursor.sample(tSec);
+        double s = m_cursor.getX();
+        double sdot = m_cursor.getV();
+        double[] data = r.getData();
+        for (int i = 0; i < m_axes; ++i) {
+            data[2 * i] = m_start[i] + s * m_delta[i];
+            data[2 * i + 1] = sdot * m_delta[i];
+        }
+        return r;
+    }
+
+    @Override
+    public Matrix<States, N1> getRDot(double tSec) {
+        Matrix<States, N1> rdot = new Matrix<>(m_states, Nat.N1());
+        m_cursor.sample(tSec);
+        double sdot = m_cursor.getV();
+        double sddot = m_cursor.getA();
+        double[] data = rdot.getData();
+        for (int i = 0; i < m_axes; ++i) {
+            data[2 * i] = sdot * m_delta[i];
+            data[2 * i + 1] = sddot * m_delta[i];
+        }
+        return rdot;
+    }
+}
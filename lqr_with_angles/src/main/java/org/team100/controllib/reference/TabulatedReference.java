@@ -0,0 +1,127 @@
+package org.team100.controllib.reference;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.Num;
+import edu.wpi.first.math.numbers.N1;
+
+/**
+ * Samples another reference onto a uniform time grid up front, and answers
+ * from the table, so an expensive reference (e.g. profile-backed) costs the
+ * same as a cheap one at runtime.
+ *
+ * R is interpolated with cubic Hermite splines, using RDot as the slope, so
+ * it's exact for anything up to cubic between grid points. RDot uses slopes
+ * from central differences of the RDot table (Catmull-Rom), since the second
+ * derivative isn't available.
+ *
+ * Outside the grid, the end values are used.
+ *
+ * getR and getRDot allocate only the returned matrix; use getRInto and
+ * getRDotInto to avoid that.
+ */
+public class TabulatedReference<States extends Num> implements Reference<States> {
+    private final Nat<States> m_states;
+    private final int m_n;
+    private final double m_start;
+    private final double m_dt;
+    private final int m_points;
+    // row-major, one row of n per point
+    private final double[] m_r;
+    private final double[] m_rdot;
+    private final double[] m_rddot;
+
+    /**
+     * @param reference sampled only here
+     * @param start     first grid time
+     * @param end       last grid time
+     * @param dt        grid spacing, adjusted down to fit the span exactly
+     */
+    public TabulatedReference(
+            Nat<States> states,
+            Reference<States> reference,
+            double start,
+            double end,
+            double dt) {
+        if (!(end > start))
+            throw new IllegalArgumentException("end must be after start: " + start + " " + end);
+        if (!(dt > 0))
+            throw new IllegalArgumentException("dt must be positive: " + dt);
+        m_states = states;
+        m_n = states.getNum();
+        m_start = start;
+        int intervals = (int) Math.ceil((end - start) / dt);
+        m_points = intervals + 1;
+        m_dt = (end - start) / intervals;
+        m_r = new double[m_points * m_n];
+        m_rdot = new double[m_points * m_n];
+        m_rddot = new double[m_points * m_n];
+        for (int i = 0; i < m_points; ++i) {
+            double t = start + i * m_dt;
+            System.arraycopy(reference.getR(t).getData(), 0, m_r, i * m_n, m_n);
+            System.arraycopy(reference.getRDot(t).getData(), 0, m_rdot, i * m_n, m_n);
+        }
+        for (int i = 0; i < m_points; ++i) {
+            // one-sided at the ends
+            int lo = Math.max(0, i - 1);
+            int hi = Math.min(m_points - 1, i + 1);
+            for (int j = 0; j < m_n; ++j) {
+                m_rddot[i * m_n + j] = (m_rdot[hi * m_n + j] - m_rdot[lo * m_n + j]) / ((hi - lo) * m_dt);
+            }
+        }
+    }
+
+    public int getPoints() {
+        return m_points;
+    }
+
+    @Override
+    public Matrix<States, N1> getR(double tSec) {
+        Matrix<States, N1> r = new Matrix<>(m_states, Nat.N1());
+        getRInto(tSec, r.getData());
+        return r;
+    }
+
+    @Override
+    public Matrix<States, N1> getRDot(double tSec) {
+        Matrix<States, N1> rdot = new Matrix<>(m_states, Nat.N1());
+        getRDotInto(tSec, rdot.getData());
+        return rdot;
+    }
+
+    /** R at this time, into out. */
+    public void getRInto(double tSec, double[] out) {
+        hermite(tSec, m_r, m_rdot, out);
+    }
+
+    /** RDot at this time, into out. */
+    public void getRDotInto(double tSec, double[] out) {
+        hermite(tSec, m_rdot, m_rddot, out);
+    }
+
+    /** Interpolate values y with slopes m. */
+    private void hermite(double tSec, double[] y, double[] m, double[] out) {
+        double position = (tSec - m_start) / m_dt;
+        if (position <= 0) {
+            System.arraycopy(y, 0, out, 0, m_n);
+            return;
+        }
+        if (position >= m_points - 1) {
+            System.arraycopy(y, (m_points - 1) * m_n, out, 0, m_n);
+            return;
+        }
+        int i = (int) position;
+        double s = position - i;
+        double s2 = s * s;
+        double s3 = s2 * s;
+        double h00 = 2 * s3 - 3 * s2 + 1;
+        double h10 = (s3 - 2 * s2 + s) * m_dt;
+        double h01 = -2 * s3 + 3 * s2;
+        double h11 = (s3 - s2) * m_dt;
+        int a = i * m_n;
+        int b = a + m_n;
+        for (int j = 0; j < m_n; ++j) {
+            out[j] = h00 * y[a + j] + h10 * m[a + j] + h01 * y[b + j] + h11 * m[b + j];
+        }
+    }
+}
@@ -21,6 +21,8 @@ public class JerkLimitedProfileReference1D extends Reference1D {
     private final MotionState start;
     private final MotionState goal;
     private final MotionProfile profile;
+    // getR and getRDot ask for each derivative separately, at the same time
+    private final MotionProfile.Cursor cursor;
 
     public JerkLimitedProfileReference1D() {
         start = new MotionState(0, 0, 0);
@@ -31,23 +33,21 @@ public class JerkLimitedProfileReference1D extends Reference1D {
                 maxVel,
                 maxAccel,
                 maxJerk);
+        cursor = profile.cursor();
     }
 
     @Override
     public double position(double timeSec) {
-        MotionState s = profile.get(timeSec);
-        return s.getX();
+        return cursor.sample(timeSec).getX();
     }
 
     @Override
     public double velocity(double timeSec) {
-        MotionState s = profile.get(timeSec);
-        return s.getV();
+        return cursor.sample(timeSec).getV();
     }
 
     @Override
     public double acceleration(double timeSec) {
-        MotionState s = profile.get(timeSec);
-        return s.getA();
+        return cursor.sample(timeSec).getA();
     }
 }
@@ -0,0 +1,323 @@
+package org.team100.controllib.reference.examples;
+
+import org.team100.lib.profile.MotionState;
+
+/**
+ * Jerk-limited reference that works one tick at a time, so the goal can change
+ * every tick, e.g. from a joystick, without generating a whole profile.
+ *
+ * Each tick chooses a constant jerk for the next dt, from the current state
+ * and the goal, and integrates exactly. The choice is: head for the velocity
+ * limit (in the direction of the goal), unless that would make it impossible
+ * to stop at the goal; in that case, find the jerk (by bisection) that makes
+ * the braking maneuver end exactly at the goal. Braking is the usual
+ * jerk-limited stop (ramp down, hold, ramp up), computed in closed form, so a
+ * tick costs a few dozen polynomial evaluations and no allocation.
+ *
+ * The goal can move: goal velocity is handled by working relative to the goal,
+ * which is extrapolated at constant velocity. Goal acceleration is ignored.
+ *
+ * A new goal takes effect at the time it's given: setGoal() first commits the
+ * ticks up to that time, toward the old goal, so a goal set after a pause, or
+ * before the first sample at FPGA time, isn't back-dated.
+ *
+ * When the state is within one tick's worth of jerk of the goal, the tick
+ * zeroes the accel and ends exactly at the goal, to avoid chattering around it.
+ *
+ * Sampling commits whole ticks forward; times within a tick (or before the
+ * current one) use the jerk for the current tick. Repeated samples at the same
+ * time (e.g. getR and getRDot) are free. Once settled at the goal, the state
+ * just follows the goal, so a long gap, e.g. the first sample at FPGA time,
+ * jumps straight there instead of stepping through every tick.
+ */
+public class OnlineJerkLimitedReference1D extends Reference1D {
+    private static final boolean debug = false;
+    private static final int kBisections = 50;
+
+    private final double m_maxVel;
+    private final double m_maxAccel;
+    private final double m_maxJerk;
+    private final double m_dtSec;
+
+    // committed state at m_time
+    private double m_time;
+    private double m_x;
+    private double m_v;
+    private double m_a;
+    // jerk for the tick starting at m_time
+    private double m_j;
+    private boolean m_planned;
+    // this tick ends exactly at the goal
+    private boolean m_settling;
+
+    // goal position at m_time, and its velocity
+    private double m_goalX;
+    private double m_goalV;
+
+    // last sample
+    private double m_sampleTime = Double.NaN;
+    private double m_sampleX;
+    private double m_sampleV;
+    private double m_sampleA;
+
+    /** Starts at time zero, with the goal at the initial state. */
+    public OnlineJerkLimitedReference1D(
+            MotionState initial,
+            double maxVel,
+            double maxAccel,
+            double maxJerk,
+            double dtSec) {
+        if (maxVel <= 0 || maxAccel <= 0 || maxJerk <= 0)
+            throw new IllegalArgumentException("limits must be positive: " + maxVel + " " + maxAccel + " " + maxJerk);
+        if (dtSec <= 0)
+            throw new IllegalArgumentException("dt must be positive: " + dtSec);
+        m_maxVel = maxVel;
+        m_maxAccel = maxAccel;
+        m_maxJerk = maxJerk;
+        m_dtSec = dtSec;
+        m_x = initial.getX();
+        m_v = initial.getV();
+        m_a = initial.getA();
+        m_goalX = m_x;
+        m_goalV = 0;
+    }
+
+    /**
+     * Sets the goal as of timeSec, which should be the current time. Only
+     * position and velocity are used. Call this as often as you like; nothing is
+     * precomputed.
+     */
+    public void setGoal(double timeSec, MotionState goal) {
+        catchUp(timeSec);
+        // the goal is kept as of the start of the tick
+        m_goalX = goal.getX() - goal.getV() * (timeSec - m_time);
+        m_goalV = goal.getV();
+        m_planned = false;
+        m_sampleTime = Double.NaN;
+    }
+
+    /** The committed state, i.e. at the start of the current tick. */
+    public MotionState getState() {
+        plan();
+        return new MotionState(m_x, m_v, m_a, m_j);
+    }
+
+    /** Start time of the current tick. */
+    public double getTime() {
+        return m_time;
+    }
+
+    @Override
+    public double position(double timeSec) {
+        sample(timeSec);
+        return m_sampleX;
+    }
+
+    @Override
+    public double velocity(double timeSec) {
+        sample(timeSec);
+        return m_sampleV;
+    }
+
+    @Override
+    public double acceleration(double timeSec) {
+        sample(timeSec);
+        return m_sampleA;
+    }
+
+    private void sample(double timeSec) {
+        if (timeSec == m_sampleTime)
+            return;
+        catchUp(timeSec);
+        plan();
+        double t = timeSec - m_time;
+        m_sampleTime = timeSec;
+        m_sampleX = m_x + m_v * t + m_a * t * t / 2 + m_j * t * t * t / 6;
+        m_sampleV = m_v + m_a * t + m_j * t * t / 2;
+        m_sampleA = m_a + m_j * t;
+    }
+
+    /** Commit the ticks that end at or before timeSec. */
+    private void catchUp(double timeSec) {
+        while (timeSec >= m_time + m_dtSec) {
+            if (settled()) {
+                // at least one, in case rounding makes the floor short
+                jump(Math.max(1, Math.floor((timeSec - m_time) / m_dtSec)));
+                continue;
+            }
+            advance();
+        }
+    }
+
+    /** Commit one tick. */
+    private void advance() {
+        plan();
+        double t = m_dtSec;
+        m_x += m_v * t + m_a * t * t / 2 + m_j * t * t * t / 6;
+        m_v += m_a * t + m_j * t * t / 2;
+        m_a += m_j * t;
+        m_goalX += m_goalV * t;
+        m_time += t;
+        m_planned = false;
+        if (m_settling) {
+            // accel is already zero, so this jump is tiny
+            m_x = m_goalX;
+            m_v = m_goalV;
+            m_a = 0;
+        }
+    }
+
+    /** At the goal, with nothing left to do but follow it. */
+    private boolean settled() {
+        return m_x == m_goalX && m_v == m_goalV && m_a == 0;
+    }
+
+    /** Commit this many ticks at once, following the goal. */
+    private void jump(double ticks) {
+        double t = ticks * m_dtSec;
+        m_goalX += m_goalV * t;
+        m_x = m_goalX;
+        m_time += t;
+        m_planned = false;
+    }
+
+    /** Choose the jerk for the current tick, if it hasn't been chosen yet. */
+    private void plan() {
+        if (m_planned)
+            return;
+        m_planned = true;
+        // relative to the goal, which is at rest at zero
+        double x = m_x - m_goalX;
+        double v = m_v - m_goalV;
+        double a = m_a;
+        double dt = m_dtSec;
+        double J = m_maxJerk;
+        m_settling = Math.abs(x) <= J * dt * dt * dt
+                && Math.abs(v) <= J * dt * dt
+                && Math.abs(a) <= J * dt;
+        if (m_settling) {
+            m_j = -a / dt;
+            return;
+        }
+        // respect the accel limit at the end of the tick
+        double lo = Math.max(-m_maxJerk, (-m_maxAccel - a) / dt);
+        double hi = Math.min(m_maxJerk, (m_maxAccel - a) / dt);
+        if (lo > hi) {
+            // outside the accel limit, get back as fast as possible
+            m_j = a > 0 ? -m_maxJerk : m_maxJerk;
+            return;
+        }
+        double stop = stop(x, v, a);
+        if (stop < 0) {
+            // goal is ahead
+            double cruise = toward(v, a, m_maxVel - m_goalV, lo, hi);
+            if (stopAfter(x, v, a, cruise) <= 0) {
+                m_j = cruise;
+            } else if (stopAfter(x, v, a, lo) > 0) {
+                m_j = lo;
+            } else {
+                m_j = stopAt(x, v, a, lo, cruise);
+            }
+        } else if (stop > 0) {
+            // goal is behind
+            double cruise = toward(v, a, -m_maxVel - m_goalV, lo, hi);
+            if (stopAfter(x, v, a, cruise) >= 0) {
+                m_j = cruise;
+            } else if (stopAfter(x, v, a, hi) < 0) {
+                m_j = hi;
+            } else {
+                m_j = stopAt(x, v, a, cruise, hi);
+            }
+        } else {
+            m_j = stopAt(x, v, a, lo, hi);
+        }
+        if (debug)
+            System.out.printf("t %5.3f x %8.5f v %8.5f a %8.5f j %8.5f\n", m_time, x, v, a, m_j);
+    }
+
+    /** Jerk in [lo, hi] that makes the velocity, once accel is zeroed, equal to target. */
+    private double toward(double v, double a, double target, double lo, double hi) {
+        if (zeroedVelocityAfter(v, a, lo) >= target)
+            return lo;
+        if (zeroedVelocityAfter(v, a, hi) <= target)
+            return hi;
+        for (int i = 0; i < kBisections; ++i) {
+            double mid = (lo + hi) / 2;
+            if (zeroedVelocityAfter(v, a, mid) > target)
+                hi = mid;
+            else
+                lo = mid;
+        }
+        return (lo + hi) / 2;
+    }
+
+    /** Jerk in [lo, hi] that makes the braking maneuver after this tick end at zero. */
+    private double stopAt(double x, double v, double a, double lo, double hi) {
+        if (stopAfter(x, v, a, lo) > 0)
+            return lo;
+        if (stopAfter(x, v, a, hi) < 0)
+            return hi;
+        for (int i = 0; i < kBisections; ++i) {
+            double mid = (lo + hi) / 2;
+            if (stopAfter(x, v, a, mid) > 0)
+                hi = mid;
+            else
+                lo = mid;
+        }
+        return (lo + hi) / 2;
+    }
+
+    private double zeroedVelocityAfter(double v, double a, double j) {
+        double t = m_dtSec;
+        double v1 = v + a * t + j * t * t / 2;
+        double a1 = a + j * t;
+        return v1 + a1 * Math.abs(a1) / (2 * m_maxJerk);
+    }
+
+    /** Where braking ends, if it starts after one tick of jerk j. */
+    private double stopAfter(double x, double v, double a, double j) {
+        double t = m_dtSec;
+        return stop(
+                x + v * t + a * t * t / 2 + j * t * t * t / 6,
+                v + a * t + j * t * t / 2,
+                a + j * t);
+    }
+
+    /**
+     * Where the fastest jerk-limited stop from this state ends: accel ramps to
+     * -peak, holds, and ramps back to zero just as velocity reaches zero.
+     */
+    private double stop(double x, double v, double a) {
+        double J = m_maxJerk;
+        double A = m_maxAccel;
+        // velocity once the accel is zeroed decides which way to brake
+        double s = Math.signum(v + a * Math.abs(a) / (2 * J));
+        if (s == 0) {
+            double t = Math.abs(a) / J;
+            double j = -Math.signum(a) * J;
+            return x + v * t + a * t * t / 2 + j * t * t * t / 6;
+        }
+        // mirror so braking is negative
+        x *= s;
+        v *= s;
+        a *= s;
+        double peak = Math.sqrt(J * v + a * a / 2);
+        double hold = 0;
+        if (peak > A) {
+            peak = A;
+            hold = (v + a * a / (2 * J) - A * A / J) / A;
+        }
+        // ramp down
+        double t = Math.max(0, (a + peak) / J);
+        x += v * t + a * t * t / 2 - J * t * t * t / 6;
+        v += a * t - J * t * t / 2;
+        a -= J * t;
+        // hold
+        x += v * hold + a * hold * hold / 2;
+        v += a * hold;
+        // ramp up
+        t = -a / J;
+        x += v * t + a * t * t / 2 + J * t * t * t / 6;
+        return s * x;
+    }
+}
@@ -0,0 +1,77 @@
+package org.team100.controllib.simulation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs many seeded trials on a ForkJoinPool, e.g. to compare gains or noise
+ * settings. Each trial gets its own seed, derived from the run seed and the
+ * trial index, so results don't depend on the number of threads or the order
+ * the trials happen to run in.
+ *
+ * Loop timing is measured with all the cores busy, so it's pessimistic
+ * compared with a single controller on a quiet machine; use it for relative
+ * comparisons.
+ */
+public class MonteCarlo {
+    // trials per task, enough to make the task overhead negligible.
+    private static final int kBatch = 4;
+
+    private final ForkJoinPool m_pool;
+
+    /** Uses the common pool, i.e. all the cores. */
+    public MonteCarlo() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public MonteCarlo(ForkJoinPool pool) {
+        m_pool = pool;
+    }
+
+    public MonteCarloResult run(Trial trial, int trials, long seed) {
+        if (trials < 1)
+            throw new IllegalArgumentException("need at least one trial: " + trials);
+        TrialResult[] results = new TrialResult[trials];
+        m_pool.invoke(new Batch(trial, seed, results, 0, trials));
+        return new MonteCarloResult(results);
+    }
+
+    /** SplitMix64, so nearby indices give unrelated seeds. */
+    static long seed(long seed, int index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Runs trials [from, to), splitting in half until the batch is small. */
+    private static class Batch extends RecursiveAction {
+        private final Trial m_trial;
+        private final long m_seed;
+        private final TrialResult[] m_results;
+        private final int m_from;
+        private final int m_to;
+
+        Batch(Trial trial, long seed, TrialResult[] results, int from, int to) {
+            m_trial = trial;
+            m_seed = seed;
+            m_results = results;
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (m_to - m_from <= kBatch) {
+                for (int i = m_from; i < m_to; ++i) {
+                    m_results[i] = m_trial.run(seed(m_seed, i));
+                }
+                return;
+            }
+            int mid = (m_from + m_to) >>> 1;
+            invokeAll(
+                    new Batch(m_trial, m_seed, m_results, m_from, mid),
+                    new Batch(m_trial, m_seed, m_results, mid, m_to));
+        }
+    }
+}
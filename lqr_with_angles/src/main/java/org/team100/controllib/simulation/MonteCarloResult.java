@@ -0,0 +1,106 @@
+package org.team100.controllib.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Statistics across a set of trials. The per-trial results are kept, in index
+ * order, so an outlier can be rerun by its seed.
+ */
+public class MonteCarloResult {
+    private final TrialResult[] m_trials;
+    // sorted, for percentiles
+    private final double[] m_rmsPositionErrors;
+
+    public MonteCarloResult(TrialResult[] trials) {
+        m_trials = trials.clone();
+        m_rmsPositionErrors = new double[trials.length];
+        for (int i = 0; i < trials.length; ++i) {
+            m_rmsPositionErrors[i] = trials[i].getRmsPositionError();
+        }
+        Arrays.sort(m_rmsPositionErrors);
+    }
+
+    public int size() {
+        return m_trials.length;
+    }
+
+    public TrialResult getTrial(int index) {
+        return m_trials[index];
+    }
+
+    public double meanRmsPositionError() {
+        double sum = 0;
+        for (TrialResult t : m_trials) {
+            sum += t.getRmsPositionError();
+        }
+        return sum / m_trials.length;
+    }
+
+    /** Spread of the per-trial RMS position error. */
+    public double stdevRmsPositionError() {
+        double mean = meanRmsPositionError();
+        double sum = 0;
+        for (TrialResult t : m_trials) {
+            double d = t.getRmsPositionError() - mean;
+            sum += d * d;
+        }
+        return Math.sqrt(sum / m_trials.length);
+    }
+
+    /**
+     * Per-trial RMS position error at this percentile, nearest rank.
+     *
+     * @param p in [0, 100]
+     */
+    public double percentileRmsPositionError(double p) {
+        if (p < 0 || p > 100)
+            throw new IllegalArgumentException("percentile must be in [0, 100]: " + p);
+        int rank = (int) Math.ceil(p / 100 * m_rmsPositionErrors.length);
+        return m_rmsPositionErrors[Math.max(0, rank - 1)];
+    }
+
+    /** Worst position error in any trial. */
+    public double maxPositionError() {
+        double max = 0;
+        for (TrialResult t : m_trials) {
+            max = Math.max(max, t.getMaxPositionError());
+        }
+        return max;
+    }
+
+    public double meanRmsVelocityError() {
+        double sum = 0;
+        for (TrialResult t : m_trials) {
+            sum += t.getRmsVelocityError();
+        }
+        return sum / m_trials.length;
+    }
+
+    /** Mean controller step time, over all steps of all trials. */
+    public double meanLoopNanos() {
+        double sum = 0;
+        int steps = 0;
+        for (TrialResult t : m_trials) {
+            sum += t.getMeanLoopNanos() * t.getSteps();
+            steps += t.getSteps();
+        }
+        return sum / steps;
+    }
+
+    /** Slowest controller step in any trial. */
+    public long worstLoopNanos() {
+        long worst = 0;
+        for (TrialResult t : m_trials) {
+            worst = Math.max(worst, t.getWorstLoopNanos());
+        }
+        return worst;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%d trials rms p mean %.5f stdev %.5f p95 %.5f max p %.5f rms v mean %.5f loop mean %.0f ns worst %d ns",
+                size(), meanRmsPositionError(), stdevRmsPositionError(), percentileRmsPositionError(95),
+                maxPositionError(), meanRmsVelocityError(), meanLoopNanos(), worstLoopNanos());
+    }
+}
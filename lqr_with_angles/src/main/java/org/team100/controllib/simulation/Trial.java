@@ -0,0 +1,164 @@
+package org.team100.controllib.simulation;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.team100.controllib.estimator.NewBitemporalEstimatorController;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.reference.Reference;
+import org.team100.controllib.system.examples.DoubleIntegratorRotary1D;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+/**
+ * One closed-loop run of NewBitemporalEstimatorController driving a simulated
+ * DoubleIntegratorRotary1D, like the test-side Loop, but with the actual state
+ * driven by the control rather than copied from the reference.
+ *
+ * Every sim step (2 ms) the actual state is integrated with the control in use,
+ * plus process noise from w, treated as a random walk, so the variance added
+ * is w times the step. Every rio step (20 ms) noisy position and velocity
+ * measurements (stdev from v) are handed to the controller, which runs the
+ * usual sequence (replay, predict, feedforward, feedback) and the result is
+ * applied, limited by the plant.
+ *
+ * Everything random comes from the seed, so a trial is repeatable, except the
+ * loop timing, which is measured.
+ *
+ * A Trial holds only configuration, so one instance can run on many threads;
+ * each run makes its own plant, reference, and controller.
+ */
+public class Trial {
+    private static final long kUsecPerSimLoop = 2000;
+    private static final long kUsecPerRioLoop = 20000;
+    private static final double kSecPerUsec = 1e-6;
+    private static final double kSecPerSimLoop = kUsecPerSimLoop * kSecPerUsec;
+    private static final double kSecPerRioLoop = kUsecPerRioLoop * kSecPerUsec;
+
+    private final Supplier<Reference<N2>> m_reference;
+    private final WhiteNoiseVector<N2> m_w;
+    private final MeasurementUncertainty<N2> m_v;
+    private final Matrix<N1, N2> m_K;
+    private final double m_durationSec;
+
+    /**
+     * @param reference   makes a fresh reference for each run, since some keep
+     *                    state
+     * @param w           process noise
+     * @param v           measurement noise
+     * @param K           feedback gain, e.g. from a GainCache, so sweeps don't
+     *                    solve a DARE per trial
+     * @param durationSec length of each run
+     */
+    public Trial(
+            Supplier<Reference<N2>> reference,
+            WhiteNoiseVector<N2> w,
+            MeasurementUncertainty<N2> v,
+            Matrix<N1, N2> K,
+            double durationSec) {
+        if (!(durationSec >= kSecPerRioLoop))
+            throw new IllegalArgumentException("duration must be at least one rio loop: " + durationSec);
+        m_reference = reference;
+        m_w = w;
+        m_v = v;
+        m_K = K.copy();
+        m_durationSec = durationSec;
+    }
+
+    public TrialResult run(long seed) {
+        Random random = new Random(seed);
+        DoubleIntegratorRotary1D plant = new DoubleIntegratorRotary1D(m_w, m_v);
+        Reference<N2> reference = m_reference.get();
+        Matrix<N2, N1> r0 = reference.getR(0);
+
+        // the controller knows nothing at first
+        Matrix<N2, N2> initP = new Matrix<>(Nat.N2(), Nat.N2());
+        initP.set(0, 0, 1e9);
+        initP.set(1, 1, 1e9);
+        NewBitemporalEstimatorController<N2, N1, N2> controller = new NewBitemporalEstimatorController<>(
+                plant,
+                new AngularRandomVector<>(r0.copy(), new Variance<>(initP)),
+                new Matrix<>(Nat.N1(), Nat.N1()),
+                reference,
+                m_K.copy());
+
+        double positionNoise = Math.sqrt(m_w.P.get(0, 0) * kSecPerSimLoop);
+        double velocityNoise = Math.sqrt(m_w.P.get(1, 1) * kSecPerSimLoop);
+        double positionStdev = Math.sqrt(m_v.Kxx.get(0, 0));
+        double velocityStdev = Math.sqrt(m_v.Kxx.get(1, 1));
+
+        double position = r0.get(0, 0);
+        double velocity = r0.get(1, 0);
+        double u = 0;
+
+        int steps = 0;
+        double sumPositionError2 = 0;
+        double sumVelocityError2 = 0;
+        double maxPositionError = 0;
+        long sumNanos = 0;
+        long worstNanos = 0;
+
+        long simSteps = Math.round(m_durationSec / kSecPerSimLoop);
+        for (long step = 0; step < simSteps; ++step) {
+            long timeUs = step * kUsecPerSimLoop;
+            double timeSec = timeUs * kSecPerUsec;
+            if (timeUs % kUsecPerRioLoop == 0) {
+                controller.acceptMeasurement(timeUs, timeSec,
+                        plant.position(position + random.nextGaussian() * positionStdev));
+                controller.acceptMeasurement(timeUs, timeSec,
+                        plant.velocity(velocity + random.nextGaussian() * velocityStdev));
+
+                long startNanos = System.nanoTime();
+                u = control(controller, plant, timeUs, timeSec);
+                long nanos = System.nanoTime() - startNanos;
+                sumNanos += nanos;
+                worstNanos = Math.max(worstNanos, nanos);
+
+                Matrix<N2, N1> r = reference.getR(timeSec);
+                double positionError = Math.abs(MathUtil.angleModulus(r.get(0, 0) - position));
+                double velocityError = r.get(1, 0) - velocity;
+                sumPositionError2 += positionError * positionError;
+                sumVelocityError2 += velocityError * velocityError;
+                maxPositionError = Math.max(maxPositionError, positionError);
+                steps++;
+            }
+            // exact for constant u
+            double dt = kSecPerSimLoop;
+            position += velocity * dt + u * dt * dt / 2 + random.nextGaussian() * positionNoise;
+            velocity += u * dt + random.nextGaussian() * velocityNoise;
+            position = MathUtil.angleModulus(position);
+        }
+        return new TrialResult(
+                seed,
+                steps,
+                Math.sqrt(sumPositionError2 / steps),
+                Math.sqrt(sumVelocityError2 / steps),
+                maxPositionError,
+                (double) sumNanos / steps,
+                worstNanos);
+    }
+
+    /** Same sequence as the RoboRIO in the test simulation. */
+    private static double control(
+            NewBitemporalEstimatorController<N2, N1, N2> controller,
+            DoubleIntegratorRotary1D plant,
+            long timeUs,
+            double timeSec) {
+        controller.replay(timeUs);
+        RandomVector<N2> current = controller.predictNow(timeSec);
+        Matrix<N1, N1> uff = controller.calculateFeedforward(timeSec + kSecPerRioLoop / 2);
+        RandomVector<N2> predicted = controller.predictFutureUsingFF(current, uff, kSecPerRioLoop);
+        Matrix<N1, N1> ufb = controller.calculateFeedback(timeSec + kSecPerRioLoop, predicted);
+        Matrix<N1, N1> u = plant.limit(ufb.plus(uff));
+        controller.record(timeSec, u);
+        return u.get(0, 0);
+    }
+}
@@ -0,0 +1,69 @@
+package org.team100.controllib.simulation;
+
+/**
+ * Summary of one trial: tracking error (reference minus actual, sampled at
+ * each controller step) and the time the controller took per step.
+ */
+public class TrialResult {
+    private final long m_seed;
+    private final int m_steps;
+    private final double m_rmsPositionError;
+    private final double m_rmsVelocityError;
+    private final double m_maxPositionError;
+    private final double m_meanLoopNanos;
+    private final long m_worstLoopNanos;
+
+    public TrialResult(
+            long seed,
+            int steps,
+            double rmsPositionError,
+            double rmsVelocityError,
+            double maxPositionError,
+            double meanLoopNanos,
+            long worstLoopNanos) {
+        m_seed = seed;
+        m_steps = steps;
+        m_rmsPositionError = rmsPositionError;
+        m_rmsVelocityError = rmsVelocityError;
+        m_maxPositionError = maxPositionError;
+        m_meanLoopNanos = meanLoopNanos;
+        m_worstLoopNanos = worstLoopNanos;
+    }
+
+    /** Run the trial again with this seed to see it in detail. */
+    public long getSeed() {
+        return m_seed;
+    }
+
+    /** Controller steps. */
+    public int getSteps() {
+        return m_steps;
+    }
+
+    public double getRmsPositionError() {
+        return m_rmsPositionError;
+    }
+
+    public double getRmsVelocityError() {
+        return m_rmsVelocityError;
+    }
+
+    public double getMaxPositionError() {
+        return m_maxPositionError;
+    }
+
+    public double getMeanLoopNanos() {
+        return m_meanLoopNanos;
+    }
+
+    public long getWorstLoopNanos() {
+        return m_worstLoopNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("seed %d rms p %.5f v %.5f max p %.5f loop mean %.0f ns worst %d ns",
+                m_seed, m_rmsPositionError, m_rmsVelocityError, m_maxPositionError,
+                m_meanLoopNanos, m_worstLoopNanos);
+    }
+}
@@ -31,9 +31,10 @@ import java.util.concurrent.ConcurrentSkipListMap;
  * https://en.wikipedia.org/wiki/Temporal_database
  * https://www.mathworks.com/help/fusion/ug/handle-out-of-sequence-measurements-with-filter-retrodiction.html
  * 
- *
+ * This version allocates several objects per put; for high measurement rates
+ * see RingBitemporalBuffer.
  */
-public class BitemporalBuffer<Value> {
+public class BitemporalBuffer<Value> implements BitemporalStore<Value> {
     private static final boolean debug = false;
     private final int capacity;
     private final NavigableMap<Long, Entry<Double, Value>> record;
@@ -57,6 +58,7 @@ public class BitemporalBuffer<Value> {
      *                   capacity.
      * @param value      value to store
      */
+    @Override
     public synchronized void put(long recordTime, double validTime, Value value) {
         // fix the keys to avoid overwriting anything.
         // these are tiny increments, won't affect the consumer.
@@ -84,6 +86,7 @@ public class BitemporalBuffer<Value> {
     /**
      * Find the most-recent value earlier than the specified valid time.
      */
+    @Override
     public Entry<Double, Entry<Long, Value>> floor(double validTimeSec) {
         if (validTimeSec < 0)
             throw new IllegalArgumentException("Negative time is not allowed: " + validTimeSec);
@@ -93,6 +96,7 @@ public class BitemporalBuffer<Value> {
         return floor;
     }
 
+    @Override
     public Value floorValue(double validTimeSec) {
         return floor(validTimeSec).getValue().getValue();
     }
@@ -101,6 +105,7 @@ public class BitemporalBuffer<Value> {
      * To consume out-of-sequence measurements, we just need to know the valid time
      * of the earliest unseen record.
      */
+    @Override
     public double earliestValidTimeForRecordsAfter(long recordTime) {
         // find the earliest measurement
         NavigableMap<Long, Entry<Double, Value>> unseen = recordTailMap(recordTime);
@@ -113,19 +118,35 @@ public class BitemporalBuffer<Value> {
         return earliestMeasurementSec;
     }
 
+    @Override
+    public double latestValidTimeForRecordsAfter(long recordTime) {
+        NavigableMap<Long, Entry<Double, Value>> unseen = recordTailMap(recordTime);
+        double latestMeasurementSec = -Double.MAX_VALUE;
+        for (Entry<Double, Value> u : unseen.values()) {
+            double measurementTimeSec = u.getKey();
+            if (measurementTimeSec > latestMeasurementSec)
+                latestMeasurementSec = measurementTimeSec;
+        }
+        return latestMeasurementSec;
+    }
+
+    @Override
     public NavigableMap<Long, Entry<Double, Value>> recordTailMap(long tt) {
         return Collections.unmodifiableNavigableMap(record.tailMap(tt, true));
     }
 
+    @Override
     public NavigableMap<Double, Entry<Long, Value>> validTailMap(double vt) {
         return Collections.unmodifiableNavigableMap(valid.tailMap(vt, true));
     }
 
     /** Find the entry for the greatest key less than vt. */
+    @Override
     public Entry<Double, Entry<Long, Value>> validFloorEntry(double vt) {
         return valid.floorEntry(vt);
     }
 
+    @Override
     public int size() {
         return size;
     }
@@ -0,0 +1,49 @@
+package org.team100.controllib.storage;
+
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+
+/**
+ * Common API for bitemporal storage, see BitemporalBuffer for the concepts.
+ *
+ * BitemporalBuffer is the map-backed implementation, RingBitemporalBuffer is
+ * the preallocated one for the fast sensor path.
+ */
+public interface BitemporalStore<Value> {
+    /**
+     * Store a measurement. Threadsafe.
+     *
+     * @param recordTime represents the system time the value was written, expected
+     *                   to be FPGATime.
+     * @param validTime  represents the real-world time the value describes, in
+     *                   seconds.
+     * @param value      value to store
+     */
+    void put(long recordTime, double validTime, Value value);
+
+    /** Find the most-recent value earlier than the specified valid time. */
+    Entry<Double, Entry<Long, Value>> floor(double validTimeSec);
+
+    Value floorValue(double validTimeSec);
+
+    /**
+     * To consume out-of-sequence measurements, we just need to know the valid time
+     * of the earliest unseen record.
+     */
+    double earliestValidTimeForRecordsAfter(long recordTime);
+
+    /**
+     * The valid time of the latest unseen record, so a consumer knows how far it
+     * must replay.
+     */
+    double latestValidTimeForRecordsAfter(long recordTime);
+
+    NavigableMap<Long, Entry<Double, Value>> recordTailMap(long tt);
+
+    NavigableMap<Double, Entry<Long, Value>> validTailMap(double vt);
+
+    /** Find the entry for the greatest key less than vt. */
+    Entry<Double, Entry<Long, Value>> validFloorEntry(double vt);
+
+    int size();
+}
@@ -23,4 +23,13 @@ public class EditableHistory<Value> extends History<Value> {
         }
         tailMap.clear();
     }
+
+    /**
+     * Overwrite the value at exactly vt if it exists, otherwise put it. Unlike
+     * put, this doesn't nudge the key, so replay can correct an estimate in place.
+     */
+    public void replace(double vt, Value value) {
+        if (!replaceExisting(vt, value))
+            put(vt, value);
+    }
 }
@@ -70,10 +70,20 @@ public class History<Value> {
         return valid.floorEntry(vt);
     }
 
+    /** Find the entry for the greatest key strictly less than vt. */
+    public Entry<Double, Value> validLowerEntry(double vt) {
+        return valid.lowerEntry(vt);
+    }
+
     public int size() {
         return size;
     }
 
+    /** @return true if there was an existing value to replace. */
+    synchronized boolean replaceExisting(double validTime, Value value) {
+        return valid.replace(validTime, value) != null;
+    }
+
     NavigableMap<Double, Value> mutableValidTailMap(double vt) {
         return valid.tailMap(vt, true);
     }
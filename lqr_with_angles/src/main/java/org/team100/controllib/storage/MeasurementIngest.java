@@ -0,0 +1,53 @@
+package org.team100.controllib.storage;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Multi-producer single-consumer ingestion stage in front of a
+ * BitemporalStore.
+ *
+ * Putting directly into the store means every producer serializes on the
+ * store's monitor, so a slow camera callback can block the 2 ms sensor
+ * threads. Instead, each producer gets its own lock-free MeasurementQueue, and
+ * the consumer drains them all into the store at a convenient time, e.g. at
+ * the start of replay.
+ *
+ * Create the producers at startup; registration takes a lock, offer() and
+ * drainTo() don't.
+ */
+public class MeasurementIngest<Value> {
+    private final List<MeasurementQueue<Value>> m_queues = new CopyOnWriteArrayList<>();
+
+    /** Make a queue for one producer thread. */
+    public MeasurementQueue<Value> newProducer(int capacity) {
+        MeasurementQueue<Value> queue = new MeasurementQueue<>(capacity);
+        m_queues.add(queue);
+        return queue;
+    }
+
+    /**
+     * Move all the queued measurements into the store. Call this only from the
+     * consumer thread.
+     *
+     * @param notBefore minimum record time, see MeasurementQueue.drainTo().
+     * @return the number of measurements moved
+     */
+    public int drainTo(BitemporalStore<Value> store, long notBefore) {
+        int count = 0;
+        // indexed loop avoids the iterator allocation
+        for (int i = 0; i < m_queues.size(); ++i) {
+            count += m_queues.get(i).drainTo(store, notBefore);
+        }
+        return count;
+    }
+
+    /** Total dropped by all producers. */
+    public long dropped() {
+        long dropped = 0;
+        for (int i = 0; i < m_queues.size(); ++i) {
+            dropped += m_queues.get(i).dropped();
+        }
+        return dropped;
+    }
+}
@@ -0,0 +1,104 @@
+package org.team100.controllib.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer single-consumer queue of bitemporal measurements.
+ *
+ * Each producer thread (camera callback, CAN callback, etc) gets its own queue,
+ * so producers never contend with each other or with the consumer. The consumer
+ * (the control thread) drains the queue into a BitemporalStore.
+ *
+ * Storage is preallocated parallel arrays, so offer() doesn't allocate. If the
+ * consumer falls behind and the queue is full, offer() drops the measurement
+ * and counts it, rather than blocking the producer.
+ *
+ * Use MeasurementIngest to create these.
+ */
+public class MeasurementQueue<Value> {
+    private final int m_mask;
+    private final long[] m_recordTimes;
+    private final double[] m_validTimes;
+    private final Object[] m_values;
+    // next index to read, written only by the consumer
+    private final AtomicLong m_head = new AtomicLong();
+    // next index to write, written only by the producer
+    private final AtomicLong m_tail = new AtomicLong();
+    // written only by the producer
+    private volatile long m_dropped;
+
+    /** @param capacity rounded up to a power of two */
+    MeasurementQueue(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        m_mask = size - 1;
+        m_recordTimes = new long[size];
+        m_validTimes = new double[size];
+        m_values = new Object[size];
+    }
+
+    /**
+     * Enqueue a measurement. Call this only from the owning producer thread.
+     *
+     * @return false if the queue was full and the measurement was dropped.
+     */
+    public boolean offer(long recordTime, double validTime, Value value) {
+        long tail = m_tail.get();
+        if (tail - m_head.get() > m_mask) {
+            m_dropped++;
+            return false;
+        }
+        int i = (int) (tail & m_mask);
+        m_recordTimes[i] = recordTime;
+        m_validTimes[i] = validTime;
+        m_values[i] = value;
+        // publish the slot
+        m_tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Move everything in the queue to the store. Call this only from the consumer
+     * thread.
+     *
+     * Record time is the instant the store sees the value, so a record time
+     * earlier than notBefore (e.g. the producer was preempted between reading the
+     * clock and calling offer) is moved up to notBefore; otherwise a consumer that
+     * has already read past it would never notice it.
+     *
+     * @return the number of measurements moved
+     */
+    @SuppressWarnings("unchecked")
+    int drainTo(BitemporalStore<Value> store, long notBefore) {
+        long head = m_head.get();
+        long tail = m_tail.get();
+        int count = 0;
+        for (; head < tail; ++head) {
+            int i = (int) (head & m_mask);
+            Value value = (Value) m_values[i];
+            m_values[i] = null;
+            store.put(Math.max(m_recordTimes[i], notBefore), m_validTimes[i], value);
+            ++count;
+        }
+        // release the slots
+        m_head.lazySet(head);
+        return count;
+    }
+
+    /** Number of measurements waiting. Approximate if producer is active. */
+    public int size() {
+        return (int) (m_tail.get() - m_head.get());
+    }
+
+    public int capacity() {
+        return m_mask + 1;
+    }
+
+    /** Number of measurements dropped because the queue was full. */
+    public long dropped() {
+        return m_dropped;
+    }
+}
@@ -0,0 +1,309 @@
+package org.team100.controllib.storage;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Bitemporal buffer backed by preallocated primitive arrays.
+ *
+ * BitemporalBuffer uses two skip lists of boxed keys plus an entry object for
+ * each put, which is about six allocations per measurement. At the 2 ms sensor
+ * rate that's enough garbage to put GC pauses in the middle of a control
+ * period. This version allocates everything in the constructor:
+ *
+ * * slots: parallel long[] record time, double[] valid time, Object[] value.
+ * * valid index: ring of slot numbers sorted by valid time. Eviction always
+ * takes the earliest valid time, i.e. the head of the ring, which is O(1).
+ * * record index: ring of slot numbers sorted by record time.
+ *
+ * Insertion does a binary search and then shifts the tail of the index, so the
+ * cost is proportional to how late the measurement is; in-order measurements
+ * land at the end and don't shift anything.
+ *
+ * The primitive accessors (floorIndex, ceilingIndex, validTime(i), etc) take
+ * an index in valid-time order and don't allocate. The map and entry methods
+ * are here for compatibility with BitemporalStore and *do* allocate, so avoid
+ * them in the loop.
+ *
+ * Everything is synchronized; the lock is uncontended in the usual case of one
+ * consumer thread.
+ */
+public class RingBitemporalBuffer<Value> implements BitemporalStore<Value> {
+    private final int capacity;
+    // one extra slot so we can insert before evicting, same as BitemporalBuffer.
+    private final int slots;
+    private final long[] recordTimes;
+    private final double[] validTimes;
+    private final Object[] values;
+    // slot numbers not in use
+    private final int[] free;
+    private int freeCount;
+    // ring of slot numbers sorted by valid time
+    private final int[] validOrder;
+    private int validHead;
+    // ring of slot numbers sorted by record time
+    private final int[] recordOrder;
+    private int recordHead;
+    private int size;
+
+    public RingBitemporalBuffer(int capacity) {
+        this.capacity = capacity;
+        slots = capacity + 1;
+        recordTimes = new long[slots];
+        validTimes = new double[slots];
+        values = new Object[slots];
+        free = new int[slots];
+        for (int i = 0; i < slots; ++i) {
+            free[i] = slots - 1 - i;
+        }
+        freeCount = slots;
+        validOrder = new int[slots];
+        recordOrder = new int[slots];
+        validHead = 0;
+        recordHead = 0;
+        size = 0;
+    }
+
+    /**
+     * Store a measurement. Threadsafe. Colliding keys are nudged upwards, just
+     * like BitemporalBuffer.
+     */
+    @Override
+    public synchronized void put(long recordTime, double validTime, Value value) {
+        int recordPosition = recordSearch(recordTime);
+        while (recordPosition >= 0) {
+            recordTime++; // add one microsecond
+            recordPosition = recordSearch(recordTime);
+        }
+        int validPosition = validSearch(validTime);
+        while (validPosition >= 0) {
+            validTime = Math.nextUp(validTime); // add smallest possible double
+            validPosition = validSearch(validTime);
+        }
+        int slot = free[--freeCount];
+        recordTimes[slot] = recordTime;
+        validTimes[slot] = validTime;
+        values[slot] = value;
+        insert(validOrder, validHead, -(validPosition + 1), slot);
+        insert(recordOrder, recordHead, -(recordPosition + 1), slot);
+        if (++size > capacity) {
+            // evict the earliest valid time, which is the head of the valid ring.
+            int evicted = validOrder[validHead];
+            validHead = (validHead + 1) % slots;
+            int evictedRecord = recordSearch(recordTimes[evicted]);
+            if (evictedRecord < 0) {
+                throw new IllegalStateException("This should never happen: missing record: "
+                        + recordTimes[evicted]);
+            }
+            remove(recordOrder, recordHead, evictedRecord);
+            values[evicted] = null;
+            free[freeCount++] = evicted;
+            --size;
+        }
+    }
+
+    @Override
+    public Entry<Double, Entry<Long, Value>> floor(double validTimeSec) {
+        if (validTimeSec < 0)
+            throw new IllegalArgumentException("Negative time is not allowed: " + validTimeSec);
+        Entry<Double, Entry<Long, Value>> floor = validFloorEntry(validTimeSec);
+        if (floor == null)
+            throw new IllegalStateException("No floor key (not initialized?): " + validTimeSec);
+        return floor;
+    }
+
+    @Override
+    public synchronized Value floorValue(double validTimeSec) {
+        if (validTimeSec < 0)
+            throw new IllegalArgumentException("Negative time is not allowed: " + validTimeSec);
+        int i = floorIndex(validTimeSec);
+        if (i < 0)
+            throw new IllegalStateException("No floor key (not initialized?): " + validTimeSec);
+        return value(i);
+    }
+
+    /** Allocation-free, walks the record index from the first unseen record. */
+    @Override
+    public synchronized double earliestValidTimeForRecordsAfter(long recordTime) {
+        double earliestMeasurementSec = Double.MAX_VALUE;
+        for (int i = recordCeiling(recordTime); i < size; ++i) {
+            double measurementTimeSec = validTimes[recordOrder[(recordHead + i) % slots]];
+            if (measurementTimeSec < earliestMeasurementSec)
+                earliestMeasurementSec = measurementTimeSec;
+        }
+        return earliestMeasurementSec;
+    }
+
+    /** Allocation-free, walks the record index from the first unseen record. */
+    @Override
+    public synchronized double latestValidTimeForRecordsAfter(long recordTime) {
+        double latestMeasurementSec = -Double.MAX_VALUE;
+        for (int i = recordCeiling(recordTime); i < size; ++i) {
+            double measurementTimeSec = validTimes[recordOrder[(recordHead + i) % slots]];
+            if (measurementTimeSec > latestMeasurementSec)
+                latestMeasurementSec = measurementTimeSec;
+        }
+        return latestMeasurementSec;
+    }
+
+    /** Snapshot copy, allocates. */
+    @Override
+    public synchronized NavigableMap<Long, Entry<Double, Value>> recordTailMap(long tt) {
+        NavigableMap<Long, Entry<Double, Value>> result = new TreeMap<>();
+        for (int i = recordCeiling(tt); i < size; ++i) {
+            int slot = recordOrder[(recordHead + i) % slots];
+            result.put(recordTimes[slot], new AbstractMap.SimpleImmutableEntry<>(validTimes[slot], slotValue(slot)));
+        }
+        return Collections.unmodifiableNavigableMap(result);
+    }
+
+    /** Snapshot copy, allocates. */
+    @Override
+    public synchronized NavigableMap<Double, Entry<Long, Value>> validTailMap(double vt) {
+        NavigableMap<Double, Entry<Long, Value>> result = new TreeMap<>();
+        for (int i = ceilingIndex(vt); i < size; ++i) {
+            result.put(validTime(i), new AbstractMap.SimpleImmutableEntry<>(recordTime(i), value(i)));
+        }
+        return Collections.unmodifiableNavigableMap(result);
+    }
+
+    /** Find the entry for the greatest key less than or equal to vt. Allocates. */
+    @Override
+    public synchronized Entry<Double, Entry<Long, Value>> validFloorEntry(double vt) {
+        int i = floorIndex(vt);
+        if (i < 0)
+            return null;
+        return new AbstractMap.SimpleImmutableEntry<>(validTime(i),
+                new AbstractMap.SimpleImmutableEntry<>(recordTime(i), value(i)));
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return index, in valid-time order, of the greatest valid time less than or
+     *         equal to vt, or -1 if there is none.
+     */
+    public synchronized int floorIndex(double vt) {
+        int position = validSearch(vt);
+        if (position >= 0)
+            return position;
+        return -(position + 1) - 1;
+    }
+
+    /**
+     * @return index, in valid-time order, of the least valid time greater than or
+     *         equal to vt, or size() if there is none.
+     */
+    public synchronized int ceilingIndex(double vt) {
+        int position = validSearch(vt);
+        if (position >= 0)
+            return position;
+        return -(position + 1);
+    }
+
+    /** Valid time of the i-th entry in valid-time order. */
+    public synchronized double validTime(int i) {
+        return validTimes[validSlot(i)];
+    }
+
+    /** Record time of the i-th entry in valid-time order. */
+    public synchronized long recordTime(int i) {
+        return recordTimes[validSlot(i)];
+    }
+
+    /** Value of the i-th entry in valid-time order. */
+    public synchronized Value value(int i) {
+        return slotValue(validSlot(i));
+    }
+
+    ///////////////////////////////////////////////
+
+    private int validSlot(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("index " + i + " size " + size);
+        return validOrder[(validHead + i) % slots];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Value slotValue(int slot) {
+        return (Value) values[slot];
+    }
+
+    /**
+     * Binary search of the valid index.
+     *
+     * @return position of vt if present, otherwise (-(insertion point) - 1), like
+     *         Arrays.binarySearch.
+     */
+    private int validSearch(double vt) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            double midVal = validTimes[validOrder[(validHead + mid) % slots]];
+            if (midVal < vt)
+                lo = mid + 1;
+            else if (midVal > vt)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /** Binary search of the record index, same contract as validSearch. */
+    private int recordSearch(long tt) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midVal = recordTimes[recordOrder[(recordHead + mid) % slots]];
+            if (midVal < tt)
+                lo = mid + 1;
+            else if (midVal > tt)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /** Position of the least record time greater than or equal to tt. */
+    private int recordCeiling(long tt) {
+        int position = recordSearch(tt);
+        if (position >= 0)
+            return position;
+        return -(position + 1);
+    }
+
+    /**
+     * Insert the slot at the position, shifting the tail up by one. Uses the
+     * current size, so call this before incrementing it.
+     */
+    private void insert(int[] ring, int head, int position, int slot) {
+        for (int i = size; i > position; --i) {
+            ring[(head + i) % slots] = ring[(head + i - 1) % slots];
+        }
+        ring[(head + position) % slots] = slot;
+    }
+
+    /**
+     * Remove the element at the position, shifting the tail down by one. Uses the
+     * size including the removed element, so call this before decrementing it.
+     */
+    private void remove(int[] ring, int head, int position) {
+        for (int i = position; i < size - 1; ++i) {
+            ring[(head + i) % slots] = ring[(head + i + 1) % slots];
+        }
+    }
+}
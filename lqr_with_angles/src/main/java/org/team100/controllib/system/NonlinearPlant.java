@@ -1,5 +1,6 @@
 package org.team100.controllib.system;
 
+import org.team100.controllib.math.Jacobian;
 import org.team100.controllib.math.RandomVector;
 import org.team100.controllib.math.Variance;
 import org.team100.controllib.math.WhiteNoiseVector;
@@ -27,6 +28,37 @@ public interface NonlinearPlant<States extends Num, Inputs extends Num, Outputs
     /** State evolution */
     RandomVector<States> f(RandomVector<States> x, Matrix<Inputs, N1> u);
 
+    /**
+     * State evolution written into xdot instead of allocating, for the estimator
+     * hot path. The default just copies the result of f; plants should override
+     * this (and implement f with it).
+     */
+    default void fInto(RandomVector<States> x, Matrix<Inputs, N1> u, RandomVector<States> xdot) {
+        xdot.assign(f(x, u));
+    }
+
+    /**
+     * Jacobian of f with respect to x, for linearization. The default is
+     * numerical, 2n evaluations of f; plants with simple dynamics should override
+     * this with the analytic version.
+     */
+    default Matrix<States, States> jacobianX(RandomVector<States> x, Matrix<Inputs, N1> u) {
+        return Jacobian.numericalJacobianX(states(), states(), this::f, x, u);
+    }
+
+    /** Jacobian of f with respect to u. The default is numerical. */
+    default Matrix<States, Inputs> jacobianU(RandomVector<States> x, Matrix<Inputs, N1> u) {
+        return Jacobian.numericalJacobianU(states(), inputs(), this::f, x, u);
+    }
+
+    /**
+     * Jacobian of h with respect to x, for measurement updates. The default is
+     * numerical, 2n evaluations of h.
+     */
+    default Matrix<Outputs, States> jacobianH(RandomVector<States> x, Matrix<Inputs, N1> u) {
+        return Jacobian.numericalJacobianH(outputs(), states(), this::h, x, u);
+    }
+
     /** Inverse of f with respect to u, for feedforward. */
     Matrix<Inputs, N1> finvWrtU(RandomVector<States> x, RandomVector<States> xdot);
 
@@ -34,17 +34,34 @@ public class DoubleIntegratorRotary1D extends Rotary1D {
      */
     @Override
     public RandomVector<N2> f(RandomVector<N2> xmat, Matrix<N1, N1> umat) {
+        RandomVector<N2> xdot = new RandomVector<>(new Matrix<>(Nat.N2(), Nat.N1()), Variance.zero2());
+        fInto(xmat, umat, xdot);
+        return xdot;
+    }
+
+    @Override
+    public void fInto(RandomVector<N2> xmat, Matrix<N1, N1> umat, RandomVector<N2> xdot) {
         double v = xmat.x.get(1, 0);
         double u = umat.get(0, 0);
         double pdot = v;
         double vdot = u;
-        Matrix<N2, N1> xdotx = VecBuilder.fill(pdot, vdot);
-        Matrix<N2, N2> xdotP = xmat.Kxx.copy().getValue();
+        xdot.x.set(0, 0, pdot);
+        xdot.x.set(1, 0, vdot);
+        Matrix<N2, N2> xdotP = xdot.Kxx.getValue();
         xdotP.fill(0);
         // propagate variance of x through f (u has zero variance)
         xdotP.set(0, 0, xmat.Kxx.get(1, 1));
-        // note that xdot needs no wrapping, don't return an AngularRandomVector here.
-        return new RandomVector<>(xdotx, new Variance<>(xdotP));
+        // note that xdot needs no wrapping, don't use an AngularRandomVector here.
+    }
+
+    @Override
+    public Matrix<N2, N2> jacobianX(RandomVector<N2> x, Matrix<N1, N1> u) {
+        return Matrix.mat(Nat.N2(), Nat.N2()).fill(0, 1, 0, 0);
+    }
+
+    @Override
+    public Matrix<N2, N1> jacobianU(RandomVector<N2> x, Matrix<N1, N1> u) {
+        return Matrix.mat(Nat.N2(), Nat.N1()).fill(0, 1);
     }
 
     @Override
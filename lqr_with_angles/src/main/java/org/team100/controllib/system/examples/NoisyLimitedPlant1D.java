@@ -50,6 +50,12 @@ public abstract class NoisyLimitedPlant1D implements NonlinearPlant<N2, N1, N2>
         return x;
     }
 
+    /** h is identity */
+    @Override
+    public Matrix<N2, N2> jacobianH(RandomVector<N2> x, Matrix<N1, N1> u) {
+        return Matrix.eye(Nat.N2());
+    }
+
     @Override
     public RandomVector<N2> hinv(RandomVector<N2> y, Matrix<N1, N1> u) {
         return y;
@@ -6,6 +6,10 @@ import java.util.stream.Collectors;
 
 public class MotionProfile {
     private final List<MotionSegment> segments;
+    // start and end time of each segment, for binary search
+    private final double[] startTimes;
+    private final double[] endTimes;
+    private final double endX;
 
     /**
      * Trapezoidal motion profile composed of motion segments.
@@ -16,6 +20,15 @@ public class MotionProfile {
         if (segments.isEmpty())
             throw new IllegalArgumentException();
         this.segments = segments;
+        startTimes = new double[segments.size()];
+        endTimes = new double[segments.size()];
+        double t = 0;
+        for (int i = 0; i < segments.size(); ++i) {
+            startTimes[i] = t;
+            t += segments.get(i).getDt();
+            endTimes[i] = t;
+        }
+        endX = segments.get(segments.size() - 1).end().getX();
     }
 
     /**
@@ -24,23 +37,119 @@ public class MotionProfile {
     public MotionState get(double t) {
         if (t < 0.0)
             return segments.get(0).getStart().stationary();
+        int i = segmentIndex(t);
+        if (i == segments.size())
+            return segments.get(segments.size() - 1).end().stationary();
+        return segments.get(i).get(t - startTimes[i]);
+    }
+
+    /**
+     * Returns the duration of the motion profile.
+     */
+    public double duration() {
+        return endTimes[endTimes.length - 1];
+    }
+
+    /**
+     * Returns a cursor for sampling at increasing times, e.g. once per control
+     * period.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
 
-        var remainingTime = t;
-        for (MotionSegment segment : segments) {
-            if (remainingTime <= segment.getDt()) {
-                return segment.get(remainingTime);
+    /**
+     * Index of the first segment that ends at or after t, or the number of
+     * segments if t is past the end.
+     */
+    int segmentIndex(double t) {
+        int lo = 0;
+        int hi = endTimes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (endTimes[mid] < t) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
-            remainingTime -= segment.getDt();
         }
-
-        return segments.get(segments.size() - 1).end().stationary();
+        return lo;
     }
 
     /**
-     * Returns the duration of the motion profile.
+     * Samples the profile without searching or allocating, when time only moves
+     * forward: it just steps to the next segment when the current one ends. If
+     * time goes backwards, it searches. Sampling the same time again is free, so
+     * it's fine to ask for position, velocity, and acceleration separately.
+     * 
+     * Not thread-safe; use one cursor per thread.
      */
-    public double duration() {
-        return segments.stream().map((it) -> it.getDt()).reduce(0.0, Double::sum);
+    public class Cursor {
+        private int index;
+        private double time = Double.NaN;
+        private double x;
+        private double v;
+        private double a;
+        private double j;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to time [t] and updates all the derivatives.
+         * 
+         * @return this, for chaining
+         */
+        public Cursor sample(double t) {
+            if (t == time)
+                return this;
+            time = t;
+            if (t < 0.0) {
+                index = 0;
+                set(segments.get(0).getStart().getX(), 0, 0, 0);
+                return this;
+            }
+            if (index == endTimes.length || (index > 0 && t <= startTimes[index])) {
+                index = segmentIndex(t);
+            }
+            while (index < endTimes.length && endTimes[index] < t) {
+                index++;
+            }
+            if (index == endTimes.length) {
+                set(endX, 0, 0, 0);
+                return this;
+            }
+            MotionState s = segments.get(index).getStart();
+            double dt = t - startTimes[index];
+            set(s.getX() + s.getV() * dt + s.getA() / 2 * dt * dt + s.getJ() / 6 * dt * dt * dt,
+                    s.getV() + s.getA() * dt + s.getJ() / 2 * dt * dt,
+                    s.getA() + s.getJ() * dt,
+                    s.getJ());
+            return this;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getV() {
+            return v;
+        }
+
+        public double getA() {
+            return a;
+        }
+
+        public double getJ() {
+            return j;
+        }
+
+        private void set(double x, double v, double a, double j) {
+            this.x = x;
+            this.v = v;
+            this.a = a;
+            this.j = j;
+        }
     }
 
     /**
@@ -0,0 +1,196 @@
+package org.team100.lib.profile;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of simple motion profiles, for mechanisms like arms and
+ * elevators that make the same few moves over and over.
+ *
+ * Start and goal states are rounded to a multiple of the quantum, and the
+ * constraints are rounded down, so the profile never exceeds the requested
+ * limits. The profile is generated from the rounded values, so any request
+ * that rounds the same way gets the same profile. Choose a quantum small
+ * enough that the difference doesn't matter, e.g. 1 mm or 1 mrad. A limit
+ * smaller than the quantum is rejected, except a jerk limit of zero, which
+ * means no jerk limit, as in the generator.
+ *
+ * Profiles are immutable, so they're shared; use a cursor per user.
+ *
+ * Call warmUp() at robot init for the common moves, so the first autonomous
+ * loop doesn't generate anything. Warm-up isn't counted as a hit or a miss.
+ */
+public class MotionProfileCache {
+    private static final boolean debug = false;
+
+    private final double quantum;
+    private final Map<Key, MotionProfile> profiles;
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    /**
+     * @param capacity maximum number of profiles kept
+     * @param quantum  rounding for states and constraints
+     */
+    public MotionProfileCache(int capacity, double quantum) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        if (!(quantum > 0))
+            throw new IllegalArgumentException("quantum must be positive: " + quantum);
+        this.quantum = quantum;
+        // access order, so the eldest entry is the least recently used
+        profiles = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MotionProfile> eldest) {
+                if (size() <= capacity)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /** See MotionProfileGenerator.generateSimpleMotionProfile(). */
+    public MotionProfile get(
+            MotionState start,
+            MotionState goal,
+            double maxVel,
+            double maxAccel,
+            double maxJerk) {
+        return get(start, goal, maxVel, maxAccel, maxJerk, false);
+    }
+
+    /** See MotionProfileGenerator.generateSimpleMotionProfile(). */
+    public synchronized MotionProfile get(
+            MotionState start,
+            MotionState goal,
+            double maxVel,
+            double maxAccel,
+            double maxJerk,
+            boolean overshoot) {
+        Key key = key(start, goal, maxVel, maxAccel, maxJerk, overshoot);
+        MotionProfile profile = profiles.get(key);
+        if (profile != null) {
+            hits++;
+            return profile;
+        }
+        misses++;
+        if (debug)
+            System.out.println("MotionProfileCache miss " + start + " " + goal);
+        return generate(key);
+    }
+
+    /** Generates the profile now, if it's not already cached. */
+    public void warmUp(
+            MotionState start,
+            MotionState goal,
+            double maxVel,
+            double maxAccel,
+            double maxJerk) {
+        warmUp(start, goal, maxVel, maxAccel, maxJerk, false);
+    }
+
+    /** Generates the profile now, if it's not already cached. */
+    public synchronized void warmUp(
+            MotionState start,
+            MotionState goal,
+            double maxVel,
+            double maxAccel,
+            double maxJerk,
+            boolean overshoot) {
+        Key key = key(start, goal, maxVel, maxAccel, maxJerk, overshoot);
+        if (profiles.containsKey(key))
+            return;
+        generate(key);
+    }
+
+    public synchronized int size() {
+        return profiles.size();
+    }
+
+    /** Number of gets answered from the cache. */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /** Number of gets that generated a profile. */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /** Number of profiles dropped to stay within capacity. */
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    private MotionProfile generate(Key key) {
+        long[] q = key.q;
+        MotionProfile profile = MotionProfileGenerator.generateSimpleMotionProfile(
+                new MotionState(value(q[0]), value(q[1]), value(q[2])),
+                new MotionState(value(q[3]), value(q[4]), value(q[5])),
+                value(q[6]),
+                value(q[7]),
+                value(q[8]),
+                q[9] != 0);
+        profiles.put(key, profile);
+        return profile;
+    }
+
+    private Key key(
+            MotionState start,
+            MotionState goal,
+            double maxVel,
+            double maxAccel,
+            double maxJerk,
+            boolean overshoot) {
+        return new Key(new long[] {
+                round(start.getX()),
+                round(start.getV()),
+                round(start.getA()),
+                round(goal.getX()),
+                round(goal.getV()),
+                round(goal.getA()),
+                floorLimit("maxVel", maxVel),
+                floorLimit("maxAccel", maxAccel),
+                maxJerk == 0 ? 0 : floorLimit("maxJerk", maxJerk),
+                overshoot ? 1 : 0 });
+    }
+
+    private long round(double x) {
+        return Math.round(x / quantum);
+    }
+
+    /** Rounds down, allowing for a little floating point error in the division. */
+    private long floorLimit(String name, double limit) {
+        long n = (long) Math.floor(limit / quantum + 1e-9);
+        if (n < 1)
+            throw new IllegalArgumentException(name + " must be at least the quantum: " + limit);
+        return n;
+    }
+
+    private double value(long n) {
+        return n * quantum;
+    }
+
+    private static class Key {
+        private final long[] q;
+        private final int hash;
+
+        Key(long[] q) {
+            this.q = q;
+            hash = Arrays.hashCode(q);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(q, ((Key) obj).q);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,33 +1,18 @@
 package org.team100.lib.profile;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import org.team100.lib.util.DoubleProgression;
 import org.team100.lib.util.MathUtil;
 
-import edu.wpi.first.math.Pair;
-
 /**
  * Motion profile generator with arbitrary start and end motion states and
  * either dynamic constraints or jerk limiting.
  */
 public class MotionProfileGenerator {
 
-    private static class EvaluatedConstraint {
-        double maxVel;
-        double maxAccel;
-
-        public EvaluatedConstraint(double maxVel, double maxAccel) {
-            this.maxVel = maxVel;
-            this.maxAccel = maxAccel;
-        }
-
-    }
-
     /**
      * Generates a simple motion profile with constant [maxVel], [maxAccel], and
      * [maxJerk]. If [maxJerk] is zero, an
@@ -426,201 +411,240 @@ public class MotionProfileGenerator {
         // dx is an adjusted resolution that fits nicely within length
         // at least two samples are required to have a valid profile
         int samples = Math.max(2, (int) Math.ceil(length / resolution));
-
         DoubleProgression s = DoubleProgression.fromClosedInterval(0.0, length, samples);
-        List<EvaluatedConstraint> constraintsList = StreamSupport.stream(s.plus(start.getX()).spliterator(), false)
-                .map((it) -> new EvaluatedConstraint(
-                        velocityConstraint.get(it),
-                        accelerationConstraint.get(it)))
-                .collect(Collectors.toList());
+        double dx = s.getStep();
+
+        // like the original version, this uses every sample but the last
+        int n = samples - 1;
+        double[] maxVels = new double[n];
+        double[] maxAccels = new double[n];
+        DoubleProgression positions = s.plus(start.getX());
+        for (int i = 0; i < n; ++i) {
+            double position = positions.get(i);
+            maxVels[i] = velocityConstraint.get(position);
+            maxAccels[i] = accelerationConstraint.get(position);
+        }
 
         // compute the forward states
-        List<Pair<MotionState, Double>> forwardStates = forwardPass(
-                new MotionState(0.0, start.getV(), start.getA()),
-                s,
-                constraintsList).stream().map((it) -> {
-                    MotionState motionState = it.getFirst();
-                    double dx = it.getSecond();
-                    return new Pair<>(new MotionState(
-                            motionState.getX() + start.getX(),
-                            motionState.getV(),
-                            motionState.getA()), dx);
-                }).collect(Collectors.toList());
-
-        // compute the backward states
-        List<EvaluatedConstraint> backwardsConstraints = new ArrayList<EvaluatedConstraint>(constraintsList);
-        Collections.reverse(backwardsConstraints);
-        List<Pair<MotionState, Double>> backwardStates = forwardPass(
-                new MotionState(0.0, goal.getV(), goal.getA()),
-                s,
-                backwardsConstraints).stream().map((it) -> {
-                    MotionState motionState = it.getFirst();
-                    double dx = it.getSecond();
-                    return new Pair<>(afterDisplacement(motionState, dx), dx);
-                }).map((it) -> {
-                    MotionState motionState = it.getFirst();
-                    double dx = it.getSecond();
-                    return new Pair<>(
-                            new MotionState(
-                                    goal.getX() - motionState.getX(),
-                                    motionState.getV(),
-                                    -motionState.getA()),
-                            dx);
-                }).collect(Collectors.toList());
-        Collections.reverse(backwardStates);
-
-        // merge the forward and backward states
-        List<Pair<MotionState, Double>> finalStates = new ArrayList<Pair<MotionState, Double>>();
-
-        int i = 0;
-        while (i < forwardStates.size() && i < backwardStates.size()) {
-            // retrieve the start states and displacement deltas
-            MotionState forwardStartState = forwardStates.get(i).getFirst();
-            double forwardDx = forwardStates.get(i).getSecond();
-            MotionState backwardStartState = backwardStates.get(i).getFirst();
-            double backwardDx = backwardStates.get(i).getSecond();
-
-            // if there's a discrepancy in the displacements, split the the longer chunk in
-            // two and add the second
-            // to the corresponding list; this guarantees that segments are always aligned
-            if (!(MathUtil.epsilonEquals(forwardDx, backwardDx))) {
-                if (forwardDx > backwardDx) {
+        Pieces forward = new Pieces(2 * n);
+        forwardPass(start.getV(), s, dx, maxVels, maxAccels, false, forward);
+        for (int i = 0; i < forward.size; ++i) {
+            forward.x[i] += start.getX();
+        }
+
+        // compute the backward states, using the constraints in reverse
+        Pieces raw = new Pieces(2 * n);
+        forwardPass(goal.getV(), s, dx, maxVels, maxAccels, true, raw);
+        Pieces backward = new Pieces(raw.size);
+        for (int i = raw.size - 1; i >= 0; --i) {
+            double v = afterDisplacementV(raw.v[i], raw.a[i], raw.dx[i]);
+            backward.add(goal.getX() - (raw.x[i] + raw.dx[i]), v, -raw.a[i], raw.dx[i]);
+        }
+
+        // merge the forward and backward states. when the displacements differ,
+        // the remainder of the longer one is the next one from that side.
+        Pieces merged = new Pieces(2 * (forward.size + backward.size));
+        int fi = 0;
+        int bi = 0;
+        boolean fHave = false;
+        boolean bHave = false;
+        double fx = 0, fv = 0, fa = 0, fdx = 0;
+        double bx = 0, bv = 0, ba = 0, bdx = 0;
+        while (true) {
+            if (!fHave) {
+                if (fi == forward.size)
+                    break;
+                fx = forward.x[fi];
+                fv = forward.v[fi];
+                fa = forward.a[fi];
+                fdx = forward.dx[fi];
+                fi++;
+            }
+            if (!bHave) {
+                if (bi == backward.size)
+                    break;
+                bx = backward.x[bi];
+                bv = backward.v[bi];
+                ba = backward.a[bi];
+                bdx = backward.dx[bi];
+                bi++;
+            }
+            fHave = false;
+            bHave = false;
+            // remainders, if any
+            double rx = 0, rv = 0, rdx = 0;
+
+            if (!(MathUtil.epsilonEquals(fdx, bdx))) {
+                if (fdx > bdx) {
                     // forward longer
-                    forwardStates.add(
-                            i + 1,
-                            new Pair<>(afterDisplacement(forwardStartState, backwardDx), forwardDx - backwardDx));
-                    forwardDx = backwardDx;
+                    rx = fx + bdx;
+                    rv = afterDisplacementV(fv, fa, bdx);
+                    rdx = fdx - bdx;
+                    fHave = true;
+                    fdx = bdx;
                 } else {
                     // backward longer
-                    backwardStates.add(
-                            i + 1,
-                            new Pair<>(afterDisplacement(backwardStartState, forwardDx), backwardDx - forwardDx));
-                    backwardDx = forwardDx;
+                    rx = bx + fdx;
+                    rv = afterDisplacementV(bv, ba, fdx);
+                    rdx = bdx - fdx;
+                    bHave = true;
+                    bdx = fdx;
                 }
             }
 
-            // compute the end states (after alignment)
-            MotionState forwardEndState = afterDisplacement(forwardStartState, forwardDx);
-            MotionState backwardEndState = afterDisplacement(backwardStartState, backwardDx);
+            // compute the end velocities (after alignment)
+            double fEndV = afterDisplacementV(fv, fa, fdx);
+            double bEndV = afterDisplacementV(bv, ba, bdx);
 
-            if (forwardStartState.getV() <= backwardStartState.getV()) {
+            if (fv <= bv) {
                 // forward start lower
-                if (forwardEndState.getV() <= backwardEndState.getV()) {
+                if (fEndV <= bEndV) {
                     // forward end lower
-                    finalStates.add(new Pair<>(forwardStartState, forwardDx));
+                    merged.add(fx, fv, fa, fdx);
                 } else {
                     // backward end lower
-                    double intersection = intersection(
-                            forwardStartState,
-                            backwardStartState);
-                    finalStates.add(new Pair<>(forwardStartState, intersection));
-                    finalStates.add(
-                            new Pair<>(
-                                    afterDisplacement(backwardStartState, intersection),
-                                    backwardDx - intersection));
+                    double intersection = intersection(fv, fa, bv, ba);
+                    merged.add(fx, fv, fa, intersection);
+                    merged.add(bx + intersection, afterDisplacementV(bv, ba, intersection), ba,
+                            bdx - intersection);
                 }
             } else {
                 // backward start lower
-                if (forwardEndState.getV() >= backwardEndState.getV()) {
+                if (fEndV >= bEndV) {
                     // backward end lower
-                    finalStates.add(new Pair<>(backwardStartState, backwardDx));
+                    merged.add(bx, bv, ba, bdx);
                 } else {
                     // forward end lower
-                    double intersection = intersection(
-                            forwardStartState,
-                            backwardStartState);
-                    finalStates.add(new Pair<>(backwardStartState, intersection));
-                    finalStates.add(
-                            new Pair<>(
-                                    afterDisplacement(forwardStartState, intersection),
-                                    forwardDx - intersection));
+                    double intersection = intersection(fv, fa, bv, ba);
+                    merged.add(bx, bv, ba, intersection);
+                    merged.add(fx + intersection, afterDisplacementV(fv, fa, intersection), fa,
+                            fdx - intersection);
                 }
             }
-            i++;
+
+            if (fHave) {
+                fx = rx;
+                fv = rv;
+                fdx = rdx;
+            }
+            if (bHave) {
+                bx = rx;
+                bv = rv;
+                bdx = rdx;
+            }
         }
 
         // turn the final states into actual time-parameterized motion segments
-        List<MotionSegment> motionSegments = new ArrayList<MotionSegment>();
-        for (Pair<MotionState, Double> finalState : finalStates) {
-            MotionState state = finalState.getFirst();
-            double stateDx = finalState.getSecond();
+        List<MotionSegment> motionSegments = new ArrayList<MotionSegment>(merged.size);
+        for (int i = 0; i < merged.size; ++i) {
+            double v = merged.v[i];
+            double a = merged.a[i];
+            double stateDx = merged.dx[i];
             double dt;
-            if (MathUtil.epsilonEquals(state.getA(), 0.0)) {
-                dt = stateDx / state.getV();
+            if (MathUtil.epsilonEquals(a, 0.0)) {
+                dt = stateDx / v;
             } else {
-                double discriminant = state.getV() * state.getV() + 2 * state.getA() * stateDx;
+                double discriminant = v * v + 2 * a * stateDx;
                 if (MathUtil.epsilonEquals(discriminant, 0.0)) {
-                    dt = -state.getV() / state.getA();
+                    dt = -v / a;
                 } else {
-                    dt = (Math.sqrt(discriminant) - state.getV()) / state.getA();
+                    dt = (Math.sqrt(discriminant) - v) / a;
                 }
             }
-            motionSegments.add(new MotionSegment(state, dt));
+            motionSegments.add(new MotionSegment(new MotionState(merged.x[i], v, a), dt));
         }
 
         return new MotionProfile(motionSegments);
     }
 
-    // execute a forward pass that consists of applying maximum acceleration
-    // starting at min(last velocity, max vel)
-    // on a segment-by-segment basis
-    private static List<Pair<MotionState, Double>> forwardPass(
-            MotionState start,
-            DoubleProgression displacements,
-            List<EvaluatedConstraint> constraints) {
-        List<Pair<MotionState, Double>> forwardStates = new ArrayList<Pair<MotionState, Double>>();
+    /** Parallel arrays of (start state, displacement) pieces. */
+    private static class Pieces {
+        double[] x;
+        double[] v;
+        double[] a;
+        double[] dx;
+        int size;
+
+        Pieces(int capacity) {
+            capacity = Math.max(capacity, 1);
+            x = new double[capacity];
+            v = new double[capacity];
+            a = new double[capacity];
+            dx = new double[capacity];
+        }
 
-        double dx = displacements.getStep();
+        void add(double x0, double v0, double a0, double dx0) {
+            if (size == x.length) {
+                int capacity = 2 * size;
+                x = Arrays.copyOf(x, capacity);
+                v = Arrays.copyOf(v, capacity);
+                a = Arrays.copyOf(a, capacity);
+                dx = Arrays.copyOf(dx, capacity);
+            }
+            x[size] = x0;
+            v[size] = v0;
+            a[size] = a0;
+            dx[size] = dx0;
+            size++;
+        }
+    }
 
-        MotionState lastState = start;
-        int lengths = Math.min(displacements.size(), constraints.size());
-        for (int i = 0; i < lengths; ++i) {
+    /**
+     * Apply maximum acceleration starting at min(last velocity, max vel), on a
+     * segment-by-segment basis, into primitive arrays.
+     * 
+     * @param reverse use the constraints in reverse order
+     */
+    private static void forwardPass(
+            double startV,
+            DoubleProgression displacements,
+            double dx,
+            double[] maxVels,
+            double[] maxAccels,
+            boolean reverse,
+            Pieces result) {
+        int n = maxVels.length;
+        double lastV = startV;
+        for (int i = 0; i < n; ++i) {
             double displacement = displacements.get(i);
-            EvaluatedConstraint constraint = constraints.get(i);
-            // compute the segment constraints
-            double maxVel = constraint.maxVel;
-            double maxAccel = constraint.maxAccel;
+            int c = reverse ? n - 1 - i : i;
+            double maxVel = maxVels[c];
+            double maxAccel = maxAccels[c];
 
-            if (lastState.getV() >= maxVel) {
+            if (lastV >= maxVel) {
                 // the last velocity exceeds max vel so we just coast
-                MotionState state = new MotionState(displacement, maxVel, 0.0);
-                forwardStates.add(new Pair<>(state, dx));
-                lastState = afterDisplacement(state, dx);
+                result.add(displacement, maxVel, 0.0, dx);
+                lastV = afterDisplacementV(maxVel, 0.0, dx);
             } else {
                 // compute the final velocity assuming max accel
-                double finalVel = Math.sqrt(lastState.getV() * lastState.getV() + 2 * maxAccel * dx);
+                double finalVel = Math.sqrt(lastV * lastV + 2 * maxAccel * dx);
                 if (finalVel <= maxVel) {
                     // we're still under max vel so we're good
-                    MotionState state = new MotionState(displacement, lastState.getV(), maxAccel);
-                    forwardStates.add(new Pair<>(state, dx));
-                    lastState = afterDisplacement(state, dx);
+                    result.add(displacement, lastV, maxAccel, dx);
+                    lastV = afterDisplacementV(lastV, maxAccel, dx);
                 } else {
                     // we went over max vel so now we split the segment
-                    double accelDx = (maxVel * maxVel - lastState.getV() * lastState.getV()) / (2 * maxAccel);
-                    MotionState accelState = new MotionState(displacement, lastState.getV(), maxAccel);
-                    MotionState coastState = new MotionState(displacement + accelDx, maxVel, 0.0);
-                    forwardStates.add(new Pair<>(accelState, accelDx));
-                    forwardStates.add(new Pair<>(coastState, dx - accelDx));
-                    lastState = afterDisplacement(coastState, dx - accelDx);
+                    double accelDx = (maxVel * maxVel - lastV * lastV) / (2 * maxAccel);
+                    result.add(displacement, lastV, maxAccel, accelDx);
+                    result.add(displacement + accelDx, maxVel, 0.0, dx - accelDx);
+                    lastV = afterDisplacementV(maxVel, 0.0, dx - accelDx);
                 }
             }
         }
-
-        return forwardStates;
     }
 
-    private static MotionState afterDisplacement(MotionState state, double dx) {
-        double discriminant = state.getV() * state.getV() + 2 * state.getA() * dx;
+    /** Velocity after moving dx at constant acceleration. */
+    private static double afterDisplacementV(double v, double a, double dx) {
+        double discriminant = v * v + 2 * a * dx;
         if (MathUtil.epsilonEquals(discriminant, 0.0)) {
-            return new MotionState(state.getX() + dx, 0.0, state.getA());
+            return 0.0;
         } else {
-            return new MotionState(state.getX() + dx, Math.sqrt(discriminant), state.getA());
+            return Math.sqrt(discriminant);
         }
     }
 
-    private static double intersection(MotionState state1, MotionState state2) {
-        return (state1.getV() * state1.getV() - state2.getV() * state2.getV())
-                / (2 * state2.getA() - 2 * state1.getA());
+    private static double intersection(double v1, double a1, double v2, double a2) {
+        return (v1 * v1 - v2 * v2) / (2 * a2 - 2 * a1);
     }
 
 }
@@ -0,0 +1,163 @@
+package org.team100.controllib.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.system.examples.Pendulum1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.Vector;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+public class GainCacheTest {
+    static final double kDelta = 1e-9;
+    static final double kDt = 0.01;
+
+    Vector<N2> stateTolerance = VecBuilder.fill(0.01, 0.2);
+    Vector<N1> controlTolerance = VecBuilder.fill(12.0);
+    WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0.015, 0.17);
+    MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+    Pendulum1D plant = new Pendulum1D(w, v);
+
+    @Test
+    public void testHitsAndMisses() {
+        GainCache cache = new GainCache();
+        Matrix<N1, N2> K = cache.get(plant, stateTolerance, controlTolerance, kDt);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        Matrix<N1, N2> expected = new GainCalculator<>(plant, stateTolerance, controlTolerance, kDt).getK();
+        assertArrayEquals(expected.getData(), K.getData(), kDelta);
+
+        Matrix<N1, N2> K2 = cache.get(plant, stateTolerance, controlTolerance, kDt);
+        assertEquals(1, cache.getHits());
+        assertArrayEquals(K.getData(), K2.getData(), 0);
+
+        // different dt is a different gain
+        cache.get(plant, stateTolerance, controlTolerance, 0.02);
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> cache.get("bad key", plant, stateTolerance, controlTolerance, kDt));
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        Path file = Files.createTempFile("gains", ".txt");
+        Files.delete(file);
+        try {
+            GainCache cache = new GainCache(file);
+            Matrix<N1, N2> K = cache.get(plant, stateTolerance, controlTolerance, kDt);
+            assertEquals(1, cache.getMisses());
+            assertTrue(Files.exists(file));
+
+            // a new cache, like after a restart
+            GainCache restored = new GainCache(file);
+            assertEquals(1, restored.size());
+            Matrix<N1, N2> K2 = restored.get(plant, stateTolerance, controlTolerance, kDt);
+            assertEquals(1, restored.getHits());
+            assertEquals(0, restored.getMisses());
+            assertArrayEquals(K.getData(), K2.getData(), 0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Same key, different dynamics, different gain. */
+    @Test
+    public void testKeyedOnDynamics() {
+        // twice the inertia
+        Pendulum1D heavy = new Pendulum1D(w, v) {
+            @Override
+            public Matrix<N2, N1> jacobianU(RandomVector<N2> x, Matrix<N1, N1> u) {
+                return super.jacobianU(x, u).times(0.5);
+            }
+        };
+        GainCache cache = new GainCache();
+        Matrix<N1, N2> K = cache.get("pendulum", plant, stateTolerance, controlTolerance, kDt);
+        Matrix<N1, N2> KHeavy = cache.get("pendulum", heavy, stateTolerance, controlTolerance, kDt);
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+        assertTrue(KHeavy.get(0, 0) > K.get(0, 0));
+        assertArrayEquals(
+                new GainCalculator<>(heavy, stateTolerance, controlTolerance, kDt).getK().getData(),
+                KHeavy.getData(), kDelta);
+    }
+
+    /** A bad line doesn't spoil the rest of the file. */
+    @Test
+    public void testBadLine() throws IOException {
+        Path file = Files.createTempFile("gains", ".txt");
+        Files.delete(file);
+        try {
+            GainCache cache = new GainCache(file);
+            cache.get(plant, stateTolerance, controlTolerance, kDt);
+            cache.get(plant, stateTolerance, controlTolerance, 0.02);
+            List<String> lines = new ArrayList<>(Files.readAllLines(file));
+            assertEquals(2, lines.size());
+            lines.add(0, "garbage 1.0 x");
+            Files.write(file, lines);
+
+            GainCache restored = new GainCache(file);
+            assertEquals(2, restored.size());
+            restored.get(plant, stateTolerance, controlTolerance, 0.02);
+            assertEquals(1, restored.getHits());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Linearization depends on the pendulum angle, so K does too. */
+    @Test
+    public void testSchedule() {
+        GainCache cache = new GainCache();
+        String key = "pendulum";
+        GainSchedule<N2, N1> schedule = new GainSchedule<>(
+                cache, key, plant, stateTolerance, controlTolerance, kDt, 0, 0, Math.PI / 2, 3);
+        assertEquals(3, cache.getMisses());
+
+        Matrix<N1, N2> K0 = cache.get(key, plant, stateTolerance, controlTolerance, kDt, VecBuilder.fill(0, 0));
+        Matrix<N1, N2> K1 = cache.get(key, plant, stateTolerance, controlTolerance, kDt,
+                VecBuilder.fill(Math.PI / 4, 0));
+        Matrix<N1, N2> K2 = cache.get(key, plant, stateTolerance, controlTolerance, kDt,
+                VecBuilder.fill(Math.PI / 2, 0));
+        assertEquals(3, cache.getHits());
+        // not by much, see GainCalculatorTest
+        assertTrue(Math.abs(K2.get(0, 0) - K0.get(0, 0)) > 0.1);
+
+        assertArrayEquals(K0.getData(), schedule.getK(0).getData(), kDelta);
+        assertArrayEquals(K1.getData(), schedule.getK(Math.PI / 4).getData(), kDelta);
+        assertArrayEquals(K2.getData(), schedule.getK(Math.PI / 2).getData(), kDelta);
+        // halfway between points
+        assertArrayEquals(K0.plus(K1).times(0.5).getData(), schedule.getK(Math.PI / 8).getData(), kDelta);
+        // clamped outside the range
+        assertArrayEquals(K0.getData(), schedule.getK(-1).getData(), kDelta);
+        assertArrayEquals(K2.getData(), schedule.getK(3).getData(), kDelta);
+
+        RandomVector<N2> x = new RandomVector<>(VecBuilder.fill(Math.PI / 4, 1), Variance.zero2());
+        assertArrayEquals(K1.getData(), schedule.getK(x).getData(), kDelta);
+
+        // feedback uses the scheduled gain
+        FeedbackControl<N2, N1, N2> control = new FeedbackControl<>(plant, schedule);
+        Matrix<N1, N1> u = control.calculate(x, VecBuilder.fill(Math.PI / 4 + 0.1, 1));
+        assertEquals(K1.get(0, 0) * 0.1, u.get(0, 0), 1e-6);
+
+        assertThrows(IllegalArgumentException.class, () -> new GainSchedule<>(
+                cache, key, plant, stateTolerance, controlTolerance, kDt, 0, 0, 1, 1));
+    }
+}
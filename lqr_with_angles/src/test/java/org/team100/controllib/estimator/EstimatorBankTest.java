@@ -0,0 +1,145 @@
+package org.team100.controllib.estimator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.reference.examples.ConstantVelocityReference1D;
+import org.team100.controllib.system.NonlinearPlant;
+import org.team100.controllib.system.examples.DoubleIntegratorRotary1D;
+import org.team100.controllib.system.examples.NoisyLimitedPlant1D;
+import org.team100.controllib.system.examples.Pendulum1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+public class EstimatorBankTest {
+    private static final double kDelta = 1e-9;
+
+    WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0.015, 0.17);
+    MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+    DoubleIntegratorRotary1D arm = new DoubleIntegratorRotary1D(w, v);
+    Pendulum1D pendulum = new Pendulum1D(w, v);
+
+    private NewBitemporalEstimatorController<N2, N1, N2> make(NonlinearPlant<N2, N1, N2> system) {
+        Matrix<N2, N2> initP = new Matrix<>(Nat.N2(), Nat.N2());
+        initP.set(0, 0, 1e9);
+        initP.set(1, 1, 1e9);
+        RandomVector<N2> initialState = new AngularRandomVector<>(VecBuilder.fill(0, 1), new Variance<>(initP));
+        return new NewBitemporalEstimatorController<>(
+                system,
+                initialState,
+                new Matrix<>(Nat.N1(), Nat.N1()),
+                new ConstantVelocityReference1D(),
+                Matrix.mat(Nat.N1(), Nat.N2()).fill(10, 1));
+    }
+
+    private static void measure(
+            NewBitemporalEstimatorController<N2, N1, N2> c,
+            NoisyLimitedPlant1D system,
+            double speed) {
+        for (int i = 1; i <= 10; ++i) {
+            double t = i * 0.002;
+            c.acceptMeasurement(i * 2000, t, system.position(speed * t));
+        }
+    }
+
+    /** The bank gives the same answer as the controllers on their own. */
+    @Test
+    public void testSameAsSeparate() {
+        NewBitemporalEstimatorController<N2, N1, N2> armAlone = make(arm);
+        NewBitemporalEstimatorController<N2, N1, N2> pendulumAlone = make(pendulum);
+        NewBitemporalEstimatorController<N2, N1, N2> armInBank = make(arm);
+        NewBitemporalEstimatorController<N2, N1, N2> pendulumInBank = make(pendulum);
+        EstimatorBank bank = new EstimatorBank();
+        int armIndex = bank.add(armInBank);
+        int pendulumIndex = bank.add(pendulumInBank);
+        assertEquals(2, bank.size());
+        assertEquals(0, bank.offset(armIndex));
+        assertEquals(2, bank.offset(pendulumIndex));
+        assertEquals(4, bank.covarianceOffset(pendulumIndex));
+
+        measure(armAlone, arm, 1);
+        measure(armInBank, arm, 1);
+        measure(pendulumAlone, pendulum, -1);
+        measure(pendulumInBank, pendulum, -1);
+
+        assertEquals(20, armAlone.replay(21000) + pendulumAlone.replay(21000));
+        assertEquals(20, bank.replay(21000));
+        bank.predictNow(0.021);
+
+        RandomVector<N2> armNow = armAlone.predictNow(0.021);
+        RandomVector<N2> pendulumNow = pendulumAlone.predictNow(0.021);
+        assertArrayEquals(armNow.x.getData(), bank.getState(armIndex).x.getData(), kDelta);
+        assertArrayEquals(pendulumNow.Kxx.getData(), bank.getState(pendulumIndex).Kxx.getData(), kDelta);
+        double[] x = bank.x();
+        assertEquals(armNow.x.get(0, 0), x[bank.offset(armIndex)], kDelta);
+        assertEquals(pendulumNow.x.get(0, 0), x[bank.offset(pendulumIndex)], kDelta);
+        assertEquals(pendulumNow.Kxx.get(1, 1), bank.P()[bank.covarianceOffset(pendulumIndex) + 3], kDelta);
+    }
+
+    /** The budget covers all the mechanisms together. */
+    @Test
+    public void testSharedBudget() {
+        EstimatorBank bank = new EstimatorBank();
+        NewBitemporalEstimatorController<N2, N1, N2> armController = make(arm);
+        NewBitemporalEstimatorController<N2, N1, N2> pendulumController = make(pendulum);
+        bank.add(armController);
+        bank.add(pendulumController);
+        measure(armController, arm, 1);
+        measure(pendulumController, pendulum, -1);
+
+        ReplayBudget budget = ReplayBudget.steps(6);
+        int total = 0;
+        int calls = 0;
+        do {
+            int count = bank.replay(21000 + calls, budget);
+            // the budget, plus at most one measurement
+            assertTrue(count <= 7, "" + count);
+            assertTrue(bank.getLastReplaySteps() <= 7);
+            total += count;
+            ++calls;
+        } while (bank.isReplayPending());
+        assertEquals(20, total);
+        assertTrue(calls > 1);
+        assertFalse(bank.isReplayPending());
+        assertEquals(0, bank.replay(30000, budget));
+    }
+
+    /** More mechanisms don't make the overrun bigger. */
+    @Test
+    public void testSharedBudgetManyMembers() {
+        EstimatorBank bank = new EstimatorBank();
+        for (int i = 0; i < 4; ++i) {
+            NoisyLimitedPlant1D system = i % 2 == 0 ? arm : pendulum;
+            NewBitemporalEstimatorController<N2, N1, N2> controller = make(system);
+            bank.add(controller);
+            measure(controller, system, 1);
+        }
+        ReplayBudget budget = ReplayBudget.steps(2);
+        int total = 0;
+        int calls = 0;
+        do {
+            int count = bank.replay(21000 + calls, budget);
+            // one step per measurement, since there's no control history
+            assertTrue(count <= 3, "" + count);
+            assertTrue(bank.getLastReplaySteps() <= 3);
+            total += count;
+            ++calls;
+        } while (bank.isReplayPending());
+        assertEquals(40, total);
+        assertTrue(calls >= 14, "" + calls);
+        assertFalse(bank.isReplayPending());
+        assertEquals(0, bank.replay(30000, budget));
+    }
+}
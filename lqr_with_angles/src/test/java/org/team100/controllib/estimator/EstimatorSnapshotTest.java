@@ -0,0 +1,169 @@
+package org.team100.controllib.estimator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.reference.examples.ConstantVelocityReference1D;
+import org.team100.controllib.system.examples.DoubleIntegratorRotary1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+public class EstimatorSnapshotTest {
+    private static final boolean debug = false;
+
+    WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0.015, 0.17);
+    MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+    DoubleIntegratorRotary1D system = new DoubleIntegratorRotary1D(w, v);
+
+    private NewBitemporalEstimatorController<N2, N1, N2> make() {
+        Matrix<N2, N2> initP = new Matrix<>(Nat.N2(), Nat.N2());
+        initP.set(0, 0, 1e9);
+        initP.set(1, 1, 1e9);
+        RandomVector<N2> initialState = new AngularRandomVector<>(VecBuilder.fill(0, 1), new Variance<>(initP));
+        Matrix<N1, N2> K = Matrix.mat(Nat.N1(), Nat.N2()).fill(10, 1);
+        return new NewBitemporalEstimatorController<>(
+                system,
+                initialState,
+                new Matrix<>(Nat.N1(), Nat.N1()),
+                new ConstantVelocityReference1D(),
+                K);
+    }
+
+    /** Position measurements every 2 ms moving at 1 rad/s, replayed every 20 ms. */
+    private void run(NewBitemporalEstimatorController<N2, N1, N2> c, int fromLoop, int toLoop) {
+        for (int loop = fromLoop; loop < toLoop; ++loop) {
+            for (int i = 1; i <= 10; ++i) {
+                long us = loop * 20000 + i * 2000;
+                double t = us * 1e-6;
+                c.acceptMeasurement(us, t, system.position(t));
+            }
+            long nowUs = (loop + 1) * 20000 + 500;
+            c.replay(nowUs);
+            c.record(nowUs * 1e-6, VecBuilder.fill(0.1 * loop));
+        }
+    }
+
+    private static Path tempFile() throws IOException {
+        Path path = Files.createTempFile("snapshot", ".bin");
+        path.toFile().deleteOnExit();
+        return path;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path path = tempFile();
+        NewBitemporalEstimatorController<N2, N1, N2> before = make();
+        run(before, 0, 10);
+        long startNanos = System.nanoTime();
+        new EstimatorSnapshot(path).write(before);
+        if (debug)
+            System.out.printf("write %d us\n", (System.nanoTime() - startNanos) / 1000);
+
+        // restart
+        NewBitemporalEstimatorController<N2, N1, N2> after = make();
+        startNanos = System.nanoTime();
+        assertTrue(new EstimatorSnapshot(path).restore(after));
+        if (debug)
+            System.out.printf("restore %d us\n", (System.nanoTime() - startNanos) / 1000);
+        assertEquals(before.m_estimates.size(), after.m_estimates.size());
+        assertEquals(before.m_measurements.size(), after.m_measurements.size());
+        assertEquals(before.m_control_history.size(), after.m_control_history.size());
+        // the types survive
+        assertEquals(AngularRandomVector.class, after.m_estimates.floorValue(0.2).getClass());
+
+        RandomVector<N2> beforeNow = before.predictNow(0.2);
+        RandomVector<N2> afterNow = after.predictNow(0.2);
+        assertArrayEquals(beforeNow.x.getData(), afterNow.x.getData(), 0);
+        assertArrayEquals(beforeNow.Kxx.getData(), afterNow.Kxx.getData(), 0);
+
+        // the cursor survives, so nothing is replayed twice
+        assertEquals(0, after.replay(200600));
+        assertEquals(0, before.replay(200600));
+
+        // and the two carry on the same
+        run(before, 10, 12);
+        run(after, 10, 12);
+        assertArrayEquals(before.predictNow(0.24).x.getData(), after.predictNow(0.24).x.getData(), 0);
+    }
+
+    @Test
+    public void testNoSnapshot() throws IOException {
+        NewBitemporalEstimatorController<N2, N1, N2> c = make();
+        assertFalse(new EstimatorSnapshot(tempFile()).restore(c));
+        assertEquals(0, c.m_estimates.size());
+    }
+
+    /** A damaged newest snapshot falls back to the previous one. */
+    @Test
+    public void testTornWrite() throws IOException {
+        Path path = tempFile();
+        int slotBytes = 64 * 1024;
+        NewBitemporalEstimatorController<N2, N1, N2> c = make();
+        EstimatorSnapshot snapshot = new EstimatorSnapshot(path, slotBytes);
+        run(c, 0, 2);
+        // sequence 1, slot 1
+        snapshot.write(c);
+        int older = c.m_estimates.size();
+        run(c, 2, 4);
+        // sequence 2, slot 0
+        snapshot.write(c);
+
+        NewBitemporalEstimatorController<N2, N1, N2> newest = make();
+        assertTrue(new EstimatorSnapshot(path, slotBytes).restore(newest));
+        assertEquals(c.m_estimates.size(), newest.m_estimates.size());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), 100);
+        }
+        NewBitemporalEstimatorController<N2, N1, N2> fallback = make();
+        EstimatorSnapshot reopened = new EstimatorSnapshot(path, slotBytes);
+        assertTrue(reopened.restore(fallback));
+        assertEquals(older, fallback.m_estimates.size());
+
+        // the next write replaces the bad one, not the good one
+        reopened.write(c);
+        NewBitemporalEstimatorController<N2, N1, N2> fixed = make();
+        assertTrue(new EstimatorSnapshot(path, slotBytes).restore(fixed));
+        assertEquals(c.m_estimates.size(), fixed.m_estimates.size());
+    }
+
+    @Test
+    public void testNotFresh() throws IOException {
+        Path path = tempFile();
+        NewBitemporalEstimatorController<N2, N1, N2> c = make();
+        run(c, 0, 2);
+        EstimatorSnapshot snapshot = new EstimatorSnapshot(path);
+        snapshot.write(c);
+        assertThrows(IllegalStateException.class, () -> snapshot.restore(c));
+    }
+
+    @Test
+    public void testTooBig() throws IOException {
+        NewBitemporalEstimatorController<N2, N1, N2> c = make();
+        run(c, 0, 10);
+        EstimatorSnapshot snapshot = new EstimatorSnapshot(tempFile(), 1024);
+        assertThrows(IllegalStateException.class, () -> snapshot.write(c));
+        assertFalse(snapshot.restore(make()));
+        assertThrows(IllegalArgumentException.class, () -> new EstimatorSnapshot(tempFile(), 8));
+    }
+}
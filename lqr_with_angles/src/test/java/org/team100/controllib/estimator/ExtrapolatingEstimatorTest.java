@@ -1,6 +1,7 @@
 package org.team100.controllib.estimator;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 import org.team100.controllib.math.AngularRandomVector;
@@ -11,6 +12,7 @@ import org.team100.controllib.math.WhiteNoiseVector;
 import org.team100.controllib.system.MockNonlinearPlant;
 import org.team100.controllib.system.NonlinearPlant;
 import org.team100.controllib.system.examples.DoubleIntegratorRotary1D;
+import org.team100.controllib.system.examples.Pendulum1D;
 
 import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.Nat;
@@ -400,4 +402,26 @@ public class ExtrapolatingEstimatorTest {
         assertArrayEquals(new double[] { 0.04, 0, 0, 0.01 }, x.Kxx.getData(), kDelta);
     }
 
+    /** The in-place version should match the allocating one exactly. */
+    @Test
+    public void testPredictWithNoiseInto() {
+        WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0.015, 0.17);
+        MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+        NonlinearPlant<N2, N1, N2> system = new Pendulum1D(w, v);
+        ExtrapolatingEstimator<N2, N1, N2> predictor = new ExtrapolatingEstimator<>(system);
+        Matrix<N2, N2> p = new Matrix<>(Nat.N2(), Nat.N2());
+        p.set(0, 0, 0.1);
+        p.set(1, 1, 0.2);
+        RandomVector<N2> x = new AngularRandomVector<>(VecBuilder.fill(3, 1), new Variance<>(p));
+        RandomVector<N2> xInto = x.copy();
+        Matrix<N1, N1> u = VecBuilder.fill(0.5);
+        for (int i = 0; i < 100; ++i) {
+            x = predictor.addNoise(predictor.predict(x, u, kDt), kDt);
+            predictor.predictWithNoiseInto(xInto, u, kDt, xInto);
+            assertArrayEquals(x.x.getData(), xInto.x.getData(), 0);
+            assertArrayEquals(x.Kxx.getData(), xInto.Kxx.getData(), 0);
+        }
+        // wrapped
+        assertTrue(Math.abs(xInto.x.get(0, 0)) <= Math.PI);
+    }
 }
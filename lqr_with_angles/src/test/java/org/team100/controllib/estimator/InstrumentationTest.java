@@ -0,0 +1,57 @@
+package org.team100.controllib.estimator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.estimator.Instrumentation.Stage;
+
+public class InstrumentationTest {
+
+    /** Every value falls in a bucket whose bounds contain it. */
+    @Test
+    public void testBuckets() {
+        long[] values = { 0, 1, 3, 4, 5, 7, 8, 9, 15, 16, 100, 1000, 12345, 1000000, 20000000 };
+        int previous = -1;
+        for (long n : values) {
+            int b = Instrumentation.bucket(n);
+            assertTrue(b >= previous);
+            previous = b;
+            assertTrue(n < Instrumentation.upperBound(b), n + " " + b);
+            if (b > 0)
+                assertTrue(n >= Instrumentation.upperBound(b - 1), n + " " + b);
+        }
+        // huge values go in the last bucket
+        assertEquals(Instrumentation.kBuckets - 1, Instrumentation.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testStats() {
+        Instrumentation instrumentation = new Instrumentation();
+        assertEquals(0, instrumentation.getPercentileNanos(Stage.FEEDBACK, 50));
+        for (int i = 1; i <= 100; ++i) {
+            instrumentation.record(Stage.FEEDBACK, i * 1000);
+        }
+        assertEquals(100, instrumentation.getCount(Stage.FEEDBACK));
+        assertEquals(50500, instrumentation.getMeanNanos(Stage.FEEDBACK), 1e-9);
+        assertEquals(100000, instrumentation.getMaxNanos(Stage.FEEDBACK));
+        assertEquals(100000, instrumentation.getLastNanos(Stage.FEEDBACK));
+        long p50 = instrumentation.getPercentileNanos(Stage.FEEDBACK, 50);
+        assertTrue(p50 >= 50000 && p50 <= 50000 * 1.25, "p50 " + p50);
+        assertEquals(100000, instrumentation.getPercentileNanos(Stage.FEEDBACK, 100));
+        // other stages are separate
+        assertEquals(0, instrumentation.getCount(Stage.REPLAY));
+
+        long[] histogram = new long[Instrumentation.kBuckets];
+        instrumentation.histogramInto(Stage.FEEDBACK, histogram);
+        long sum = 0;
+        for (long h : histogram)
+            sum += h;
+        assertEquals(100, sum);
+
+        instrumentation.reset();
+        assertEquals(0, instrumentation.getCount(Stage.FEEDBACK));
+        assertThrows(IllegalArgumentException.class, () -> instrumentation.getPercentileNanos(Stage.FEEDBACK, 101));
+    }
+}
@@ -1,5 +1,216 @@
 package org.team100.controllib.estimator;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.fusion.LinearPooling;
+import org.team100.controllib.fusion.SquareRootVarianceWeightedLinearPooling;
+import org.team100.controllib.fusion.VarianceWeightedLinearPooling;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.reference.examples.ConstantVelocityReference1D;
+import org.team100.controllib.storage.BitemporalBuffer;
+import org.team100.controllib.storage.MeasurementQueue;
+import org.team100.controllib.system.examples.DoubleIntegratorRotary1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
 public class NewBitemporalEstimatorControllerTest {
-    
+    private static final double kDelta = 0.001;
+
+    WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0.015, 0.17);
+    MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+    DoubleIntegratorRotary1D system = new DoubleIntegratorRotary1D(w, v);
+
+    private NewBitemporalEstimatorController<N2, N1, N2> make() {
+        return make(new VarianceWeightedLinearPooling<>());
+    }
+
+    private NewBitemporalEstimatorController<N2, N1, N2> make(LinearPooling<N2> pooling) {
+        Matrix<N2, N2> initP = new Matrix<>(Nat.N2(), Nat.N2());
+        initP.set(0, 0, 1e9);
+        initP.set(1, 1, 1e9);
+        RandomVector<N2> initialState = new AngularRandomVector<>(VecBuilder.fill(0, 1), new Variance<>(initP));
+        Matrix<N1, N2> K = Matrix.mat(Nat.N1(), Nat.N2()).fill(10, 1);
+        return new NewBitemporalEstimatorController<>(
+                system,
+                initialState,
+                new Matrix<>(Nat.N1(), Nat.N1()),
+                new ConstantVelocityReference1D(),
+                K,
+                new BitemporalBuffer<>(1000),
+                pooling);
+    }
+
+    /**
+     * Position and velocity measurements every 2 ms moving at 1 rad/s, replayed
+     * every 20 ms.
+     */
+    private void run(NewBitemporalEstimatorController<N2, N1, N2> c, int loops) {
+        for (int loop = 0; loop < loops; ++loop) {
+            for (int i = 1; i <= 10; ++i) {
+                long us = loop * 20000 + i * 2000;
+                double t = us * 1e-6;
+                c.acceptMeasurement(us, t, system.position(t));
+                c.acceptMeasurement(us + 1, t + 0.001, system.velocity(1));
+            }
+            long nowUs = (loop + 1) * 20000 + 500;
+            c.replay(nowUs);
+            c.record(nowUs * 1e-6, VecBuilder.fill(0));
+        }
+    }
+
+    @Test
+    public void testReplayCount() {
+        NewBitemporalEstimatorController<N2, N1, N2> c = make();
+        c.acceptMeasurement(2000, 0.002, system.position(0.002));
+        c.acceptMeasurement(4000, 0.004, system.position(0.004));
+        assertEquals(2, c.replay(5000));
+        // nothing new
+        assertEquals(0, c.replay(6000));
+        assertFalse(c.isReplayPending());
+    }
+
+    @Test
+    public void testProducerQueue() {
+        NewBitemporalEstimatorController<N2, N1, N2> c = make();
+        MeasurementQueue<RandomVector<N2>> q = c.newMeasurementProducer(16);
+        q.offer(2000, 0.002, system.position(0.002));
+        q.offer(4000, 0.004, system.position(0.004));
+        // replay drains the queue
+        assertEquals(2, c.replay(5000));
+        assertEquals(0, q.size());
+        // recorded "before" the last replay, but drained after, still counts
+        q.offer(4500, 0.0045, system.position(0.0045));
+        assertEquals(1, c.replay(6000));
+    }
+
+    @Test
+    public void testIncrementalMatchesFull() {
+        NewBitemporalEstimatorController<N2, N1, N2> full = make();
+        NewBitemporalEstimatorController<N2, N1, N2> incremental = make();
+        incremental.setIncrementalReplay(true);
+        run(full, 10);
+        run(incremental, 10);
+        // a late measurement from 100 ms ago
+        full.acceptMeasurement(200600, 0.1005, system.position(0.1005));
+        incremental.acceptMeasurement(200600, 0.1005, system.position(0.1005));
+        int fullCount = full.replay(201000);
+        int incrementalCount = incremental.replay(201000);
+        // incremental stops when the correction has died out
+        assertTrue(incrementalCount < fullCount, incrementalCount + " " + fullCount);
+        RandomVector<N2> fullNow = full.predictNow(0.2);
+        RandomVector<N2> incrementalNow = incremental.predictNow(0.2);
+        assertArrayEquals(fullNow.x.getData(), incrementalNow.x.getData(), kDelta);
+        assertEquals(0.2, fullNow.x.get(0, 0), kDelta);
+    }
+
+    @Test
+    public void testBudget() {
+        NewBitemporalEstimatorController<N2, N1, N2> unlimited = make();
+        NewBitemporalEstimatorController<N2, N1, N2> limited = make();
+        for (int i = 1; i <= 20; ++i) {
+            unlimited.acceptMeasurement(i * 2000, i * 0.002, system.position(i * 0.002));
+            limited.acceptMeasurement(i * 2000, i * 0.002, system.position(i * 0.002));
+        }
+        assertEquals(20, unlimited.replay(50000));
+
+        // one step per measurement, since there's no control history
+        ReplayBudget budget = ReplayBudget.steps(5);
+        assertEquals(5, limited.replay(50000, budget));
+        assertEquals(5, limited.getLastReplaySteps());
+        assertTrue(limited.isReplayPending());
+        assertEquals(5, limited.replay(51000, budget));
+        assertEquals(5, limited.replay(52000, budget));
+        assertEquals(5, limited.replay(53000, budget));
+        assertFalse(limited.isReplayPending());
+        assertEquals(0, limited.replay(54000, budget));
+        assertTrue(limited.getWorstReplayNanos() >= limited.getLastReplayNanos());
+
+        // same answer in the end
+        assertArrayEquals(
+                unlimited.predictNow(0.05).x.getData(),
+                limited.predictNow(0.05).x.getData(), 1e-9);
+    }
+
+    /**
+     * An incremental replay that runs out of budget leaves stale estimates after
+     * the stopping point; predictNow shouldn't use them.
+     */
+    @Test
+    public void testIncrementalBudget() {
+        NewBitemporalEstimatorController<N2, N1, N2> full = make();
+        NewBitemporalEstimatorController<N2, N1, N2> incremental = make();
+        incremental.setIncrementalReplay(true);
+        run(full, 10);
+        run(incremental, 10);
+        // a late measurement from 100 ms ago, far from the others
+        full.acceptMeasurement(200600, 0.1005, system.position(0.2));
+        incremental.acceptMeasurement(200600, 0.1005, system.position(0.2));
+        ReplayBudget budget = ReplayBudget.steps(5);
+        full.replay(201000, budget);
+        incremental.replay(201000, budget);
+        assertTrue(full.isReplayPending());
+        assertTrue(incremental.isReplayPending());
+        // both start from the last corrected estimate
+        assertArrayEquals(
+                full.predictNow(0.2).x.getData(),
+                incremental.predictNow(0.2).x.getData(), 1e-9);
+    }
+
+    /** The square-root pooling gives the same estimate. */
+    @Test
+    public void testSquareRootPooling() {
+        NewBitemporalEstimatorController<N2, N1, N2> full = make();
+        NewBitemporalEstimatorController<N2, N1, N2> sqrt = make(
+                new SquareRootVarianceWeightedLinearPooling<>());
+        run(full, 10);
+        run(sqrt, 10);
+        RandomVector<N2> fullNow = full.predictNow(0.2);
+        RandomVector<N2> sqrtNow = sqrt.predictNow(0.2);
+        assertArrayEquals(fullNow.x.getData(), sqrtNow.x.getData(), kDelta);
+        assertArrayEquals(fullNow.Kxx.getData(), sqrtNow.Kxx.getData(), kDelta);
+    }
+
+    @Test
+    public void testInstrumentation() {
+        NewBitemporalEstimatorController<N2, N1, N2> c = make();
+        Instrumentation instrumentation = new Instrumentation();
+        c.setInstrumentation(instrumentation);
+        run(c, 5);
+        assertEquals(5, instrumentation.getCount(Instrumentation.Stage.REPLAY));
+        // one fusion per measurement
+        assertEquals(100, instrumentation.getCount(Instrumentation.Stage.POOLING));
+        assertEquals(100, instrumentation.getTotalReplayCount());
+        assertEquals(20, instrumentation.getLastReplayCount());
+        assertEquals(100, instrumentation.getMeasurementDepth());
+        // as of the last replay, before the last record
+        assertEquals(4, instrumentation.getControlDepth());
+        assertTrue(instrumentation.getMaxNanos(Instrumentation.Stage.REPLAY) >= instrumentation
+                .getPercentileNanos(Instrumentation.Stage.REPLAY, 50));
+
+        RandomVector<N2> now = c.predictNow(0.1);
+        Matrix<N1, N1> uff = c.calculateFeedforward(0.11);
+        RandomVector<N2> predicted = c.predictFutureUsingFF(now, uff, 0.02);
+        c.calculateFeedback(0.12, predicted);
+        assertEquals(1, instrumentation.getCount(Instrumentation.Stage.PREDICT_NOW));
+        assertEquals(1, instrumentation.getCount(Instrumentation.Stage.FEEDFORWARD));
+        assertEquals(1, instrumentation.getCount(Instrumentation.Stage.PREDICT_FUTURE));
+        assertEquals(1, instrumentation.getCount(Instrumentation.Stage.FEEDBACK));
+
+        // off
+        c.setInstrumentation(null);
+        run(c, 1);
+        assertEquals(5, instrumentation.getCount(Instrumentation.Stage.REPLAY));
+    }
 }
@@ -1,5 +1,7 @@
 package org.team100.controllib.fusion;
 
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 import org.team100.controllib.math.AngularRandomVector;
 import org.team100.controllib.math.RandomVector;
@@ -82,6 +84,14 @@ public class DemocraticLinearPoolingTest extends PoolingTest {
         assert1(cV, Math.PI - 0.005, 1.125);
     }
 
-
-
+    @Test
+    public void testFuseAll() {
+        // same as fuse for two
+        RandomVector<N1> cV = p.fuseAll(List.of(v1(0, 1), v1(1, 2)));
+        assert1(cV, 0.5, 1);
+        // equal weights, not folded pairwise
+        cV = p.fuseAll(List.of(v1(0, 1), v1(1, 1), v1(2, 1)));
+        // variance 1/3 from the inputs, 2/3 from dispersion
+        assert1(cV, 1, 1);
+    }
 }
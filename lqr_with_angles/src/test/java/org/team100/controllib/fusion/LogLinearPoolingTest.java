@@ -2,6 +2,8 @@ package org.team100.controllib.fusion;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.List;
+
 import org.ejml.data.SingularMatrixException;
 import org.junit.jupiter.api.Test;
 import org.team100.controllib.math.RandomVector;
@@ -63,4 +65,16 @@ public class LogLinearPoolingTest extends PoolingTest {
         assert1(cV, 0, 0);
     }
 
+
+    @Test
+    public void testFuseAll() {
+        RandomVector<N1> aV = v1(0, 1);
+        RandomVector<N1> bV = v1(1, 2);
+        RandomVector<N1> expected = p.fuse(aV, bV);
+        RandomVector<N1> cV = p.fuseAll(List.of(aV, bV));
+        assert1(cV, expected.x.get(0, 0), expected.Kxx.get(0, 0));
+        // three equal variances: the mean is the average, variance is the same
+        cV = p.fuseAll(List.of(v1(0, 1), v1(1, 1), v1(2, 1)));
+        assert1(cV, 1, 1);
+    }
 }
@@ -0,0 +1,144 @@
+package org.team100.controllib.fusion;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.math.MatrixKernels;
+import org.team100.controllib.math.RandomVector;
+
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+public class SquareRootVarianceWeightedLinearPoolingTest extends PoolingTest {
+    private static final SquareRootVarianceWeightedLinearPooling<N1> p1 = new SquareRootVarianceWeightedLinearPooling<>();
+    private static final SquareRootVarianceWeightedLinearPooling<N2> p2 = new SquareRootVarianceWeightedLinearPooling<>();
+    private static final VarianceWeightedLinearPooling<N2> full2 = new VarianceWeightedLinearPooling<>();
+
+    @Test
+    public void testUnanimity1() {
+        // see the same thing twice -> become more sure
+        assert1(p1.fuse(v1(0, 1), v1(0, 1)), 0, 0.5);
+    }
+
+    @Test
+    public void testDifferentMeans() {
+        // same as VarianceWeightedLinearPooling, half from dispersion
+        assert1(p1.fuse(v1(0, 1), v1(1, 1)), 0.5, 0.75);
+    }
+
+    @Test
+    public void testDontKnow() {
+        // fuse an unknown with a known, you should just get the known back.
+        RandomVector<N2> aV = v2(0, 0, 1, 0, 0, 1e9);
+        RandomVector<N2> bV = v2(1, 1, 1e9, 0, 0, 1);
+        assert2(p2.fuse(aV, bV), 0, 1, 1, 0, 0, 1);
+    }
+
+    /** Same answer as VarianceWeightedLinearPooling, for correlated inputs. */
+    @Test
+    public void testMatchesFull() {
+        Random r = new Random(0);
+        for (int i = 0; i < 100; ++i) {
+            double aP01 = r.nextDouble() * 0.1;
+            double bP01 = r.nextDouble() * 0.1;
+            // same means so there's no dispersion
+            double x0 = r.nextDouble();
+            double x1 = r.nextDouble();
+            RandomVector<N2> aV = v2(x0, x1, 1 + r.nextDouble(), aP01, aP01, 1 + r.nextDouble());
+            RandomVector<N2> bV = v2(x0, x1, 1 + r.nextDouble(), bP01, bP01, 1 + r.nextDouble());
+            RandomVector<N2> expected = full2.fuse(aV, bV);
+            RandomVector<N2> actual = p2.fuse(aV, bV);
+            assertArrayEquals(expected.x.getData(), actual.x.getData(), 1e-9);
+            assertArrayEquals(expected.Kxx.getData(), actual.Kxx.getData(), 1e-9);
+        }
+    }
+
+    /** With diagonal variances the dispersion is the same too. */
+    @Test
+    public void testMatchesFullDiagonal() {
+        RandomVector<N2> aV = v2(0, 1, 1, 0, 0, 2);
+        RandomVector<N2> bV = v2(1, 3, 2, 0, 0, 0.5);
+        RandomVector<N2> cV = v2(2, 2, 0.5, 0, 0, 1);
+        RandomVector<N2> expected = full2.fuseAll(List.of(aV, bV, cV));
+        RandomVector<N2> actual = p2.fuseAll(List.of(aV, bV, cV));
+        assertArrayEquals(expected.x.getData(), actual.x.getData(), 1e-9);
+        assertArrayEquals(expected.Kxx.getData(), actual.Kxx.getData(), 1e-9);
+    }
+
+    /** The determinant threshold rejects these, the factors don't care. */
+    @Test
+    public void testScale() {
+        RandomVector<N2> tiny = v2(0, 0, 1e-9, 0, 0, 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> full2.fuse(tiny, tiny));
+        RandomVector<N2> c = p2.fuse(tiny, tiny);
+        assertArrayEquals(new double[] { 5e-10, 0, 0, 5e-10 }, c.Kxx.getData(), 1e-20);
+
+        RandomVector<N2> unknown = v2(0, 0, 1e9, 0, 0, 1e9);
+        assertThrows(IllegalArgumentException.class, () -> full2.fuse(unknown, unknown));
+        c = p2.fuse(unknown, unknown);
+        assertArrayEquals(new double[] { 5e8, 0, 0, 5e8 }, c.Kxx.getData(), 1e-3);
+    }
+
+    /** Strongly correlated and lopsided, still exactly symmetric. */
+    @Test
+    public void testSymmetric() {
+        Random r = new Random(1);
+        double[] work = new double[4];
+        for (int i = 0; i < 100; ++i) {
+            double s = Math.pow(10, 9 * r.nextDouble());
+            RandomVector<N2> aV = v2(r.nextDouble(), r.nextDouble(), s, 0.999 * s, 0.999 * s, s);
+            RandomVector<N2> bV = v2(r.nextDouble(), r.nextDouble(), 1e-3, 0, 0, 1e9);
+            RandomVector<N2> c = p2.fuse(aV, bV);
+            assertTrue(MatrixKernels.isSymmetric(c.Kxx.getData(), 2, 0));
+            assertTrue(MatrixKernels.isPositiveDefinite(c.Kxx.getData(), 2, work), c.toString());
+        }
+    }
+
+    @Test
+    public void testFuseIntoAliasing() {
+        RandomVector<N2> aV = v2(0, 1, 1, 0.1, 0.1, 2);
+        RandomVector<N2> bV = v2(1, 3, 2, 0.2, 0.2, 0.5);
+        RandomVector<N2> expected = p2.fuse(aV, bV);
+        p2.fuseInto(aV, bV, aV);
+        assertArrayEquals(expected.x.getData(), aV.x.getData(), 0);
+        assertArrayEquals(expected.Kxx.getData(), aV.Kxx.getData(), 0);
+    }
+
+    @Test
+    public void testFuseAllOrder() {
+        RandomVector<N2> aV = v2(0, 1, 1, 0.1, 0.1, 2);
+        RandomVector<N2> bV = v2(1, 3, 2, 0.2, 0.2, 0.5);
+        RandomVector<N2> cV = v2(2, 2, 0.5, 0, 0, 1);
+        RandomVector<N2> abc = p2.fuseAll(List.of(aV, bV, cV));
+        RandomVector<N2> cba = p2.fuseAll(List.of(cV, bV, aV));
+        assertArrayEquals(abc.x.getData(), cba.x.getData(), 1e-9);
+        assertArrayEquals(abc.Kxx.getData(), cba.Kxx.getData(), 1e-9);
+        // one input is just a copy
+        assert1(p1.fuseAll(List.of(v1(3, 2))), 3, 2);
+        assertThrows(IllegalArgumentException.class, () -> p1.fuseAll(List.of()));
+    }
+
+    @Test
+    public void testNotPositiveDefinite() {
+        assertThrows(IllegalArgumentException.class, () -> p1.fuse(v1(0, 0), v1(1, 1)));
+        assertThrows(IllegalArgumentException.class, () -> p2.fuse(v2(0, 0, 1, 2, 2, 1), v2(0, 0, 1, 0, 0, 1)));
+    }
+
+    /** No symmetry check, only the lower triangle is used. */
+    @Test
+    public void testLowerTriangle() {
+        RandomVector<N2> asymmetric = v2(0, 0, 1, 0.5, 0.1, 1);
+        RandomVector<N2> lower = v2(0, 0, 1, 0.1, 0.1, 1);
+        RandomVector<N2> bV = v2(1, 1, 1, 0, 0, 1);
+        assertArrayEquals(
+                p2.fuse(lower, bV).Kxx.getData(),
+                p2.fuse(asymmetric, bV).Kxx.getData(), 0);
+        assertEquals(0.5, p2.fuse(lower, bV).x.get(0, 0), 0.1);
+    }
+}
@@ -3,7 +3,9 @@ package org.team100.controllib.fusion;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.List;
 import java.util.Random;
 
 import org.junit.jupiter.api.Test;
@@ -327,4 +329,102 @@ public class VarianceWeightedLinearPoolingTest extends PoolingTest {
             aV.Kxx.getValue().get(0,0));
         }
     }
+
+    /** The in-place version should match the allocating one. */
+    @Test
+    public void testFuseInto() {
+        Random r = new Random(0);
+        for (int i = 0; i < 100; ++i) {
+            double ax0 = r.nextDouble();
+            double ax1 = r.nextDouble();
+            double bx0 = r.nextDouble();
+            double bx1 = r.nextDouble();
+            double aP01 = r.nextDouble() * 0.1;
+            double bP01 = r.nextDouble() * 0.1;
+            RandomVector<N2> aV = v2(ax0, ax1, 1 + r.nextDouble(), aP01, aP01, 1 + r.nextDouble());
+            RandomVector<N2> bV = v2(bx0, bx1, 1 + r.nextDouble(), bP01, bP01, 1 + r.nextDouble());
+            RandomVector<N2> expected = p2.fuse(aV, bV);
+            RandomVector<N2> actual = aV.copy();
+            p2.fuseInto(aV, bV, actual);
+            assertArrayEquals(expected.x.getData(), actual.x.getData(), 1e-9);
+            assertArrayEquals(expected.Kxx.getData(), actual.Kxx.getData(), 1e-9);
+            // aliasing
+            p2.fuseInto(aV, bV, aV);
+            assertArrayEquals(expected.x.getData(), aV.x.getData(), 1e-9);
+            assertArrayEquals(expected.Kxx.getData(), aV.Kxx.getData(), 1e-9);
+        }
+    }
+
+    /** Two inputs should be close to fuse(), more should be order-independent. */
+    @Test
+    public void testFuseAll() {
+        Random r = new Random(0);
+        for (int i = 0; i < 100; ++i) {
+            double aP01 = r.nextDouble() * 0.1;
+            double bP01 = r.nextDouble() * 0.1;
+            double cP01 = r.nextDouble() * 0.1;
+            RandomVector<N2> aV = v2(r.nextDouble(), r.nextDouble(), 1 + r.nextDouble(), aP01, aP01, 1 + r.nextDouble());
+            RandomVector<N2> bV = v2(r.nextDouble(), r.nextDouble(), 1 + r.nextDouble(), bP01, bP01, 1 + r.nextDouble());
+            RandomVector<N2> cV = v2(r.nextDouble(), r.nextDouble(), 1 + r.nextDouble(), cP01, cP01, 1 + r.nextDouble());
+            RandomVector<N2> expected = p2.fuse(aV, bV);
+            RandomVector<N2> actual = p2.fuseAll(List.of(aV, bV));
+            assertArrayEquals(expected.x.getData(), actual.x.getData(), 1e-9);
+            // the dispersion terms are a little different for non-diagonal weights
+            assertArrayEquals(expected.Kxx.getData(), actual.Kxx.getData(), 0.01);
+
+            RandomVector<N2> abc = p2.fuseAll(List.of(aV, bV, cV));
+            RandomVector<N2> cba = p2.fuseAll(List.of(cV, bV, aV));
+            assertArrayEquals(abc.x.getData(), cba.x.getData(), 1e-9);
+            assertArrayEquals(abc.Kxx.getData(), cba.Kxx.getData(), 1e-9);
+
+            // same as the allocating version in LinearPooling
+            Matrix<N2, N2> sumI = aV.Kxx.getValue().inv()
+                    .plus(bV.Kxx.getValue().inv())
+                    .plus(cV.Kxx.getValue().inv()).inv();
+            RandomVector<N2> slow = p2.fuseAll(List.of(aV, bV, cV), List.of(
+                    aV.Kxx.getValue().inv().times(sumI),
+                    bV.Kxx.getValue().inv().times(sumI),
+                    cV.Kxx.getValue().inv().times(sumI)));
+            assertArrayEquals(slow.x.getData(), abc.x.getData(), 1e-9);
+            assertArrayEquals(slow.Kxx.getData(), abc.Kxx.getData(), 1e-9);
+        }
+    }
+
+    /** With diagonal variances, two-way fuseAll is the same as fuse. */
+    @Test
+    public void testFuseAllDiagonal() {
+        RandomVector<N2> aV = v2(0, 1, 1, 0, 0, 2);
+        RandomVector<N2> bV = v2(1, 3, 2, 0, 0, 0.5);
+        RandomVector<N2> expected = p2.fuse(aV, bV);
+        RandomVector<N2> actual = p2.fuseAll(List.of(aV, bV));
+        assertArrayEquals(expected.x.getData(), actual.x.getData(), 1e-9);
+        assertArrayEquals(expected.Kxx.getData(), actual.Kxx.getData(), 1e-9);
+    }
+
+    @Test
+    public void testFuseAllThree() {
+        // equal variances, so equal weights
+        RandomVector<N1> cV = p1.fuseAll(List.of(v1(0, 1), v1(1, 1), v1(2, 1)));
+        // variance 1/3 from the inputs, 2/3 from dispersion
+        assert1(cV, 1, 1);
+        // one input is just a copy
+        assert1(p1.fuseAll(List.of(v1(3, 2))), 3, 2);
+        assertThrows(IllegalArgumentException.class, () -> p1.fuseAll(List.of()));
+    }
+
+    @Test
+    public void testValidate() {
+        VarianceWeightedLinearPooling<N2> p = new VarianceWeightedLinearPooling<>();
+        assertTrue(p.isValidate());
+        // not symmetric
+        RandomVector<N2> aV = v2(0, 0, 1, 0.1, 0, 1);
+        RandomVector<N2> bV = v2(0, 0, 1, 0, 0, 1);
+        assertThrows(IllegalArgumentException.class, () -> p.fuse(aV, bV));
+        assertThrows(IllegalArgumentException.class, () -> p.fuseAll(List.of(aV, bV)));
+        p.setValidate(false);
+        p.fuse(aV, bV);
+        p.fuseAll(List.of(aV, bV));
+        // singular is still an error, the weights need the inverse
+        assertThrows(IllegalArgumentException.class, () -> p.fuseAll(List.of(aV, v2(0, 0, 0, 0, 0, 0))));
+    }
 }
@@ -0,0 +1,211 @@
+package org.team100.controllib.integration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.estimator.ExtrapolatingEstimator;
+import org.team100.controllib.math.AngularRandomVector;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.RandomVector;
+import org.team100.controllib.math.Variance;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.system.examples.DoubleIntegratorCartesian1D;
+import org.team100.controllib.system.examples.FrictionCartesian1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+public class IntegratorTest {
+    private static final double kDelta = 1e-9;
+
+    WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0, 0);
+    MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+    DoubleIntegratorCartesian1D doubleIntegrator = new DoubleIntegratorCartesian1D(w, v);
+    FrictionCartesian1D friction = new FrictionCartesian1D(w, v);
+
+    /** Very strong friction: vdot = u - 1000 v */
+    static class StiffFriction extends FrictionCartesian1D {
+        public StiffFriction(WhiteNoiseVector<N2> w, MeasurementUncertainty<N2> v) {
+            super(w, v);
+        }
+
+        @Override
+        public void fInto(RandomVector<N2> xmat, Matrix<N1, N1> umat, RandomVector<N2> xdot) {
+            super.fInto(xmat, umat, xdot);
+            xdot.x.set(1, 0, umat.get(0, 0) - 1000 * xmat.x.get(1, 0));
+        }
+    }
+
+    /** A spring: vdot = u - p, which isn't periodic in p, so wrapping matters. */
+    static class Spring extends FrictionCartesian1D {
+        public Spring(WhiteNoiseVector<N2> w, MeasurementUncertainty<N2> v) {
+            super(w, v);
+        }
+
+        @Override
+        public void fInto(RandomVector<N2> xmat, Matrix<N1, N1> umat, RandomVector<N2> xdot) {
+            super.fInto(xmat, umat, xdot);
+            xdot.x.set(1, 0, umat.get(0, 0) - xmat.x.get(0, 0));
+        }
+    }
+
+    static RandomVector<N2> v2(double p, double v) {
+        return new RandomVector<>(VecBuilder.fill(p, v), Variance.zero2());
+    }
+
+    /** Constant acceleration is easy for everyone. */
+    @Test
+    public void testDoubleIntegrator() {
+        Matrix<N1, N1> u = VecBuilder.fill(1);
+        RandomVector<N2> result = v2(0, 0);
+        double[] expected = new double[] { 0.625, 1.5 };
+
+        new RungeKutta4<>(doubleIntegrator).integrate(v2(0, 1), u, 0.5, result);
+        assertArrayEquals(expected, result.x.getData(), kDelta);
+
+        new RungeKutta45<>(doubleIntegrator, 1e-9, 100).integrate(v2(0, 1), u, 0.5, result);
+        assertArrayEquals(expected, result.x.getData(), kDelta);
+
+        ExactLinear.linearize(doubleIntegrator).integrate(v2(0, 1), u, 0.5, result);
+        assertArrayEquals(expected, result.x.getData(), kDelta);
+
+        // first order, so not exact
+        new SemiImplicitEuler<>(doubleIntegrator, 1e-6, 10000).integrate(v2(0, 1), u, 0.5, result);
+        assertArrayEquals(expected, result.x.getData(), 1e-3);
+    }
+
+    /** Exponential decay: one RK4 step over a second is visibly wrong. */
+    @Test
+    public void testFriction() {
+        Matrix<N1, N1> u = VecBuilder.fill(0);
+        RandomVector<N2> result = v2(0, 0);
+        double[] expected = new double[] { 1 - Math.exp(-1), Math.exp(-1) };
+
+        new RungeKutta4<>(friction).integrate(v2(0, 1), u, 1, result);
+        assertTrue(Math.abs(expected[1] - result.x.get(1, 0)) > 1e-4);
+
+        RungeKutta45<N2, N1> rk45 = new RungeKutta45<>(friction, 1e-10, 1000);
+        int evaluations = rk45.integrate(v2(0, 1), u, 1, result);
+        assertArrayEquals(expected, result.x.getData(), 1e-8);
+        assertTrue(rk45.getLastError() <= 1e-10);
+        assertTrue(evaluations > 7);
+
+        ExactLinear.linearize(friction).integrate(v2(0, 1), u, 1, result);
+        assertArrayEquals(expected, result.x.getData(), kDelta);
+
+        // backwards is fine too
+        rk45.integrate(result.copy(), u, -1, result);
+        assertArrayEquals(new double[] { 0, 1 }, result.x.getData(), 1e-8);
+    }
+
+    @Test
+    public void testEvaluationLimit() {
+        Matrix<N1, N1> u = VecBuilder.fill(0);
+        RandomVector<N2> result = v2(0, 0);
+        // one step, whatever the error
+        RungeKutta45<N2, N1> rk45 = new RungeKutta45<>(friction, 1e-14, 7);
+        assertEquals(7, rk45.integrate(v2(0, 1), u, 1, result));
+        assertTrue(rk45.getLastError() > 1e-14);
+        assertEquals(Math.exp(-1), result.x.get(1, 0), 1e-3);
+
+        rk45 = new RungeKutta45<>(friction, 1e-14, 50);
+        assertTrue(rk45.integrate(v2(0, 1), u, 1, result) <= 50);
+
+        SemiImplicitEuler<N2, N1> euler = new SemiImplicitEuler<>(friction, 1e-14, 20);
+        assertTrue(euler.integrate(v2(0, 1), u, 1, result) <= 20);
+
+        assertThrows(IllegalArgumentException.class, () -> new RungeKutta45<>(friction, 1e-3, 6));
+        assertThrows(IllegalArgumentException.class, () -> new SemiImplicitEuler<>(friction, 1e-3, 5));
+    }
+
+    /** Explicit methods blow up on stiff plants, semi-implicit doesn't. */
+    @Test
+    public void testStiff() {
+        StiffFriction stiff = new StiffFriction(w, v);
+        Matrix<N1, N1> u = VecBuilder.fill(0);
+        RandomVector<N2> result = v2(0, 0);
+
+        new RungeKutta4<>(stiff).integrate(v2(0, 1), u, 0.1, result);
+        assertTrue(Math.abs(result.x.get(1, 0)) > 1);
+
+        SemiImplicitEuler<N2, N1> euler = new SemiImplicitEuler<>(stiff, 1e-5, 200);
+        int evaluations = euler.integrate(v2(0, 1), u, 0.1, result);
+        // coasts 1 mm and stops
+        assertEquals(0.001, result.x.get(0, 0), 1e-4);
+        assertEquals(0, result.x.get(1, 0), 1e-3);
+        assertTrue(evaluations <= 200);
+    }
+
+    /** Exact discretization propagates covariance as Ad K AdT. */
+    @Test
+    public void testExactCovariance() {
+        Matrix<N2, N2> A = Matrix.mat(Nat.N2(), Nat.N2()).fill(0, 1, 0, 0);
+        Matrix<N2, N1> B = Matrix.mat(Nat.N2(), Nat.N1()).fill(0, 1);
+        ExactLinear<N2, N1> exact = new ExactLinear<>(A, B);
+        Matrix<N2, N2> p = new Matrix<>(Nat.N2(), Nat.N2());
+        p.set(0, 0, 1);
+        p.set(1, 1, 1);
+        RandomVector<N2> x = new RandomVector<>(VecBuilder.fill(0, 1), new Variance<>(p));
+        exact.integrate(x, VecBuilder.fill(0), 1, x);
+        assertArrayEquals(new double[] { 1, 1 }, x.x.getData(), kDelta);
+        assertArrayEquals(new double[] { 2, 1, 1, 1 }, x.Kxx.getData(), kDelta);
+    }
+
+    @Test
+    public void testEstimator() {
+        WhiteNoiseVector<N2> noise = WhiteNoiseVector.noise2(1, 1);
+        FrictionCartesian1D plant = new FrictionCartesian1D(noise, v);
+        ExtrapolatingEstimator<N2, N1, N2> predictor = new ExtrapolatingEstimator<>(
+                plant, new RungeKutta45<>(plant, 1e-10, 1000));
+        RandomVector<N2> x = predictor.predictWithNoise(v2(0, 1), VecBuilder.fill(0), 1);
+        assertEquals(Math.exp(-1), x.x.get(1, 0), 1e-8);
+        assertTrue(predictor.getLastEvaluations() > 7);
+        assertTrue(predictor.getLastError() <= 1e-10);
+        // noise is added once for the whole span
+        assertTrue(x.Kxx.get(0, 0) >= 1);
+    }
+
+    /**
+     * The scratch for intermediate states follows the type of x, so a plain
+     * state after an angular one isn't wrapped.
+     */
+    @Test
+    public void testMixedTypes() {
+        Spring spring = new Spring(w, v);
+        Matrix<N1, N1> u = VecBuilder.fill(0);
+        // intermediate positions go past pi
+        RandomVector<N2> plain = v2(3.1, 1);
+        AngularRandomVector<N2> angular = new AngularRandomVector<>(VecBuilder.fill(3.1, 1), Variance.zero2());
+
+        checkMixedTypes(new RungeKutta4<>(spring), new RungeKutta4<>(spring), plain, angular, u, kDelta);
+        // the adaptive ones remember their step size, so they differ a little.
+        checkMixedTypes(new RungeKutta45<>(spring, 1e-9, 1000), new RungeKutta45<>(spring, 1e-9, 1000),
+                plain, angular, u, 1e-6);
+        checkMixedTypes(new SemiImplicitEuler<>(spring, 1e-6, 10000), new SemiImplicitEuler<>(spring, 1e-6, 10000),
+                plain, angular, u, 1e-3);
+    }
+
+    private static void checkMixedTypes(
+            Integrator<N2, N1> used,
+            Integrator<N2, N1> fresh,
+            RandomVector<N2> plain,
+            AngularRandomVector<N2> angular,
+            Matrix<N1, N1> u,
+            double delta) {
+        RandomVector<N2> expected = v2(0, 0);
+        fresh.integrate(plain, u, 0.5, expected);
+        // no wrapping
+        assertTrue(expected.x.get(0, 0) > Math.PI);
+
+        RandomVector<N2> result = v2(0, 0);
+        used.integrate(angular, u, 0.5, angular.copy());
+        used.integrate(plain, u, 0.5, result);
+        assertArrayEquals(expected.x.getData(), result.x.getData(), delta);
+    }
+}
@@ -2,9 +2,14 @@ package org.team100.controllib.math;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 import org.team100.controllib.system.NonlinearPlant;
+import org.team100.controllib.system.examples.DoubleIntegratorCartesian1D;
 import org.team100.controllib.system.examples.DoubleIntegratorRotary1D;
+import org.team100.controllib.system.examples.FrictionCartesian1D;
+import org.team100.controllib.system.examples.FrictionRotary1D;
 import org.team100.controllib.system.examples.Pendulum1D;
 
 import edu.wpi.first.math.Matrix;
@@ -35,11 +40,12 @@ public class JacobianTest {
 
     @Test
     public void testJacobianH() {
-        // TODO: make an H version
         RandomVector<N2> x = new RandomVector<>(new Matrix<>(Nat.N2(), Nat.N1()), Variance.zero2());
         Matrix<N1, N1> u = new Matrix<>(Nat.N1(), Nat.N1());
-        Matrix<N2, N2> A = Jacobian.numericalJacobianX(Nat.N2(), Nat.N2(), this::h, x, u);
-        assertArrayEquals(new double[] { 1, 0, 0, 1 }, A.getData(), kDelta);
+        Matrix<N2, N2> C = Jacobian.numericalJacobianH(Nat.N2(), Nat.N2(), this::h, x, u);
+        assertArrayEquals(new double[] { 1, 0, 0, 1 }, C.getData(), kDelta);
+        // h returns its argument, that's ok
+        assertArrayEquals(new double[] { 0, 0 }, x.x.getData(), 0);
     }
 
     @Test
@@ -209,4 +215,31 @@ public class JacobianTest {
         }
     }
 
+    /** Analytic jacobians should match the numerical ones. */
+    @Test
+    public void testAnalytic() {
+        WhiteNoiseVector<N2> w = WhiteNoiseVector.noise2(0.015, 0.17);
+        MeasurementUncertainty<N2> v = MeasurementUncertainty.for2(0.01, 0.1);
+        List<NonlinearPlant<N2, N1, N2>> plants = List.of(
+                new DoubleIntegratorCartesian1D(w, v),
+                new DoubleIntegratorRotary1D(w, v),
+                new FrictionCartesian1D(w, v),
+                new FrictionRotary1D(w, v),
+                new Pendulum1D(w, v));
+        for (NonlinearPlant<N2, N1, N2> plant : plants) {
+            for (double p : new double[] { 0, Math.PI / 6, Math.PI / 2, 3 }) {
+                RandomVector<N2> x = plant.make(VecBuilder.fill(p, 1), Variance.zero2());
+                Matrix<N1, N1> u = VecBuilder.fill(2);
+                assertArrayEquals(
+                        Jacobian.numericalJacobianX(Nat.N2(), Nat.N2(), plant::f, x, u).getData(),
+                        plant.jacobianX(x, u).getData(), kDelta);
+                assertArrayEquals(
+                        Jacobian.numericalJacobianU(Nat.N2(), Nat.N1(), plant::f, x, u).getData(),
+                        plant.jacobianU(x, u).getData(), kDelta);
+                assertArrayEquals(
+                        Jacobian.numericalJacobianH(Nat.N2(), Nat.N2(), plant::h, x, u).getData(),
+                        plant.jacobianH(x, u).getData(), kDelta);
+            }
+        }
+    }
 }
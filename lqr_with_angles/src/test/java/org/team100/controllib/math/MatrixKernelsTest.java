@@ -0,0 +1,147 @@
+package org.team100.controllib.math;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class MatrixKernelsTest {
+    private static final double kDelta = 1e-9;
+
+    @Test
+    public void testInv2() {
+        double[] a = { 4, 7, 2, 6 };
+        double[] out = new double[4];
+        MatrixKernels.inv(a, out, 2, new double[4]);
+        assertArrayEquals(new double[] { 0.6, -0.7, -0.2, 0.4 }, out, kDelta);
+    }
+
+    @Test
+    public void testInvN() {
+        // each size should give a * inv(a) = I
+        for (int n = 1; n <= 5; ++n) {
+            double[] a = new double[n * n];
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < n; ++j) {
+                    a[i * n + j] = i == j ? n + 1 : 1.0 / (i + j + 1);
+                }
+            }
+            double[] work = new double[n * n];
+            double[] ai = new double[n * n];
+            double[] product = new double[n * n];
+            MatrixKernels.inv(a, ai, n, work);
+            MatrixKernels.mult(a, ai, product, n);
+            assertTrue(MatrixKernels.isIdentity(product, n, kDelta), "n=" + n);
+        }
+    }
+
+    @Test
+    public void testDet() {
+        double[] work = new double[16];
+        assertAll(
+                () -> assertEquals(3, MatrixKernels.det(new double[] { 3 }, 1, work), kDelta),
+                () -> assertEquals(10, MatrixKernels.det(new double[] { 4, 7, 2, 6 }, 2, work), kDelta),
+                () -> assertEquals(-306, MatrixKernels.det(new double[] { 6, 1, 1, 4, -2, 5, 2, 8, 7 }, 3, work),
+                        kDelta),
+                // row swap changes the sign
+                () -> assertEquals(-24, MatrixKernels.det(new double[] {
+                        0, 2, 0, 0,
+                        1, 0, 0, 0,
+                        0, 0, 3, 0,
+                        0, 0, 0, 4 }, 4, work), kDelta));
+    }
+
+    @Test
+    public void testSingular() {
+        assertThrows(IllegalArgumentException.class,
+                () -> MatrixKernels.inv(new double[] { 1, 2, 2, 4 }, new double[4], 2, new double[4]));
+    }
+
+    @Test
+    public void testPositiveDefinite() {
+        double[] work = new double[4];
+        assertTrue(MatrixKernels.isPositiveDefinite(new double[] { 2, 1, 1, 2 }, 2, work));
+        assertFalse(MatrixKernels.isPositiveDefinite(new double[] { 1, 2, 2, 1 }, 2, work));
+        assertFalse(MatrixKernels.isPositiveDefinite(new double[] { 1, 0, 0, 0 }, 2, work));
+    }
+
+    @Test
+    public void testCholesky() {
+        double[] a = { 4, 2, 2, 3 };
+        double[] l = new double[4];
+        assertTrue(MatrixKernels.cholesky(a, l, 2));
+        assertArrayEquals(new double[] { 2, 0, 1, Math.sqrt(2) }, l, kDelta);
+        double[] llt = new double[4];
+        MatrixKernels.multLowerTransposeSelf(l, llt, 2);
+        assertArrayEquals(a, llt, kDelta);
+        // scale doesn't matter
+        assertTrue(MatrixKernels.cholesky(new double[] { 1e-9, 0, 0, 1e9 }, l, 2));
+        assertArrayEquals(new double[] { Math.sqrt(1e-9), 0, 0, Math.sqrt(1e9) }, l, kDelta);
+        assertFalse(MatrixKernels.cholesky(new double[] { 1, 2, 2, 1 }, l, 2));
+        assertFalse(MatrixKernels.cholesky(new double[] { Double.NaN, 0, 0, 1 }, l, 2));
+    }
+
+    @Test
+    public void testCholeskyInverse() {
+        double[] a = {
+                4, 1, 0.5,
+                1, 3, 0.2,
+                0.5, 0.2, 2 };
+        double[] l = new double[9];
+        double[] ai = new double[9];
+        double[] expected = new double[9];
+        double[] work = new double[9];
+        assertTrue(MatrixKernels.cholesky(a, l, 3));
+        MatrixKernels.choleskyInverse(l, ai, 3, work);
+        MatrixKernels.inv(a, expected, 3, work);
+        assertArrayEquals(expected, ai, kDelta);
+        assertTrue(MatrixKernels.isSymmetric(ai, 3, 0));
+
+        // the determinant of this is 1e-18
+        double[] tiny = { 1e-9, 0, 0, 1e-9 };
+        double[] tinyI = new double[4];
+        assertTrue(MatrixKernels.cholesky(tiny, l, 2));
+        MatrixKernels.choleskyInverse(l, tinyI, 2, work);
+        assertArrayEquals(new double[] { 1e9, 0, 0, 1e9 }, tinyI, 1e-3);
+    }
+
+    @Test
+    public void testTriangularize() {
+        // [A B] [A B]T = A AT + B BT
+        double[] ab = {
+                1, 0, 0.5, 0.1,
+                0.3, 2, -0.2, 0.4 };
+        double[] l = new double[4];
+        double[] work = new double[2 * 4 + 4];
+        MatrixKernels.triangularize(ab, l, 2, 4, work);
+        assertEquals(0, l[1], 0);
+        assertTrue(l[0] >= 0);
+        assertTrue(l[3] >= 0);
+        double[] llt = new double[4];
+        MatrixKernels.multLowerTransposeSelf(l, llt, 2);
+        double[] expected = new double[4];
+        for (int i = 0; i < 2; ++i) {
+            for (int j = 0; j < 2; ++j) {
+                for (int k = 0; k < 4; ++k) {
+                    expected[i * 2 + j] += ab[i * 4 + k] * ab[j * 4 + k];
+                }
+            }
+        }
+        assertArrayEquals(expected, llt, kDelta);
+
+        // very different scales
+        double[] big = { 1e5, 0, 1e-5, 0, 0, 1e-5, 0, 1e5 };
+        MatrixKernels.triangularize(big, l, 2, 4, work);
+        MatrixKernels.multLowerTransposeSelf(l, llt, 2);
+        assertEquals(1e10, llt[0], 1e-3);
+        assertEquals(1e10, llt[3], 1e-3);
+        assertEquals(0, llt[1], 1e-3);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> MatrixKernels.triangularize(new double[2], new double[4], 2, 1, new double[3]));
+    }
+}
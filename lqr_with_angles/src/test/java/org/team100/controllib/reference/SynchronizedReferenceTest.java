@@ -0,0 +1,100 @@
+package org.team100.controllib.reference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.team100.lib.profile.MotionProfile;
+import org.team100.lib.profile.MotionProfileGenerator;
+import org.team100.lib.profile.MotionState;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N6;
+
+public class SynchronizedReferenceTest {
+    private static final double kDelta = 1e-9;
+
+    double[] start = { 0, 1, -1 };
+    double[] goal = { 1, 1, 1 };
+    double[] maxVel = { 1, 1, 1 };
+    double[] maxAccel = { 2, 2, 2 };
+    double[] maxJerk = { 10, 10, 10 };
+
+    @Test
+    public void testArrival() {
+        SynchronizedReference<N6> ref = new SynchronizedReference<>(
+                Nat.N6(), start, goal, maxVel, maxAccel, maxJerk);
+        // the longest move sets the time
+        MotionProfile slowest = MotionProfileGenerator.generateSimpleMotionProfile(
+                new MotionState(-1, 0, 0), new MotionState(1, 0, 0), 1, 2, 10);
+        assertEquals(slowest.duration(), ref.duration(), 1e-6);
+        Matrix<N6, N1> r = ref.getR(ref.duration());
+        assertArrayEquals(new double[] { 1, 0, 1, 0, 1, 0 }, r.getData(), kDelta);
+        // half way through, the short move is half as far along
+        r = ref.getR(ref.duration() / 2);
+        assertEquals(0.5, r.get(0, 0), 1e-6);
+        assertEquals(1, r.get(2, 0), kDelta);
+        assertEquals(0, r.get(4, 0), 1e-6);
+    }
+
+    @Test
+    public void testLimits() {
+        SynchronizedReference<N6> ref = new SynchronizedReference<>(
+                Nat.N6(), start, goal, new double[] { 0.2, 1, 1 }, maxAccel, maxJerk);
+        double[] v = new double[3];
+        double[] a = new double[3];
+        double peak = 0;
+        for (double t = 0; t < ref.duration(); t += 0.01) {
+            ref.sample(t, null, v, a);
+            for (int i = 0; i < 3; ++i) {
+                assertTrue(Math.abs(v[i]) <= maxVel[i] + kDelta);
+                assertTrue(Math.abs(a[i]) <= maxAccel[i] + kDelta);
+            }
+            assertTrue(Math.abs(v[0]) <= 0.2 + kDelta);
+            peak = Math.max(peak, v[0]);
+        }
+        // the slow axis sets the pace
+        assertEquals(0.2, peak, 1e-3);
+    }
+
+    /** Batched sample matches getR and getRDot. */
+    @Test
+    public void testSample() {
+        SynchronizedReference<N6> ref = new SynchronizedReference<>(
+                Nat.N6(), start, goal, maxVel, maxAccel, maxJerk);
+        double[] x = new double[3];
+        double[] v = new double[3];
+        double[] a = new double[3];
+        double t = 0.7;
+        ref.sample(t, x, v, a);
+        Matrix<N6, N1> r = ref.getR(t);
+        Matrix<N6, N1> rdot = ref.getRDot(t);
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(x[i], r.get(2 * i, 0), kDelta);
+            assertEquals(v[i], r.get(2 * i + 1, 0), kDelta);
+            assertEquals(v[i], rdot.get(2 * i, 0), kDelta);
+            assertEquals(a[i], rdot.get(2 * i + 1, 0), kDelta);
+        }
+    }
+
+    @Test
+    public void testNoMotion() {
+        SynchronizedReference<N6> ref = new SynchronizedReference<>(
+                Nat.N6(), goal, goal, maxVel, maxAccel, maxJerk);
+        assertEquals(0, ref.duration(), kDelta);
+        assertArrayEquals(new double[] { 1, 0, 1, 0, 1, 0 }, ref.getR(0.5).getData(), kDelta);
+    }
+
+    @Test
+    public void testArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new SynchronizedReference<>(
+                Nat.N6(), new double[] { 0, 0 }, new double[] { 1, 1 },
+                new double[] { 1, 1 }, new double[] { 1, 1 }, new double[] { 1, 1 }));
+        assertThrows(IllegalArgumentException.class, () -> new SynchronizedReference<>(
+                Nat.N6(), start, goal, new double[] { 1, 0, 1 }, maxAccel, maxJerk));
+    }
+}
@@ -0,0 +1,94 @@
+package org.team100.controllib.reference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.reference.examples.JerkLimitedProfileReference1D;
+import org.team100.controllib.reference.examples.Reference1D;
+import org.team100.controllib.reference.examples.SinusoidalReference1D;
+
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.numbers.N2;
+
+public class TabulatedReferenceTest {
+    private static final double kDelta = 1e-9;
+
+    /** Cubic position is exact. */
+    static class Cubic extends Reference1D {
+        @Override
+        public double position(double t) {
+            return t * t * t - 2 * t;
+        }
+
+        @Override
+        public double velocity(double t) {
+            return 3 * t * t - 2;
+        }
+
+        @Override
+        public double acceleration(double t) {
+            return 6 * t;
+        }
+    }
+
+    static void compare(Reference<N2> expected, Reference<N2> actual, double t, double tolerance) {
+        assertEquals(expected.getR(t).get(0, 0), actual.getR(t).get(0, 0), tolerance);
+        assertEquals(expected.getR(t).get(1, 0), actual.getR(t).get(1, 0), tolerance);
+        assertEquals(expected.getRDot(t).get(0, 0), actual.getRDot(t).get(0, 0), tolerance);
+        assertEquals(expected.getRDot(t).get(1, 0), actual.getRDot(t).get(1, 0), tolerance);
+    }
+
+    @Test
+    public void testCubic() {
+        Cubic cubic = new Cubic();
+        TabulatedReference<N2> table = new TabulatedReference<>(Nat.N2(), cubic, 0, 2, 0.1);
+        assertEquals(21, table.getPoints());
+        for (double t = 0; t <= 2; t += 0.037) {
+            assertEquals(cubic.position(t), table.getR(t).get(0, 0), kDelta);
+            // velocity is quadratic, so also exact
+            assertEquals(cubic.velocity(t), table.getR(t).get(1, 0), kDelta);
+        }
+    }
+
+    @Test
+    public void testSinusoid() {
+        SinusoidalReference1D sine = new SinusoidalReference1D();
+        TabulatedReference<N2> table = new TabulatedReference<>(Nat.N2(), sine, 0, 3, 0.02);
+        for (double t = 0; t <= 3; t += 0.013) {
+            // rdot slopes are central differences, so error goes with dt^2
+            compare(sine, table, t, 1e-4);
+        }
+    }
+
+    @Test
+    public void testProfile() {
+        JerkLimitedProfileReference1D profile = new JerkLimitedProfileReference1D();
+        TabulatedReference<N2> table = new TabulatedReference<>(Nat.N2(), profile, 0, 5, 0.02);
+        for (double t = 0; t <= 5; t += 0.013) {
+            // central differences round off the corners in accel
+            compare(profile, table, t, 5e-3);
+        }
+    }
+
+    @Test
+    public void testEnds() {
+        Cubic cubic = new Cubic();
+        TabulatedReference<N2> table = new TabulatedReference<>(Nat.N2(), cubic, 1, 2, 0.3);
+        // spacing fits the span
+        assertEquals(5, table.getPoints());
+        assertEquals(cubic.position(1), table.getR(0).get(0, 0), kDelta);
+        assertEquals(cubic.position(2), table.getR(3).get(0, 0), kDelta);
+        double[] out = new double[2];
+        table.getRDotInto(5, out);
+        assertEquals(cubic.velocity(2), out[0], kDelta);
+        assertEquals(cubic.acceleration(2), out[1], kDelta);
+    }
+
+    @Test
+    public void testArguments() {
+        Cubic cubic = new Cubic();
+        assertThrows(IllegalArgumentException.class, () -> new TabulatedReference<>(Nat.N2(), cubic, 1, 1, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> new TabulatedReference<>(Nat.N2(), cubic, 0, 1, 0));
+    }
+}
@@ -0,0 +1,160 @@
+package org.team100.controllib.reference.examples;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.team100.lib.profile.MotionProfile;
+import org.team100.lib.profile.MotionProfileGenerator;
+import org.team100.lib.profile.MotionState;
+
+public class OnlineJerkLimitedReference1DTest {
+    private static final double kDelta = 1e-9;
+    private static final double kDt = 0.02;
+
+    /** Runs until settled at the goal, checks the limits, returns the time. */
+    static double settle(OnlineJerkLimitedReference1D ref, MotionState goal,
+            double maxVel, double maxAccel, double maxJerk) {
+        ref.setGoal(ref.getTime(), goal);
+        double prevA = ref.acceleration(ref.getTime());
+        for (int i = 1; i < 2000; ++i) {
+            double t = ref.getTime() + kDt;
+            double v = ref.velocity(t);
+            double a = ref.acceleration(t);
+            assertTrue(Math.abs(v) <= maxVel + 1e-3, "v " + v);
+            assertTrue(Math.abs(a) <= maxAccel + kDelta, "a " + a);
+            assertTrue(Math.abs(a - prevA) <= maxJerk * kDt + kDelta, "j " + (a - prevA) / kDt);
+            prevA = a;
+            MotionState s = ref.getState();
+            if (s.getX() == goal.getX() && s.getV() == goal.getV() && s.getA() == 0)
+                return ref.getTime();
+        }
+        throw new AssertionError("didn't settle");
+    }
+
+    @Test
+    public void testStep() {
+        OnlineJerkLimitedReference1D ref = new OnlineJerkLimitedReference1D(
+                new MotionState(0, 0), 0.5, 1.5, 1, kDt);
+        double t = settle(ref, new MotionState(1, 0), 0.5, 1.5, 1);
+        // the offline profile takes about the same time
+        MotionProfile profile = MotionProfileGenerator.generateSimpleMotionProfile(
+                new MotionState(0, 0, 0), new MotionState(1, 0, 0), 0.5, 1.5, 1);
+        assertTrue(t < profile.duration() + 0.2, t + " " + profile.duration());
+        assertEquals(1, ref.position(t + 1), kDelta);
+        assertEquals(0, ref.velocity(t + 1), kDelta);
+    }
+
+    @Test
+    public void testLimits() {
+        double[][] cases = {
+                { 2, 2, 10, 5 },
+                { 1, 1, 100, 1 },
+                { 1, 4, 5, 0.05 },
+                { 1, 1, 1, -1 } };
+        for (double[] c : cases) {
+            OnlineJerkLimitedReference1D ref = new OnlineJerkLimitedReference1D(
+                    new MotionState(0, 0), c[0], c[1], c[2], kDt);
+            settle(ref, new MotionState(c[3], 0), c[0], c[1], c[2]);
+        }
+    }
+
+    /** A new goal every tick, like a joystick, moving away and then back. */
+    @Test
+    public void testMovingGoal() {
+        OnlineJerkLimitedReference1D ref = new OnlineJerkLimitedReference1D(
+                new MotionState(0, 0), 1, 2, 10, kDt);
+        double prevA = 0;
+        double t = 0;
+        for (int i = 0; i < 100; ++i) {
+            t += kDt;
+            ref.setGoal(t, new MotionState(2 * Math.sin(t), 0));
+            double a = ref.acceleration(t);
+            assertTrue(Math.abs(ref.velocity(t)) <= 1 + 1e-3);
+            assertTrue(Math.abs(a) <= 2 + kDelta);
+            assertTrue(Math.abs(a - prevA) <= 10 * kDt + kDelta);
+            prevA = a;
+        }
+        // then it stops
+        settle(ref, new MotionState(0.5, 0), 1, 2, 10);
+    }
+
+    /** A goal with velocity is tracked. */
+    @Test
+    public void testGoalVelocity() {
+        OnlineJerkLimitedReference1D ref = new OnlineJerkLimitedReference1D(
+                new MotionState(0, 0), 1, 2, 10, kDt);
+        ref.setGoal(0, new MotionState(1, 0.5));
+        double t = 10;
+        assertEquals(1 + 0.5 * t, ref.position(t), 1e-3);
+        assertEquals(0.5, ref.velocity(t), 1e-3);
+    }
+
+    /** The first sample at FPGA time doesn't step through every tick since zero. */
+    @Test
+    public void testLateStart() {
+        OnlineJerkLimitedReference1D ref = new OnlineJerkLimitedReference1D(
+                new MotionState(1, 0), 1, 2, 10, kDt);
+        // about ten million ticks
+        double t = 200000.01;
+        assertEquals(1, ref.position(t), kDelta);
+        assertEquals(200000, ref.getTime(), 1e-6);
+        settle(ref, new MotionState(2, 0), 1, 2, 10);
+        // a moving goal is followed too, once the state reaches it
+        ref.setGoal(ref.getTime(), new MotionState(2, 0.5));
+        assertEquals(2 + 0.5 * (2 * t - ref.getTime()), ref.position(2 * t), 1e-3);
+        assertEquals(0.5, ref.velocity(2 * t), 1e-3);
+    }
+
+    /** A goal set before the first sample at FPGA time isn't back-dated to zero. */
+    @Test
+    public void testLateGoal() {
+        OnlineJerkLimitedReference1D ref = new OnlineJerkLimitedReference1D(
+                new MotionState(0, 0), 1, 2, 10, kDt);
+        double t0 = 100.01;
+        ref.setGoal(t0, new MotionState(1, 0));
+        // the new jerk applies from the start of the current tick, 10 ms ago
+        assertEquals(0, ref.position(t0), 1e-5);
+        assertEquals(0, ref.velocity(t0), 1e-3);
+        double prevA = ref.acceleration(t0);
+        for (int i = 1; i < 200; ++i) {
+            double t = t0 + i * kDt;
+            double v = ref.velocity(t);
+            double a = ref.acceleration(t);
+            assertTrue(Math.abs(v) <= 1 + 1e-3, "v " + v);
+            assertTrue(Math.abs(a) <= 2 + kDelta, "a " + a);
+            assertTrue(Math.abs(a - prevA) <= 10 * kDt + kDelta, "j " + (a - prevA) / kDt);
+            prevA = a;
+            // the move takes about 1.7 s, not one tick
+            if (i == 25)
+                assertTrue(ref.position(t) < 0.5, "x " + ref.position(t));
+        }
+        assertEquals(1, ref.position(t0 + 4), kDelta);
+    }
+
+    /** getR and getRDot at the same time agree; earlier times extrapolate. */
+    @Test
+    public void testSampling() {
+        OnlineJerkLimitedReference1D ref = new OnlineJerkLimitedReference1D(
+                new MotionState(0, 0), 1, 2, 10, kDt);
+        ref.setGoal(0, new MotionState(1, 0));
+        double t = 0.51;
+        assertEquals(ref.getR(t).get(1, 0), ref.getRDot(t).get(0, 0), kDelta);
+        assertEquals(0.5, ref.getTime(), kDelta);
+        double x = ref.position(t);
+        assertEquals(x, ref.position(t), kDelta);
+        // within the tick, continuous
+        assertEquals(x, ref.position(t - 1e-9), 1e-6);
+        assertEquals(ref.position(0.5), ref.getState().getX(), kDelta);
+    }
+
+    @Test
+    public void testArguments() {
+        MotionState zero = new MotionState(0, 0);
+        assertThrows(IllegalArgumentException.class,
+                () -> new OnlineJerkLimitedReference1D(zero, 0, 1, 1, kDt));
+        assertThrows(IllegalArgumentException.class,
+                () -> new OnlineJerkLimitedReference1D(zero, 1, 1, 1, 0));
+    }
+}
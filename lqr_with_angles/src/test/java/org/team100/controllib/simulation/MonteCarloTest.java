@@ -0,0 +1,87 @@
+package org.team100.controllib.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.team100.controllib.math.MeasurementUncertainty;
+import org.team100.controllib.math.WhiteNoiseVector;
+import org.team100.controllib.reference.examples.SinusoidalReference1D;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N2;
+
+public class MonteCarloTest {
+    private static final boolean debug = false;
+    // fixed modest gain, so the test doesn't depend on GainCalculator
+    private static final Matrix<N1, N2> K = Matrix.mat(Nat.N1(), Nat.N2()).fill(20, 5);
+
+    static Trial trial(double positionStdev) {
+        return new Trial(
+                SinusoidalReference1D::new,
+                WhiteNoiseVector.noise2(0.015, 0.17),
+                MeasurementUncertainty.for2(positionStdev, 0.1),
+                K,
+                2);
+    }
+
+    @Test
+    public void testTracking() {
+        MonteCarloResult result = new MonteCarlo().run(trial(0.01), 32, 0);
+        if (debug)
+            System.out.println(result);
+        assertEquals(32, result.size());
+        assertTrue(result.meanRmsPositionError() < 0.1, result.toString());
+        assertTrue(result.percentileRmsPositionError(0) <= result.percentileRmsPositionError(100));
+        assertEquals(result.maxPositionError(), Math.max(result.maxPositionError(),
+                result.percentileRmsPositionError(100)), 0);
+        assertTrue(result.worstLoopNanos() > 0);
+    }
+
+    /** Thread count doesn't matter. */
+    @Test
+    public void testRepeatable() {
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        MonteCarloResult a = new MonteCarlo(one).run(trial(0.01), 12, 1234);
+        MonteCarloResult b = new MonteCarlo(four).run(trial(0.01), 12, 1234);
+        one.shutdown();
+        four.shutdown();
+        for (int i = 0; i < 12; ++i) {
+            assertEquals(a.getTrial(i).getSeed(), b.getTrial(i).getSeed());
+            assertEquals(a.getTrial(i).getRmsPositionError(), b.getTrial(i).getRmsPositionError(), 0);
+        }
+        // rerun one by seed
+        TrialResult again = trial(0.01).run(a.getTrial(5).getSeed());
+        assertEquals(a.getTrial(5).getRmsPositionError(), again.getRmsPositionError(), 0);
+    }
+
+    /** Noisier sensors, worse tracking. */
+    @Test
+    public void testNoise() {
+        MonteCarlo mc = new MonteCarlo();
+        MonteCarloResult quiet = mc.run(trial(0.001), 16, 0);
+        MonteCarloResult noisy = mc.run(trial(0.1), 16, 0);
+        if (debug) {
+            System.out.println(quiet);
+            System.out.println(noisy);
+        }
+        assertTrue(noisy.meanRmsPositionError() > quiet.meanRmsPositionError());
+    }
+
+    @Test
+    public void testArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new MonteCarlo().run(trial(0.01), 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Trial(
+                SinusoidalReference1D::new,
+                WhiteNoiseVector.noise2(0.015, 0.17),
+                MeasurementUncertainty.for2(0.01, 0.1),
+                K,
+                0));
+    }
+}
@@ -0,0 +1,97 @@
+package org.team100.controllib.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class MeasurementIngestTest {
+
+    @Test
+    public void testDrain() {
+        MeasurementIngest<String> ingest = new MeasurementIngest<>();
+        MeasurementQueue<String> position = ingest.newProducer(4);
+        MeasurementQueue<String> camera = ingest.newProducer(4);
+        RingBitemporalBuffer<String> buf = new RingBitemporalBuffer<>(10);
+        assertTrue(position.offer(10l, 1.0, "p1"));
+        assertTrue(camera.offer(11l, 0.5, "c0.5"));
+        assertTrue(position.offer(12l, 2.0, "p2"));
+        assertEquals(2, position.size());
+        assertEquals(3, ingest.drainTo(buf, 0l));
+        assertEquals(0, position.size());
+        assertEquals(3, buf.size());
+        // valid-time order
+        assertEquals("c0.5", buf.value(0));
+        assertEquals("p1", buf.value(1));
+        assertEquals("p2", buf.value(2));
+        // nothing left
+        assertEquals(0, ingest.drainTo(buf, 0l));
+    }
+
+    @Test
+    public void testFull() {
+        MeasurementIngest<String> ingest = new MeasurementIngest<>();
+        // rounds up to 4
+        MeasurementQueue<String> q = ingest.newProducer(3);
+        assertEquals(4, q.capacity());
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(q.offer(i, i, "v" + i));
+        }
+        assertFalse(q.offer(5l, 5.0, "dropped"));
+        assertEquals(1, q.dropped());
+        assertEquals(1, ingest.dropped());
+        RingBitemporalBuffer<String> buf = new RingBitemporalBuffer<>(10);
+        assertEquals(4, ingest.drainTo(buf, 0l));
+        // room again
+        assertTrue(q.offer(6l, 6.0, "v6"));
+    }
+
+    @Test
+    public void testNotBefore() {
+        MeasurementIngest<String> ingest = new MeasurementIngest<>();
+        MeasurementQueue<String> q = ingest.newProducer(4);
+        RingBitemporalBuffer<String> buf = new RingBitemporalBuffer<>(10);
+        // recorded before the consumer's cursor
+        q.offer(5l, 1.0, "late");
+        ingest.drainTo(buf, 100l);
+        assertEquals(100l, buf.recordTime(0));
+        assertEquals(1.0, buf.earliestValidTimeForRecordsAfter(100l));
+    }
+
+    /** Several producer threads, one consumer, nothing lost. */
+    @Test
+    public void testThreads() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 10000;
+        MeasurementIngest<Integer> ingest = new MeasurementIngest<>();
+        BitemporalBuffer<Integer> buf = new BitemporalBuffer<>(producers * perProducer);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; ++p) {
+            final int id = p;
+            final MeasurementQueue<Integer> q = ingest.newProducer(64);
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; ++i) {
+                    int n = id * perProducer + i;
+                    while (!q.offer(n, n, n)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        int drained = 0;
+        while (drained < producers * perProducer) {
+            drained += ingest.drainTo(buf, 0l);
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(producers * perProducer, buf.size());
+        assertEquals(0, ingest.drainTo(buf, 0l));
+        // every value arrived intact
+        for (int n = 0; n < producers * perProducer; ++n) {
+            assertEquals(n, buf.floorValue(n));
+        }
+    }
+}
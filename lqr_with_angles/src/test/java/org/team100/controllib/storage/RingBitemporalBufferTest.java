@@ -0,0 +1,111 @@
+package org.team100.controllib.storage;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class RingBitemporalBufferTest {
+
+    @Test
+    public void testDuplicateKeys() {
+        RingBitemporalBuffer<String> buf = new RingBitemporalBuffer<>(10);
+        buf.put(0l, 0.0, "hello");
+        buf.put(0l, 0.0, "duplicate");
+        assertEquals(2, buf.size());
+        // the second entry has incremented keys
+        assertAll(
+                () -> assertEquals(0.0, buf.validTime(0)),
+                () -> assertEquals(0l, buf.recordTime(0)),
+                () -> assertEquals("hello", buf.value(0)),
+                () -> assertEquals(4.9E-324, buf.validTime(1)),
+                () -> assertEquals(1l, buf.recordTime(1)),
+                () -> assertEquals("duplicate", buf.value(1)));
+    }
+
+    @Test
+    public void testOrder() {
+        RingBitemporalBuffer<String> buf = new RingBitemporalBuffer<>(4);
+        // all out of order
+        buf.put(2l, 1.0, "r2 v1");
+        buf.put(1l, 2.0, "r1 v2");
+        buf.put(0l, 3.0, "r0 v3");
+        buf.put(3l, 0.0, "r3 v0");
+        {
+            NavigableMap<Long, Entry<Double, String>> recordTailMap = buf.recordTailMap(Long.MIN_VALUE);
+            var recordValues = new ArrayList<>(recordTailMap.values());
+            assertEquals(4, recordValues.size());
+            assertAll(
+                    () -> assertEquals("r0 v3", recordValues.get(0).getValue()),
+                    () -> assertEquals("r1 v2", recordValues.get(1).getValue()),
+                    () -> assertEquals("r2 v1", recordValues.get(2).getValue()),
+                    () -> assertEquals("r3 v0", recordValues.get(3).getValue()));
+        }
+        // valid order using the primitive accessors
+        assertAll(
+                () -> assertEquals("r3 v0", buf.value(0)),
+                () -> assertEquals("r2 v1", buf.value(1)),
+                () -> assertEquals("r1 v2", buf.value(2)),
+                () -> assertEquals("r0 v3", buf.value(3)));
+    }
+
+    @Test
+    public void testOutOfOrderCapacity() {
+        RingBitemporalBuffer<String> buf = new RingBitemporalBuffer<>(2);
+        buf.put(0l, 2.0, "r0 v2");
+        buf.put(1l, 0.0, "r1 v0");
+        // this should bump record 1, which has the earliest valid time
+        buf.put(2l, 1.0, "r2 v1");
+        assertEquals(2, buf.size());
+        NavigableMap<Long, Entry<Double, String>> recordTailMap = buf.recordTailMap(Long.MIN_VALUE);
+        assertAll(
+                () -> assertEquals(2, recordTailMap.size()),
+                () -> assertEquals("r0 v2", recordTailMap.firstEntry().getValue().getValue()),
+                () -> assertEquals("r2 v1", recordTailMap.lastEntry().getValue().getValue()),
+                () -> assertEquals("r2 v1", buf.value(0)),
+                () -> assertEquals("r0 v2", buf.value(1)));
+    }
+
+    @Test
+    public void testFloor() {
+        RingBitemporalBuffer<String> buf = new RingBitemporalBuffer<>(10);
+        buf.put(0l, 1.0, "v1");
+        buf.put(1l, 2.0, "v2");
+        assertAll(
+                () -> assertEquals(-1, buf.floorIndex(0.5)),
+                () -> assertNull(buf.validFloorEntry(0.5)),
+                () -> assertEquals(0, buf.floorIndex(1.0)),
+                () -> assertEquals(0, buf.floorIndex(1.5)),
+                () -> assertEquals(1, buf.floorIndex(3.0)),
+                () -> assertEquals(1, buf.ceilingIndex(1.5)),
+                () -> assertEquals(2, buf.ceilingIndex(2.5)),
+                () -> assertEquals("v1", buf.floorValue(1.5)),
+                () -> assertEquals(1.0, buf.floor(1.5).getKey()),
+                () -> assertEquals(2.0, buf.earliestValidTimeForRecordsAfter(1l)));
+    }
+
+    /** The ring should behave exactly like the map version. */
+    @Test
+    public void testSameAsBitemporalBuffer() {
+        Random random = new Random(0);
+        BitemporalBuffer<String> expected = new BitemporalBuffer<>(50);
+        RingBitemporalBuffer<String> actual = new RingBitemporalBuffer<>(50);
+        for (int i = 0; i < 1000; ++i) {
+            long recordTime = random.nextInt(300);
+            double validTime = random.nextInt(300) / 10.0;
+            expected.put(recordTime, validTime, "v" + i);
+            actual.put(recordTime, validTime, "v" + i);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.recordTailMap(Long.MIN_VALUE), actual.recordTailMap(Long.MIN_VALUE));
+            assertEquals(expected.validTailMap(-Double.MAX_VALUE), actual.validTailMap(-Double.MAX_VALUE));
+            long t = random.nextInt(300);
+            assertEquals(expected.earliestValidTimeForRecordsAfter(t), actual.earliestValidTimeForRecordsAfter(t));
+        }
+    }
+}
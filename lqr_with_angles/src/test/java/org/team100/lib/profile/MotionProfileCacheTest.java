@@ -0,0 +1,107 @@
+package org.team100.lib.profile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class MotionProfileCacheTest {
+    private static final double kDelta = 1e-9;
+
+    @Test
+    public void testHit() {
+        MotionProfileCache cache = new MotionProfileCache(10, 0.001);
+        MotionProfile p1 = cache.get(new MotionState(0, 0), new MotionState(1, 0), 0.5, 1.5, 1);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        // rounds the same way
+        MotionProfile p2 = cache.get(new MotionState(0.0002, 0), new MotionState(1, 0), 0.5, 1.5, 1);
+        assertSame(p1, p2);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        // doesn't
+        MotionProfile p3 = cache.get(new MotionState(0.002, 0), new MotionState(1, 0), 0.5, 1.5, 1);
+        assertNotSame(p1, p3);
+        assertEquals(2, cache.getMisses());
+        // different constraint
+        cache.get(new MotionState(0, 0), new MotionState(1, 0), 0.5, 1.5, 2);
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.size());
+    }
+
+    /** Same as generating it directly. */
+    @Test
+    public void testSameProfile() {
+        MotionProfileCache cache = new MotionProfileCache(10, 0.001);
+        MotionProfile cached = cache.get(new MotionState(0, 0), new MotionState(-1, 0), 0.5, 1.5, 1);
+        MotionProfile direct = MotionProfileGenerator.generateSimpleMotionProfile(
+                new MotionState(0, 0), new MotionState(-1, 0), 0.5, 1.5, 1);
+        assertEquals(direct.duration(), cached.duration(), kDelta);
+        for (double t = 0; t < direct.duration(); t += 0.1) {
+            assertEquals(direct.get(t).getX(), cached.get(t).getX(), kDelta);
+            assertEquals(direct.get(t).getV(), cached.get(t).getV(), kDelta);
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        MotionProfileCache cache = new MotionProfileCache(2, 0.001);
+        MotionProfile a = cache.get(new MotionState(0, 0), new MotionState(1, 0), 1, 1, 1);
+        cache.get(new MotionState(0, 0), new MotionState(2, 0), 1, 1, 1);
+        // a is more recent now
+        assertSame(a, cache.get(new MotionState(0, 0), new MotionState(1, 0), 1, 1, 1));
+        cache.get(new MotionState(0, 0), new MotionState(3, 0), 1, 1, 1);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        // so the goal at 2 went
+        assertSame(a, cache.get(new MotionState(0, 0), new MotionState(1, 0), 1, 1, 1));
+        cache.get(new MotionState(0, 0), new MotionState(2, 0), 1, 1, 1);
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testWarmUp() {
+        MotionProfileCache cache = new MotionProfileCache(10, 0.001);
+        cache.warmUp(new MotionState(0, 0), new MotionState(1, 0), 1, 1, 1);
+        cache.warmUp(new MotionState(0, 0), new MotionState(1, 0), 1, 1, 1);
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getMisses());
+        cache.get(new MotionState(0, 0), new MotionState(1, 0), 1, 1, 1);
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    /** Limits round down, so the profile never goes faster than asked. */
+    @Test
+    public void testLimitsRoundDown() {
+        MotionProfileCache cache = new MotionProfileCache(10, 0.1);
+        MotionProfile profile = cache.get(new MotionState(0, 0), new MotionState(10, 0), 0.99, 1, 0);
+        double maxV = 0;
+        for (double t = 0; t < profile.duration(); t += 0.01) {
+            maxV = Math.max(maxV, profile.get(t).getV());
+        }
+        assertEquals(0.9, maxV, kDelta);
+        // exact multiples aren't rounded down by floating point error
+        cache.get(new MotionState(0, 0), new MotionState(10, 0), 0.3, 1, 0);
+        assertSame(profile, cache.get(new MotionState(0, 0), new MotionState(10, 0), 0.9, 1, 0));
+        assertNotSame(profile, cache.get(new MotionState(0, 0), new MotionState(10, 0), 0.3, 1, 0));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new MotionProfileCache(0, 0.001));
+        assertThrows(IllegalArgumentException.class, () -> new MotionProfileCache(10, 0));
+        MotionProfileCache cache = new MotionProfileCache(10, 0.1);
+        MotionState start = new MotionState(0, 0);
+        MotionState goal = new MotionState(1, 0);
+        // limits smaller than the quantum would round to zero
+        assertThrows(IllegalArgumentException.class, () -> cache.get(start, goal, 0.09, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(start, goal, 1, 0.05, 1));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(start, goal, 1, 1, 0.01));
+        // zero jerk means no jerk limit
+        cache.get(start, goal, 1, 1, 0);
+    }
+}
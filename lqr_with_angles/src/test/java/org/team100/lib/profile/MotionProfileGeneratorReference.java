@@ -0,0 +1,254 @@
+package org.team100.lib.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.team100.lib.util.DoubleProgression;
+import org.team100.lib.util.MathUtil;
+
+import edu.wpi.first.math.Pair;
+
+/**
+ * The original implementation of MotionProfileGenerator.generateMotionProfile,
+ * using boxed progressions and lists of pairs, with list insertion in the
+ * merge. Kept to check the primitive version against.
+ */
+class MotionProfileGeneratorReference {
+
+    private static class EvaluatedConstraint {
+        double maxVel;
+        double maxAccel;
+
+        public EvaluatedConstraint(double maxVel, double maxAccel) {
+            this.maxVel = maxVel;
+            this.maxAccel = maxAccel;
+        }
+    }
+
+    static MotionProfile generateMotionProfile(
+            MotionState start,
+            MotionState goal,
+            VelocityConstraint velocityConstraint,
+            AccelerationConstraint accelerationConstraint,
+            double resolution) {
+        if (goal.getX() < start.getX()) {
+            return generateMotionProfile(
+                    start.flipped(),
+                    goal.flipped(),
+                    new VelocityConstraint() {
+                        public double get(double s) {
+                            return velocityConstraint.get(-s);
+                        }
+                    },
+                    new AccelerationConstraint() {
+                        public double get(double s) {
+                            return accelerationConstraint.get(-s);
+                        }
+                    },
+                    resolution).flipped();
+        }
+
+        double length = goal.getX() - start.getX();
+        // dx is an adjusted resolution that fits nicely within length
+        // at least two samples are required to have a valid profile
+        int samples = Math.max(2, (int) Math.ceil(length / resolution));
+
+        DoubleProgression s = DoubleProgression.fromClosedInterval(0.0, length, samples);
+        List<EvaluatedConstraint> constraintsList = StreamSupport.stream(s.plus(start.getX()).spliterator(), false)
+                .map((it) -> new EvaluatedConstraint(
+                        velocityConstraint.get(it),
+                        accelerationConstraint.get(it)))
+                .collect(Collectors.toList());
+
+        // compute the forward states
+        List<Pair<MotionState, Double>> forwardStates = forwardPass(
+                new MotionState(0.0, start.getV(), start.getA()),
+                s,
+                constraintsList).stream().map((it) -> {
+                    MotionState motionState = it.getFirst();
+                    double dx = it.getSecond();
+                    return new Pair<>(new MotionState(
+                            motionState.getX() + start.getX(),
+                            motionState.getV(),
+                            motionState.getA()), dx);
+                }).collect(Collectors.toList());
+
+        // compute the backward states
+        List<EvaluatedConstraint> backwardsConstraints = new ArrayList<EvaluatedConstraint>(constraintsList);
+        Collections.reverse(backwardsConstraints);
+        List<Pair<MotionState, Double>> backwardStates = forwardPass(
+                new MotionState(0.0, goal.getV(), goal.getA()),
+                s,
+                backwardsConstraints).stream().map((it) -> {
+                    MotionState motionState = it.getFirst();
+                    double dx = it.getSecond();
+                    return new Pair<>(afterDisplacement(motionState, dx), dx);
+                }).map((it) -> {
+                    MotionState motionState = it.getFirst();
+                    double dx = it.getSecond();
+                    return new Pair<>(
+                            new MotionState(
+                                    goal.getX() - motionState.getX(),
+                                    motionState.getV(),
+                                    -motionState.getA()),
+                            dx);
+                }).collect(Collectors.toList());
+        Collections.reverse(backwardStates);
+
+        // merge the forward and backward states
+        List<Pair<MotionState, Double>> finalStates = new ArrayList<Pair<MotionState, Double>>();
+
+        int i = 0;
+        while (i < forwardStates.size() && i < backwardStates.size()) {
+            // retrieve the start states and displacement deltas
+            MotionState forwardStartState = forwardStates.get(i).getFirst();
+            double forwardDx = forwardStates.get(i).getSecond();
+            MotionState backwardStartState = backwardStates.get(i).getFirst();
+            double backwardDx = backwardStates.get(i).getSecond();
+
+            // if there's a discrepancy in the displacements, split the the longer chunk in
+            // two and add the second
+            // to the corresponding list; this guarantees that segments are always aligned
+            if (!(MathUtil.epsilonEquals(forwardDx, backwardDx))) {
+                if (forwardDx > backwardDx) {
+                    // forward longer
+                    forwardStates.add(
+                            i + 1,
+                            new Pair<>(afterDisplacement(forwardStartState, backwardDx), forwardDx - backwardDx));
+                    forwardDx = backwardDx;
+                } else {
+                    // backward longer
+                    backwardStates.add(
+                            i + 1,
+                            new Pair<>(afterDisplacement(backwardStartState, forwardDx), backwardDx - forwardDx));
+                    backwardDx = forwardDx;
+                }
+            }
+
+            // compute the end states (after alignment)
+            MotionState forwardEndState = afterDisplacement(forwardStartState, forwardDx);
+            MotionState backwardEndState = afterDisplacement(backwardStartState, backwardDx);
+
+            if (forwardStartState.getV() <= backwardStartState.getV()) {
+                // forward start lower
+                if (forwardEndState.getV() <= backwardEndState.getV()) {
+                    // forward end lower
+                    finalStates.add(new Pair<>(forwardStartState, forwardDx));
+                } else {
+                    // backward end lower
+                    double intersection = intersection(
+                            forwardStartState,
+                            backwardStartState);
+                    finalStates.add(new Pair<>(forwardStartState, intersection));
+                    finalStates.add(
+                            new Pair<>(
+                                    afterDisplacement(backwardStartState, intersection),
+                                    backwardDx - intersection));
+                }
+            } else {
+                // backward start lower
+                if (forwardEndState.getV() >= backwardEndState.getV()) {
+                    // backward end lower
+                    finalStates.add(new Pair<>(backwardStartState, backwardDx));
+                } else {
+                    // forward end lower
+                    double intersection = intersection(
+                            forwardStartState,
+                            backwardStartState);
+                    finalStates.add(new Pair<>(backwardStartState, intersection));
+                    finalStates.add(
+                            new Pair<>(
+                                    afterDisplacement(forwardStartState, intersection),
+                                    forwardDx - intersection));
+                }
+            }
+            i++;
+        }
+
+        // turn the final states into actual time-parameterized motion segments
+        List<MotionSegment> motionSegments = new ArrayList<MotionSegment>();
+        for (Pair<MotionState, Double> finalState : finalStates) {
+            MotionState state = finalState.getFirst();
+            double stateDx = finalState.getSecond();
+            double dt;
+            if (MathUtil.epsilonEquals(state.getA(), 0.0)) {
+                dt = stateDx / state.getV();
+            } else {
+                double discriminant = state.getV() * state.getV() + 2 * state.getA() * stateDx;
+                if (MathUtil.epsilonEquals(discriminant, 0.0)) {
+                    dt = -state.getV() / state.getA();
+                } else {
+                    dt = (Math.sqrt(discriminant) - state.getV()) / state.getA();
+                }
+            }
+            motionSegments.add(new MotionSegment(state, dt));
+        }
+
+        return new MotionProfile(motionSegments);
+    }
+
+    // execute a forward pass that consists of applying maximum acceleration
+    // starting at min(last velocity, max vel)
+    // on a segment-by-segment basis
+    private static List<Pair<MotionState, Double>> forwardPass(
+            MotionState start,
+            DoubleProgression displacements,
+            List<EvaluatedConstraint> constraints) {
+        List<Pair<MotionState, Double>> forwardStates = new ArrayList<Pair<MotionState, Double>>();
+
+        double dx = displacements.getStep();
+
+        MotionState lastState = start;
+        int lengths = Math.min(displacements.size(), constraints.size());
+        for (int i = 0; i < lengths; ++i) {
+            double displacement = displacements.get(i);
+            EvaluatedConstraint constraint = constraints.get(i);
+            // compute the segment constraints
+            double maxVel = constraint.maxVel;
+            double maxAccel = constraint.maxAccel;
+
+            if (lastState.getV() >= maxVel) {
+                // the last velocity exceeds max vel so we just coast
+                MotionState state = new MotionState(displacement, maxVel, 0.0);
+                forwardStates.add(new Pair<>(state, dx));
+                lastState = afterDisplacement(state, dx);
+            } else {
+                // compute the final velocity assuming max accel
+                double finalVel = Math.sqrt(lastState.getV() * lastState.getV() + 2 * maxAccel * dx);
+                if (finalVel <= maxVel) {
+                    // we're still under max vel so we're good
+                    MotionState state = new MotionState(displacement, lastState.getV(), maxAccel);
+                    forwardStates.add(new Pair<>(state, dx));
+                    lastState = afterDisplacement(state, dx);
+                } else {
+                    // we went over max vel so now we split the segment
+                    double accelDx = (maxVel * maxVel - lastState.getV() * lastState.getV()) / (2 * maxAccel);
+                    MotionState accelState = new MotionState(displacement, lastState.getV(), maxAccel);
+                    MotionState coastState = new MotionState(displacement + accelDx, maxVel, 0.0);
+                    forwardStates.add(new Pair<>(accelState, accelDx));
+                    forwardStates.add(new Pair<>(coastState, dx - accelDx));
+                    lastState = afterDisplacement(coastState, dx - accelDx);
+                }
+            }
+        }
+
+        return forwardStates;
+    }
+
+    private static MotionState afterDisplacement(MotionState state, double dx) {
+        double discriminant = state.getV() * state.getV() + 2 * state.getA() * dx;
+        if (MathUtil.epsilonEquals(discriminant, 0.0)) {
+            return new MotionState(state.getX() + dx, 0.0, state.getA());
+        } else {
+            return new MotionState(state.getX() + dx, Math.sqrt(discriminant), state.getA());
+        }
+    }
+
+    private static double intersection(MotionState state1, MotionState state2) {
+        return (state1.getV() * state1.getV() - state2.getV() * state2.getV())
+                / (2 * state2.getA() - 2 * state1.getA());
+    }
+}
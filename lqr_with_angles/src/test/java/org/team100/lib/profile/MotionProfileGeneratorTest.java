@@ -0,0 +1,66 @@
+package org.team100.lib.profile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class MotionProfileGeneratorTest {
+    private static final double kDelta = 1e-12;
+
+    static void assertSame(MotionProfile expected, MotionProfile actual) {
+        List<MotionSegment> e = expected.getSegments();
+        List<MotionSegment> a = actual.getSegments();
+        assertEquals(e.size(), a.size());
+        for (int i = 0; i < e.size(); ++i) {
+            assertEquals(e.get(i).getDt(), a.get(i).getDt(), kDelta);
+            MotionState es = e.get(i).getStart();
+            MotionState as = a.get(i).getStart();
+            assertEquals(es.getX(), as.getX(), kDelta);
+            assertEquals(es.getV(), as.getV(), kDelta);
+            assertEquals(es.getA(), as.getA(), kDelta);
+            assertEquals(es.getJ(), as.getJ(), kDelta);
+        }
+    }
+
+    static void check(MotionState start, MotionState goal,
+            VelocityConstraint v, AccelerationConstraint a, double resolution) {
+        assertSame(
+                MotionProfileGeneratorReference.generateMotionProfile(start, goal, v, a, resolution),
+                MotionProfileGenerator.generateMotionProfile(start, goal, v, a, resolution));
+    }
+
+    @Test
+    public void testConstant() {
+        VelocityConstraint v = s -> 1;
+        AccelerationConstraint a = s -> 2;
+        check(new MotionState(0, 0), new MotionState(10, 0), v, a, 0.25);
+        check(new MotionState(0, 0), new MotionState(10, 0), v, a, 0.01);
+        // short, never reaches max velocity
+        check(new MotionState(0, 0), new MotionState(0.1, 0), v, a, 0.01);
+    }
+
+    /** Velocity limit varies along the path, e.g. slow through a turn. */
+    @Test
+    public void testVarying() {
+        VelocityConstraint v = s -> 1 + 0.5 * Math.sin(s);
+        AccelerationConstraint a = s -> 2 + Math.cos(3 * s);
+        check(new MotionState(0, 0), new MotionState(10, 0), v, a, 0.25);
+        check(new MotionState(0, 0), new MotionState(10, 0), v, a, 0.01);
+        check(new MotionState(1, 0.5), new MotionState(7, 0.2), v, a, 0.1);
+        // backwards
+        check(new MotionState(5, 0), new MotionState(-3, 0), v, a, 0.01);
+    }
+
+    @Test
+    public void testProfile() {
+        MotionProfile profile = MotionProfileGenerator.generateMotionProfile(
+                new MotionState(0, 0), new MotionState(10, 0),
+                s -> 1, s -> 2, 0.01);
+        assertEquals(10, profile.end().getX(), 1e-6);
+        assertEquals(0, profile.end().getV(), 1e-6);
+        // 0.5s each to accelerate and decelerate, 9.5 m in the middle
+        assertEquals(10.5, profile.duration(), 1e-6);
+    }
+}
@@ -0,0 +1,112 @@
+package org.team100.lib.profile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class MotionProfileTest {
+    private static final double kDelta = 1e-9;
+
+    /** The old linear scan, for comparison. */
+    static MotionState scan(MotionProfile profile, double t) {
+        if (t < 0.0)
+            return profile.start().stationary();
+        double remainingTime = t;
+        for (MotionSegment segment : profile.getSegments()) {
+            if (remainingTime <= segment.getDt()) {
+                return segment.get(remainingTime);
+            }
+            remainingTime -= segment.getDt();
+        }
+        return profile.end().stationary();
+    }
+
+    /** Lots of little segments, like a constraint-based profile. */
+    static MotionProfile longProfile() {
+        MotionProfileBuilder builder = new MotionProfileBuilder(new MotionState(0, 0, 0));
+        Random r = new Random(0);
+        for (int i = 0; i < 500; ++i) {
+            if (i % 2 == 0) {
+                builder.appendJerkControl(r.nextDouble() - 0.5, 0.01 + r.nextDouble() * 0.05);
+            } else {
+                builder.appendAccelerationControl(r.nextDouble() - 0.5, 0.01 + r.nextDouble() * 0.05);
+            }
+        }
+        return builder.build();
+    }
+
+    static void assertState(MotionState expected, MotionState actual) {
+        assertEquals(expected.getX(), actual.getX(), kDelta);
+        assertEquals(expected.getV(), actual.getV(), kDelta);
+        assertEquals(expected.getA(), actual.getA(), kDelta);
+        assertEquals(expected.getJ(), actual.getJ(), kDelta);
+    }
+
+    static void assertCursor(MotionState expected, MotionProfile.Cursor actual) {
+        assertEquals(expected.getX(), actual.getX(), kDelta);
+        assertEquals(expected.getV(), actual.getV(), kDelta);
+        assertEquals(expected.getA(), actual.getA(), kDelta);
+        assertEquals(expected.getJ(), actual.getJ(), kDelta);
+    }
+
+    @Test
+    public void testDuration() {
+        MotionProfile profile = longProfile();
+        double sum = 0;
+        for (MotionSegment segment : profile.getSegments()) {
+            sum += segment.getDt();
+        }
+        assertEquals(sum, profile.duration(), kDelta);
+    }
+
+    @Test
+    public void testGet() {
+        MotionProfile profile = longProfile();
+        for (double t = -0.1; t < profile.duration() + 0.1; t += 0.002) {
+            assertState(scan(profile, t), profile.get(t));
+        }
+        // segment boundaries belong to the earlier segment, like before
+        double boundary = profile.getSegments().get(0).getDt();
+        assertState(scan(profile, boundary), profile.get(boundary));
+        assertState(profile.end().stationary(), profile.get(profile.duration() + 1));
+    }
+
+    @Test
+    public void testCursor() {
+        MotionProfile profile = longProfile();
+        MotionProfile.Cursor cursor = profile.cursor();
+        // 500 Hz, forward
+        for (double t = -0.1; t < profile.duration() + 0.1; t += 0.002) {
+            assertCursor(profile.get(t), cursor.sample(t));
+        }
+        // random times, including backwards
+        Random r = new Random(1);
+        for (int i = 0; i < 1000; ++i) {
+            double t = r.nextDouble() * (profile.duration() + 0.2) - 0.1;
+            assertCursor(profile.get(t), cursor.sample(t));
+        }
+        // boundaries
+        double t = 0;
+        for (MotionSegment segment : profile.getSegments()) {
+            assertCursor(profile.get(t), cursor.sample(t));
+            t += segment.getDt();
+        }
+    }
+
+    @Test
+    public void testSimpleProfile() {
+        MotionProfile profile = MotionProfileGenerator.generateSimpleMotionProfile(
+                new MotionState(0, 0, 0),
+                new MotionState(1, 0, 0),
+                0.5, 1.5, 1);
+        MotionProfile.Cursor cursor = profile.cursor();
+        for (double t = 0; t < profile.duration() + 0.1; t += 0.002) {
+            assertState(scan(profile, t), profile.get(t));
+            assertCursor(profile.get(t), cursor.sample(t));
+        }
+        assertEquals(1, cursor.sample(profile.duration() + 1).getX(), 1e-6);
+        assertEquals(0, cursor.getV(), kDelta);
+    }
+}
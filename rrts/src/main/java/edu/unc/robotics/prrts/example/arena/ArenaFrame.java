@@ -44,14 +44,14 @@ public class ArenaFrame extends JFrame {
             final HolonomicArena arena = new HolonomicArena(6);
             final Solver rrtstar = new RRTStar3<>(arena, new Sample(arena), 6);
             final Runner runner = new Runner(rrtstar);
-            Graph.linkTypeCaching = true;
+            Graph.linkType = Graph.LinkType.CACHING;
             run(arena, runner, rrtstar);
 
             // final RRTStar2<HolonomicArena> rrtstar2 = new RRTStar2<>(arena, new
             // Sample(arena), 6);
             final Solver rrtstar4 = new RRTStar4<>(arena, new Sample(arena), 6);
             final Runner runner2 = new Runner(rrtstar4);
-            Graph.linkTypeCaching = true;
+            Graph.linkType = Graph.LinkType.CACHING;
             run(arena, runner2, rrtstar4);
 
             System.out.printf("2 steps %d distance %5.2f\n",
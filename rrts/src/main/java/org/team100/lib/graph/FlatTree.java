@@ -0,0 +1,270 @@
+package org.team100.lib.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.team100.lib.space.Path;
+
+/**
+ * A compact alternative to Node and its links, for big trees.
+ *
+ * Each node is an int index into parallel primitive arrays: the states are
+ * packed into one double[], and the parent, link distance, cached path
+ * distance, and children (as first-child/next-sibling lists) are int and
+ * double arrays. So there are no per-node objects at all, and walking a
+ * subtree to update path distances touches a few contiguous arrays instead of
+ * chasing Node, HashSet, and link objects around the heap.
+ *
+ * The root is node 0. Nodes are never removed.
+ *
+ * Not threadsafe.
+ */
+public class FlatTree {
+    /** Parent and child index for "none". */
+    public static final int NONE = -1;
+    private static final int kInitialCapacity = 1024;
+
+    private final int _dimensions;
+    private double[] _states;
+    private int[] _parent;
+    private int[] _firstChild;
+    private int[] _nextSibling;
+    private int[] _prevSibling;
+    private double[] _linkDist;
+    private double[] _pathDist;
+    private int _size;
+
+    public FlatTree(int dimensions, double[] root) {
+        if (root.length != dimensions)
+            throw new IllegalArgumentException("root has " + root.length + " dimensions, expected " + dimensions);
+        _dimensions = dimensions;
+        _states = new double[kInitialCapacity * dimensions];
+        _parent = new int[kInitialCapacity];
+        _firstChild = new int[kInitialCapacity];
+        _nextSibling = new int[kInitialCapacity];
+        _prevSibling = new int[kInitialCapacity];
+        _linkDist = new double[kInitialCapacity];
+        _pathDist = new double[kInitialCapacity];
+        append(root, NONE, 0);
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public int dimensions() {
+        return _dimensions;
+    }
+
+    /**
+     * Add a node linked to the parent.
+     *
+     * @return the new node
+     */
+    public int add(int parent, double[] state, double linkDist) {
+        check(parent);
+        if (state.length != _dimensions)
+            throw new IllegalArgumentException("state has " + state.length + " dimensions, expected " + _dimensions);
+        if (linkDist < 0)
+            throw new IllegalArgumentException("dist may not be negative");
+        int node = append(state, parent, linkDist);
+        attach(parent, node);
+        return node;
+    }
+
+    /** Copy the state into out, so nothing allocates. */
+    public void getState(int node, double[] out) {
+        check(node);
+        System.arraycopy(_states, node * _dimensions, out, 0, _dimensions);
+    }
+
+    /** A copy of the state. */
+    public double[] getState(int node) {
+        double[] out = new double[_dimensions];
+        getState(node, out);
+        return out;
+    }
+
+    public double getState(int node, int axis) {
+        check(node);
+        return _states[node * _dimensions + axis];
+    }
+
+    /** NONE for the root. */
+    public int getParent(int node) {
+        check(node);
+        return _parent[node];
+    }
+
+    /** NONE if there are no children. */
+    public int getFirstChild(int node) {
+        check(node);
+        return _firstChild[node];
+    }
+
+    /** NONE if this is the last child. */
+    public int getNextSibling(int node) {
+        check(node);
+        return _nextSibling[node];
+    }
+
+    /** Length of the incoming link, zero for the root. */
+    public double getLinkDist(int node) {
+        check(node);
+        return _linkDist[node];
+    }
+
+    /** Cached total path length from the root. */
+    public double getPathDist(int node) {
+        check(node);
+        return _pathDist[node];
+    }
+
+    /**
+     * Rewires the target node to source, if that makes the target path shorter.
+     * The caller checks feasibility, as with Graph.rewireFeasible().
+     *
+     * @return true if it actually changed anything
+     */
+    public boolean rewire(int source, int target, double linkDist) {
+        check(source);
+        check(target);
+        if (target == 0)
+            throw new IllegalArgumentException("cannot rewire the root");
+        if (_parent[target] == source)
+            return false;
+        // this also prevents cycles, since a descendant is never shorter.
+        if (_pathDist[source] + linkDist >= _pathDist[target])
+            return false;
+        detach(target);
+        _parent[target] = source;
+        _linkDist[target] = linkDist;
+        _pathDist[target] = _pathDist[source] + linkDist;
+        attach(source, target);
+        RewireStats.record(updatePathLengths(target));
+        return true;
+    }
+
+    /** The path from the root to the node. */
+    public Path path(int node) {
+        check(node);
+        List<double[]> configs = new LinkedList<double[]>();
+        double totalDistance = 0;
+        while (node != NONE) {
+            configs.add(getState(node));
+            totalDistance += _linkDist[node];
+            node = _parent[node];
+        }
+        Collections.reverse(configs);
+        return new Path(totalDistance, configs);
+    }
+
+    /**
+     * A Node and link copy of the tree, for listeners that use Solver.getNodes().
+     * This allocates the whole tree, so don't call it in the solver loop.
+     */
+    public List<Node> toNodes() {
+        List<Node> nodes = new ArrayList<>(_size);
+        for (int i = 0; i < _size; ++i) {
+            nodes.add(new Node(getState(i)));
+        }
+        // parents before children, so the caching links see the right distance.
+        int[] queue = new int[_size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = _firstChild[node]; child != NONE; child = _nextSibling[child]) {
+                Graph.newLink(nodes.get(node), nodes.get(child), _linkDist[child]);
+                queue[tail++] = child;
+            }
+        }
+        return nodes;
+    }
+
+    /////////////////////////////////////////
+
+    /**
+     * Update the path lengths of all the descendants, in preorder, using the
+     * parent links to climb back up, so there's no recursion and no stack.
+     * 
+     * @return the number of descendants updated
+     */
+    private int updatePathLengths(int root) {
+        int touched = 0;
+        int node = _firstChild[root];
+        while (node != NONE) {
+            _pathDist[node] = _pathDist[_parent[node]] + _linkDist[node];
+            touched++;
+            if (_firstChild[node] != NONE) {
+                node = _firstChild[node];
+                continue;
+            }
+            while (node != root && _nextSibling[node] == NONE) {
+                node = _parent[node];
+            }
+            if (node == root)
+                return touched;
+            node = _nextSibling[node];
+        }
+        return touched;
+    }
+
+    private int append(double[] state, int parent, double linkDist) {
+        if (_size == _parent.length)
+            grow();
+        int node = _size++;
+        System.arraycopy(state, 0, _states, node * _dimensions, _dimensions);
+        _parent[node] = parent;
+        _firstChild[node] = NONE;
+        _nextSibling[node] = NONE;
+        _prevSibling[node] = NONE;
+        _linkDist[node] = linkDist;
+        _pathDist[node] = parent == NONE ? 0 : _pathDist[parent] + linkDist;
+        return node;
+    }
+
+    /** Push the node onto the front of the parent's child list. */
+    private void attach(int parent, int node) {
+        int first = _firstChild[parent];
+        _nextSibling[node] = first;
+        _prevSibling[node] = NONE;
+        if (first != NONE)
+            _prevSibling[first] = node;
+        _firstChild[parent] = node;
+    }
+
+    /** Remove the node from its parent's child list. */
+    private void detach(int node) {
+        int prev = _prevSibling[node];
+        int next = _nextSibling[node];
+        if (prev == NONE)
+            _firstChild[_parent[node]] = next;
+        else
+            _nextSibling[prev] = next;
+        if (next != NONE)
+            _prevSibling[next] = prev;
+        _nextSibling[node] = NONE;
+        _prevSibling[node] = NONE;
+    }
+
+    private void grow() {
+        int capacity = _parent.length * 2;
+        _states = Arrays.copyOf(_states, capacity * _dimensions);
+        _parent = Arrays.copyOf(_parent, capacity);
+        _firstChild = Arrays.copyOf(_firstChild, capacity);
+        _nextSibling = Arrays.copyOf(_nextSibling, capacity);
+        _prevSibling = Arrays.copyOf(_prevSibling, capacity);
+        _linkDist = Arrays.copyOf(_linkDist, capacity);
+        _pathDist = Arrays.copyOf(_pathDist, capacity);
+    }
+
+    private void check(int node) {
+        if (node < 0 || node >= _size)
+            throw new IllegalArgumentException("no such node: " + node);
+    }
+}
@@ -1,13 +1,34 @@
 package org.team100.lib.graph;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.team100.lib.index.KDModel;
 import org.team100.lib.planner.RobotModel;
 
 public class Graph {
-    /** use the caching link type? */
-    public static boolean linkTypeCaching = true;
+    /** How links keep track of path distance. */
+    public enum LinkType {
+        /** PathDistanceCachingLink, rewiring updates the whole subtree. */
+        CACHING,
+        /** LocalLink, walks the parents on every query. */
+        LOCAL,
+        /** VersionedLink, rewiring invalidates, queries recompute as needed. */
+        VERSIONED
+    }
+
+    /** Which link type to use. */
+    public static LinkType linkType = LinkType.CACHING;
+
+    /** Bumped by every rewire in VERSIONED mode, see VersionedLink. */
+    private static final AtomicLong pathVersion = new AtomicLong();
+
+    /** Path distances cached in an older version are stale. */
+    public static long getPathVersion() {
+        return pathVersion.get();
+    }
 
     /**
      * Create a link from source to target, using the model distance from the source
@@ -37,10 +58,16 @@ public class Graph {
             oldLink.get_source().removeOutgoing(oldLink);
 
         LinkInterface link;
-        if (linkTypeCaching) {
-            link = new PathDistanceCachingLink(source, target, dist);
-        } else {
-            link = new LocalLink(source, target, dist);
+        switch (linkType) {
+            case LOCAL:
+                link = new LocalLink(source, target, dist);
+                break;
+            case VERSIONED:
+                link = new VersionedLink(source, target, dist);
+                break;
+            default:
+                link = new PathDistanceCachingLink(source, target, dist);
+                break;
         }
         target.setIncoming(link);
         source.addOutgoing(link);
@@ -62,15 +89,28 @@ public class Graph {
         }
     }
 
-    /** Walks the outgoing subtree and updates the path lengths of each link. */
-    public static void updatePathLengths(LinkInterface link) {
-        Node node = link.get_target();
-        Iterator<LinkInterface> iter = node.getOutgoing();
-        while (iter.hasNext()) {
-            LinkInterface child = iter.next();
-            child.set_PathDist(child.get_linkDist() + link.get_pathDist());
-            updatePathLengths(child);
+    /**
+     * Walks the outgoing subtree and updates the path lengths of each link. Uses
+     * an explicit stack, since deep trees overflow the call stack.
+     * 
+     * @return the number of links updated
+     */
+    public static int updatePathLengths(LinkInterface link) {
+        int touched = 0;
+        Deque<LinkInterface> stack = new ArrayDeque<>();
+        stack.push(link);
+        while (!stack.isEmpty()) {
+            LinkInterface parent = stack.pop();
+            double pathDist = parent.get_pathDist();
+            Iterator<LinkInterface> iter = parent.get_target().getOutgoing();
+            while (iter.hasNext()) {
+                LinkInterface child = iter.next();
+                child.set_PathDist(child.get_linkDist() + pathDist);
+                stack.push(child);
+                touched++;
+            }
         }
+        return touched;
     }
 
     /**
@@ -117,6 +157,31 @@ public class Graph {
             return false;
         }
 
+        return rewireFeasible(source, target, linkDist);
+    }
+
+    /**
+     * Rewires the target node to source, for a link the caller has already found
+     * feasible, e.g. outside a lock. The path distances are checked again, since
+     * they may have changed in the meantime.
+     * 
+     * @return true if it actually changed anything
+     */
+    public static boolean rewireFeasible(Node source, Node target, double linkDist) {
+        if (target.getIncoming() == null)
+            throw new IllegalArgumentException("cannot rewire the root");
+
+        if (target.getIncoming().get_source() == source)
+            return false;
+
+        double newPathDist = source.getPathDist() + linkDist;
+
+        // if the new path is not better, then return the old path.
+        // this also prevents cycles, since a descendant is never shorter.
+        if (newPathDist >= target.getIncoming().get_pathDist()) {
+            return false;
+        }
+
         // actually make and set the new link
         LinkInterface oldLink = target.getIncoming();
         oldLink.get_source().removeOutgoing(oldLink);
@@ -124,8 +189,18 @@ public class Graph {
 
         // Update all the child path lengths for consistency.
         // but only for the link types that need it.
-        if (linkTypeCaching)
-            updatePathLengths(newLink);
+        switch (linkType) {
+            case CACHING:
+                RewireStats.record(updatePathLengths(newLink));
+                break;
+            case VERSIONED:
+                pathVersion.incrementAndGet();
+                RewireStats.record(0);
+                break;
+            default:
+                RewireStats.record(0);
+                break;
+        }
 
         return true;
     }
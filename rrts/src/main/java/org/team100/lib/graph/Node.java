@@ -9,9 +9,13 @@ import org.team100.lib.space.Point;
 public class Node implements Point {
     private final double[] state;
 
-    /** Nullable for root, can be updated. */
-    private LinkInterface incoming;
+    /**
+     * Nullable for root, can be updated. Volatile so that concurrent solvers can
+     * walk paths without the graph lock.
+     */
+    private volatile LinkInterface incoming;
 
+    /** Not threadsafe, concurrent solvers must change links under a lock. */
     private Set<LinkInterface> outgoing;
 
     public Node(double[] state) {
@@ -20,8 +20,11 @@ public class PathDistanceCachingLink implements LinkInterface {
     private final Node _target;
     /** length, i.e. cost, of this edge */
     private final double _linkDist;
-    /** Total path length, i.e. cost, so far. This is updated by rewiring. */
-    private double _pathDist;
+    /**
+     * Total path length, i.e. cost, so far. This is updated by rewiring. Volatile
+     * for concurrent readers.
+     */
+    private volatile double _pathDist;
 
     /**
      * Create a new link pointing at the node, linkDist away from parent.
@@ -0,0 +1,74 @@
+package org.team100.lib.graph;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the cost of keeping path distances consistent: how many descendants
+ * each rewire updated eagerly (CACHING links, FlatTree), and how many links
+ * were recomputed on demand (VERSIONED links).
+ *
+ * Global, like Graph.linkType, so reset() before a run. Threadsafe.
+ */
+public class RewireStats {
+    private static final LongAdder rewires = new LongAdder();
+    private static final LongAdder touched = new LongAdder();
+    private static final AtomicInteger maxTouched = new AtomicInteger();
+    private static final LongAdder recomputed = new LongAdder();
+
+    private RewireStats() {
+        //
+    }
+
+    public static void reset() {
+        rewires.reset();
+        touched.reset();
+        maxTouched.set(0);
+        recomputed.reset();
+    }
+
+    /** Number of rewires. */
+    public static long getRewires() {
+        return rewires.sum();
+    }
+
+    /** Total descendants updated by rewires. */
+    public static long getTouched() {
+        return touched.sum();
+    }
+
+    /** Most descendants updated by any one rewire. */
+    public static int getMaxTouched() {
+        return maxTouched.get();
+    }
+
+    /** Mean descendants updated per rewire. */
+    public static double getMeanTouched() {
+        long n = rewires.sum();
+        if (n == 0)
+            return 0;
+        return (double) touched.sum() / n;
+    }
+
+    /** Stale path distances recomputed by queries. */
+    public static long getRecomputed() {
+        return recomputed.sum();
+    }
+
+    /** For printing. */
+    public static String summary() {
+        return String.format("rewires %d touched %d mean %.1f max %d recomputed %d",
+                getRewires(), getTouched(), getMeanTouched(), getMaxTouched(), getRecomputed());
+    }
+
+    /** A rewire that updated this many descendants. */
+    static void record(int descendants) {
+        rewires.increment();
+        touched.add(descendants);
+        maxTouched.accumulateAndGet(descendants, Math::max);
+    }
+
+    static void recordRecomputed(int links) {
+        recomputed.add(links);
+    }
+}
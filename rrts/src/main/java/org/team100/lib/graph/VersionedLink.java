@@ -0,0 +1,128 @@
+package org.team100.lib.graph;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.team100.lib.space.Path;
+
+/**
+ * This link type caches path distance, like PathDistanceCachingLink, but
+ * rewiring doesn't walk the subtree, it just bumps Graph.getPathVersion(),
+ * which makes every cached distance stale. A query on a stale link walks up to
+ * the nearest current ancestor (or the root), and then restamps the links on
+ * the way, so the next query nearby is cheap.
+ * 
+ * So the rewire cost moves to the queries, and only for the parts of the tree
+ * that are actually queried.
+ * 
+ * Queries write the cache, so this isn't for concurrent solvers.
+ */
+public class VersionedLink implements LinkInterface {
+    /** nullable for root */
+    private final Node _source;
+    /** nonnull */
+    private final Node _target;
+    /** length, i.e. cost, of this edge */
+    private final double _linkDist;
+    /** Total path length, i.e. cost, as of _version. */
+    private double _pathDist;
+    private long _version;
+
+    public VersionedLink(Node source, Node target, double linkDist) {
+        if (source == null)
+            throw new IllegalArgumentException();
+        if (target == null)
+            throw new IllegalArgumentException();
+        if (linkDist < 0)
+            throw new IllegalArgumentException();
+        _source = source;
+        _target = target;
+        _linkDist = linkDist;
+        _version = Graph.getPathVersion();
+        _pathDist = source.getPathDist() + linkDist;
+    }
+
+    @Override
+    public Path path() {
+        Node node = get_target();
+        List<double[]> configs = new LinkedList<double[]>();
+        double pathDist = get_pathDist();
+        while (true) {
+            configs.add(node.getState());
+            LinkInterface incoming = node.getIncoming();
+            if (incoming == null)
+                break;
+            node = incoming.get_source();
+        }
+        Collections.reverse(configs);
+        return new Path(pathDist, configs);
+    }
+
+    @Override
+    public Node get_source() {
+        return _source;
+    }
+
+    /** nonnull */
+    @Override
+    public Node get_target() {
+        return _target;
+    }
+
+    @Override
+    public double get_linkDist() {
+        return _linkDist;
+    }
+
+    @Override
+    public void set_PathDist(double d) {
+        _pathDist = d;
+        _version = Graph.getPathVersion();
+    }
+
+    /** Total path length from start to here, recomputed if stale. */
+    @Override
+    public double get_pathDist() {
+        long version = Graph.getPathVersion();
+        if (_version == version)
+            return _pathDist;
+
+        // walk up to something current, adding up the stale links.
+        double stale = 0;
+        double base = 0;
+        LinkInterface link = this;
+        while (link != null) {
+            if (link instanceof VersionedLink) {
+                VersionedLink v = (VersionedLink) link;
+                if (v._version == version) {
+                    base = v._pathDist;
+                    break;
+                }
+            } else {
+                // some other link type, it knows its own distance
+                base = link.get_pathDist();
+                break;
+            }
+            stale += link.get_linkDist();
+            link = link.get_source().getIncoming();
+        }
+
+        // walk up again, restamping, no recursion and no allocation.
+        double pathDist = base + stale;
+        int recomputed = 0;
+        link = this;
+        while (link instanceof VersionedLink) {
+            VersionedLink v = (VersionedLink) link;
+            if (v._version == version)
+                break;
+            v._pathDist = pathDist;
+            v._version = version;
+            pathDist -= v._linkDist;
+            recomputed++;
+            link = v._source.getIncoming();
+        }
+        RewireStats.recordRecomputed(recomputed);
+        return _pathDist;
+    }
+}
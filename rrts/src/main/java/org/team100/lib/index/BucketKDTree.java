@@ -0,0 +1,370 @@
+package org.team100.lib.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import org.team100.lib.space.Point;
+
+/**
+ * An alternative to KDTree for big trees.
+ *
+ * KDTree splits at the fixed midpoint of the model bounds, one value per node,
+ * so clustered samples, e.g. near obstacles, make it deep and unbalanced. This
+ * one keeps up to bucketSize values per leaf, and splits a full leaf at the
+ * median of its values along their widest axis, so the splits follow the data.
+ * Insertion order can still unbalance it, e.g. samples sorted along one axis,
+ * so when an insert lands more than twice as deep as a balanced tree would be,
+ * the biggest lopsided subtree on its path is rebuilt with recursive median
+ * splits, like a scapegoat tree, which keeps the amortized insert cost
+ * logarithmic. The same bulk build is available up front.
+ *
+ * The queries don't allocate: near() uses a primitive visitor, and kNearest()
+ * fills a reusable KNearest heap.
+ *
+ * Like KDTree, the pruning assumes that the model distance is at least the
+ * difference along any one axis, which is true for Euclidean-ish metrics.
+ *
+ * Not threadsafe; for concurrent solvers use KDTree.
+ */
+public class BucketKDTree<V extends Point> {
+    public static final int kDefaultBucketSize = 16;
+    /** A subtree with a child bigger than this fraction of it is lopsided. */
+    private static final double kAlpha = 0.7;
+
+    /** Like the BiConsumer in KDTree.near(), without boxing the distance. */
+    public interface Visitor<V> {
+        void accept(V value, double dist);
+    }
+
+    /** Either a leaf, with values, or a split, with children. */
+    private static final class Cell {
+        // split
+        int axis;
+        double split;
+        Cell lo;
+        Cell hi;
+        int size;
+        // leaf
+        Object[] values;
+        int count;
+
+        boolean isLeaf() {
+            return values != null;
+        }
+
+        int size() {
+            return isLeaf() ? count : size;
+        }
+    }
+
+    private final KDModel _model;
+    private final int _bucketSize;
+    private final List<Comparator<Object>> _byAxis;
+    private final KNearest<V> _nearest;
+    private Cell _root;
+    private int _size;
+    private int _rebuilds;
+    /** Scratch for insert(). */
+    private Cell[] _path;
+
+    public BucketKDTree(KDModel model) {
+        this(model, kDefaultBucketSize);
+    }
+
+    public BucketKDTree(KDModel model, int bucketSize) {
+        if (bucketSize < 2)
+            throw new IllegalArgumentException("bucket size must be > 1");
+        _model = model;
+        _bucketSize = bucketSize;
+        _byAxis = new ArrayList<>();
+        for (int i = 0; i < model.dimensions(); ++i) {
+            final int axis = i;
+            _byAxis.add((a, b) -> Double.compare(coord(a, axis), coord(b, axis)));
+        }
+        _nearest = new KNearest<>(1);
+        _root = leaf(bucketSize + 1);
+        _path = new Cell[32];
+    }
+
+    /** Bulk build with median splits, which is faster than inserting one at a time. */
+    public BucketKDTree(KDModel model, int bucketSize, Collection<V> values) {
+        this(model, bucketSize);
+        Object[] all = values.toArray();
+        _root = build(all, 0, all.length);
+        _size = all.length;
+    }
+
+    public void insert(V value) {
+        double[] state = value.getState();
+        Cell cell = _root;
+        int depth = 0;
+        while (!cell.isLeaf()) {
+            if (depth == _path.length)
+                _path = Arrays.copyOf(_path, depth * 2);
+            _path[depth++] = cell;
+            cell.size++;
+            cell = state[cell.axis] < cell.split ? cell.lo : cell.hi;
+        }
+        if (cell.count == cell.values.length)
+            cell.values = Arrays.copyOf(cell.values, cell.values.length * 2);
+        cell.values[cell.count++] = value;
+        _size++;
+        int pathLength = depth;
+        if (cell.count > _bucketSize && split(cell))
+            depth++;
+        if (depth > 2 * balancedDepth())
+            rebuildScapegoat(pathLength);
+    }
+
+    /** Rebuild the whole tree with median splits. */
+    public void rebuild() {
+        _root = rebuilt(_root);
+        _rebuilds++;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    /** Number of subtree or whole-tree rebuilds, for tuning. */
+    public int getRebuilds() {
+        return _rebuilds;
+    }
+
+    /** Deepest leaf, for tuning. */
+    public int depth() {
+        return depth(_root);
+    }
+
+    /** All the values, allocates. */
+    public List<V> values() {
+        Object[] all = new Object[_size];
+        collect(_root, all, 0);
+        List<V> result = new ArrayList<>(_size);
+        for (Object o : all) {
+            result.add(cast(o));
+        }
+        return result;
+    }
+
+    /** Visits every value closer than radius to the target. */
+    public void near(double[] target, double radius, Visitor<V> visitor) {
+        near(_root, target, radius, visitor);
+    }
+
+    /**
+     * The k nearest values to the target, written into result, which is reset
+     * first. Call result.sort() for nearest-first order.
+     */
+    public void kNearest(double[] target, int k, KNearest<V> result) {
+        result.reset(k);
+        kNearest(_root, target, result);
+    }
+
+    /** Same as KDTree.nearest(), null value if empty. Uses scratch, so not reentrant. */
+    public KDNearNode<V> nearest(double[] target) {
+        kNearest(target, 1, _nearest);
+        if (_nearest.size() == 0)
+            return new KDNearNode<V>(Double.MAX_VALUE, null);
+        KDNearNode<V> result = new KDNearNode<V>(_nearest.getDist(0), _nearest.getValue(0));
+        _nearest.reset(1);
+        return result;
+    }
+
+    /////////////////////////////////////////
+
+    private void near(Cell cell, double[] target, double radius, Visitor<V> visitor) {
+        if (cell.isLeaf()) {
+            for (int i = 0; i < cell.count; ++i) {
+                V value = cast(cell.values[i]);
+                double dist = _model.dist(value.getState(), target);
+                if (dist < radius)
+                    visitor.accept(value, dist);
+            }
+            return;
+        }
+        double d = target[cell.axis] - cell.split;
+        if (d < 0) {
+            near(cell.lo, target, radius, visitor);
+            if (-d < radius)
+                near(cell.hi, target, radius, visitor);
+        } else {
+            near(cell.hi, target, radius, visitor);
+            if (d < radius)
+                near(cell.lo, target, radius, visitor);
+        }
+    }
+
+    private void kNearest(Cell cell, double[] target, KNearest<V> result) {
+        if (cell.isLeaf()) {
+            for (int i = 0; i < cell.count; ++i) {
+                V value = cast(cell.values[i]);
+                result.offer(value, _model.dist(value.getState(), target));
+            }
+            return;
+        }
+        double d = target[cell.axis] - cell.split;
+        // nearer side first, so the far side is usually pruned
+        if (d < 0) {
+            kNearest(cell.lo, target, result);
+            if (-d < result.worstDist())
+                kNearest(cell.hi, target, result);
+        } else {
+            kNearest(cell.hi, target, result);
+            if (d < result.worstDist())
+                kNearest(cell.lo, target, result);
+        }
+    }
+
+    /** Rebuild the topmost lopsided cell on the insert path, if any. */
+    private void rebuildScapegoat(int pathLength) {
+        for (int i = 0; i < pathLength; ++i) {
+            Cell cell = _path[i];
+            if (Math.max(cell.lo.size(), cell.hi.size()) > kAlpha * cell.size) {
+                Cell replacement = rebuilt(cell);
+                if (i == 0) {
+                    _root = replacement;
+                } else {
+                    Cell parent = _path[i - 1];
+                    if (parent.lo == cell)
+                        parent.lo = replacement;
+                    else
+                        parent.hi = replacement;
+                }
+                _rebuilds++;
+                return;
+            }
+        }
+    }
+
+    private Cell rebuilt(Cell cell) {
+        Object[] all = new Object[cell.size()];
+        collect(cell, all, 0);
+        return build(all, 0, all.length);
+    }
+
+    /**
+     * Split an overfull leaf at the median of its widest axis.
+     *
+     * @return false if all the values are the same, so it just stays big.
+     */
+    private boolean split(Cell cell) {
+        int axis = widestAxis(cell.values, 0, cell.count);
+        if (axis < 0)
+            return false;
+        Arrays.sort(cell.values, 0, cell.count, _byAxis.get(axis));
+        int mid = splitIndex(cell.values, 0, cell.count, axis);
+        // a leaf full of duplicates can be big
+        Cell lo = leaf(Math.max(_bucketSize, mid) + 1);
+        Cell hi = leaf(Math.max(_bucketSize, cell.count - mid) + 1);
+        System.arraycopy(cell.values, 0, lo.values, 0, mid);
+        lo.count = mid;
+        System.arraycopy(cell.values, mid, hi.values, 0, cell.count - mid);
+        hi.count = cell.count - mid;
+        cell.axis = axis;
+        cell.split = coord(cell.values[mid], axis);
+        cell.lo = lo;
+        cell.hi = hi;
+        cell.size = cell.count;
+        cell.values = null;
+        cell.count = 0;
+        return true;
+    }
+
+    /** Median-split values [from, to) recursively. */
+    private Cell build(Object[] values, int from, int to) {
+        int count = to - from;
+        int axis = count > _bucketSize ? widestAxis(values, from, to) : -1;
+        if (axis < 0) {
+            Cell leaf = leaf(Math.max(_bucketSize, count) + 1);
+            System.arraycopy(values, from, leaf.values, 0, count);
+            leaf.count = count;
+            return leaf;
+        }
+        Arrays.sort(values, from, to, _byAxis.get(axis));
+        int mid = splitIndex(values, from, to, axis);
+        Cell cell = new Cell();
+        cell.axis = axis;
+        cell.split = coord(values[mid], axis);
+        cell.lo = build(values, from, mid);
+        cell.hi = build(values, mid, to);
+        cell.size = count;
+        return cell;
+    }
+
+    /**
+     * For values sorted on axis, the first index at or above the median value,
+     * or above the minimum if the median is the minimum, so neither side is
+     * empty.
+     */
+    private static int splitIndex(Object[] values, int from, int to, int axis) {
+        int mid = (from + to) / 2;
+        double split = coord(values[mid], axis);
+        if (split == coord(values[from], axis)) {
+            while (coord(values[mid], axis) == split)
+                mid++;
+            return mid;
+        }
+        while (coord(values[mid - 1], axis) == split)
+            mid--;
+        return mid;
+    }
+
+    /** The axis with the biggest spread, or -1 if they're all the same. */
+    private int widestAxis(Object[] values, int from, int to) {
+        int best = -1;
+        double bestSpread = 0;
+        for (int axis = 0; axis < _model.dimensions(); ++axis) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; ++i) {
+                double c = coord(values[i], axis);
+                min = Math.min(min, c);
+                max = Math.max(max, c);
+            }
+            if (max - min > bestSpread) {
+                bestSpread = max - min;
+                best = axis;
+            }
+        }
+        return best;
+    }
+
+    /** Depth of a median-split tree of this size. */
+    private int balancedDepth() {
+        return 32 - Integer.numberOfLeadingZeros(_size / _bucketSize);
+    }
+
+    private static int collect(Cell cell, Object[] all, int index) {
+        if (cell.isLeaf()) {
+            System.arraycopy(cell.values, 0, all, index, cell.count);
+            return index + cell.count;
+        }
+        index = collect(cell.lo, all, index);
+        return collect(cell.hi, all, index);
+    }
+
+    private static int depth(Cell cell) {
+        if (cell.isLeaf())
+            return 0;
+        return 1 + Math.max(depth(cell.lo), depth(cell.hi));
+    }
+
+    private static Cell leaf(int capacity) {
+        Cell cell = new Cell();
+        cell.values = new Object[capacity];
+        return cell;
+    }
+
+    private static double coord(Object value, int axis) {
+        return ((Point) value).getState()[axis];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V cast(Object o) {
+        return (V) o;
+    }
+}
@@ -1,11 +1,24 @@
 package org.team100.lib.index;
 
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 import org.team100.lib.space.Point;
 
+/**
+ * Children are volatile and set by CAS, so many threads can insert and search
+ * at once without locking, see KDTree.insert().
+ */
 public final class KDNode<V extends Point> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<KDNode, KDNode> A = AtomicReferenceFieldUpdater
+            .newUpdater(KDNode.class, KDNode.class, "a");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<KDNode, KDNode> B = AtomicReferenceFieldUpdater
+            .newUpdater(KDNode.class, KDNode.class, "b");
+
     private final V value;
-    private KDNode<V> a;
-    private KDNode<V> b;
+    private volatile KDNode<V> a;
+    private volatile KDNode<V> b;
 
     public KDNode(V v) {
         if (v == null)
@@ -21,6 +34,16 @@ public final class KDNode<V extends Point> {
         b = n;
     }
 
+    /** @return false if some other thread set a first */
+    boolean casA(KDNode<V> expect, KDNode<V> n) {
+        return A.compareAndSet(this, expect, n);
+    }
+
+    /** @return false if some other thread set b first */
+    boolean casB(KDNode<V> expect, KDNode<V> n) {
+        return B.compareAndSet(this, expect, n);
+    }
+
     public KDNode<V> getA() {
         return a;
     }
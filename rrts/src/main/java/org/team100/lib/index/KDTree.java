@@ -23,7 +23,10 @@ public class KDTree {
         buildList(list, node.getB());
     }
 
-    /** Inserts the value into the KD Tree. */
+    /**
+     * Inserts the value into the KD Tree. Threadsafe: if another thread takes
+     * the empty slot first, this just keeps descending.
+     */
     public static <V extends Point> void insert(KDModel model, KDNode<V> root, V value) {
         double[] min = model.getMin();
         double[] max = model.getMax();
@@ -39,20 +42,24 @@ public class KDTree {
 
             if (v < mp) {
                 // a-side
-                if (n.getA() == null) {
-                    n.setA(newNode);
-                    break;
+                KDNode<V> a = n.getA();
+                if (a == null) {
+                    if (n.casA(null, newNode))
+                        break;
+                    a = n.getA();
                 }
                 max[axis] = mp;
-                n = n.getA();
+                n = a;
             } else {
                 // b-side
-                if (n.getB() == null) {
-                    n.setB(newNode);
-                    break;
+                KDNode<V> b = n.getB();
+                if (b == null) {
+                    if (n.casB(null, newNode))
+                        break;
+                    b = n.getB();
                 }
                 min[axis] = mp;
-                n = n.getB();
+                n = b;
             }
         }
     }
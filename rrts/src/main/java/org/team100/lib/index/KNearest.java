@@ -0,0 +1,118 @@
+package org.team100.lib.index;
+
+/**
+ * Reusable result for BucketKDTree.kNearest(): a bounded max-heap on
+ * distance, so the worst of the k best so far is on top. Nothing allocates
+ * unless k grows beyond any previous k.
+ *
+ * While the query runs the entries are in heap order; call sort() to get them
+ * nearest-first.
+ */
+public class KNearest<V> {
+    private Object[] _values;
+    private double[] _dists;
+    private int _k;
+    private int _size;
+
+    public KNearest(int k) {
+        _values = new Object[k];
+        _dists = new double[k];
+        reset(k);
+    }
+
+    /** Empty the heap and set the number of neighbors to keep. */
+    public void reset(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be > 0");
+        if (k > _values.length) {
+            _values = new Object[k];
+            _dists = new double[k];
+        }
+        // drop references so old values can be collected
+        for (int i = 0; i < _size; ++i) {
+            _values[i] = null;
+        }
+        _k = k;
+        _size = 0;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean isFull() {
+        return _size == _k;
+    }
+
+    /** The distance a new value has to beat, infinite until the heap is full. */
+    public double worstDist() {
+        if (_size < _k)
+            return Double.POSITIVE_INFINITY;
+        return _dists[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getValue(int i) {
+        if (i >= _size)
+            throw new IndexOutOfBoundsException("index " + i);
+        return (V) _values[i];
+    }
+
+    public double getDist(int i) {
+        if (i >= _size)
+            throw new IndexOutOfBoundsException("index " + i);
+        return _dists[i];
+    }
+
+    /** Keep the value if it's among the k nearest so far. */
+    public void offer(V value, double dist) {
+        if (_size < _k) {
+            // sift up
+            int i = _size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (_dists[parent] >= dist)
+                    break;
+                _values[i] = _values[parent];
+                _dists[i] = _dists[parent];
+                i = parent;
+            }
+            _values[i] = value;
+            _dists[i] = dist;
+            return;
+        }
+        if (dist >= _dists[0])
+            return;
+        siftDown(0, value, dist, _size);
+    }
+
+    /** Nearest first. After this it's not a heap any more, so reset() before reuse. */
+    public void sort() {
+        // heapsort: repeatedly move the max to the end
+        for (int end = _size - 1; end > 0; --end) {
+            Object top = _values[0];
+            double topDist = _dists[0];
+            siftDown(0, _values[end], _dists[end], end);
+            _values[end] = top;
+            _dists[end] = topDist;
+        }
+    }
+
+    /** Put value at i, and move it down the heap of size n until it's in order. */
+    private void siftDown(int i, Object value, double dist, int n) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n)
+                break;
+            if (child + 1 < n && _dists[child + 1] > _dists[child])
+                child++;
+            if (_dists[child] <= dist)
+                break;
+            _values[i] = _values[child];
+            _dists[i] = _dists[child];
+            i = child;
+        }
+        _values[i] = value;
+        _dists[i] = dist;
+    }
+}
@@ -0,0 +1,122 @@
+package org.team100.lib.planner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.team100.lib.graph.Node;
+import org.team100.lib.space.Path;
+
+/**
+ * Like Runner, but steps the solver from several threads at once, so the
+ * solver's step() must be threadsafe, e.g. ParallelRRTStar.
+ *
+ * The threads are started once and reused for every run, so replanning
+ * doesn't pay for thread startup. They're daemons, but call close() when
+ * you're done anyway.
+ *
+ * A sample-limited run can overshoot by up to one sample per thread.
+ */
+public class ParallelRunner implements AutoCloseable {
+    private final Solver _solver;
+    private final int _threads;
+    private final ExecutorService _executor;
+    private final AtomicInteger _stepNo;
+
+    /** Uses all the cores. */
+    public ParallelRunner(Solver solver) {
+        this(solver, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelRunner(Solver solver, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("invalid thread count, must be > 0");
+        _solver = solver;
+        _threads = threads;
+        AtomicInteger threadNo = new AtomicInteger();
+        _executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "rrt-worker-" + threadNo.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        // since we use stepNo for radius, it can't be zero
+        _stepNo = new AtomicInteger(1);
+    }
+
+    public void runForDurationMS(long milliseconds) {
+        if (milliseconds <= 0) {
+            throw new IllegalArgumentException("invalid duration, must be > 0");
+        }
+        run(Integer.MAX_VALUE, milliseconds * 1000000);
+    }
+
+    public void runSamples(int samples) {
+        if (samples <= 0) {
+            throw new IllegalArgumentException("invalid sample count, must be > 0");
+        }
+        run(samples, 0);
+    }
+
+    /** For listeners. */
+    public int getStepNo() {
+        return _stepNo.get();
+    }
+
+    /** For listeners. */
+    public Iterable<Node> getNodes() {
+        return _solver.getNodes();
+    }
+
+    /** For listeners. */
+    public Path getBestPath() {
+        return _solver.getBestPath();
+    }
+
+    @Override
+    public void close() {
+        _executor.shutdownNow();
+    }
+
+    /////////////////////////////////////////
+
+    private void run(int sampleLimit, long timeLimitNS) {
+        long startTime = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(_threads);
+        for (int i = 0; i < _threads; ++i) {
+            futures.add(_executor.submit(() -> work(sampleLimit, timeLimitNS, startTime)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private void work(int sampleLimit, long timeLimitNS, long startTime) {
+        while (_stepNo.get() <= sampleLimit) {
+            if (_solver.step() > 0) {
+                if (_stepNo.incrementAndGet() > sampleLimit) {
+                    return;
+                }
+            }
+
+            if (timeLimitNS > 0) {
+                long now = System.nanoTime();
+                if (now - startTime > timeLimitNS) {
+                    return;
+                }
+            }
+        }
+    }
+}
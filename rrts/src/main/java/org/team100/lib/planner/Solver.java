@@ -5,7 +5,8 @@ import org.team100.lib.space.Path;
 
 /**
  * Interface for solvers, can be stepped and listeners can see incremental
- * results.
+ * results. Most solvers are single-threaded, see Runner; ParallelRunner needs
+ * a threadsafe step().
  */
 public interface Solver {
     /** Used to adjust radius. */
@@ -0,0 +1,224 @@
+package org.team100.lib.rrt;
+
+import java.util.Arrays;
+
+import org.team100.lib.graph.FlatTree;
+import org.team100.lib.graph.Node;
+import org.team100.lib.index.BucketKDTree;
+import org.team100.lib.index.KDModel;
+import org.team100.lib.index.KDNearNode;
+import org.team100.lib.planner.RobotModel;
+import org.team100.lib.planner.Solver;
+import org.team100.lib.space.Path;
+import org.team100.lib.space.Point;
+import org.team100.lib.space.Sample;
+
+/**
+ * Same algorithm as RRTStar, for big trees: the tree is a FlatTree, i.e.
+ * primitive arrays instead of Node and link objects, and the index is a
+ * BucketKDTree.
+ *
+ * The index entries are tiny (node number and sample), and the near-node
+ * candidates are kept in reusable primitive arrays, so a step with near nodes
+ * allocates only the sample and its index entry. A step without any also
+ * allocates the nearest() result and, if it has to steer, a Node and
+ * KDNearNode for RobotModel.steer() and the steered state.
+ *
+ * getNodes() copies the whole tree into Nodes, which is fine for a viewer but
+ * not for the solver loop.
+ */
+public class FlatRRTStar<T extends KDModel & RobotModel> implements Solver {
+    /** Index entry; the state is the sample array, not a copy. */
+    private static class Vertex implements Point {
+        private final int _node;
+        private final double[] _state;
+
+        Vertex(int node, double[] state) {
+            _node = node;
+            _state = state;
+        }
+
+        @Override
+        public double[] getState() {
+            return _state;
+        }
+    }
+
+    private final T _model;
+    private final FlatTree _tree;
+    private final BucketKDTree<Vertex> _index;
+    private final Sample _sample;
+    private final double _gamma;
+    /** The best node in the goal, or NONE. */
+    private int _bestNode;
+
+    // near candidates, sorted by path distance through them
+    private int[] _nearNodes;
+    private double[] _nearLinkDists;
+    private double[] _nearPathDists;
+    private int _nearCount;
+    private final BucketKDTree.Visitor<Vertex> _addNear;
+    // scratch for link checks
+    private final double[] _nearState;
+
+    // mutable loop variables to make the loop code cleaner
+    int stepNo = 0;
+    double[] x_rand;
+
+    public FlatRRTStar(T model, Sample sample, double gamma) {
+        if (gamma < 1.0) {
+            throw new IllegalArgumentException("invalid gamma, must be >= 1.0");
+        }
+        _model = model;
+        double[] initial = model.initial();
+        _tree = new FlatTree(model.dimensions(), initial);
+        _index = new BucketKDTree<>(model);
+        _index.insert(new Vertex(0, initial));
+        _sample = sample;
+        _gamma = gamma;
+        _bestNode = FlatTree.NONE;
+        _nearNodes = new int[16];
+        _nearLinkDists = new double[16];
+        _nearPathDists = new double[16];
+        _addNear = (vertex, dist) -> {
+            // like RRTStar, skip the root
+            if (vertex._node != 0)
+                addNear(vertex._node, dist);
+        };
+        _nearState = new double[model.dimensions()];
+    }
+
+    double[] SampleFree() {
+        double[] newConfig = _sample.get();
+        if (!_model.clear(newConfig))
+            return null;
+        return newConfig;
+    }
+
+    @Override
+    public void setStepNo(int stepNo) {
+        if (stepNo < 1)
+            throw new IllegalArgumentException();
+        this.stepNo = stepNo;
+    }
+
+    /**
+     * @return true if a new sample was added.
+     */
+    @Override
+    public int step() {
+        x_rand = SampleFree();
+        if (x_rand == null)
+            return 0;
+
+        double radius = _gamma * Math.pow(
+                Math.log(stepNo + 1) / (stepNo + 1),
+                1.0 / _model.dimensions());
+
+        _nearCount = 0;
+        _index.near(x_rand, radius, _addNear);
+
+        if (_nearCount == 0) {
+            KDNearNode<Vertex> nearResult = _index.nearest(x_rand);
+            int nearest = nearResult._nearest._node;
+
+            if (nearResult._dist > radius) {
+                _model.setStepNo(stepNo);
+                _model.setRadius(radius);
+                x_rand = _model.steer(
+                        new KDNearNode<Node>(nearResult._dist, new Node(nearResult._nearest._state)),
+                        x_rand);
+            }
+
+            if (!_model.clear(x_rand)) {
+                return 0;
+            }
+
+            if (!_model.link(nearResult._nearest._state, x_rand)) {
+                return 0;
+            }
+
+            // recalculate dist just to be safe.
+            int newNode = _tree.add(nearest, x_rand, _model.dist(nearResult._nearest._state, x_rand));
+            offerBestPath(newNode);
+            _index.insert(new Vertex(newNode, x_rand));
+            return 1;
+        }
+
+        // We take the best (shortest) feasible node.
+        for (int i = 0; i < _nearCount; ++i) {
+            _tree.getState(_nearNodes[i], _nearState);
+            if (!_model.link(_nearState, x_rand)) {
+                continue;
+            }
+
+            // Found a linkable configuration.
+            int newNode = _tree.add(_nearNodes[i], x_rand, _nearLinkDists[i]);
+            offerBestPath(newNode);
+            _index.insert(new Vertex(newNode, x_rand));
+
+            // check the remaining nearby nodes to see if they would be better
+            // as children of the new node
+            for (int j = _nearCount - 1; j > i; --j) {
+                int target = _nearNodes[j];
+                if (_tree.getPathDist(newNode) + _nearLinkDists[j] >= _tree.getPathDist(target))
+                    continue;
+                _tree.getState(target, _nearState);
+                if (!_model.link(_nearState, x_rand))
+                    continue;
+                if (_tree.rewire(newNode, target, _nearLinkDists[j]))
+                    offerBestPath(target);
+            }
+            return 1;
+        }
+        // no feasible link possible.
+        return 0;
+    }
+
+    /** A copy of the tree, see FlatTree.toNodes(). */
+    @Override
+    public Iterable<Node> getNodes() {
+        return _tree.toNodes();
+    }
+
+    /** For callers that can use the flat tree directly. */
+    public FlatTree getTree() {
+        return _tree;
+    }
+
+    @Override
+    public Path getBestPath() {
+        if (_bestNode == FlatTree.NONE)
+            return null;
+        return _tree.path(_bestNode);
+    }
+
+    /** Same as Graph.chooseBestPath(). */
+    private void offerBestPath(int node) {
+        _tree.getState(node, _nearState);
+        if (!_model.goal(_nearState))
+            return;
+        if (_bestNode == FlatTree.NONE || _tree.getPathDist(node) < _tree.getPathDist(_bestNode))
+            _bestNode = node;
+    }
+
+    /** Insertion sort, since there are only a few. */
+    private void addNear(int node, double linkDist) {
+        if (_nearCount == _nearNodes.length) {
+            _nearNodes = Arrays.copyOf(_nearNodes, _nearCount * 2);
+            _nearLinkDists = Arrays.copyOf(_nearLinkDists, _nearCount * 2);
+            _nearPathDists = Arrays.copyOf(_nearPathDists, _nearCount * 2);
+        }
+        double pathDist = _tree.getPathDist(node) + linkDist;
+        int i = _nearCount++;
+        while (i > 0 && _nearPathDists[i - 1] > pathDist) {
+            _nearNodes[i] = _nearNodes[i - 1];
+            _nearLinkDists[i] = _nearLinkDists[i - 1];
+            _nearPathDists[i] = _nearPathDists[i - 1];
+            i--;
+        }
+        _nearNodes[i] = node;
+        _nearLinkDists[i] = linkDist;
+        _nearPathDists[i] = pathDist;
+    }
+}
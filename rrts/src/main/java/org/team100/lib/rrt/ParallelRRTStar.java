@@ -0,0 +1,208 @@
+package org.team100.lib.rrt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.team100.lib.graph.Graph;
+import org.team100.lib.graph.LinkInterface;
+import org.team100.lib.graph.NearNode;
+import org.team100.lib.graph.Node;
+import org.team100.lib.index.KDModel;
+import org.team100.lib.index.KDNearNode;
+import org.team100.lib.index.KDNode;
+import org.team100.lib.index.KDTree;
+import org.team100.lib.planner.RobotModel;
+import org.team100.lib.planner.Solver;
+import org.team100.lib.space.Path;
+import org.team100.lib.space.Sample;
+
+/**
+ * Same algorithm as RRTStar, but step() is threadsafe, so several workers can
+ * grow the same tree, see ParallelRunner.
+ *
+ * Sampling, near/nearest queries, collision checks, and KD tree insertion
+ * (CAS, see KDNode) run without locking, and the best path is an
+ * AtomicReference. Changing links, i.e. Graph.newLink() and rewiring, happens
+ * under one short lock, because Node keeps a plain set of outgoing links and
+ * the cached path lengths have to be updated consistently. The expensive part
+ * of rewiring, the feasibility check, happens before taking the lock.
+ *
+ * The model's clear(), link(), goal(), and dist() must be threadsafe. Steering
+ * uses the radius stored in the model, so that's done under a lock on the
+ * model.
+ *
+ * Each thread gets its own Sample, with its own seed, so the result depends on
+ * scheduling, i.e. it's not repeatable.
+ *
+ * Path lengths are read outside the lock, so VERSIONED links, which update
+ * themselves when read, aren't allowed; use CACHING or LOCAL.
+ */
+public class ParallelRRTStar<T extends KDModel & RobotModel> implements Solver {
+    private final T _model;
+    private final KDNode<Node> _rootNode;
+    private final double _gamma;
+    private final AtomicInteger _seeds;
+    private final ThreadLocal<Sample> _sample;
+    private final AtomicInteger _stepNo;
+    private final AtomicReference<LinkInterface> _bestPath;
+    /** Guards the links, i.e. Node incoming and outgoing, and path lengths. */
+    private final Object _graphLock;
+
+    public ParallelRRTStar(T model, double gamma) {
+        if (gamma < 1.0) {
+            throw new IllegalArgumentException("invalid gamma, must be >= 1.0");
+        }
+        if (Graph.linkType == Graph.LinkType.VERSIONED) {
+            throw new IllegalStateException("VERSIONED links aren't threadsafe");
+        }
+        _model = model;
+        _rootNode = new KDNode<Node>(new Node(model.initial()));
+        _gamma = gamma;
+        _seeds = new AtomicInteger();
+        _sample = ThreadLocal.withInitial(() -> new Sample(_model, _seeds.getAndIncrement()));
+        _stepNo = new AtomicInteger(1);
+        _bestPath = new AtomicReference<>();
+        _graphLock = new Object();
+    }
+
+    /**
+     * Runner sets this before every step; ParallelRunner doesn't, so this counts
+     * its own steps too.
+     */
+    @Override
+    public void setStepNo(int stepNo) {
+        if (stepNo < 1)
+            throw new IllegalArgumentException();
+        _stepNo.set(stepNo);
+    }
+
+    /**
+     * Threadsafe.
+     *
+     * @return 1 if a new sample was added, 0 otherwise
+     */
+    @Override
+    public int step() {
+        double[] x_rand = _sample.get().get();
+        if (!_model.clear(x_rand))
+            return 0;
+
+        int stepNo = _stepNo.get();
+        double radius = _gamma * Math.pow(
+                Math.log(stepNo + 1) / (stepNo + 1),
+                1.0 / _model.dimensions());
+
+        List<NearNode> nearNodes = new ArrayList<>();
+        KDTree.near(_model, _rootNode, x_rand, radius, (node, dist) -> {
+            if (node.getIncoming() != null)
+                nearNodes.add(new NearNode(node, dist));
+        });
+
+        if (nearNodes.isEmpty()) {
+            KDNearNode<Node> nearResult = KDTree.nearest(_model, _rootNode, x_rand);
+            Node nearest = nearResult._nearest;
+
+            if (nearResult._dist > radius) {
+                synchronized (_model) {
+                    _model.setStepNo(stepNo);
+                    _model.setRadius(radius);
+                    x_rand = _model.steer(nearResult, x_rand);
+                }
+            }
+
+            if (!_model.clear(x_rand))
+                return 0;
+
+            if (!_model.link(nearest.getState(), x_rand))
+                return 0;
+
+            Node newNode = new Node(x_rand);
+            LinkInterface newLink;
+            synchronized (_graphLock) {
+                newLink = Graph.newLink(_model, nearest, newNode);
+            }
+            offerBestPath(newLink);
+            KDTree.insert(_model, _rootNode, newNode);
+            _stepNo.incrementAndGet();
+            return 1;
+        }
+
+        // Take the best (shortest) feasible node, using the path lengths as of the
+        // query; other threads may have shortened some since.
+        Collections.sort(nearNodes);
+
+        for (int i = 0; i < nearNodes.size(); ++i) {
+            NearNode nearNode = nearNodes.get(i);
+            if (!_model.link(nearNode.node.getState(), x_rand))
+                continue;
+
+            Node newNode = new Node(x_rand);
+            LinkInterface newLink;
+            synchronized (_graphLock) {
+                newLink = Graph.newLink(nearNode.node, newNode, nearNode.linkDist);
+            }
+            offerBestPath(newLink);
+            KDTree.insert(_model, _rootNode, newNode);
+
+            // check the remaining nearby nodes to see if they would be better
+            // as children of the new node
+            for (int j = nearNodes.size() - 1; j > i; --j) {
+                NearNode jn = nearNodes.get(j);
+                // most candidates fail here, without the lock or the collision check
+                if (newNode.getPathDist() + jn.linkDist >= jn.node.getPathDist())
+                    continue;
+                if (!_model.link(jn.node.getState(), newNode.getState()))
+                    continue;
+                boolean rewired;
+                synchronized (_graphLock) {
+                    rewired = Graph.rewireFeasible(newNode, jn.node, jn.linkDist);
+                }
+                if (rewired)
+                    offerBestPath(jn.node.getIncoming());
+            }
+            _stepNo.incrementAndGet();
+            return 1;
+        }
+        // no feasible link possible.
+        return 0;
+    }
+
+    /** A snapshot; other threads may be adding nodes. */
+    @Override
+    public Iterable<Node> getNodes() {
+        return KDTree.values(_rootNode);
+    }
+
+    @Override
+    public Path getBestPath() {
+        LinkInterface link = _bestPath.get();
+        if (link == null) {
+            return null;
+        }
+        Node node = link.get_target();
+
+        // Collect the states along the path (backwards)
+        List<double[]> configs = new LinkedList<double[]>();
+        double totalDistance = 0;
+        while (true) {
+            configs.add(node.getState());
+            LinkInterface incoming = node.getIncoming();
+            if (incoming == null)
+                break;
+            totalDistance += incoming.get_linkDist();
+            node = incoming.get_source();
+        }
+        // now we have the forwards list of states
+        Collections.reverse(configs);
+
+        return new Path(totalDistance, configs);
+    }
+
+    private void offerBestPath(LinkInterface link) {
+        _bestPath.accumulateAndGet(link, (best, candidate) -> Graph.chooseBestPath(_model, best, candidate));
+    }
+}
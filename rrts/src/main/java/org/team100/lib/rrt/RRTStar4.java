@@ -1,12 +1,15 @@
 package org.team100.lib.rrt;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Random;
 
 import org.team100.lib.graph.Graph;
 import org.team100.lib.graph.LinkInterface;
@@ -18,6 +21,7 @@ import org.team100.lib.index.KDNode;
 import org.team100.lib.index.KDTree;
 import org.team100.lib.planner.RobotModel;
 import org.team100.lib.planner.Solver;
+import org.team100.lib.random.MersenneTwister;
 import org.team100.lib.space.Path;
 import org.team100.lib.space.Sample;
 
@@ -53,9 +57,26 @@ import org.team100.lib.space.Sample;
  * here
  * 
  * https://arxiv.org/pdf/1703.08944.pdf
+ * 
+ * In informed mode, once there's a path, sampling is restricted to the states
+ * that could improve it, see Sample.setInformed(), and the trees are
+ * periodically pruned of nodes that can't be on a better path, i.e. cost plus
+ * heuristic exceeds the best cost (branch and bound), see Prune(). This is
+ * Informed RRT*:
+ * 
+ * https://arxiv.org/pdf/1404.2334.pdf
  */
 public class RRTStar4<T extends KDModel & RobotModel> implements Solver {
+    /** In informed mode, prune this often, if the best path has improved. */
+    private static final int kPruneInterval = 500;
+    /**
+     * Relative slack in the prune test, so rounding doesn't drop the nodes on
+     * the best path, whose cost plus heuristic can equal the best cost.
+     */
+    private static final double kPruneTolerance = 1e-9;
     private final T _model;
+    /** The root of the tree grown from initial, to tell the trees apart. */
+    private final Node _initialRoot;
     /** Initially, tree grown from initial, but is swapped repeatedly */
     private KDNode<Node> _T_a;
     /** Initially, tree grown from goal, but is swapped repeatedly */
@@ -71,16 +92,45 @@ public class RRTStar4<T extends KDModel & RobotModel> implements Solver {
 
     Path _sigma_best;
 
+    private boolean _informed;
+    private int _steps;
+    /** Best cost as of the last prune. */
+    private double _prunedCost;
+    private int _pruned;
+    /** Shuffles the survivors of a prune. */
+    private final Random _pruneRandom;
+
     public RRTStar4(T model, Sample sample, double gamma) {
         if (gamma < 1.0) {
             throw new IllegalArgumentException("invalid gamma, must be >= 1.0");
         }
         _model = model;
-        _T_a = new KDNode<Node>(new Node(model.initial()));
+        _initialRoot = new Node(model.initial());
+        _T_a = new KDNode<Node>(_initialRoot);
         _T_b = new KDNode<Node>(new Node(model.goal()));
         _sample = sample;
         _gamma = gamma;
         _bestLeaf_a = null;
+        _prunedCost = Double.POSITIVE_INFINITY;
+        _pruneRandom = new MersenneTwister(0);
+    }
+
+    /**
+     * Informed sampling and pruning, once there's a path. Uses the sampler, so
+     * don't share it with another solver.
+     */
+    public void setInformed(boolean informed) {
+        _informed = informed;
+    }
+
+    /** Total nodes pruned so far. */
+    public int getPruned() {
+        return _pruned;
+    }
+
+    /** Best cost as of the last prune, infinite if there hasn't been one. */
+    public double getPrunedCost() {
+        return _prunedCost;
     }
 
     /**
@@ -111,18 +161,100 @@ public class RRTStar4<T extends KDModel & RobotModel> implements Solver {
                     edges += 1;
                     if (_sigma_best == null) {
                         _sigma_best = sigma_new;
+                        Inform();
                     } else {
                         if (sigma_new.getDistance() < _sigma_best.getDistance()) {
                             _sigma_best = sigma_new;
+                            Inform();
                         }
                     }
                 }
             }
         }
         SwapTrees();
+        if (_informed && ++_steps % kPruneInterval == 0 && _sigma_best != null
+                && _sigma_best.getDistance() < _prunedCost) {
+            Prune();
+        }
         return edges;
     }
 
+    /** Tell the sampler about the new best path, if informed. */
+    void Inform() {
+        if (!_informed)
+            return;
+        _sample.setInformed(_model.initial(), _model.goal(), _sigma_best.getDistance());
+    }
+
+    /**
+     * Drop the nodes that can't be on a path better than the best one, i.e. the
+     * cost from the root plus the heuristic to the other end exceeds the best
+     * cost. With a consistent heuristic, the descendants of a dropped node are
+     * dropped too, so the survivors are still trees. KDTree can't remove, so
+     * this rebuilds it, inserting the survivors in random order, since the
+     * traversal order would make it lopsided.
+     */
+    void Prune() {
+        double cBest = _sigma_best.getDistance();
+        _T_a = Prune(_T_a, cBest);
+        _T_b = Prune(_T_b, cBest);
+        _prunedCost = cBest;
+    }
+
+    KDNode<Node> Prune(KDNode<Node> tree, double cBest) {
+        Node root = tree.getValue();
+        boolean fromInitial = root == _initialRoot;
+        double[] other = fromInitial ? _model.goal() : _model.initial();
+        double limit = cBest * (1 + kPruneTolerance);
+        // parents first, so a node survives only if its parent did
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        List<Node> survivors = new ArrayList<>();
+        List<LinkInterface> dropped = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            dropped.clear();
+            Iterator<LinkInterface> iter = node.getOutgoing();
+            while (iter.hasNext()) {
+                LinkInterface link = iter.next();
+                Node child = link.get_target();
+                double h = fromInitial
+                        ? _model.dist(child.getState(), other)
+                        : _model.dist(other, child.getState());
+                if (child.getPathDist() + h > limit) {
+                    dropped.add(link);
+                    continue;
+                }
+                survivors.add(child);
+                stack.push(child);
+            }
+            for (LinkInterface link : dropped) {
+                node.removeOutgoing(link);
+                _pruned += 1 + countDescendants(link.get_target());
+            }
+        }
+        Collections.shuffle(survivors, _pruneRandom);
+        KDNode<Node> result = new KDNode<Node>(root);
+        for (Node node : survivors) {
+            KDTree.insert(_model, result, node);
+        }
+        return result;
+    }
+
+    static int countDescendants(Node node) {
+        int count = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Iterator<LinkInterface> iter = stack.pop().getOutgoing();
+            while (iter.hasNext()) {
+                stack.push(iter.next().get_target());
+                count++;
+            }
+        }
+        return count;
+    }
+
     void SwapTrees() {
         KDNode<Node> tmp = _T_a;
         _T_a = _T_b;
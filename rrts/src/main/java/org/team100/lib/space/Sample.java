@@ -7,25 +7,95 @@ import org.team100.lib.random.MersenneTwister;
 
 /**
  * Supplies samples drawn from a uniform distribution across the model bounds.
+ *
+ * In informed mode, once there's a path of cost cBest, the samples are
+ * restricted to the states that could be on a shorter one, i.e. where
+ * dist(start, x) + dist(x, goal) < cBest, using the model distance as the
+ * heuristic. For a Euclidean distance that's an ellipsoid with the start and
+ * goal as foci; the samples are drawn from its bounding box, intersected with
+ * the model bounds, and rejected if the heuristic is too big. The box assumes
+ * the model distance is at least the Euclidean distance. If the ellipsoid is
+ * too thin for rejection to find anything, the sample is taken from the
+ * segment between start and goal instead, which is always inside it.
  */
 public class Sample {
+    /** Give up rejecting after this many, and sample the start-goal segment. */
+    private static final int kMaxRejections = 100;
     private final KDModel _kdModel;
     private final double[] _sampleMin;
     private final double[] _sampleMax;
     private final Random _random;
+    // informed mode, _start is null if not
+    private double[] _start;
+    private double[] _goal;
+    private double _cBest;
+    private double[] _informedMin;
+    private double[] _informedMax;
 
     public Sample(KDModel kdModel) {
+        this(kdModel, 0);
+    }
+
+    /** Not threadsafe, so concurrent solvers use one per thread, seeded differently. */
+    public Sample(KDModel kdModel, int seed) {
         _kdModel = kdModel;
-        _random = new MersenneTwister(0);
+        _random = new MersenneTwister(seed);
         _sampleMin = _kdModel.getMin();
         _sampleMax = _kdModel.getMax();
     }
 
+    /**
+     * Restrict samples to states that could improve on a path from start to goal
+     * of cost cBest. Call again whenever the best path improves.
+     */
+    public void setInformed(double[] start, double[] goal, double cBest) {
+        int dimensions = _kdModel.dimensions();
+        if (start.length != dimensions || goal.length != dimensions)
+            throw new IllegalArgumentException("wrong dimensions");
+        // the ellipsoid has semi-major axis a along the start-goal line, and
+        // semi-minor axis b in every other direction.
+        double cMin = 0;
+        for (int i = 0; i < dimensions; ++i) {
+            cMin += (goal[i] - start[i]) * (goal[i] - start[i]);
+        }
+        cMin = Math.sqrt(cMin);
+        double a = cBest / 2;
+        double b = Math.sqrt(Math.max(0, cBest * cBest - cMin * cMin)) / 2;
+        _informedMin = new double[dimensions];
+        _informedMax = new double[dimensions];
+        for (int i = 0; i < dimensions; ++i) {
+            double u = cMin > 0 ? (goal[i] - start[i]) / cMin : 0;
+            double halfWidth = Math.sqrt(a * a * u * u + b * b * (1 - u * u));
+            double center = (start[i] + goal[i]) / 2;
+            _informedMin[i] = Math.max(_sampleMin[i], center - halfWidth);
+            _informedMax[i] = Math.min(_sampleMax[i], center + halfWidth);
+        }
+        _start = start.clone();
+        _goal = goal.clone();
+        _cBest = cBest;
+    }
+
     public double[] get() {
+        if (_start == null)
+            return get(_sampleMin, _sampleMax);
+        for (int i = 0; i < kMaxRejections; ++i) {
+            double[] result = get(_informedMin, _informedMax);
+            if (_kdModel.dist(_start, result) + _kdModel.dist(result, _goal) < _cBest)
+                return result;
+        }
+        double s = _random.nextDouble();
+        double[] result = new double[_kdModel.dimensions()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = _start[i] + s * (_goal[i] - _start[i]);
+        }
+        return result;
+    }
+
+    private double[] get(double[] min, double[] max) {
         double[] result = new double[_kdModel.dimensions()];
         for (int i = _kdModel.dimensions(); --i >= 0;) {
-            double range = _sampleMax[i] - _sampleMin[i];
-            result[i] = _sampleMin[i] + range * _random.nextDouble();
+            double range = max[i] - min[i];
+            result[i] = min[i] + range * _random.nextDouble();
         }
         return result;
     }
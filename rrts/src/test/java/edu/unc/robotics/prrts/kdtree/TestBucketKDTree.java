@@ -0,0 +1,197 @@
+package edu.unc.robotics.prrts.kdtree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.team100.lib.graph.Node;
+import org.team100.lib.index.BucketKDTree;
+import org.team100.lib.index.KDModel;
+import org.team100.lib.index.KDNearNode;
+import org.team100.lib.index.KNearest;
+import org.team100.lib.space.Point;
+
+public class TestBucketKDTree {
+    private static class MyKDModel implements KDModel {
+        @Override
+        public int dimensions() {
+            return 2;
+        }
+
+        @Override
+        public double[] getMin() {
+            return new double[] { 0, 0 };
+        }
+
+        @Override
+        public double[] getMax() {
+            return new double[] { 1, 1 };
+        }
+
+        @Override
+        public double dist(double[] start, double[] end) {
+            return Math.sqrt(Math.pow(start[0] - end[0], 2) + Math.pow(start[1] - end[1], 2));
+        }
+
+        @Override
+        public double[] steer(KDNearNode<Node> x_nearest, double[] newConfig) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setStepNo(int stepNo) {
+        }
+
+        @Override
+        public void setRadius(double radius) {
+        }
+    }
+
+    private static class P implements Point {
+        private final double[] _config;
+
+        P(double x, double y) {
+            _config = new double[] { x, y };
+        }
+
+        @Override
+        public double[] getState() {
+            return _config;
+        }
+    }
+
+    /** Mostly in a tiny corner, which makes KDTree deep. */
+    private static List<P> clustered(int n) {
+        Random random = new Random(0);
+        List<P> points = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            if (i % 10 == 0) {
+                points.add(new P(random.nextDouble(), random.nextDouble()));
+            } else {
+                points.add(new P(0.01 * random.nextDouble(), 0.01 * random.nextDouble()));
+            }
+        }
+        return points;
+    }
+
+    @Test
+    void testEmpty() {
+        BucketKDTree<P> tree = new BucketKDTree<>(new MyKDModel());
+        assertEquals(0, tree.size());
+        assertNull(tree.nearest(new double[] { 0.5, 0.5 })._nearest);
+        KNearest<P> result = new KNearest<>(3);
+        tree.kNearest(new double[] { 0.5, 0.5 }, 3, result);
+        assertEquals(0, result.size());
+    }
+
+    @Test
+    void testNearMatchesBruteForce() {
+        KDModel m = new MyKDModel();
+        List<P> points = clustered(5000);
+        BucketKDTree<P> tree = new BucketKDTree<>(m, 8);
+        for (P p : points) {
+            tree.insert(p);
+        }
+        assertEquals(points.size(), tree.size());
+        assertEquals(points.size(), tree.values().size());
+        Random random = new Random(1);
+        for (int i = 0; i < 100; ++i) {
+            double[] target = new double[] { 0.02 * random.nextDouble(), 0.02 * random.nextDouble() };
+            double radius = 0.005;
+            List<P> found = new ArrayList<>();
+            tree.near(target, radius, (value, dist) -> {
+                assertEquals(m.dist(value.getState(), target), dist, 1e-12);
+                found.add(value);
+            });
+            int expected = 0;
+            for (P p : points) {
+                if (m.dist(p.getState(), target) < radius)
+                    expected++;
+            }
+            assertEquals(expected, found.size());
+        }
+    }
+
+    @Test
+    void testKNearestMatchesBruteForce() {
+        KDModel m = new MyKDModel();
+        List<P> points = clustered(5000);
+        BucketKDTree<P> tree = new BucketKDTree<>(m, 8, points);
+        KNearest<P> result = new KNearest<>(10);
+        Random random = new Random(1);
+        for (int i = 0; i < 100; ++i) {
+            double[] target = new double[] { random.nextDouble(), random.nextDouble() };
+            tree.kNearest(target, 10, result);
+            result.sort();
+            List<P> sorted = new ArrayList<>(points);
+            sorted.sort(Comparator.comparingDouble(p -> m.dist(p.getState(), target)));
+            assertEquals(10, result.size());
+            for (int j = 0; j < 10; ++j) {
+                assertEquals(m.dist(sorted.get(j).getState(), target), result.getDist(j), 1e-12);
+            }
+            KDNearNode<P> nearest = tree.nearest(target);
+            assertEquals(m.dist(sorted.get(0).getState(), target), nearest._dist, 1e-12);
+        }
+    }
+
+    @Test
+    void testDepthStaysBounded() {
+        KDModel m = new MyKDModel();
+        // sorted input is the worst case for incremental splits
+        List<P> points = new ArrayList<>();
+        for (int i = 0; i < 10000; ++i) {
+            points.add(new P(i / 10000.0, 0.5));
+        }
+        BucketKDTree<P> tree = new BucketKDTree<>(m, 16);
+        for (P p : points) {
+            tree.insert(p);
+        }
+        // a balanced tree would be 10 deep
+        assertTrue(tree.depth() <= 20, "depth " + tree.depth());
+        assertTrue(tree.getRebuilds() > 0);
+        assertEquals(0, tree.nearest(new double[] { 0.5, 0.5 })._dist, 1e-12);
+    }
+
+    @Test
+    void testDuplicates() {
+        KDModel m = new MyKDModel();
+        BucketKDTree<P> tree = new BucketKDTree<>(m, 4);
+        for (int i = 0; i < 100; ++i) {
+            tree.insert(new P(0.5, 0.5));
+        }
+        tree.insert(new P(0.25, 0.25));
+        assertEquals(101, tree.size());
+        List<P> found = new ArrayList<>();
+        tree.near(new double[] { 0.5, 0.5 }, 0.1, (value, dist) -> found.add(value));
+        assertEquals(100, found.size());
+        tree.rebuild();
+        assertEquals(101, tree.values().size());
+        assertEquals(0.25 * Math.sqrt(2), tree.nearest(new double[] { 0, 0 })._dist, 1e-12);
+    }
+
+    @Test
+    void testKNearestHeap() {
+        KNearest<String> k = new KNearest<>(3);
+        assertEquals(Double.POSITIVE_INFINITY, k.worstDist());
+        k.offer("a", 5);
+        k.offer("b", 1);
+        k.offer("c", 3);
+        assertTrue(k.isFull());
+        assertEquals(5, k.worstDist());
+        k.offer("d", 4);
+        k.offer("e", 10);
+        assertEquals(4, k.worstDist());
+        k.sort();
+        assertEquals("b", k.getValue(0));
+        assertEquals("c", k.getValue(1));
+        assertEquals("d", k.getValue(2));
+        k.reset(5);
+        assertEquals(0, k.size());
+    }
+}
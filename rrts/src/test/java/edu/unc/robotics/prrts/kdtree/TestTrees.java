@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 import org.team100.lib.graph.Node;
@@ -205,4 +206,36 @@ public class TestTrees {
         assertEquals("child3", nearest._nearest.get_v());
         assertEquals(0.25, nearest._dist, 0.001);
     }
+
+    /** Concurrent inserts all land, and can all be found. */
+    @Test
+    void concurrentInsertTest() throws InterruptedException {
+        KDModel m = new MyKDModel();
+        KDNode<StringPoint> rootNode = new KDNode<>(new StringPoint("root", new double[] { 0, 0 }));
+        int threads = 4;
+        int perThread = 5000;
+        List<StringPoint> points = new ArrayList<>();
+        Random random = new Random(0);
+        for (int i = 0; i < threads * perThread; ++i) {
+            points.add(new StringPoint("p" + i, new double[] { random.nextDouble(), random.nextDouble() }));
+        }
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            List<StringPoint> mine = points.subList(t * perThread, (t + 1) * perThread);
+            Thread worker = new Thread(() -> {
+                for (StringPoint p : mine) {
+                    KDTree.insert(m, rootNode, p);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * perThread + 1, KDTree.values(rootNode).size());
+        for (StringPoint p : points) {
+            assertEquals(0, KDTree.nearest(m, rootNode, p.getState())._dist, 1e-12);
+        }
+    }
 }
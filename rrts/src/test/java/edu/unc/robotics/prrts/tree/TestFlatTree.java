@@ -0,0 +1,89 @@
+package edu.unc.robotics.prrts.tree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.team100.lib.graph.FlatTree;
+import org.team100.lib.graph.Node;
+import org.team100.lib.space.Path;
+
+public class TestFlatTree {
+    @Test
+    void testAdd() {
+        FlatTree tree = new FlatTree(2, new double[] { 0, 0 });
+        int a = tree.add(0, new double[] { 1, 0 }, 1);
+        int b = tree.add(a, new double[] { 2, 0 }, 1);
+        assertEquals(3, tree.size());
+        assertEquals(FlatTree.NONE, tree.getParent(0));
+        assertEquals(a, tree.getParent(b));
+        assertEquals(2, tree.getPathDist(b), 1e-12);
+        assertArrayEquals(new double[] { 2, 0 }, tree.getState(b));
+        assertEquals(2, tree.getState(b, 0), 1e-12);
+        assertEquals(a, tree.getFirstChild(0));
+        assertEquals(FlatTree.NONE, tree.getNextSibling(a));
+        Path path = tree.path(b);
+        assertEquals(2, path.getDistance(), 1e-12);
+        assertEquals(3, path.getStates().size());
+    }
+
+    @Test
+    void testGrow() {
+        FlatTree tree = new FlatTree(1, new double[] { 0 });
+        int parent = 0;
+        for (int i = 1; i < 5000; ++i) {
+            parent = tree.add(parent, new double[] { i }, 1);
+        }
+        assertEquals(5000, tree.size());
+        assertEquals(4999, tree.getPathDist(parent), 1e-9);
+        assertEquals(4999, tree.getState(parent, 0), 1e-9);
+    }
+
+    @Test
+    void testRewire() {
+        // 0 -> a -> b -> c, and 0 -> d
+        FlatTree tree = new FlatTree(1, new double[] { 0 });
+        int a = tree.add(0, new double[] { 1 }, 3);
+        int b = tree.add(a, new double[] { 2 }, 3);
+        int c = tree.add(b, new double[] { 3 }, 3);
+        int d = tree.add(0, new double[] { 4 }, 1);
+        assertEquals(9, tree.getPathDist(c), 1e-12);
+
+        // not shorter
+        assertFalse(tree.rewire(d, a, 5));
+        // vacuous
+        assertFalse(tree.rewire(a, b, 1));
+        // a descendant can't be shorter, so no cycles
+        assertFalse(tree.rewire(c, a, 0));
+        assertThrows(IllegalArgumentException.class, () -> tree.rewire(d, 0, 0));
+
+        // b moves from a to d, and takes c with it
+        assertTrue(tree.rewire(d, b, 1));
+        assertEquals(d, tree.getParent(b));
+        assertEquals(2, tree.getPathDist(b), 1e-12);
+        assertEquals(5, tree.getPathDist(c), 1e-12);
+        assertEquals(FlatTree.NONE, tree.getFirstChild(a));
+        assertEquals(b, tree.getFirstChild(d));
+    }
+
+    @Test
+    void testToNodes() {
+        FlatTree tree = new FlatTree(1, new double[] { 0 });
+        int a = tree.add(0, new double[] { 1 }, 3);
+        int b = tree.add(a, new double[] { 2 }, 3);
+        int d = tree.add(0, new double[] { 4 }, 1);
+        // now the parent comes after the child
+        tree.rewire(d, b, 1);
+        List<Node> nodes = tree.toNodes();
+        assertEquals(4, nodes.size());
+        assertNull(nodes.get(0).getIncoming());
+        assertEquals(nodes.get(d), nodes.get(b).getIncoming().get_source());
+        assertEquals(2, nodes.get(b).getPathDist(), 1e-12);
+    }
+}
@@ -2,11 +2,13 @@ package org.team100.lib.prrts;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 import org.team100.lib.graph.Graph;
 import org.team100.lib.graph.LinkInterface;
 import org.team100.lib.graph.Node;
+import org.team100.lib.graph.RewireStats;
 import org.team100.lib.planner.RobotModel;
 
 public class OperationsTest {
@@ -96,4 +98,73 @@ public class OperationsTest {
 
     }
 
+    /** Same as above, with lazy path lengths. */
+    @Test
+    void testRewiringVersioned() {
+        Graph.linkType = Graph.LinkType.VERSIONED;
+        try {
+            Node root = new Node(x);
+            Node node1 = new Node(x);
+            Graph.newLink(root, node1, 1);
+            Node node2 = new Node(x);
+            Graph.newLink(node1, node2, 1);
+            Node node3 = new Node(x);
+            Graph.newLink(node2, node3, 1);
+            Node node4 = new Node(x);
+            Graph.newLink(node3, node4, 1);
+            Node node5 = new Node(x);
+            LinkInterface link5 = Graph.newLink(node4, node5, 1);
+            assertEquals(5, link5.get_pathDist(), 0.1);
+
+            RewireStats.reset();
+            Graph.rewire(myRobot, node2, node4, 1);
+            // nothing was walked yet
+            assertEquals(1, RewireStats.getRewires());
+            assertEquals(0, RewireStats.getTouched());
+
+            // the subtree is updated on demand
+            assertEquals(4, node5.getPathDist(), 0.1);
+            assertEquals(3, node4.getPathDist(), 0.1);
+            assertTrue(RewireStats.getRecomputed() > 0);
+        } finally {
+            Graph.linkType = Graph.LinkType.CACHING;
+        }
+    }
+
+    /** A long chain would overflow the stack if the update were recursive. */
+    @Test
+    void testDeepRewiring() {
+        for (Graph.LinkType linkType : new Graph.LinkType[] { Graph.LinkType.CACHING, Graph.LinkType.VERSIONED }) {
+            Graph.linkType = linkType;
+            try {
+                Node root = new Node(x);
+                Node node1 = new Node(x);
+                Graph.newLink(root, node1, 1);
+                Node node2 = new Node(x);
+                Graph.newLink(node1, node2, 1);
+                Node node = node2;
+                for (int i = 0; i < 100000; ++i) {
+                    Node next = new Node(x);
+                    Graph.newLink(node, next, 1);
+                    node = next;
+                }
+                assertEquals(100002, node.getPathDist(), 1e-6);
+
+                RewireStats.reset();
+                // shortcut node2, so the whole chain gets shorter
+                Graph.rewire(myRobot, root, node2, 1);
+                assertEquals(100001, node.getPathDist(), 1e-6);
+                assertEquals(Graph.getPathDist(node), node.getPathDist(), 1e-6);
+                if (linkType == Graph.LinkType.CACHING) {
+                    assertEquals(100000, RewireStats.getTouched());
+                    assertEquals(100000, RewireStats.getMaxTouched());
+                } else {
+                    assertEquals(0, RewireStats.getTouched());
+                    assertEquals(100001, RewireStats.getRecomputed());
+                }
+            } finally {
+                Graph.linkType = Graph.LinkType.CACHING;
+            }
+        }
+    }
 }
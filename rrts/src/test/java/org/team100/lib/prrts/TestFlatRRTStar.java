@@ -0,0 +1,76 @@
+package org.team100.lib.prrts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.team100.lib.graph.FlatTree;
+import org.team100.lib.graph.Graph;
+import org.team100.lib.graph.Node;
+import org.team100.lib.planner.Runner;
+import org.team100.lib.rrt.FlatRRTStar;
+import org.team100.lib.rrt.RRTStar;
+import org.team100.lib.space.Path;
+import org.team100.lib.space.Sample;
+
+import edu.unc.robotics.prrts.example.arena.HolonomicArena;
+
+public class TestFlatRRTStar {
+    private static final boolean debug = false;
+
+    /**
+     * Same samples, same tree, as long as there are no ties. RRTStar can keep a
+     * stale best path after rewiring, so the flat one can only be better.
+     */
+    @Test
+    void testSameAsRRTStar() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        final RRTStar<HolonomicArena> solver = new RRTStar<>(arena, new Sample(arena), 6);
+        final Runner runner = new Runner(solver);
+        runner.runSamples(2000);
+
+        final HolonomicArena flatArena = new HolonomicArena(6);
+        final FlatRRTStar<HolonomicArena> flatSolver = new FlatRRTStar<>(flatArena, new Sample(flatArena), 6);
+        final Runner flatRunner = new Runner(flatSolver);
+        flatRunner.runSamples(2000);
+
+        Path bestPath = runner.getBestPath();
+        Path flatBestPath = flatRunner.getBestPath();
+        assertNotNull(flatBestPath);
+        if (debug)
+            System.out.println("distance " + flatBestPath.getDistance());
+        assertTrue(flatBestPath.getDistance() <= bestPath.getDistance() + 1e-9);
+
+        int nodes = 0;
+        double totalPathDist = 0;
+        for (Node n : solver.getNodes()) {
+            nodes++;
+            totalPathDist += n.getPathDist();
+        }
+        int flatNodes = 0;
+        double flatTotalPathDist = 0;
+        for (Node n : flatSolver.getNodes()) {
+            assertEquals(Graph.getPathDist(n), n.getPathDist(), 1e-9);
+            flatNodes++;
+            flatTotalPathDist += n.getPathDist();
+        }
+        assertEquals(nodes, flatNodes);
+        assertEquals(totalPathDist, flatTotalPathDist, 1e-6);
+    }
+
+    /** Cached path lengths are right after lots of rewiring. */
+    @Test
+    void testPathDist() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        final FlatRRTStar<HolonomicArena> solver = new FlatRRTStar<>(arena, new Sample(arena), 6);
+        final Runner runner = new Runner(solver);
+        runner.runSamples(5000);
+        FlatTree tree = solver.getTree();
+        assertEquals(5001, tree.size());
+        for (int i = 1; i < tree.size(); ++i) {
+            int parent = tree.getParent(i);
+            assertEquals(tree.getPathDist(parent) + tree.getLinkDist(i), tree.getPathDist(i), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.team100.lib.prrts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.team100.lib.graph.Graph;
+import org.team100.lib.graph.Node;
+import org.team100.lib.planner.Runner;
+import org.team100.lib.rrt.RRTStar4;
+import org.team100.lib.space.Path;
+import org.team100.lib.space.Sample;
+
+import edu.unc.robotics.prrts.example.arena.HolonomicArena;
+
+public class TestInformedRRTStar4 {
+    private static final boolean debug = false;
+
+    @Test
+    void testInformedSamples() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        Sample sample = new Sample(arena);
+        double[] start = arena.initial();
+        double[] goal = arena.goal();
+        double cBest = arena.dist(start, goal) * 1.2;
+        sample.setInformed(start, goal, cBest);
+        for (int i = 0; i < 1000; ++i) {
+            double[] x = sample.get();
+            assertTrue(arena.dist(start, x) + arena.dist(x, goal) < cBest);
+            assertTrue(x[0] >= 0 && x[0] <= 16);
+            assertTrue(x[1] >= 0 && x[1] <= 8);
+        }
+    }
+
+    /** Too thin for rejection, so it falls back to the start-goal segment. */
+    @Test
+    void testThinEllipse() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        Sample sample = new Sample(arena);
+        double[] start = arena.initial();
+        double[] goal = arena.goal();
+        double cBest = arena.dist(start, goal) * (1 + 1e-6);
+        sample.setInformed(start, goal, cBest);
+        for (int i = 0; i < 100; ++i) {
+            double[] x = sample.get();
+            assertTrue(arena.dist(start, x) + arena.dist(x, goal) < cBest);
+        }
+    }
+
+    @Test
+    void testInformed() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        final RRTStar4<HolonomicArena> solver = new RRTStar4<>(arena, new Sample(arena), 6);
+        final Runner runner = new Runner(solver);
+        runner.runSamples(5000);
+        Path bestPath = runner.getBestPath();
+        assertNotNull(bestPath);
+
+        final HolonomicArena informedArena = new HolonomicArena(6);
+        final RRTStar4<HolonomicArena> informedSolver = new RRTStar4<>(
+                informedArena, new Sample(informedArena), 6);
+        informedSolver.setInformed(true);
+        final Runner informedRunner = new Runner(informedSolver);
+        informedRunner.runSamples(5000);
+        Path informedBestPath = informedRunner.getBestPath();
+        assertNotNull(informedBestPath);
+
+        if (debug)
+            System.out.printf("uninformed %.3f informed %.3f pruned %d\n",
+                    bestPath.getDistance(), informedBestPath.getDistance(), informedSolver.getPruned());
+        assertTrue(informedSolver.getPruned() > 0);
+
+        // pruning keeps the tree small, and the survivors' costs are right.
+        int nodes = 0;
+        for (Node n : solver.getNodes()) {
+            nodes++;
+        }
+        int informedNodes = 0;
+        for (Node n : informedSolver.getNodes()) {
+            assertEquals(Graph.getPathDist(n), n.getPathDist(), 1e-9);
+            informedNodes++;
+        }
+        if (debug)
+            System.out.printf("nodes %d informed nodes %d\n", nodes, informedNodes);
+        assertTrue(informedNodes < nodes);
+    }
+
+    /** Right after a prune, no node is left that can't improve on the best path. */
+    @Test
+    void testPruneBound() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        final RRTStar4<HolonomicArena> solver = new RRTStar4<>(arena, new Sample(arena), 6);
+        solver.setInformed(true);
+        double[] initial = arena.initial();
+        double[] goal = arena.goal();
+        double prunedCost = solver.getPrunedCost();
+        int prunes = 0;
+        int stepNo = 1;
+        for (int i = 0; i < 20000 && prunes < 3; ++i) {
+            solver.setStepNo(stepNo);
+            if (solver.step() > 0)
+                stepNo++;
+            if (solver.getPrunedCost() == prunedCost)
+                continue;
+            prunedCost = solver.getPrunedCost();
+            prunes++;
+            for (Node n : solver.getNodes()) {
+                // the heuristic is the distance to the other tree's root
+                Node root = n;
+                while (root.getIncoming() != null)
+                    root = root.getIncoming().get_source();
+                double h = Arrays.equals(root.getState(), initial)
+                        ? arena.dist(n.getState(), goal)
+                        : arena.dist(initial, n.getState());
+                assertTrue(n.getPathDist() + h <= prunedCost * (1 + 1e-9),
+                        n.getPathDist() + " " + h + " " + prunedCost);
+            }
+        }
+        assertEquals(3, prunes);
+    }
+}
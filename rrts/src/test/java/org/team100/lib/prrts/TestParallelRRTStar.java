@@ -0,0 +1,116 @@
+package org.team100.lib.prrts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.team100.lib.graph.Graph;
+import org.team100.lib.graph.LinkInterface;
+import org.team100.lib.graph.Node;
+import org.team100.lib.planner.ParallelRunner;
+import org.team100.lib.planner.Runner;
+import org.team100.lib.rrt.ParallelRRTStar;
+import org.team100.lib.space.Path;
+
+import edu.unc.robotics.prrts.example.arena.HolonomicArena;
+
+public class TestParallelRRTStar {
+    private static final boolean debug = false;
+
+    @Test
+    void testSamples() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        final ParallelRRTStar<HolonomicArena> solver = new ParallelRRTStar<>(arena, 6);
+        try (ParallelRunner runner = new ParallelRunner(solver, 4)) {
+            runner.runSamples(2000);
+            // may overshoot by a sample per thread
+            assertEquals(2001, runner.getStepNo(), 4);
+            Set<Node> nodes = checkTree(solver.getNodes());
+            assertEquals(runner.getStepNo(), nodes.size(), 4);
+            Path bestPath = runner.getBestPath();
+            assertNotNull(bestPath);
+            if (debug)
+                System.out.println("distance " + bestPath.getDistance());
+            // same as the single-threaded version, roughly
+            assertEquals(16, bestPath.getDistance(), 2);
+        }
+    }
+
+    /** Versioned links update themselves when read, which would race. */
+    @Test
+    void testVersionedLinks() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        Graph.LinkType linkType = Graph.linkType;
+        try {
+            Graph.linkType = Graph.LinkType.VERSIONED;
+            assertThrows(IllegalStateException.class, () -> new ParallelRRTStar<>(arena, 6));
+        } finally {
+            Graph.linkType = linkType;
+        }
+    }
+
+    /** Runs are cumulative, like Runner. */
+    @Test
+    void testRepeated() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        final ParallelRRTStar<HolonomicArena> solver = new ParallelRRTStar<>(arena, 6);
+        try (ParallelRunner runner = new ParallelRunner(solver, 4)) {
+            for (int i = 0; i < 10; ++i) {
+                runner.runForDurationMS(5);
+            }
+            checkTree(solver.getNodes());
+            if (debug)
+                System.out.println("steps " + runner.getStepNo());
+            assertTrue(runner.getStepNo() > 1);
+        }
+    }
+
+    /** It still works single-threaded. */
+    @Test
+    void testRunner() {
+        final HolonomicArena arena = new HolonomicArena(6);
+        final ParallelRRTStar<HolonomicArena> solver = new ParallelRRTStar<>(arena, 6);
+        final Runner runner = new Runner(solver);
+        runner.runSamples(500);
+        Set<Node> nodes = checkTree(solver.getNodes());
+        assertEquals(501, nodes.size());
+        assertNotNull(runner.getBestPath());
+    }
+
+    /**
+     * Every node but the root has a parent in the tree, which lists it as a
+     * child, and the cached path lengths are right.
+     */
+    private static Set<Node> checkTree(Iterable<Node> tree) {
+        Set<Node> nodes = new HashSet<>();
+        for (Node n : tree) {
+            nodes.add(n);
+        }
+        int roots = 0;
+        for (Node n : nodes) {
+            LinkInterface incoming = n.getIncoming();
+            if (incoming == null) {
+                roots++;
+                continue;
+            }
+            Node parent = incoming.get_source();
+            assertTrue(nodes.contains(parent));
+            boolean found = false;
+            for (Iterator<LinkInterface> iter = parent.getOutgoing(); iter.hasNext();) {
+                if (iter.next() == incoming)
+                    found = true;
+            }
+            assertTrue(found);
+            // also proves there's no cycle
+            assertEquals(Graph.getPathDist(n), n.getPathDist(), 1e-9);
+        }
+        assertEquals(1, roots);
+        return nodes;
+    }
+}